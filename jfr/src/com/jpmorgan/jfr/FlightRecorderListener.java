@@ -0,0 +1,210 @@
+package com.jpmorgan.jfr;
+
+import com.jpmorgan.ExchangeEventListener;
+import com.jpmorgan.orderbook.Side;
+import jdk.jfr.*;
+
+/**
+ * Turns the events of an exchange simulator and its order books into custom JDK Flight Recorder events, so that
+ * a recording lines up the placements, matches, level changes, cancels, amends and fan-outs with the GC pauses,
+ * safepoints and lock contention recorded next to them. Install it with ExchangeSimulator.setEventListener,
+ * then record with -XX:StartFlightRecording, the events are named com.jpmorgan.* and grouped under the
+ * JPExchangeSimulator category in JDK Mission Control.
+ *
+ * An event which is not enabled in the recording settings is neither filled in nor committed, and the event
+ * object does not escape, so the JIT removes its allocation. No stack trace is taken. The listener keeps no
+ * state, so one listener can serve several exchanges on different threads.
+ *
+ * The core of the simulator targets Java 8, which has no jdk.jfr, so this module is kept out of src:
+ * compile it with JDK 11 or later, or with OpenJDK 8u262 or later, next to the compiled classes of src.
+ * The elapsed field of an event is the time the operation took, measured by the simulator, the event itself
+ * is committed when the operation completes.
+ * @author Jiangchuan Zheng
+ *
+ */
+public class FlightRecorderListener implements ExchangeEventListener {
+
+    private static final String CATEGORY = "JPExchangeSimulator";
+
+    @Name("com.jpmorgan.OrderPlaced")
+    @Label("Order Placed")
+    @Description("An inbound order matched against the book, its remaining quantity resting in the book")
+    @Category({CATEGORY, "Orders"})
+    @StackTrace(false)
+    static class OrderPlaced extends Event {
+        @Label("Symbol Id") int symbolId;
+        @Label("Order Id") long orderId;
+        @Label("Side") String side;
+        @Label("Price Ticks") long priceTicks;
+        @Label("Quantity") long quantity;
+        @Label("Traded Quantity") long tradedQuantity;
+        @Label("Levels Swept") int levelsSwept;
+        @Label("Elapsed") @Timespan(Timespan.NANOSECONDS) long elapsed;
+    }
+
+    @Name("com.jpmorgan.LevelMatched")
+    @Label("Level Matched")
+    @Description("An inbound order traded with the orders of a price level")
+    @Category({CATEGORY, "Matching"})
+    @StackTrace(false)
+    static class LevelMatched extends Event {
+        @Label("Symbol Id") int symbolId;
+        @Label("Taker Order Id") long takerOrderId;
+        @Label("Level Side") String side;
+        @Label("Price Ticks") long priceTicks;
+        @Label("Quantity") long quantity;
+        @Label("Elapsed") @Timespan(Timespan.NANOSECONDS) long elapsed;
+    }
+
+    @Name("com.jpmorgan.LevelCreated")
+    @Label("Level Created")
+    @Category({CATEGORY, "Levels"})
+    @StackTrace(false)
+    static class LevelCreated extends Event {
+        @Label("Symbol Id") int symbolId;
+        @Label("Side") String side;
+        @Label("Price Ticks") long priceTicks;
+    }
+
+    @Name("com.jpmorgan.LevelRemoved")
+    @Label("Level Removed")
+    @Category({CATEGORY, "Levels"})
+    @StackTrace(false)
+    static class LevelRemoved extends Event {
+        @Label("Symbol Id") int symbolId;
+        @Label("Side") String side;
+        @Label("Price Ticks") long priceTicks;
+    }
+
+    @Name("com.jpmorgan.OrderCanceled")
+    @Label("Order Canceled")
+    @Category({CATEGORY, "Orders"})
+    @StackTrace(false)
+    static class OrderCanceled extends Event {
+        @Label("Symbol Id") int symbolId;
+        @Label("Order Id") long orderId;
+        @Label("Side") String side;
+        @Label("Price Ticks") long priceTicks;
+        @Label("Quantity") long quantity;
+        @Label("Elapsed") @Timespan(Timespan.NANOSECONDS) long elapsed;
+    }
+
+    @Name("com.jpmorgan.OrderAmended")
+    @Label("Order Amended")
+    @Category({CATEGORY, "Orders"})
+    @StackTrace(false)
+    static class OrderAmended extends Event {
+        @Label("Symbol Id") int symbolId;
+        @Label("Order Id") long orderId;
+        @Label("Side") String side;
+        @Label("Price Ticks") long priceTicks;
+        @Label("Quantity") long quantity;
+        @Label("Traded Quantity") long tradedQuantity;
+        @Label("Elapsed") @Timespan(Timespan.NANOSECONDS) long elapsed;
+    }
+
+    @Name("com.jpmorgan.FanOut")
+    @Label("Fan-Out")
+    @Description("The messages of a batch of instructions delivered to the clients")
+    @Category({CATEGORY, "Clients"})
+    @StackTrace(false)
+    static class FanOut extends Event {
+        @Label("Clients") int clientNum;
+        @Label("Messages") int messageNum;
+        @Label("Elapsed") @Timespan(Timespan.NANOSECONDS) long elapsed;
+    }
+
+    @Override
+    public void onOrderPlaced(int symbolId, long orderId, Side side, long priceTicks, long quantity, long tradedQuantity,
+            int levelsSwept, long startNanos) {
+        OrderPlaced event = new OrderPlaced();
+        if (event.isEnabled()) {
+            event.elapsed = System.nanoTime() - startNanos;
+            event.symbolId = symbolId;
+            event.orderId = orderId;
+            event.side = side.name();
+            event.priceTicks = priceTicks;
+            event.quantity = quantity;
+            event.tradedQuantity = tradedQuantity;
+            event.levelsSwept = levelsSwept;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void onLevelMatched(int symbolId, long takerOrderId, Side side, long priceTicks, long quantity, long startNanos) {
+        LevelMatched event = new LevelMatched();
+        if (event.isEnabled()) {
+            event.elapsed = System.nanoTime() - startNanos;
+            event.symbolId = symbolId;
+            event.takerOrderId = takerOrderId;
+            event.side = side.name();
+            event.priceTicks = priceTicks;
+            event.quantity = quantity;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void onLevelCreated(int symbolId, Side side, long priceTicks) {
+        LevelCreated event = new LevelCreated();
+        if (event.isEnabled()) {
+            event.symbolId = symbolId;
+            event.side = side.name();
+            event.priceTicks = priceTicks;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void onLevelRemoved(int symbolId, Side side, long priceTicks) {
+        LevelRemoved event = new LevelRemoved();
+        if (event.isEnabled()) {
+            event.symbolId = symbolId;
+            event.side = side.name();
+            event.priceTicks = priceTicks;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void onOrderCanceled(int symbolId, long orderId, Side side, long priceTicks, long quantity, long startNanos) {
+        OrderCanceled event = new OrderCanceled();
+        if (event.isEnabled()) {
+            event.elapsed = System.nanoTime() - startNanos;
+            event.symbolId = symbolId;
+            event.orderId = orderId;
+            event.side = side.name();
+            event.priceTicks = priceTicks;
+            event.quantity = quantity;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void onOrderAmended(int symbolId, long orderId, Side side, long priceTicks, long quantity, long tradedQuantity,
+            long startNanos) {
+        OrderAmended event = new OrderAmended();
+        if (event.isEnabled()) {
+            event.elapsed = System.nanoTime() - startNanos;
+            event.symbolId = symbolId;
+            event.orderId = orderId;
+            event.side = side.name();
+            event.priceTicks = priceTicks;
+            event.quantity = quantity;
+            event.tradedQuantity = tradedQuantity;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void onFanOut(int clientNum, int messageNum, long startNanos) {
+        FanOut event = new FanOut();
+        if (event.isEnabled()) {
+            event.elapsed = System.nanoTime() - startNanos;
+            event.clientNum = clientNum;
+            event.messageNum = messageNum;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package benchmark;
+
+import com.jpmorgan.orderbook.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH microbenchmarks of the OrderBook operations, on a book of a given depth and number of orders per level
+ * on each side, for both engines. Every benchmark leaves the book as it found it, so an operation which takes
+ * liquidity or removes an order is paired with the one putting it back, and the time reported is the pair.
+ * The GC profiler reports the bytes allocated per operation, which the fill listener paths should keep at 0.
+ *
+ * This module is kept out of src since it needs JMH: compile it with jmh-core and jmh-generator-annprocess on
+ * the classpath, next to the compiled classes of src, then run OrderBookBenchmark.main, or org.openjdk.jmh.Main
+ * with -prof gc to pick the benchmarks and parameters from the command line.
+ * @author Jiangchuan Zheng
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class OrderBookBenchmark {
+
+    private static final double PREV_CLOSE = 100.0;
+    private static final long MID_TICKS = Price.toTicks(PREV_CLOSE);
+    private static final long STEP_TICKS = Price.toTicks(0.01);
+    private static final long QUANTITY = 100;
+
+    //Fill listener only summing the fills, so that it does not allocate
+    private static final class SummingListener implements FillListener {
+
+        private long quantity;
+
+        public void onFill(long makerOrderId, long takerOrderId, long priceTicks, long quantity) {
+            this.quantity += quantity;
+        }
+    }
+
+    //The number of ask levels a market sweep takes, a parameter of the sweep benchmark only
+    @State(Scope.Thread)
+    public static class Sweep {
+
+        @Param({"1", "5"})
+        public int levels;
+    }
+
+    @Param({"10", "100", "1000"})
+    public int depth;
+
+    @Param({"1", "10"})
+    public int ordersPerLevel;
+
+    @Param({"TREE", "LADDER"})
+    public BookEngine engine;
+
+    private OrderBook book;
+    private final SummingListener listener = new SummingListener();
+
+    private long[][] bidIds; //The ids of the resting bids, per level from the best one
+    private int cursor; //The next resting bid an amend or a cancel works on, over all the bids
+    private int cycle; //The number of times the cursor went over all the bids
+
+    @Setup(Level.Trial)
+    public void createBook() {
+        book = new OrderBook(engine);
+        book.setPrevClose(PREV_CLOSE);
+        book.setTickSize(0.01);
+        book.setLotSize(1);
+        book.setOrderIdSequence(new OrderIdSequence(1, 1));
+
+        bidIds = new long[depth][ordersPerLevel];
+        for (int level = 0; level < depth; level++) {
+            for (int i = 0; i < ordersPerLevel; i++) {
+                bidIds[level][i] = rest(bidPrice(level), Side.BUY);
+                rest(askPrice(level), Side.SELL);
+            }
+        }
+    }
+
+    /**
+     * A limit bid resting behind the best one without trading, then canceled
+     */
+    @Benchmark
+    public long passiveLimit() {
+        long orderId = rest(bidPrice(depth / 2), Side.BUY);
+        book.releaseOrder(book.removeOrder(orderId, Side.BUY).getKey());
+        return orderId;
+    }
+
+    /**
+     * A limit bid at the best ask taking its first order, which is then put back at the end of the level
+     */
+    @Benchmark
+    public long aggressiveLimit() {
+        long priceTicks = book.getBestAskTicks();
+        Order order = book.acquireOrder(priceTicks, Side.BUY, QUANTITY);
+        long traded = book.processInboundOrder(order, listener);
+        book.releaseOrder(order);
+        rest(priceTicks, Side.SELL);
+        return traded;
+    }
+
+    /**
+     * A market bid taking the whole of the best ask levels, which are then put back
+     */
+    @Benchmark
+    public long marketSweep(Sweep sweep) {
+        int levels = Math.min(sweep.levels, depth);
+        Order order = book.acquireOrder(Price.NO_PRICE, Side.BUY, levels * ordersPerLevel * QUANTITY);
+        long traded = book.processInboundOrder(order, listener);
+        book.releaseOrder(order);
+        for (int level = 0; level < levels; level++) {
+            for (int i = 0; i < ordersPerLevel; i++) {
+                rest(askPrice(level), Side.SELL);
+            }
+        }
+        return traded;
+    }
+
+    /**
+     * A resting bid canceled, then placed again at the same price with a new id
+     */
+    @Benchmark
+    public long removeOrder() {
+        int level = cursor / ordersPerLevel;
+        int i = cursor % ordersPerLevel;
+        advance();
+        book.releaseOrder(book.removeOrder(bidIds[level][i], Side.BUY).getKey());
+        bidIds[level][i] = rest(bidPrice(level), Side.BUY);
+        return bidIds[level][i];
+    }
+
+    /**
+     * A resting bid doubled in quantity, and halved back the next time the cursor comes to it
+     */
+    @Benchmark
+    public Object updateOrderQuantity() {
+        long orderId = bidIds[cursor / ordersPerLevel][cursor % ordersPerLevel];
+        long quantity = cycle % 2 == 0 ? 2 * QUANTITY : QUANTITY;
+        advance();
+        return book.updateOrderQuantity(orderId, Side.BUY, quantity);
+    }
+
+    /**
+     * A resting bid moved one tick down, and back up the next time the cursor comes to it
+     */
+    @Benchmark
+    public Object updateOrderPrice() {
+        int level = cursor / ordersPerLevel;
+        long orderId = bidIds[level][cursor % ordersPerLevel];
+        long priceTicks = cycle % 2 == 0 ? bidPrice(level + 1) : bidPrice(level);
+        advance();
+        return book.updateOrderPrice(orderId, Side.BUY, priceTicks);
+    }
+
+    @Benchmark
+    public Price getBestBid() {
+        return book.getBestBid();
+    }
+
+    @Benchmark
+    public void getQuantityAtPrice(Blackhole blackhole) {
+        blackhole.consume(book.getQuantityAtPrice(PREV_CLOSE - 0.01));
+        blackhole.consume(book.getQuantityAtPrice(PREV_CLOSE - 0.01 * depth));
+    }
+
+    private long rest(long priceTicks, Side side) {
+        Order order = book.acquireOrder(priceTicks, side, QUANTITY);
+        book.processInboundOrder(order, listener);
+        return order.getOrderId();
+    }
+
+    private long bidPrice(int level) {
+        return MID_TICKS - STEP_TICKS * (level + 1);
+    }
+
+    private long askPrice(int level) {
+        return MID_TICKS + STEP_TICKS * (level + 1);
+    }
+
+    private void advance() {
+        if (++cursor == depth * ordersPerLevel) {
+            cursor = 0;
+            cycle++;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(OrderBookBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
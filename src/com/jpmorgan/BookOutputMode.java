@@ -0,0 +1,14 @@
+package com.jpmorgan;
+
+/**
+ * The ways the exchange simulator prints the order book after each instruction.
+ * OFF turns off all the output printed for each instruction, errors are still printed
+ * @author Jiangchuan Zheng
+ *
+ */
+public enum BookOutputMode {
+    FULL, //The whole book
+    OFF, //Nothing, neither the instruction received nor the last trade
+    TOP_N, //The best levels of each side up to the configured depth
+    DELTA //Only the levels changed by the instruction
+}
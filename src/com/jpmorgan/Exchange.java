@@ -0,0 +1,33 @@
+package com.jpmorgan;
+
+import com.jpmorgan.instruction.Instruction;
+
+/**
+ * The exchange a client sends its instructions to
+ * @author Jiangchuan Zheng
+ *
+ */
+public interface Exchange {
+
+    /**
+     * Receive an instruction from a registered client
+     * @param instruction  the instruction
+     * @param clientID  the id of the client sending the instruction
+     */
+    void receiveInstruction(Instruction instruction, long clientID);
+
+    /**
+     * Receive a batch of instructions, processed in order
+     * @param batch  the instructions
+     * @param clientIds  the id of the client sending each instruction, at the same index
+     * @param offset  the index of the first instruction
+     * @param count  the number of instructions
+     */
+    default void receiveInstructions(Instruction[] batch, long[] clientIds, int offset, int count)
+    {
+        for (int i = offset; i < offset + count; i++)
+        {
+            receiveInstruction(batch[i], clientIds[i]);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.jpmorgan;
+
+import com.jpmorgan.orderbook.BookEventListener;
+
+/**
+ * Receiver of what happens inside an exchange simulator, for tracing and profiling, set with
+ * ExchangeSimulator.setEventListener. It receives the events of every order book of the exchange as well
+ * @author Jiangchuan Zheng
+ *
+ */
+public interface ExchangeEventListener extends BookEventListener
+{
+
+    /**
+     * Called once the messages of a batch of instructions have been delivered to the clients
+     * @param clientNum  the number of clients the messages went to
+     * @param messageNum  the number of messages delivered
+     * @param startNanos  the System.nanoTime the delivery started at
+     */
+    default void onFanOut(int clientNum, int messageNum, long startNanos)
+    {
+    }
+}
@@ -2,27 +2,68 @@ package com.jpmorgan;
 import com.jpmorgan.client.Client;
 import com.jpmorgan.client.ClientState;
 import com.jpmorgan.instruction.Instruction;
+import com.jpmorgan.instruction.InstructionAction;
 import com.jpmorgan.instruction.InstructionProcessor;
+import com.jpmorgan.journal.ExchangeSnapshot;
+import com.jpmorgan.journal.InstructionJournal;
+import com.jpmorgan.log.BinaryEventLog;
 import com.jpmorgan.message.ExchangeMessage;
 import com.jpmorgan.message.OrderMessage;
 import com.jpmorgan.message.RegisterMessage;
 import com.jpmorgan.message.TradeMessage;
+import com.jpmorgan.metrics.ExchangeStatistics;
+import com.jpmorgan.metrics.InstructionMetrics;
+import com.jpmorgan.metrics.Stage;
+import com.jpmorgan.orderbook.BookEngine;
 import com.jpmorgan.orderbook.OrderBook;
+import com.jpmorgan.orderbook.OrderIdSequence;
 import com.jpmorgan.orderbook.Trade;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
-public class ExchangeSimulator {
+public class ExchangeSimulator implements Exchange {
 
     private long globalClientID = 0;
 
+    private static final int INITIAL_SYMBOL_CAPACITY = 16;
+    private static final int INSTRUMENT_ORDER_CAPACITY = 1 << 6; //Default order index capacity of a listed instrument, it grows when needed
+
+    /*
+     * The order book of every listed instrument, indexed by symbol id, so that routing an instruction is an array access.
+     * The book of Instruction.DEFAULT_SYMBOL always exists and is the one configured by setPrevClose, setLotSize and setTickSize
+     */
+    private OrderBook[] orderBooks;
     private OrderBook orderBook;
+    private final BookEngine bookEngine;
+
+    private OrderIdSequence orderIdSequence; //Assigns order ids, the global id counter if null
+
     private Trade lastTrade;
+    private OrderBook lastTradeBook; //The order book whose pool the orders of the last trade go back to
 
     private Map<Long, Client> clientMap;
 
+    /*
+     * The messages of the instructions being processed, queued per client and delivered at the end of each batch.
+     * The outboxes with messages are kept in a list, so delivering does not go through every client.
+     * All the outboxes are also kept in a list, so that a broadcast goes through them by index without an iterator
+     */
+    private Map<Long, Outbox> outboxes;
+    private final List<Outbox> outboxList = new ArrayList<>();
+    private final List<Outbox> pendingOutboxes = new ArrayList<>();
+
     private PrintWriter outWriter;
+    private BinaryEventLog eventLog; //Records the events in binary, the cheap alternative to the text output
+    private InstructionJournal journal; //Records the instructions before they are processed, to rebuild the state from
+    private InstructionMetrics metrics; //Times the stages of each instruction, null when disabled
+    private ExchangeStatistics statistics; //Counts for JMX, null when disabled
+    private ExchangeEventListener eventListener; //Receives the events of the exchange and its books for tracing, null when disabled
+
+    private BookOutputMode bookOutputMode = BookOutputMode.FULL;
+    private int bookOutputDepth = 5; //The number of levels printed on each side in TOP_N mode
 
     private final InstructionProcessor placeInstructionProcessor;
     private final InstructionProcessor cancelInstructionProcessor;
@@ -31,34 +72,276 @@ public class ExchangeSimulator {
 
     public ExchangeSimulator()
     {
-        orderBook = new OrderBook();
+        this(null);
+    }
+
+    public ExchangeSimulator(BookEngine bookEngine)
+    {
+        this.bookEngine = bookEngine;
+
+        orderBooks = new OrderBook[INITIAL_SYMBOL_CAPACITY];
+        orderBook = bookEngine == null ? new OrderBook() : new OrderBook(bookEngine);
+        orderBooks[Instruction.DEFAULT_SYMBOL] = orderBook;
 
         clientMap = new HashMap<>();
+        outboxes = new HashMap<>();
+
+        placeInstructionProcessor = InstructionProcessor.createPlaceInstructionProcessor(this);
+        cancelInstructionProcessor = InstructionProcessor.createCancelInstructionProcessor(this);
+        amendPriceInstructionProcessor = InstructionProcessor.createAmendPriceInstructionProcessor(this);
+        amendQuantityInstructionProcessor = InstructionProcessor.createAmendQuantityInstructionProcessor(this);
+    }
+
+    /**
+     * List an instrument, or change the settings of an instrument already listed
+     * @param symbolId  the id of the instrument, kept small since it indexes the order book registry
+     * @return the order book of the instrument
+     */
+    public OrderBook listInstrument(int symbolId, double prevClose, double tickSize, long lotSize)
+    {
+        return listInstrument(symbolId, prevClose, tickSize, lotSize, INSTRUMENT_ORDER_CAPACITY);
+    }
+
+    /**
+     * List an instrument, or change the settings of an instrument already listed, sizing a new order book
+     * for the resting orders expected. A book starts small by default, so that thousands of mostly idle
+     * instruments cost little, and grows as orders come; a busy instrument is given a larger size up front
+     * so that it does not grow while trading
+     * @param symbolId  the id of the instrument, kept small since it indexes the order book registry
+     * @param orderCapacity  the number of resting orders the order index of a new book holds before it grows
+     * @return the order book of the instrument
+     */
+    public OrderBook listInstrument(int symbolId, double prevClose, double tickSize, long lotSize, int orderCapacity)
+    {
+        if (symbolId < 0)
+        {
+            throw new IllegalArgumentException("Invalid symbol id " + symbolId);
+        }
+
+        if (symbolId >= orderBooks.length)
+        {
+            orderBooks = Arrays.copyOf(orderBooks, Math.max(symbolId + 1, orderBooks.length * 2));
+        }
+
+        OrderBook book = orderBooks[symbolId];
+        if (book == null)
+        {
+            book = bookEngine == null ? new OrderBook(orderCapacity) : new OrderBook(bookEngine, orderCapacity);
+            book.setSymbolId(symbolId);
+            book.setDirtyTracking(bookOutputMode == BookOutputMode.DELTA);
+            book.setOrderIdSequence(orderIdSequence);
+            book.setEventListener(eventListener);
+            orderBooks[symbolId] = book;
+        }
 
-        placeInstructionProcessor = InstructionProcessor.createPlaceInstructionProcessor(orderBook, this);
-        cancelInstructionProcessor = InstructionProcessor.createCancelInstructionProcessor(orderBook, this);
-        amendPriceInstructionProcessor = InstructionProcessor.createAmendPriceInstructionProcessor(orderBook, this);
-        amendQuantityInstructionProcessor = InstructionProcessor.createAmendQuantityInstructionProcessor(orderBook, this);
+        book.setPrevClose(prevClose);
+        book.setTickSize(tickSize);
+        book.setLotSize(lotSize);
+        recordInstrument(book);
+        return book;
+    }
+
+    /**
+     * Get the order book of an instrument
+     * @param symbolId  the id of the instrument
+     * @return the order book, or null if the instrument is not listed
+     */
+    public OrderBook getOrderBook(int symbolId)
+    {
+        if (symbolId < 0 || symbolId >= orderBooks.length)
+        {
+            return null;
+        }
+        return orderBooks[symbolId];
     }
 
     public void setPrevClose(double prevClose) {
         orderBook.setPrevClose(prevClose);
+        recordInstrument(orderBook);
     }
 
     public void setLotSize(long lotSize) {
         orderBook.setLotSize(lotSize);
+        recordInstrument(orderBook);
     }
 
-    public void setTickSize(double tickSize) { orderBook.setTickSize(tickSize); }
+    public void setTickSize(double tickSize) {
+        orderBook.setTickSize(tickSize);
+        recordInstrument(orderBook);
+    }
 
     public void setOutWriter(PrintWriter outWriter) {
         this.outWriter = outWriter;
     }
 
+    /**
+     * Set the binary log the instructions and trades are recorded into, which only the thread processing
+     * the instructions may use. The instruments listed and the clients registered so far are recorded first,
+     * so that EventLogDecoder can replay the log. Usually the out writer is not set when the event log is
+     */
+    public void setEventLog(BinaryEventLog eventLog) {
+        this.eventLog = eventLog;
+        if (eventLog == null)
+        {
+            return;
+        }
+
+        for (OrderBook book : orderBooks)
+        {
+            if (book != null)
+            {
+                eventLog.logInstrument(book.getSymbolId(), book.getPrevClose(), book.getTickSize(), book.getLotSize());
+            }
+        }
+        for (Long clientID : clientMap.keySet())
+        {
+            eventLog.logClient(clientID);
+        }
+    }
+
+    /**
+     * Set the journal every instruction from a registered client is appended to before it is processed,
+     * which only the thread processing the instructions may use. Unless the journal already has records,
+     * the instruments listed and the clients registered so far are appended first, so that the journal
+     * can be replayed from its start. The order id sequence is appended too, since a replay must hand out
+     * the same order ids, and an exchange using the global id counter gets a sequence of its own carrying on from it
+     */
+    public void setJournal(InstructionJournal journal) {
+        this.journal = journal;
+        if (journal == null)
+        {
+            return;
+        }
+
+        if (journal.lastSequence() == 0)
+        {
+            for (OrderBook book : orderBooks)
+            {
+                if (book != null)
+                {
+                    journal.appendInstrument(book.getSymbolId(), book.getPrevClose(), book.getTickSize(), book.getLotSize());
+                }
+            }
+            for (Long clientID : clientMap.keySet())
+            {
+                journal.appendClient(clientID);
+            }
+        }
+
+        setOrderIdSequence(orderIdSequence == null ? OrderIdSequence.continuingGlobalIds() : orderIdSequence);
+        journal.endBatch();
+    }
+
+    /**
+     * Time the stages of every instruction processed from now on, or stop timing them with null
+     * @param metrics  the histograms the stage times go to, which must not be shared with another exchange
+     */
+    public void setMetrics(InstructionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public InstructionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Report what happens in this exchange and in its books to a listener from now on, or stop with null
+     */
+    public void setEventListener(ExchangeEventListener eventListener)
+    {
+        this.eventListener = eventListener;
+        for (OrderBook book : orderBooks)
+        {
+            if (book != null)
+            {
+                book.setEventListener(eventListener);
+            }
+        }
+    }
+
+    public ExchangeEventListener getEventListener()
+    {
+        return eventListener;
+    }
+
+    /**
+     * Keep the counters of this exchange and of its books up to date from now on, or stop with null.
+     * The statistics are registered as MBeans by ExchangeStatistics.register
+     * @param statistics  the statistics, which must not be shared with another exchange
+     */
+    public void setStatistics(ExchangeStatistics statistics) {
+        this.statistics = statistics;
+        if (statistics == null)
+        {
+            return;
+        }
+        for (OrderBook book : orderBooks)
+        {
+            if (book != null)
+            {
+                statistics.onInstrumentListed(book);
+            }
+        }
+        statistics.onClientCount(clientMap.size());
+    }
+
+    public ExchangeStatistics getStatistics() {
+        return statistics;
+    }
+
+    public InstructionJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Set how the order book is printed after each instruction
+     */
+    public void setBookOutputMode(BookOutputMode bookOutputMode) {
+        this.bookOutputMode = bookOutputMode;
+        for (OrderBook book : orderBooks)
+        {
+            if (book != null)
+            {
+                book.setDirtyTracking(bookOutputMode == BookOutputMode.DELTA);
+            }
+        }
+    }
+
+    /**
+     * Set the number of levels printed on each side in TOP_N mode
+     */
+    public void setBookOutputDepth(int bookOutputDepth) {
+        this.bookOutputDepth = bookOutputDepth;
+    }
+
     public void setLastTrade(Trade trade) {
+        setLastTrade(trade, orderBook);
+    }
+
+    /**
+     * Keep the last trade of the exchange, giving the orders of the previous last trade back to the order pool
+     * @param trade  the trade
+     * @param tradeBook  the order book the trade happened in
+     */
+    public void setLastTrade(Trade trade, OrderBook tradeBook) {
+        if (this.lastTrade != null) {
+            lastTradeBook.releaseTrade(this.lastTrade); //Only the last trade is kept, the orders of the previous one go back to the pool
+        }
         this.lastTrade = trade;
+        this.lastTradeBook = tradeBook;
+
+        if (this.statistics != null)
+        {
+            this.statistics.onTrade(tradeBook, trade.getTradedOrders().size(), trade.getTotalQuantity());
+        }
     }
 
+    /**
+     * Get the last trade of the exchange. The trade is only valid until the next trade of the exchange:
+     * its orders then go back to the order pool and are reused by later orders, so they change under a caller
+     * still holding it. A caller keeping a trade longer keeps Trade.copy() of it instead
+     * @return the last trade, or null if there has been none
+     */
     public Trade getLastTrade() {
         return this.lastTrade;
     }
@@ -67,11 +350,171 @@ public class ExchangeSimulator {
         return orderBook;
     }
 
+    /**
+     * Add a client registered by another exchange, keeping its client id and sending it no message.
+     * This is how the matching threads of a sharded exchange learn about the clients
+     */
+    public void attachClient(Client client)
+    {
+        clientMap.put(client.getClientID(), client);
+        addOutbox(client.getClientID(), client);
+        recordClient(client.getClientID());
+    }
+
+    /**
+     * Set the sequence assigning the ids of the orders placed on this exchange, for all listed instruments
+     */
+    public void setOrderIdSequence(OrderIdSequence orderIdSequence)
+    {
+        this.orderIdSequence = orderIdSequence;
+        for (OrderBook book : orderBooks)
+        {
+            if (book != null)
+            {
+                book.setOrderIdSequence(orderIdSequence);
+            }
+        }
+        if (journal != null && orderIdSequence != null)
+        {
+            journal.appendOrderIds(orderIdSequence.peek(), orderIdSequence.getStride());
+        }
+    }
+
+    /**
+     * Add a client known from a snapshot or a journal under its client id, with a placeholder dropping its messages
+     * until the real client is attached again with attachClient. Registered clients then get ids after it
+     */
+    public void restoreClient(long clientID)
+    {
+        Client client = new RestoredClient(clientID);
+        clientMap.put(clientID, client);
+        addOutbox(clientID, client);
+        globalClientID = Math.max(globalClientID, clientID);
+        recordClient(clientID);
+    }
+
+    /**
+     * Capture the state of the exchange: the client registry, the order id sequence, and for every listed
+     * instrument its settings, which give its price limits, and its resting orders in time priority.
+     * It must be called by the thread processing the instructions, between two instructions, and only copies
+     * the state into memory. The snapshot can then be written to disk by another thread.
+     * The pause of the thread is not bounded: it grows linearly with the number of resting orders of all the books,
+     * about 32 bytes copied per order, and this method allocates a buffer of that size on every call.
+     * takeSnapshot(ByteBuffer) reuses a buffer instead.
+     * The last trade, which only matters to the text output, is not part of the state
+     */
+    public ExchangeSnapshot takeSnapshot()
+    {
+        return takeSnapshot(null);
+    }
+
+    /**
+     * Capture the state of the exchange as takeSnapshot does, into a buffer of the caller if it is large enough,
+     * such as a direct buffer sized with getSnapshotSize and reused from one snapshot to the next once the
+     * previous snapshot is written. The snapshot uses the buffer until then
+     * @param buffer  the buffer, null or too small to allocate a new one
+     * @return the snapshot
+     */
+    public ExchangeSnapshot takeSnapshot(ByteBuffer buffer)
+    {
+        int size = getSnapshotSize();
+        if (buffer == null || buffer.capacity() < size)
+        {
+            buffer = ByteBuffer.allocate(size);
+        }
+        buffer.clear();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        int bookNum = 0;
+        for (OrderBook book : orderBooks)
+        {
+            if (book != null)
+            {
+                bookNum++;
+            }
+        }
+
+        OrderIdSequence ids = orderIdSequence == null ? OrderIdSequence.continuingGlobalIds() : orderIdSequence;
+        buffer.putLong(globalClientID);
+        buffer.putLong(ids.peek());
+        buffer.putLong(ids.getStride());
+
+        buffer.putInt(clientMap.size());
+        for (Long clientID : clientMap.keySet())
+        {
+            buffer.putLong(clientID);
+        }
+
+        buffer.putInt(bookNum);
+        for (OrderBook book : orderBooks)
+        {
+            if (book != null)
+            {
+                buffer.putInt(book.getSymbolId());
+                buffer.putDouble(book.getPrevClose());
+                buffer.putDouble(book.getTickSize());
+                buffer.putLong(book.getLotSize());
+                book.writeOrders(buffer);
+            }
+        }
+
+        buffer.flip();
+        return new ExchangeSnapshot(journal == null ? 0 : journal.lastSequence(), buffer);
+    }
+
+    /**
+     * Get the number of bytes the state of the exchange takes in a snapshot now
+     */
+    public int getSnapshotSize()
+    {
+        int size = 32 + clientMap.size() * 8;
+        for (OrderBook book : orderBooks)
+        {
+            if (book != null)
+            {
+                size += 28 + book.snapshotSize();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Put back the state captured by takeSnapshot into a new exchange, with placeholders for the clients
+     */
+    public void restoreSnapshot(ExchangeSnapshot snapshot)
+    {
+        ByteBuffer buffer = snapshot.getContent();
+        long restoredClientID = buffer.getLong();
+        long nextOrderId = buffer.getLong();
+        long stride = buffer.getLong();
+
+        int clientNum = buffer.getInt();
+        for (int i = 0; i < clientNum; i++)
+        {
+            restoreClient(buffer.getLong());
+        }
+        globalClientID = Math.max(globalClientID, restoredClientID);
+
+        int bookNum = buffer.getInt();
+        for (int i = 0; i < bookNum; i++)
+        {
+            int symbolId = buffer.getInt();
+            double prevClose = buffer.getDouble();
+            double tickSize = buffer.getDouble();
+            long lotSize = buffer.getLong();
+            listInstrument(symbolId, prevClose, tickSize, lotSize).readOrders(buffer);
+        }
+
+        setOrderIdSequence(new OrderIdSequence(nextOrderId, stride));
+    }
+
     public void registerClient(Client client)
     {
         globalClientID++;
         client.setClientID(globalClientID);
         clientMap.put(globalClientID, client);
+        addOutbox(globalClientID, client);
+        recordClient(globalClientID);
 
         sendMessageToClient(new RegisterMessage(ClientState.REGISTER_ACKED, globalClientID, "Register successfully"), client);
 
@@ -83,6 +526,11 @@ public class ExchangeSimulator {
         if (clientMap.containsKey(client.getClientID()))
         {
             clientMap.remove(client.getClientID());
+            removeOutbox(client.getClientID());
+            if (this.statistics != null)
+            {
+                this.statistics.onClientCount(clientMap.size());
+            }
             sendMessageToClient(new RegisterMessage(ClientState.UNREGISTER_ACKED, client.getClientID(), "Unregister successfully"), client);
         }
         else
@@ -93,6 +541,60 @@ public class ExchangeSimulator {
 
 
     public void receiveInstruction(Instruction instruction, long clientID)
+    {
+        try
+        {
+            if (journal != null)
+            {
+                journalInstruction(instruction, clientID);
+                journal.endBatch();
+            }
+            processInstruction(instruction, clientID);
+        }
+        finally
+        {
+            endBatch();
+        }
+    }
+
+    /**
+     * Process a batch of instructions in order. The messages to each client are delivered at once
+     * and the output is flushed once, at the end of the batch, rather than after every instruction
+     * @param batch  the instructions
+     * @param clientIds  the id of the client sending each instruction, at the same index
+     * @param count  the number of instructions, from the start of the arrays
+     */
+    public void receiveInstructions(Instruction[] batch, long[] clientIds, int count)
+    {
+        receiveInstructions(batch, clientIds, 0, count);
+    }
+
+    public void receiveInstructions(Instruction[] batch, long[] clientIds, int offset, int count)
+    {
+        try
+        {
+            //The whole batch is journaled, and forced to disk if the policy says so, before any of it is processed
+            if (journal != null)
+            {
+                for (int i = offset; i < offset + count; i++)
+                {
+                    journalInstruction(batch[i], clientIds[i]);
+                }
+                journal.endBatch();
+            }
+
+            for (int i = offset; i < offset + count; i++)
+            {
+                processInstruction(batch[i], clientIds[i]);
+            }
+        }
+        finally
+        {
+            endBatch();
+        }
+    }
+
+    private void processInstruction(Instruction instruction, long clientID)
     {
         if (!clientMap.containsKey(clientID))
         {
@@ -100,19 +602,34 @@ public class ExchangeSimulator {
 
             System.err.println(errorMessage);
 
-            this.outWriter.println(errorMessage);
+            if (this.outWriter != null)
+            {
+                this.outWriter.println(errorMessage);
+            }
+            if (this.eventLog != null)
+            {
+                this.eventLog.logInstruction(instruction, clientID, -1L);
+            }
 
             return;
         }
 
-        this.outWriter.println("Exchange Received instruction from Client " + clientID);
-        this.outWriter.println(instruction);
-        this.outWriter.println();
+        if (this.metrics != null)
+        {
+            this.metrics.begin(instruction.getAction());
+        }
 
-        this.outWriter.flush();
+        //Without an out writer or with the output OFF nothing is printed, which is how the matching threads of a sharded exchange run
+        if (this.outWriter != null && this.bookOutputMode != BookOutputMode.OFF)
+        {
+            this.outWriter.println("Exchange Received instruction from Client " + clientID);
+            this.outWriter.println(instruction);
+            this.outWriter.println();
+            lap(Stage.LOGGING);
+        }
 
 
-        Client client = clientMap.get(clientID);
+        Outbox outbox = outboxes.get(clientID);
 
         List<ExchangeMessage> messages = null;
 
@@ -125,38 +642,255 @@ public class ExchangeSimulator {
             default: messages = null;
         }
 
+        if (this.eventLog != null)
+        {
+            lap(Stage.MESSAGE_BUILDING);
+            logInstruction(instruction, clientID, messages);
+            lap(Stage.LOGGING);
+        }
 
-        for (ExchangeMessage message : messages)
+        for (int i = 0; i < messages.size(); i++)
         {
+            ExchangeMessage message = messages.get(i);
             if (message instanceof OrderMessage)
             {
-                sendMessageToClient(message, client);
+                queueMessage(message, outbox);
+                if (this.statistics != null)
+                {
+                    this.statistics.onOrderState(((OrderMessage)message).getOrderState());
+                }
             }
             else if (message instanceof TradeMessage)
             {
-                broadcast(message);
+                queueBroadcast(message);
             }
         }
+        lap(Stage.MESSAGE_BUILDING);
 
+        if (this.outWriter != null && this.bookOutputMode != BookOutputMode.OFF)
+        {
+            printInstructionOutput(instruction);
+            lap(Stage.LOGGING);
+        }
+
+        if (this.bookOutputMode == BookOutputMode.DELTA)
+        {
+            OrderBook instructionBook = getOrderBook(instruction.getSymbolId());
+            if (instructionBook != null)
+            {
+                instructionBook.clearChanges(); //Left unrendered without an output writer, they would pile up
+            }
+        }
+
+        if (this.statistics != null)
+        {
+            this.statistics.onInstruction(getOrderBook(instruction.getSymbolId()));
+        }
+
+        if (this.metrics != null)
+        {
+            this.metrics.end();
+        }
+    }
+
+    /**
+     * Print the last trade and the book of the instrument of an instruction just processed, unless the output is OFF
+     */
+    private void printInstructionOutput(Instruction instruction)
+    {
 
         if (this.lastTrade != null)
         {
             this.outWriter.println("Exchange last trade: ");
             this.outWriter.println(lastTrade);
             this.outWriter.println();
-            this.outWriter.flush();
 
             //this.lastTrade = null;
 
         }
 
-        this.outWriter.println("Exchange book update: ");
-        this.outWriter.println(this.orderBook);
+        OrderBook instructionBook = getOrderBook(instruction.getSymbolId());
+        if (instructionBook == null)
+        {
+            return;
+        }
+
+        switch (this.bookOutputMode)
+        {
+            case FULL:
+                this.outWriter.println("Exchange book update: ");
+                this.outWriter.println(instructionBook);
+                break;
+            case TOP_N:
+                this.outWriter.println("Exchange book update: ");
+                this.outWriter.println(instructionBook.toString(this.bookOutputDepth));
+                break;
+            case DELTA:
+                this.outWriter.println("Exchange book update: ");
+                this.outWriter.println(instructionBook.renderChanges());
+                break;
+            default:
+                return;
+        }
         this.outWriter.println();
-        this.outWriter.flush();
 
     }
 
+    /**
+     * Record an instruction with the id of the order it placed, if any, followed by its trades
+     */
+    private void logInstruction(Instruction instruction, long clientID, List<ExchangeMessage> messages)
+    {
+        long assignedOrderId = -1L;
+        if (instruction.getAction() == InstructionAction.PLACE_ORDER && !messages.isEmpty()
+                && messages.get(0) instanceof OrderMessage)
+        {
+            assignedOrderId = ((OrderMessage)messages.get(0)).getOrderID(); //The ack or the reject of the order placed
+        }
+        this.eventLog.logInstruction(instruction, clientID, assignedOrderId);
+
+        for (int i = 0; i < messages.size(); i++)
+        {
+            ExchangeMessage message = messages.get(i);
+            if (message instanceof TradeMessage)
+            {
+                TradeMessage trade = (TradeMessage)message;
+                this.eventLog.logTrade(trade.getSymbolId(), trade.getOrderId(), trade.getSide(), trade.getPriceTicks(),
+                        trade.getFillQuantity());
+            }
+        }
+    }
+
+    private void journalInstruction(Instruction instruction, long clientID)
+    {
+        if (clientMap.containsKey(clientID)) //The instructions of unknown clients are discarded, they change nothing
+        {
+            long start = this.metrics == null ? 0 : System.nanoTime();
+            this.journal.append(instruction, clientID);
+            if (this.metrics != null)
+            {
+                this.metrics.record(Stage.JOURNAL, instruction.getAction(), System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Add the time since the previous mark to a stage of the instruction being processed, if the stages are timed
+     */
+    private void lap(Stage stage)
+    {
+        if (this.metrics != null)
+        {
+            this.metrics.lap(stage);
+        }
+    }
+
+    private void recordInstrument(OrderBook book)
+    {
+        if (this.statistics != null)
+        {
+            this.statistics.onInstrumentListed(book);
+        }
+        if (this.eventLog != null)
+        {
+            this.eventLog.logInstrument(book.getSymbolId(), book.getPrevClose(), book.getTickSize(), book.getLotSize());
+        }
+        if (this.journal != null)
+        {
+            this.journal.appendInstrument(book.getSymbolId(), book.getPrevClose(), book.getTickSize(), book.getLotSize());
+        }
+    }
+
+    private void recordClient(long clientID)
+    {
+        if (this.statistics != null)
+        {
+            this.statistics.onClientCount(clientMap.size());
+        }
+        if (this.eventLog != null)
+        {
+            this.eventLog.logClient(clientID);
+        }
+        if (this.journal != null)
+        {
+            this.journal.appendClient(clientID);
+        }
+    }
+
+    private void addOutbox(long clientID, Client client)
+    {
+        Outbox outbox = new Outbox(client);
+        Outbox replaced = outboxes.put(clientID, outbox);
+        if (replaced == null)
+        {
+            outboxList.add(outbox);
+        }
+        else
+        {
+            outboxList.set(outboxList.indexOf(replaced), outbox); //A restored client attached again
+        }
+    }
+
+    private void removeOutbox(long clientID)
+    {
+        Outbox removed = outboxes.remove(clientID);
+        if (removed != null)
+        {
+            outboxList.remove(removed);
+        }
+    }
+
+    private void queueMessage(ExchangeMessage message, Outbox outbox)
+    {
+        if (outbox.messages.isEmpty())
+        {
+            pendingOutboxes.add(outbox);
+        }
+        outbox.messages.add(message);
+    }
+
+    private void queueBroadcast(ExchangeMessage message)
+    {
+        for (int i = 0; i < outboxList.size(); i++)
+        {
+            queueMessage(message, outboxList.get(i));
+        }
+    }
+
+    /**
+     * Deliver the messages queued while processing a batch, one call per client, then flush the output
+     */
+    private void endBatch()
+    {
+        long startNanos = this.eventListener == null ? 0 : System.nanoTime();
+        int clientNum = pendingOutboxes.size();
+        int messageNum = 0;
+        for (int i = 0; i < clientNum; i++)
+        {
+            Outbox outbox = pendingOutboxes.get(i);
+            messageNum += outbox.messages.size();
+            outbox.client.receiveExchangeMessages(outbox.messages);
+            outbox.messages.clear();
+        }
+        pendingOutboxes.clear();
+
+        if (this.eventListener != null)
+        {
+            this.eventListener.onFanOut(clientNum, messageNum, startNanos);
+        }
+
+        //The delivery of a batch is counted for its last instruction, which is the instruction itself when they come one by one
+        if (this.metrics != null)
+        {
+            this.metrics.recordBatch(Stage.FAN_OUT);
+        }
+
+        if (this.outWriter != null)
+        {
+            this.outWriter.flush();
+        }
+    }
+
     public void sendMessageToClient(ExchangeMessage message, Client client)
     {
         client.receiveExchangeMessage(message);
@@ -171,6 +905,33 @@ public class ExchangeSimulator {
         }
     }
 
+    /**
+     * The messages queued for a client during a batch
+     */
+    private static final class Outbox
+    {
+        final Client client;
+        final List<ExchangeMessage> messages = new ArrayList<>();
+
+        Outbox(Client client)
+        {
+            this.client = client;
+        }
+    }
 
+    /**
+     * Placeholder of a client known from a snapshot or a journal, until the real client is attached again
+     */
+    private static final class RestoredClient extends Client
+    {
+        RestoredClient(long clientID)
+        {
+            super("Client" + clientID);
+            setClientID(clientID);
+        }
 
+        public void receiveExchangeMessage(ExchangeMessage message)
+        {
+        }
+    }
 }
@@ -0,0 +1,267 @@
+package com.jpmorgan;
+
+import com.jpmorgan.instruction.Instruction;
+import com.jpmorgan.instruction.InstructionAction;
+import com.jpmorgan.instruction.InstructionRing;
+import com.jpmorgan.instruction.OrderType;
+import com.jpmorgan.instruction.WaitStrategy;
+import com.jpmorgan.journal.ExchangeSnapshot;
+import com.jpmorgan.orderbook.Side;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Exchange that puts an InstructionRing in front of an exchange simulator, so that any number of client threads
+ * can send instructions while one matching thread drains the ring into the simulator.
+ * The simulator must be set up, with its instruments and clients, before the matching thread is started,
+ * and must not be used directly while it runs.
+ * If an instruction throws, the matching thread stops rather than carry on past instructions it could not apply,
+ * which the journal of the simulator already holds. The failure is then raised to the senders and by shutdown.
+ * @author Jiangchuan Zheng
+ *
+ */
+public class RingExchange implements Exchange {
+
+    private static final int DEFAULT_RING_CAPACITY = 1 << 14;
+    private static final int MAX_BATCH = 256; //The number of instructions drained before the slots are released to the senders
+
+    private final ExchangeSimulator simulator;
+    private final InstructionRing ring;
+    private final WaitStrategy waitStrategy;
+    private final Thread thread;
+
+    private volatile boolean running;
+    private volatile RuntimeException failure; //What stopped the matching thread, null while it has not failed
+
+    private final AtomicReference<CompletableFuture<ExchangeSnapshot>> snapshotRequest = new AtomicReference<>();
+
+    /*
+     * Hands the drained instructions to the simulator. A failure is recorded before the ring releases the slots
+     * of the batch it happened in, so that a sender seeing its instruction drained also sees the failure
+     */
+    private final Exchange matcher = new Exchange()
+    {
+        public void receiveInstruction(Instruction instruction, long clientID)
+        {
+            try
+            {
+                simulator.receiveInstruction(instruction, clientID);
+            }
+            catch (RuntimeException e)
+            {
+                failure = e;
+                throw e;
+            }
+        }
+
+        public void receiveInstructions(Instruction[] batch, long[] clientIds, int offset, int count)
+        {
+            try
+            {
+                simulator.receiveInstructions(batch, clientIds, offset, count);
+            }
+            catch (RuntimeException e)
+            {
+                failure = e;
+                throw e;
+            }
+        }
+    };
+
+    public RingExchange(ExchangeSimulator simulator)
+    {
+        this(simulator, DEFAULT_RING_CAPACITY, WaitStrategy.YIELD, "matching");
+    }
+
+    /**
+     * @param simulator  the simulator processing the instructions
+     * @param ringCapacity  the number of slots of the ring, a power of 2
+     * @param waitStrategy  how the matching thread waits for instructions and the senders for a free slot
+     * @param threadName  the name of the matching thread
+     */
+    public RingExchange(ExchangeSimulator simulator, int ringCapacity, WaitStrategy waitStrategy, String threadName)
+    {
+        this.simulator = simulator;
+        this.ring = new InstructionRing(ringCapacity, waitStrategy);
+        this.waitStrategy = waitStrategy;
+        this.thread = new Thread(this::drainLoop, threadName);
+        this.thread.setDaemon(true);
+    }
+
+    public ExchangeSimulator getSimulator()
+    {
+        return simulator;
+    }
+
+    /**
+     * Start the matching thread
+     */
+    public synchronized void start()
+    {
+        if (running)
+        {
+            throw new IllegalStateException("Matching thread " + thread.getName() + " is already started");
+        }
+        running = true;
+        thread.start();
+    }
+
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    /**
+     * Get what stopped the matching thread, null if it has not failed
+     */
+    public RuntimeException getFailure()
+    {
+        return failure;
+    }
+
+    /**
+     * Publish an instruction into the ring, waiting for a free slot if the ring is full
+     */
+    public void receiveInstruction(Instruction instruction, long clientID)
+    {
+        checkNotFailed();
+        ring.publish(instruction, clientID);
+    }
+
+    /**
+     * Publish an instruction given by its fields, without allocating
+     */
+    public void receiveInstruction(int symbolId, InstructionAction action, long priceTicks, long quantity, long orderID,
+                                   OrderType orderType, Side side, long clientID)
+    {
+        checkNotFailed();
+        ring.publish(symbolId, action, priceTicks, quantity, orderID, orderType, side, clientID);
+    }
+
+    /**
+     * Wait until all the instructions published so far have been processed
+     * @throws IllegalStateException  if the matching thread stopped before, on an instruction that threw
+     */
+    public void awaitProcessed() throws InterruptedException
+    {
+        long target = ring.claimedSequence();
+        while (ring.drainedSequence() < target)
+        {
+            checkNotFailed();
+            if (!thread.isAlive())
+            {
+                throw new IllegalStateException("Matching thread " + thread.getName() + " has stopped");
+            }
+            Thread.sleep(1);
+        }
+        checkNotFailed();
+    }
+
+    /**
+     * Ask the matching thread for a snapshot of the simulator, which it takes between two batches of instructions.
+     * The thread only stops matching for the time of copying the state, writing the snapshot is left to the caller
+     * @return the snapshot to come, the same one for requests made before it is taken
+     */
+    public CompletableFuture<ExchangeSnapshot> requestSnapshot()
+    {
+        CompletableFuture<ExchangeSnapshot> request = new CompletableFuture<>();
+        if (!snapshotRequest.compareAndSet(null, request))
+        {
+            CompletableFuture<ExchangeSnapshot> pending = snapshotRequest.get();
+            if (pending != null)
+            {
+                return pending;
+            }
+            return requestSnapshot(); //Taken in the meantime, ask for a new one
+        }
+        if (!thread.isAlive() && !running)
+        {
+            takeRequestedSnapshot(); //No matching thread to take it
+        }
+        return request;
+    }
+
+    /**
+     * Process the instructions already published, then stop the matching thread
+     * @throws IllegalStateException  if the matching thread stopped on an instruction that threw, which is its cause
+     */
+    public synchronized void shutdown() throws InterruptedException
+    {
+        if (running)
+        {
+            running = false;
+            thread.join();
+        }
+        checkNotFailed();
+    }
+
+    private void checkNotFailed()
+    {
+        RuntimeException cause = failure;
+        if (cause != null)
+        {
+            throw new IllegalStateException("Matching thread " + thread.getName() + " failed on an instruction", cause);
+        }
+    }
+
+    private void drainLoop()
+    {
+        while (true)
+        {
+            int count;
+            try
+            {
+                count = ring.drain(matcher, MAX_BATCH);
+            }
+            catch (RuntimeException e)
+            {
+                //The rest of the batch is journaled but not applied, so matching cannot go on from this state
+                if (failure == null)
+                {
+                    failure = e;
+                }
+                running = false;
+                takeRequestedSnapshot();
+                return;
+            }
+
+            if (snapshotRequest.get() != null)
+            {
+                takeRequestedSnapshot();
+            }
+
+            if (count == 0)
+            {
+                if (!running && ring.isDrained())
+                {
+                    takeRequestedSnapshot();
+                    return;
+                }
+                waitStrategy.idle();
+            }
+        }
+    }
+
+    private void takeRequestedSnapshot()
+    {
+        CompletableFuture<ExchangeSnapshot> request = snapshotRequest.getAndSet(null);
+        if (request == null)
+        {
+            return;
+        }
+        if (failure != null)
+        {
+            request.completeExceptionally(failure); //The state of the simulator is not the one of its journal
+            return;
+        }
+        try
+        {
+            request.complete(simulator.takeSnapshot());
+        }
+        catch (RuntimeException e)
+        {
+            request.completeExceptionally(e);
+        }
+    }
+}
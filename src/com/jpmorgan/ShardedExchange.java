@@ -0,0 +1,187 @@
+package com.jpmorgan;
+
+import com.jpmorgan.client.Client;
+import com.jpmorgan.client.ClientState;
+import com.jpmorgan.instruction.Instruction;
+import com.jpmorgan.instruction.InstructionAction;
+import com.jpmorgan.instruction.OrderType;
+import com.jpmorgan.instruction.WaitStrategy;
+import com.jpmorgan.message.RegisterMessage;
+import com.jpmorgan.orderbook.BookEngine;
+import com.jpmorgan.orderbook.OrderBook;
+import com.jpmorgan.orderbook.OrderIdSequence;
+import com.jpmorgan.orderbook.Side;
+
+/**
+ * Exchange that spreads the listed instruments over several matching threads, the shards.
+ * An instrument belongs to the shard given by its symbol id modulo the number of shards, and each shard
+ * owns an exchange simulator holding the order books of its instruments, which only the shard thread touches.
+ * Instructions are handed over to the shard threads through one instruction ring per shard, so no lock is taken
+ * on the books nor on the way to them.
+ * Order ids are assigned by a sequence per shard, with the number of shards as stride, so they never collide.
+ * Messages are delivered to the clients from the shard threads.
+ * Instruments and clients must be set up before the shards are started.
+ * @author Jiangchuan Zheng
+ *
+ */
+public class ShardedExchange implements Exchange {
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 1 << 14;
+
+    private final RingExchange[] shards;
+
+    private long globalClientID = 0;
+
+    private volatile boolean started;
+
+    public ShardedExchange(int shardNum)
+    {
+        this(shardNum, null, DEFAULT_QUEUE_CAPACITY, WaitStrategy.YIELD);
+    }
+
+    public ShardedExchange(int shardNum, BookEngine bookEngine, int queueCapacity)
+    {
+        this(shardNum, bookEngine, queueCapacity, WaitStrategy.YIELD);
+    }
+
+    /**
+     * @param shardNum  the number of matching threads
+     * @param bookEngine  how the order books store their price levels, the default engine if null
+     * @param queueCapacity  the number of instructions each shard can have waiting before senders wait, a power of 2
+     * @param waitStrategy  how the shard threads wait for instructions and the senders for room in a ring
+     */
+    public ShardedExchange(int shardNum, BookEngine bookEngine, int queueCapacity, WaitStrategy waitStrategy)
+    {
+        if (shardNum <= 0)
+        {
+            throw new IllegalArgumentException("Invalid number of shards " + shardNum);
+        }
+
+        shards = new RingExchange[shardNum];
+        for (int i = 0; i < shardNum; i++)
+        {
+            ExchangeSimulator simulator = new ExchangeSimulator(bookEngine);
+            simulator.setBookOutputMode(BookOutputMode.OFF);
+            simulator.setOrderIdSequence(new OrderIdSequence(i + 1, shardNum));
+            shards[i] = new RingExchange(simulator, queueCapacity, waitStrategy, "matching-shard-" + i);
+        }
+    }
+
+    public int getShardNum()
+    {
+        return shards.length;
+    }
+
+    /**
+     * List an instrument on the shard it belongs to
+     * @return the order book of the instrument, which must not be used while the shards are running
+     */
+    public OrderBook listInstrument(int symbolId, double prevClose, double tickSize, long lotSize)
+    {
+        checkNotStarted();
+        return shardOf(symbolId).getSimulator().listInstrument(symbolId, prevClose, tickSize, lotSize);
+    }
+
+    /**
+     * Get the order book of an instrument, which must not be used while the shards are running
+     * @return the order book, or null if the instrument is not listed
+     */
+    public OrderBook getOrderBook(int symbolId)
+    {
+        return shardOf(symbolId).getSimulator().getOrderBook(symbolId);
+    }
+
+    public void registerClient(Client client)
+    {
+        checkNotStarted();
+
+        globalClientID++;
+        client.setClientID(globalClientID);
+        for (RingExchange shard : shards)
+        {
+            shard.getSimulator().attachClient(client);
+        }
+
+        client.receiveExchangeMessage(new RegisterMessage(ClientState.REGISTER_ACKED, globalClientID, "Register successfully"));
+    }
+
+    /**
+     * Start the matching threads
+     */
+    public synchronized void start()
+    {
+        checkNotStarted();
+        started = true;
+        for (RingExchange shard : shards)
+        {
+            shard.start();
+        }
+    }
+
+    /**
+     * Hand an instruction over to the shard of its instrument, waiting if the ring of the shard is full
+     */
+    public void receiveInstruction(Instruction instruction, long clientID)
+    {
+        checkStarted();
+        shardOf(instruction.getSymbolId()).receiveInstruction(instruction, clientID);
+    }
+
+    /**
+     * Hand an instruction given by its fields over to the shard of its instrument, without allocating
+     */
+    public void receiveInstruction(int symbolId, InstructionAction action, long priceTicks, long quantity, long orderID,
+                                   OrderType orderType, Side side, long clientID)
+    {
+        checkStarted();
+        shardOf(symbolId).receiveInstruction(symbolId, action, priceTicks, quantity, orderID, orderType, side, clientID);
+    }
+
+    /**
+     * Wait until all the instructions received so far have been processed
+     */
+    public void awaitProcessed() throws InterruptedException
+    {
+        for (RingExchange shard : shards)
+        {
+            shard.awaitProcessed();
+        }
+    }
+
+    /**
+     * Process the instructions already received, then stop the matching threads
+     */
+    public synchronized void shutdown() throws InterruptedException
+    {
+        if (!started)
+        {
+            return;
+        }
+        for (RingExchange shard : shards)
+        {
+            shard.shutdown();
+        }
+        started = false;
+    }
+
+    private RingExchange shardOf(int symbolId)
+    {
+        return shards[(symbolId & Integer.MAX_VALUE) % shards.length];
+    }
+
+    private void checkStarted()
+    {
+        if (!started)
+        {
+            throw new IllegalStateException("Sharded exchange is not started");
+        }
+    }
+
+    private void checkNotStarted()
+    {
+        if (started)
+        {
+            throw new IllegalStateException("Sharded exchange is already started");
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.jpmorgan.orderbook.Side;
 public class ChildOrder
 {
     long orderId;
+    int symbolId;
     double price;
     Side side;
     long quantity;
@@ -16,6 +17,15 @@ public class ChildOrder
         this.quantity = quantity;
     }
 
+    public ChildOrder(int symbolId, long orderId, double price, Side side, long quantity) {
+        this(orderId, price, side, quantity);
+        this.symbolId = symbolId;
+    }
+
+    public int getSymbolId() {
+        return symbolId;
+    }
+
     public long getOrderId() {
         return orderId;
     }
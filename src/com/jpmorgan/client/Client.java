@@ -1,4 +1,5 @@
 package com.jpmorgan.client;
+import com.jpmorgan.Exchange;
 import com.jpmorgan.ExchangeSimulator;
 import com.jpmorgan.instruction.Instruction;
 import com.jpmorgan.message.ExchangeMessage;
@@ -20,7 +21,7 @@ public class Client {
 
     private Map<Long, ChildOrder> childOrderMap;
 
-    private ExchangeSimulator exchangeSimulator;
+    private Exchange exchangeSimulator;
 
     //private Queue<ExchangeMessage> messages = new LinkedList<>();
 
@@ -104,11 +105,29 @@ public class Client {
         this.exchangeSimulator = exchangeSimulator;
     }
 
-    public void receiveExchangeMessage(ExchangeMessage message)
+    public void setExchange(Exchange exchange) {
+        this.exchangeSimulator = exchange;
+    }
+
+    /**
+     * Receive a message from the exchange, which may be called by the matching threads of a sharded exchange at the same time
+     */
+    public synchronized void receiveExchangeMessage(ExchangeMessage message)
     {
         messages.add(message);
     }
 
+    /**
+     * Receive the messages of a batch of instructions at once, in their order
+     */
+    public synchronized void receiveExchangeMessages(List<ExchangeMessage> batch)
+    {
+        for (int i = 0; i < batch.size(); i++)
+        {
+            receiveExchangeMessage(batch.get(i)); //The lock is already held, so this only costs a reentrant lock
+        }
+    }
+
     public void processExchangeMessage(ExchangeMessage message)
     {
         //TODO:
@@ -122,7 +141,7 @@ public class Client {
                 case PLACE_ACKED:
                 case AMEND_PRICE_ACKED:
                 case AMEND_QUANTITY_ACKED:
-                    ChildOrder childOrder = new ChildOrder(orderMessage.getOrderID(),
+                    ChildOrder childOrder = new ChildOrder(orderMessage.getSymbolId(), orderMessage.getOrderID(),
                             orderMessage.getPrice(), orderMessage.getSide(), orderMessage.getQuantity());
                     childOrderMap.put(childOrder.orderId, childOrder);
                     break;
@@ -166,7 +185,7 @@ public class Client {
         }
     }
 
-    public void processAllExchangeMessages()
+    public synchronized void processAllExchangeMessages()
     {
         messages.stream().forEach(o -> this.processExchangeMessage(o));
         messages.clear();
@@ -214,22 +233,47 @@ public class Client {
         sendInstructionToExchange(instruction);
     }
 
+    public void placeLimitOrder(int symbolId, double price, long quantity, String side)
+    {
+        Instruction instruction = Instruction.createPlaceLimitInstruction(price, quantity, getSide(side)).forSymbol(symbolId);
+        sendInstructionToExchange(instruction);
+    }
+
+    public void placeMarketOrder(int symbolId, long quantity, String side)
+    {
+        Instruction instruction = Instruction.createPlaceMarketInstruction(quantity, getSide(side)).forSymbol(symbolId);
+        sendInstructionToExchange(instruction);
+    }
+
     public void cancelOrder(String side, long orderID)
     {
         Instruction instruction = Instruction.createCancelInstruction(getSide(side), orderID);
-        sendInstructionToExchange(instruction);
+        sendInstructionToExchange(forChildOrderSymbol(instruction, orderID));
     }
 
     public void amendOrderPrice(String side, double price, long orderID)
     {
         Instruction instruction = Instruction.createAmendPriceInstruction(getSide(side), price, orderID);
-        sendInstructionToExchange(instruction);
+        sendInstructionToExchange(forChildOrderSymbol(instruction, orderID));
     }
 
     public void amendOrderQuantity(String side, long quantity, long orderID)
     {
         Instruction instruction = Instruction.createAmendQuantityInstruction(getSide(side), quantity, orderID);
-        sendInstructionToExchange(instruction);
+        sendInstructionToExchange(forChildOrderSymbol(instruction, orderID));
+    }
+
+    /**
+     * Send an instruction on an existing child order to the instrument of the child order
+     */
+    private Instruction forChildOrderSymbol(Instruction instruction, long orderID)
+    {
+        ChildOrder childOrder = childOrder(orderID);
+        if (childOrder == null || childOrder.symbolId == instruction.getSymbolId())
+        {
+            return instruction;
+        }
+        return instruction.forSymbol(childOrder.symbolId);
     }
 
 
@@ -0,0 +1,136 @@
+package com.jpmorgan.codec;
+
+import com.jpmorgan.instruction.Instruction;
+import com.jpmorgan.instruction.InstructionAction;
+import com.jpmorgan.instruction.OrderType;
+import com.jpmorgan.orderbook.Side;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flyweight over an encoded Instruction
+ *
+ * Fixed block, version 1:
+ * 0 action (ordinal of InstructionAction, 1 byte), 1 order type (ordinal of OrderType, 1 byte),
+ * 2 side (ordinal of Side, 1 byte), 4 symbol id (int), 8 price in ticks (long), 16 quantity (long), 24 order id (long)
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class InstructionFlyweight extends MessageFlyweight {
+
+    public static final int TEMPLATE_ID = 1;
+    public static final int BLOCK_LENGTH = 32;
+
+    private static final int ACTION_OFFSET = 0;
+    private static final int ORDER_TYPE_OFFSET = 1;
+    private static final int SIDE_OFFSET = 2;
+    private static final int SYMBOL_OFFSET = 4;
+    private static final int PRICE_OFFSET = 8;
+    private static final int QUANTITY_OFFSET = 16;
+    private static final int ORDER_ID_OFFSET = 24;
+
+    private static final InstructionAction[] ACTIONS = InstructionAction.values();
+    private static final OrderType[] ORDER_TYPES = OrderType.values();
+    private static final Side[] SIDES = Side.values();
+
+    public int templateId() {
+        return TEMPLATE_ID;
+    }
+
+    public int blockLength() {
+        return BLOCK_LENGTH;
+    }
+
+    public InstructionFlyweight wrapForEncode(ByteBuffer buffer, int offset) {
+        super.wrapForEncode(buffer, offset);
+        return this;
+    }
+
+    public InstructionFlyweight wrapForDecode(ByteBuffer buffer, int offset) {
+        super.wrapForDecode(buffer, offset);
+        return this;
+    }
+
+    /**
+     * Set every field from an instruction
+     */
+    public InstructionFlyweight encode(Instruction instruction) {
+        return action(instruction.getAction())
+                .orderType(instruction.getOrderType())
+                .side(instruction.getSide())
+                .symbolId(instruction.getSymbolId())
+                .priceTicks(instruction.getPriceTicks())
+                .quantity(instruction.getQuantity())
+                .orderId(instruction.getOrderID());
+    }
+
+    /**
+     * Create the instruction encoded
+     */
+    public Instruction toInstruction() {
+        return Instruction.create(symbolId(), action(), priceTicks(), quantity(), orderId(), orderType(), side());
+    }
+
+    public InstructionFlyweight action(InstructionAction action) {
+        this.buffer.put(body() + ACTION_OFFSET, (byte)action.ordinal());
+        return this;
+    }
+
+    public InstructionAction action() {
+        return ACTIONS[this.buffer.get(body() + ACTION_OFFSET)];
+    }
+
+    public InstructionFlyweight orderType(OrderType orderType) {
+        this.buffer.put(body() + ORDER_TYPE_OFFSET, (byte)orderType.ordinal());
+        return this;
+    }
+
+    public OrderType orderType() {
+        return ORDER_TYPES[this.buffer.get(body() + ORDER_TYPE_OFFSET)];
+    }
+
+    public InstructionFlyweight side(Side side) {
+        this.buffer.put(body() + SIDE_OFFSET, (byte)side.ordinal());
+        return this;
+    }
+
+    public Side side() {
+        return SIDES[this.buffer.get(body() + SIDE_OFFSET)];
+    }
+
+    public InstructionFlyweight symbolId(int symbolId) {
+        this.buffer.putInt(body() + SYMBOL_OFFSET, symbolId);
+        return this;
+    }
+
+    public int symbolId() {
+        return this.buffer.getInt(body() + SYMBOL_OFFSET);
+    }
+
+    public InstructionFlyweight priceTicks(long priceTicks) {
+        this.buffer.putLong(body() + PRICE_OFFSET, priceTicks);
+        return this;
+    }
+
+    public long priceTicks() {
+        return this.buffer.getLong(body() + PRICE_OFFSET);
+    }
+
+    public InstructionFlyweight quantity(long quantity) {
+        this.buffer.putLong(body() + QUANTITY_OFFSET, quantity);
+        return this;
+    }
+
+    public long quantity() {
+        return this.buffer.getLong(body() + QUANTITY_OFFSET);
+    }
+
+    public InstructionFlyweight orderId(long orderId) {
+        this.buffer.putLong(body() + ORDER_ID_OFFSET, orderId);
+        return this;
+    }
+
+    public long orderId() {
+        return this.buffer.getLong(body() + ORDER_ID_OFFSET);
+    }
+}
@@ -0,0 +1,112 @@
+package com.jpmorgan.codec;
+
+import com.jpmorgan.instruction.Instruction;
+import com.jpmorgan.message.ExchangeMessage;
+import com.jpmorgan.message.OrderMessage;
+import com.jpmorgan.message.RegisterMessage;
+import com.jpmorgan.message.TradeMessage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes the instructions and the exchange messages into a buffer and decodes them back, through one flyweight
+ * per template. Encoding does not allocate; decoding into objects does, the flyweights read the fields in place
+ * instead. A codec is not thread safe, each thread uses its own.
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class MessageCodec {
+
+    private final InstructionFlyweight instruction = new InstructionFlyweight();
+    private final OrderMessageFlyweight orderMessage = new OrderMessageFlyweight();
+    private final TradeMessageFlyweight tradeMessage = new TradeMessageFlyweight();
+    private final RegisterMessageFlyweight registerMessage = new RegisterMessageFlyweight();
+
+    public InstructionFlyweight instruction() {
+        return this.instruction;
+    }
+
+    public OrderMessageFlyweight orderMessage() {
+        return this.orderMessage;
+    }
+
+    public TradeMessageFlyweight tradeMessage() {
+        return this.tradeMessage;
+    }
+
+    public RegisterMessageFlyweight registerMessage() {
+        return this.registerMessage;
+    }
+
+    /**
+     * Encode an instruction
+     * @param buffer  the buffer, in little endian
+     * @param offset  the offset of the encoded instruction
+     * @return the length of the encoded instruction
+     */
+    public int encode(Instruction instruction, ByteBuffer buffer, int offset) {
+        return this.instruction.wrapForEncode(buffer, offset).encode(instruction).encodedLength();
+    }
+
+    /**
+     * Encode an exchange message
+     * @param buffer  the buffer, in little endian
+     * @param offset  the offset of the encoded message
+     * @return the length of the encoded message
+     */
+    public int encode(ExchangeMessage message, ByteBuffer buffer, int offset) {
+        if (message instanceof OrderMessage) {
+            return this.orderMessage.wrapForEncode(buffer, offset).encode((OrderMessage)message).encodedLength();
+        }
+        else if (message instanceof TradeMessage) {
+            return this.tradeMessage.wrapForEncode(buffer, offset).encode((TradeMessage)message).encodedLength();
+        }
+        else if (message instanceof RegisterMessage) {
+            return this.registerMessage.wrapForEncode(buffer, offset).encode((RegisterMessage)message).encodedLength();
+        }
+        throw new IllegalArgumentException("No template for message " + message);
+    }
+
+    /**
+     * Get the flyweight of the template of the message at an offset, wrapped around it
+     * @throws IllegalArgumentException  if there is no message of a known template at the offset
+     */
+    public MessageFlyweight wrap(ByteBuffer buffer, int offset) {
+        if (!MessageHeader.isValid(buffer, offset)) {
+            throw new IllegalArgumentException("No message of schema " + MessageHeader.SCHEMA_ID + " at offset " + offset);
+        }
+        switch (MessageHeader.templateId(buffer, offset)) {
+            case InstructionFlyweight.TEMPLATE_ID: return this.instruction.wrapForDecode(buffer, offset);
+            case OrderMessageFlyweight.TEMPLATE_ID: return this.orderMessage.wrapForDecode(buffer, offset);
+            case TradeMessageFlyweight.TEMPLATE_ID: return this.tradeMessage.wrapForDecode(buffer, offset);
+            case RegisterMessageFlyweight.TEMPLATE_ID: return this.registerMessage.wrapForDecode(buffer, offset);
+            default:
+                throw new IllegalArgumentException("Unknown template " + MessageHeader.templateId(buffer, offset)
+                        + " at offset " + offset);
+        }
+    }
+
+    /**
+     * Decode the instruction at an offset into a new instruction
+     */
+    public Instruction decodeInstruction(ByteBuffer buffer, int offset) {
+        return this.instruction.wrapForDecode(buffer, offset).toInstruction();
+    }
+
+    /**
+     * Decode the exchange message at an offset into a new message
+     */
+    public ExchangeMessage decodeMessage(ByteBuffer buffer, int offset) {
+        MessageFlyweight flyweight = wrap(buffer, offset);
+        if (flyweight == this.orderMessage) {
+            return this.orderMessage.toMessage();
+        }
+        else if (flyweight == this.tradeMessage) {
+            return this.tradeMessage.toMessage();
+        }
+        else if (flyweight == this.registerMessage) {
+            return this.registerMessage.toMessage();
+        }
+        throw new IllegalArgumentException("Message of template " + flyweight.templateId() + " is not an exchange message");
+    }
+}
@@ -0,0 +1,164 @@
+package com.jpmorgan.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A view over an encoded message in a ByteBuffer, reading and writing its fields at fixed offsets in place,
+ * without allocating and without copying the message into an object. A flyweight is wrapped around a message
+ * to encode or decode it, then wrapped around the next one, so one flyweight serves any number of messages.
+ * A flyweight is not thread safe.
+ * @author Jiangchuan Zheng
+ *
+ */
+public abstract class MessageFlyweight {
+
+    static final int NULL_ENUM = 0xFF; //The value of an enum field left empty
+    static final int STRING_LENGTH_SIZE = 2; //A string is its length as an unsigned 16 bit integer, then its characters
+
+    protected ByteBuffer buffer;
+    protected int offset; //The offset of the header of the message
+
+    private int actingBlockLength;
+    private int actingVersion;
+
+    /**
+     * Get the id of the template of the messages of this flyweight
+     */
+    public abstract int templateId();
+
+    /**
+     * Get the length of the fixed block of the messages of this flyweight, in the current version of the schema
+     */
+    public abstract int blockLength();
+
+    /**
+     * Write the header of a new message at an offset, then its fields are set through this flyweight
+     * @param buffer  the buffer, in little endian
+     * @param offset  the offset of the header
+     */
+    public MessageFlyweight wrapForEncode(ByteBuffer buffer, int offset) {
+        MessageHeader.write(buffer, offset, blockLength(), templateId());
+        this.buffer = buffer;
+        this.offset = offset;
+        this.actingBlockLength = blockLength();
+        this.actingVersion = MessageHeader.SCHEMA_VERSION;
+        return this;
+    }
+
+    /**
+     * Read the message at an offset, checking its header
+     * @param buffer  the buffer, in little endian
+     * @param offset  the offset of the header
+     * @throws IllegalArgumentException  if there is no message of this template at the offset
+     */
+    public MessageFlyweight wrapForDecode(ByteBuffer buffer, int offset) {
+        MessageHeader.checkOrder(buffer);
+        if (!MessageHeader.isValid(buffer, offset)) {
+            throw new IllegalArgumentException("No message of schema " + MessageHeader.SCHEMA_ID + " at offset " + offset);
+        }
+        int templateId = MessageHeader.templateId(buffer, offset);
+        if (templateId != templateId()) {
+            throw new IllegalArgumentException("Message of template " + templateId + " where template " + templateId()
+                    + " is expected, at offset " + offset);
+        }
+        int blockLength = MessageHeader.blockLength(buffer, offset);
+        if (blockLength < blockLength()) {
+            throw new IllegalArgumentException("Message of template " + templateId + " has a block of " + blockLength
+                    + " bytes, shorter than the " + blockLength() + " bytes of its fields");
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        this.actingBlockLength = blockLength;
+        this.actingVersion = MessageHeader.version(buffer, offset);
+        return this;
+    }
+
+    /**
+     * Get the length of the fixed block of the message wrapped, which is longer than blockLength
+     * for a message encoded with a newer version of the schema
+     */
+    public int actingBlockLength() {
+        return this.actingBlockLength;
+    }
+
+    /**
+     * Get the version of the schema the message wrapped was encoded with
+     */
+    public int actingVersion() {
+        return this.actingVersion;
+    }
+
+    /**
+     * Get the length of the message wrapped, from the start of its header to the end of its variable length fields
+     */
+    public int encodedLength() {
+        return MessageHeader.ENCODED_LENGTH + this.actingBlockLength + varDataLength();
+    }
+
+    /**
+     * Get the length of the variable length fields of the message wrapped
+     */
+    protected int varDataLength() {
+        return 0;
+    }
+
+    /**
+     * Get the offset of the fixed block of the message wrapped
+     */
+    protected final int body() {
+        return this.offset + MessageHeader.ENCODED_LENGTH;
+    }
+
+    /**
+     * Get the offset of the variable length fields of the message wrapped
+     */
+    protected final int varData() {
+        return body() + this.actingBlockLength;
+    }
+
+    /**
+     * Write a string at an offset, a character outside of US-ASCII is written as '?'
+     * @param value  the string, null is written as the empty string
+     * @return the number of bytes written
+     */
+    protected final int putString(int index, CharSequence value) {
+        int length = value == null ? 0 : value.length();
+        if (length > 0xFFFF) {
+            throw new IllegalArgumentException("String of " + length + " characters is too long to encode");
+        }
+        this.buffer.putShort(index, (short)length);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            this.buffer.put(index + STRING_LENGTH_SIZE + i, (byte)(c < 0x80 ? c : '?'));
+        }
+        return STRING_LENGTH_SIZE + length;
+    }
+
+    protected final int stringLength(int index) {
+        return this.buffer.getShort(index) & 0xFFFF;
+    }
+
+    /**
+     * Read a string written by putString, which allocates it
+     */
+    protected final String getString(int index) {
+        int length = stringLength(index);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char)this.buffer.get(index + STRING_LENGTH_SIZE + i);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Copy the characters of a string written by putString into an array, without allocating
+     * @return the number of characters copied, at most the room left in the array
+     */
+    protected final int getString(int index, byte[] destination, int destinationOffset) {
+        int length = Math.min(stringLength(index), destination.length - destinationOffset);
+        for (int i = 0; i < length; i++) {
+            destination[destinationOffset + i] = this.buffer.get(index + STRING_LENGTH_SIZE + i);
+        }
+        return length;
+    }
+}
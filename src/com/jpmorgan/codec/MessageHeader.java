@@ -0,0 +1,75 @@
+package com.jpmorgan.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The header in front of every encoded message, in the style of Simple Binary Encoding:
+ * the length of the fixed block of the message, the id of its template, the id and the version of the schema
+ * it was encoded with, each an unsigned 16 bit integer in little endian.
+ *
+ * The fixed block of a message is a set of fields at fixed offsets, the variable length fields come after it.
+ * A newer version of the schema only adds fields at the end of a fixed block, so a decoder finds the variable
+ * length fields of a message from a newer encoder with the block length of the header, and skips the fields it
+ * does not know. Template ids 1 to 99 are the messages of this package, 100 and up are left to the formats built
+ * on it, such as the journal records.
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class MessageHeader {
+
+    public static final int ENCODED_LENGTH = 8;
+
+    public static final int SCHEMA_ID = 0x4A50; //"JP"
+    public static final int SCHEMA_VERSION = 1;
+
+    static final int BLOCK_LENGTH_OFFSET = 0;
+    static final int TEMPLATE_ID_OFFSET = 2;
+    static final int SCHEMA_ID_OFFSET = 4;
+    static final int VERSION_OFFSET = 6;
+
+    private MessageHeader() {
+    }
+
+    /**
+     * Write a header
+     * @param buffer  the buffer, in little endian
+     * @param offset  the offset of the header
+     */
+    public static void write(ByteBuffer buffer, int offset, int blockLength, int templateId) {
+        checkOrder(buffer);
+        buffer.putShort(offset + BLOCK_LENGTH_OFFSET, (short)blockLength);
+        buffer.putShort(offset + TEMPLATE_ID_OFFSET, (short)templateId);
+        buffer.putShort(offset + SCHEMA_ID_OFFSET, (short)SCHEMA_ID);
+        buffer.putShort(offset + VERSION_OFFSET, (short)SCHEMA_VERSION);
+    }
+
+    public static int blockLength(ByteBuffer buffer, int offset) {
+        return buffer.getShort(offset + BLOCK_LENGTH_OFFSET) & 0xFFFF;
+    }
+
+    public static int templateId(ByteBuffer buffer, int offset) {
+        return buffer.getShort(offset + TEMPLATE_ID_OFFSET) & 0xFFFF;
+    }
+
+    public static int schemaId(ByteBuffer buffer, int offset) {
+        return buffer.getShort(offset + SCHEMA_ID_OFFSET) & 0xFFFF;
+    }
+
+    public static int version(ByteBuffer buffer, int offset) {
+        return buffer.getShort(offset + VERSION_OFFSET) & 0xFFFF;
+    }
+
+    /**
+     * Whether there is a header of this schema at an offset
+     */
+    public static boolean isValid(ByteBuffer buffer, int offset) {
+        return offset + ENCODED_LENGTH <= buffer.limit() && schemaId(buffer, offset) == SCHEMA_ID;
+    }
+
+    static void checkOrder(ByteBuffer buffer) {
+        if (buffer.order() != ByteOrder.LITTLE_ENDIAN) {
+            throw new IllegalArgumentException("Messages are encoded in little endian buffers");
+        }
+    }
+}
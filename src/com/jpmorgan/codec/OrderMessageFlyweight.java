@@ -0,0 +1,162 @@
+package com.jpmorgan.codec;
+
+import com.jpmorgan.message.OrderMessage;
+import com.jpmorgan.orderbook.OrderState;
+import com.jpmorgan.orderbook.Side;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flyweight over an encoded OrderMessage
+ *
+ * Fixed block, version 1:
+ * 0 order state (ordinal of OrderState, 1 byte), 1 side (ordinal of Side, 1 byte, 0xFF if none),
+ * 4 symbol id (int), 8 order id (long), 16 price in ticks (long), 24 quantity (long)
+ * Variable length fields: the reason, empty if none, set after the fixed block
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class OrderMessageFlyweight extends MessageFlyweight {
+
+    public static final int TEMPLATE_ID = 2;
+    public static final int BLOCK_LENGTH = 32;
+
+    private static final int STATE_OFFSET = 0;
+    private static final int SIDE_OFFSET = 1;
+    private static final int SYMBOL_OFFSET = 4;
+    private static final int ORDER_ID_OFFSET = 8;
+    private static final int PRICE_OFFSET = 16;
+    private static final int QUANTITY_OFFSET = 24;
+
+    private static final OrderState[] STATES = OrderState.values();
+    private static final Side[] SIDES = Side.values();
+
+    public int templateId() {
+        return TEMPLATE_ID;
+    }
+
+    public int blockLength() {
+        return BLOCK_LENGTH;
+    }
+
+    public OrderMessageFlyweight wrapForEncode(ByteBuffer buffer, int offset) {
+        super.wrapForEncode(buffer, offset);
+        reason(null);
+        return this;
+    }
+
+    public OrderMessageFlyweight wrapForDecode(ByteBuffer buffer, int offset) {
+        super.wrapForDecode(buffer, offset);
+        return this;
+    }
+
+    /**
+     * Set every field from a message
+     */
+    public OrderMessageFlyweight encode(OrderMessage message) {
+        return orderState(message.getOrderState())
+                .side(message.getSide())
+                .symbolId(message.getSymbolId())
+                .orderId(message.getOrderID())
+                .priceTicks(message.getPriceTicks())
+                .quantity(message.getQuantity())
+                .reason(message.getReason());
+    }
+
+    /**
+     * Create the message encoded, with no reason if the reason is empty
+     */
+    public OrderMessage toMessage() {
+        return new OrderMessage(symbolId(), orderState(), orderId(), side(), priceTicks(), quantity(),
+                reasonLength() == 0 ? null : reason());
+    }
+
+    protected int varDataLength() {
+        return STRING_LENGTH_SIZE + reasonLength();
+    }
+
+    public OrderMessageFlyweight orderState(OrderState state) {
+        this.buffer.put(body() + STATE_OFFSET, (byte)state.ordinal());
+        return this;
+    }
+
+    public OrderState orderState() {
+        return STATES[this.buffer.get(body() + STATE_OFFSET)];
+    }
+
+    public OrderMessageFlyweight side(Side side) {
+        this.buffer.put(body() + SIDE_OFFSET, (byte)(side == null ? NULL_ENUM : side.ordinal()));
+        return this;
+    }
+
+    /**
+     * @return the side, or null if the message has none
+     */
+    public Side side() {
+        int side = this.buffer.get(body() + SIDE_OFFSET) & 0xFF;
+        return side == NULL_ENUM ? null : SIDES[side];
+    }
+
+    public OrderMessageFlyweight symbolId(int symbolId) {
+        this.buffer.putInt(body() + SYMBOL_OFFSET, symbolId);
+        return this;
+    }
+
+    public int symbolId() {
+        return this.buffer.getInt(body() + SYMBOL_OFFSET);
+    }
+
+    public OrderMessageFlyweight orderId(long orderId) {
+        this.buffer.putLong(body() + ORDER_ID_OFFSET, orderId);
+        return this;
+    }
+
+    public long orderId() {
+        return this.buffer.getLong(body() + ORDER_ID_OFFSET);
+    }
+
+    public OrderMessageFlyweight priceTicks(long priceTicks) {
+        this.buffer.putLong(body() + PRICE_OFFSET, priceTicks);
+        return this;
+    }
+
+    public long priceTicks() {
+        return this.buffer.getLong(body() + PRICE_OFFSET);
+    }
+
+    public OrderMessageFlyweight quantity(long quantity) {
+        this.buffer.putLong(body() + QUANTITY_OFFSET, quantity);
+        return this;
+    }
+
+    public long quantity() {
+        return this.buffer.getLong(body() + QUANTITY_OFFSET);
+    }
+
+    /**
+     * Set the reason, null for none, in US-ASCII
+     */
+    public OrderMessageFlyweight reason(CharSequence reason) {
+        putString(varData(), reason);
+        return this;
+    }
+
+    public int reasonLength() {
+        return stringLength(varData());
+    }
+
+    /**
+     * Get the reason, which allocates it
+     */
+    public String reason() {
+        return getString(varData());
+    }
+
+    /**
+     * Copy the characters of the reason into an array, without allocating
+     * @return the number of characters copied
+     */
+    public int getReason(byte[] destination, int destinationOffset) {
+        return getString(varData(), destination, destinationOffset);
+    }
+}
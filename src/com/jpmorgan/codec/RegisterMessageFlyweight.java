@@ -0,0 +1,110 @@
+package com.jpmorgan.codec;
+
+import com.jpmorgan.client.ClientState;
+import com.jpmorgan.message.RegisterMessage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flyweight over an encoded RegisterMessage
+ *
+ * Fixed block, version 1:
+ * 0 client state (ordinal of ClientState, 1 byte), 8 client id (long)
+ * Variable length fields: the reason, empty if none, set after the fixed block
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class RegisterMessageFlyweight extends MessageFlyweight {
+
+    public static final int TEMPLATE_ID = 4;
+    public static final int BLOCK_LENGTH = 16;
+
+    private static final int CLIENT_STATE_OFFSET = 0;
+    private static final int CLIENT_ID_OFFSET = 8;
+
+    private static final ClientState[] CLIENT_STATES = ClientState.values();
+
+    public int templateId() {
+        return TEMPLATE_ID;
+    }
+
+    public int blockLength() {
+        return BLOCK_LENGTH;
+    }
+
+    public RegisterMessageFlyweight wrapForEncode(ByteBuffer buffer, int offset) {
+        super.wrapForEncode(buffer, offset);
+        reason(null);
+        return this;
+    }
+
+    public RegisterMessageFlyweight wrapForDecode(ByteBuffer buffer, int offset) {
+        super.wrapForDecode(buffer, offset);
+        return this;
+    }
+
+    /**
+     * Set every field from a message
+     */
+    public RegisterMessageFlyweight encode(RegisterMessage message) {
+        return clientState(message.getClientState())
+                .clientId(message.getClientID())
+                .reason(message.getReason());
+    }
+
+    /**
+     * Create the message encoded, with no reason if the reason is empty
+     */
+    public RegisterMessage toMessage() {
+        return new RegisterMessage(clientState(), clientId(), reasonLength() == 0 ? null : reason());
+    }
+
+    protected int varDataLength() {
+        return STRING_LENGTH_SIZE + reasonLength();
+    }
+
+    public RegisterMessageFlyweight clientState(ClientState clientState) {
+        this.buffer.put(body() + CLIENT_STATE_OFFSET, (byte)clientState.ordinal());
+        return this;
+    }
+
+    public ClientState clientState() {
+        return CLIENT_STATES[this.buffer.get(body() + CLIENT_STATE_OFFSET)];
+    }
+
+    public RegisterMessageFlyweight clientId(long clientId) {
+        this.buffer.putLong(body() + CLIENT_ID_OFFSET, clientId);
+        return this;
+    }
+
+    public long clientId() {
+        return this.buffer.getLong(body() + CLIENT_ID_OFFSET);
+    }
+
+    /**
+     * Set the reason, null for none, in US-ASCII
+     */
+    public RegisterMessageFlyweight reason(CharSequence reason) {
+        putString(varData(), reason);
+        return this;
+    }
+
+    public int reasonLength() {
+        return stringLength(varData());
+    }
+
+    /**
+     * Get the reason, which allocates it
+     */
+    public String reason() {
+        return getString(varData());
+    }
+
+    /**
+     * Copy the characters of the reason into an array, without allocating
+     * @return the number of characters copied
+     */
+    public int getReason(byte[] destination, int destinationOffset) {
+        return getString(varData(), destination, destinationOffset);
+    }
+}
@@ -0,0 +1,109 @@
+package com.jpmorgan.codec;
+
+import com.jpmorgan.message.TradeMessage;
+import com.jpmorgan.orderbook.Side;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flyweight over an encoded TradeMessage
+ *
+ * Fixed block, version 1:
+ * 0 side (ordinal of Side, 1 byte), 4 symbol id (int), 8 order id (long), 16 price in ticks (long), 24 fill quantity (long)
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class TradeMessageFlyweight extends MessageFlyweight {
+
+    public static final int TEMPLATE_ID = 3;
+    public static final int BLOCK_LENGTH = 32;
+
+    private static final int SIDE_OFFSET = 0;
+    private static final int SYMBOL_OFFSET = 4;
+    private static final int ORDER_ID_OFFSET = 8;
+    private static final int PRICE_OFFSET = 16;
+    private static final int FILL_QUANTITY_OFFSET = 24;
+
+    private static final Side[] SIDES = Side.values();
+
+    public int templateId() {
+        return TEMPLATE_ID;
+    }
+
+    public int blockLength() {
+        return BLOCK_LENGTH;
+    }
+
+    public TradeMessageFlyweight wrapForEncode(ByteBuffer buffer, int offset) {
+        super.wrapForEncode(buffer, offset);
+        return this;
+    }
+
+    public TradeMessageFlyweight wrapForDecode(ByteBuffer buffer, int offset) {
+        super.wrapForDecode(buffer, offset);
+        return this;
+    }
+
+    /**
+     * Set every field from a message
+     */
+    public TradeMessageFlyweight encode(TradeMessage message) {
+        return side(message.getSide())
+                .symbolId(message.getSymbolId())
+                .orderId(message.getOrderId())
+                .priceTicks(message.getPriceTicks())
+                .fillQuantity(message.getFillQuantity());
+    }
+
+    /**
+     * Create the message encoded
+     */
+    public TradeMessage toMessage() {
+        return new TradeMessage(symbolId(), orderId(), priceTicks(), fillQuantity(), side());
+    }
+
+    public TradeMessageFlyweight side(Side side) {
+        this.buffer.put(body() + SIDE_OFFSET, (byte)side.ordinal());
+        return this;
+    }
+
+    public Side side() {
+        return SIDES[this.buffer.get(body() + SIDE_OFFSET)];
+    }
+
+    public TradeMessageFlyweight symbolId(int symbolId) {
+        this.buffer.putInt(body() + SYMBOL_OFFSET, symbolId);
+        return this;
+    }
+
+    public int symbolId() {
+        return this.buffer.getInt(body() + SYMBOL_OFFSET);
+    }
+
+    public TradeMessageFlyweight orderId(long orderId) {
+        this.buffer.putLong(body() + ORDER_ID_OFFSET, orderId);
+        return this;
+    }
+
+    public long orderId() {
+        return this.buffer.getLong(body() + ORDER_ID_OFFSET);
+    }
+
+    public TradeMessageFlyweight priceTicks(long priceTicks) {
+        this.buffer.putLong(body() + PRICE_OFFSET, priceTicks);
+        return this;
+    }
+
+    public long priceTicks() {
+        return this.buffer.getLong(body() + PRICE_OFFSET);
+    }
+
+    public TradeMessageFlyweight fillQuantity(long fillQuantity) {
+        this.buffer.putLong(body() + FILL_QUANTITY_OFFSET, fillQuantity);
+        return this;
+    }
+
+    public long fillQuantity() {
+        return this.buffer.getLong(body() + FILL_QUANTITY_OFFSET);
+    }
+}
@@ -1,54 +1,109 @@
 package com.jpmorgan.instruction;
 
+import com.jpmorgan.orderbook.Price;
 import com.jpmorgan.orderbook.Side;
 
 public class Instruction {
 
-    private final InstructionAction action;
-    private final double price;
-    private final long quantity;
-    private final long orderID;
-    private final OrderType orderType;
-    private final Side side;
+    public static final int DEFAULT_SYMBOL = 0; //The instrument of an instruction created without a symbol
+
+    /*
+     * The fields are only changed by set, for the reusable instructions held in the slots of an InstructionRing.
+     * Instructions created by the factories never change
+     */
+    private int symbolId; //The id of the instrument, which indexes the order book registry of the exchange
+    private InstructionAction action;
+    private long priceTicks; //The price in ticks, converted from the raw price once when the instruction is created
+    private long quantity;
+    private long orderID;
+    private OrderType orderType;
+    private Side side;
+
+    /**
+     * Create an empty instruction for a slot of an InstructionRing
+     */
+    Instruction() {
+    }
 
-    private Instruction(InstructionAction action, double price, long quantity, long orderID,
+    private Instruction(int symbolId, InstructionAction action, long priceTicks, long quantity, long orderID,
                        OrderType orderType, Side side) {
 
+        set(symbolId, action, priceTicks, quantity, orderID, orderType, side);
+    }
+
+    void set(int symbolId, InstructionAction action, long priceTicks, long quantity, long orderID,
+             OrderType orderType, Side side) {
+
+        this.symbolId = symbolId;
         this.action = action;
-        this.price = price;
+        this.priceTicks = priceTicks;
         this.quantity = quantity;
         this.orderID = orderID;
         this.orderType = orderType;
         this.side = side;
     }
 
+    /**
+     * Create an instruction from all its fields, as read back from a log
+     */
+    public static Instruction create(int symbolId, InstructionAction action, long priceTicks, long quantity, long orderID,
+                                     OrderType orderType, Side side)
+    {
+        return new Instruction(symbolId, action, priceTicks, quantity, orderID, orderType, side);
+    }
+
     public static Instruction createPlaceLimitInstruction(double price, long quantity, Side side)
     {
-        return new Instruction(InstructionAction.PLACE_ORDER, price, quantity, -1L, OrderType.LIMIT, side);
+        return new Instruction(DEFAULT_SYMBOL, InstructionAction.PLACE_ORDER, Price.toExactTicks(price), quantity, -1L, OrderType.LIMIT, side);
     }
 
     public static Instruction createPlaceMarketInstruction(long quantity, Side side)
     {
-        return new Instruction(InstructionAction.PLACE_ORDER, 0, quantity, -1L, OrderType.MARKET, side);
+        return new Instruction(DEFAULT_SYMBOL, InstructionAction.PLACE_ORDER, Price.NO_PRICE, quantity, -1L, OrderType.MARKET, side);
     }
 
     public static Instruction createCancelInstruction(Side side, long orderID)
     {
-        return new Instruction(InstructionAction.CANCEL, 0, 0, orderID, OrderType.LIMIT, side);
+        return new Instruction(DEFAULT_SYMBOL, InstructionAction.CANCEL, Price.NO_PRICE, 0, orderID, OrderType.LIMIT, side);
     }
 
     public static Instruction createAmendPriceInstruction(Side side, double price, long orderID)
     {
-        return new Instruction(InstructionAction.AMEND_PRICE, price, 0, orderID, OrderType.LIMIT, side);
+        return new Instruction(DEFAULT_SYMBOL, InstructionAction.AMEND_PRICE, Price.toExactTicks(price), 0, orderID, OrderType.LIMIT, side);
     }
 
     public static Instruction createAmendQuantityInstruction(Side side, long quantity, long orderID)
     {
-        return new Instruction(InstructionAction.AMEND_QUANTITY, 0, quantity, orderID, OrderType.LIMIT, side);
+        return new Instruction(DEFAULT_SYMBOL, InstructionAction.AMEND_QUANTITY, Price.NO_PRICE, quantity, orderID, OrderType.LIMIT, side);
+    }
+
+    public static Instruction createPlaceLimitInstructionInTicks(long priceTicks, long quantity, Side side)
+    {
+        return new Instruction(DEFAULT_SYMBOL, InstructionAction.PLACE_ORDER, priceTicks, quantity, -1L, OrderType.LIMIT, side);
+    }
+
+    public static Instruction createAmendPriceInstructionInTicks(Side side, long priceTicks, long orderID)
+    {
+        return new Instruction(DEFAULT_SYMBOL, InstructionAction.AMEND_PRICE, priceTicks, 0, orderID, OrderType.LIMIT, side);
     }
 
 
 
+    /**
+     * Get the same instruction for another instrument
+     * @param symbolId  the id of the instrument
+     * @return a copy of this instruction targeting the given instrument
+     */
+    public Instruction forSymbol(int symbolId)
+    {
+        return new Instruction(symbolId, action, priceTicks, quantity, orderID, orderType, side);
+    }
+
+    public int getSymbolId()
+    {
+        return symbolId;
+    }
+
     public InstructionAction getAction()
     {
         return action;
@@ -56,7 +111,12 @@ public class Instruction {
 
     public double getPrice()
     {
-        return price;
+        return priceTicks == Price.OFF_GRID ? Double.NaN : Price.toRawPrice(priceTicks);
+    }
+
+    public long getPriceTicks()
+    {
+        return priceTicks;
     }
 
     public long getQuantity()
@@ -108,31 +168,32 @@ public class Instruction {
 //        }
 
         String ins = null;
+        String symbol = symbolId == DEFAULT_SYMBOL ? "" : "symbolId=" + symbolId + ", "; //The default instrument prints as before
 
         switch (this.action)
         {
             case PLACE_ORDER:
                 if (this.orderType == OrderType.LIMIT)
                 {
-                    ins = "Instruction [action=" + action +", side=" + side + ", price=" + price +
+                    ins = "Instruction [" + symbol + "action=" + action +", side=" + side + ", price=" + getPrice() +
                             ", quantity=" + quantity +  ", orderType=" + orderType;
                 }
                 else if (this.orderType == OrderType.MARKET)
                 {
-                    ins = "Instruction [action=" + action + ", side=" + side  +
+                    ins = "Instruction [" + symbol + "action=" + action + ", side=" + side  +
                             ", quantity=" + quantity + ", orderID=" + orderID + ", orderType=" + orderType;
                 }
                 break;
             case CANCEL:
-                ins = "Instruction [action=" + action + ", side=" + side +
+                ins = "Instruction [" + symbol + "action=" + action + ", side=" + side +
                          ", orderID=" + orderID + ", orderType=" + orderType;
                 break;
             case AMEND_PRICE:
-                ins = "Instruction [action=" + action + ", side=" + side + ", price=" + price +
+                ins = "Instruction [" + symbol + "action=" + action + ", side=" + side + ", price=" + getPrice() +
                         ", orderID=" + orderID + ", orderType=" + orderType;
                 break;
             case AMEND_QUANTITY:
-                ins = "Instruction [action=" + action + ", side=" + side + ", price=" + price +
+                ins = "Instruction [" + symbol + "action=" + action + ", side=" + side + ", price=" + getPrice() +
                         ", quantity=" + quantity + ", orderID=" + orderID + ", orderType=" + orderType;
                 break;
         }
@@ -5,93 +5,176 @@ import com.jpmorgan.ExchangeSimulator;
 import com.jpmorgan.message.ExchangeMessage;
 import com.jpmorgan.message.OrderMessage;
 import com.jpmorgan.message.TradeMessage;
+import com.jpmorgan.metrics.InstructionMetrics;
+import com.jpmorgan.metrics.Stage;
 import com.jpmorgan.orderbook.*;
 import javafx.util.Pair;
 
 public abstract class InstructionProcessor {
 
-    protected final OrderBook orderBook;
-
     protected final ExchangeSimulator exchange;
 
-    public InstructionProcessor(OrderBook orderBook, ExchangeSimulator exchange)
+    private final List<ExchangeMessage> messages = new ArrayList<>(); //Reused by every instruction, an exchange processes one at a time
+
+    public InstructionProcessor(ExchangeSimulator exchange)
     {
-        this.orderBook = orderBook;
         this.exchange = exchange;
     }
 
-    public static InstructionProcessor createPlaceInstructionProcessor(OrderBook orderBook, ExchangeSimulator exchange) {
-        return new PlaceInstructionProcessor(orderBook, exchange);
+    public static InstructionProcessor createPlaceInstructionProcessor(ExchangeSimulator exchange) {
+        return new PlaceInstructionProcessor(exchange);
+    }
+
+    public static InstructionProcessor createCancelInstructionProcessor(ExchangeSimulator exchange) {
+        return new CancelInstructionProcessor(exchange);
+    }
+
+    public static InstructionProcessor createAmendPriceInstructionProcessor(ExchangeSimulator exchange) {
+        return new AmendPriceInstructionProcessor(exchange);
     }
 
-    public static InstructionProcessor createCancelInstructionProcessor(OrderBook orderBook, ExchangeSimulator exchange) {
-        return new CancelInstructionProcessor(orderBook, exchange);
+    public static InstructionProcessor createAmendQuantityInstructionProcessor(ExchangeSimulator exchange) {
+        return new AmendQuantityInstructionProcessor(exchange);
+    }
+
+
+    /**
+     * Process an instruction against the order book of its instrument
+     * @param instruction  the instruction
+     * @return the messages to send out, in a list which is only valid until the next instruction is processed
+     */
+    public List<ExchangeMessage> processInstruction(Instruction instruction) {
+
+        OrderBook orderBook = exchange.getOrderBook(instruction.getSymbolId());
+
+        if (orderBook == null)
+        {
+            List<ExchangeMessage> messages = startMessages();
+            messages.add(new OrderMessage(instruction.getSymbolId(), rejectedState(), instruction.getOrderID(),
+                    instruction.getSide(), instruction.getPriceTicks(), instruction.getQuantity(),
+                    "Symbol " + instruction.getSymbolId() + " is not listed"));
+            return messages;
+        }
+
+        return processInstruction(instruction, orderBook);
     }
 
-    public static InstructionProcessor createAmendPriceInstructionProcessor(OrderBook orderBook, ExchangeSimulator exchange) {
-        return new AmendPriceInstructionProcessor(orderBook, exchange);
+    protected abstract List<ExchangeMessage> processInstruction(Instruction instruction, OrderBook orderBook);
+
+    /**
+     * Get the list of the messages of the instruction being processed, emptied of the messages of the previous one
+     */
+    protected final List<ExchangeMessage> startMessages() {
+        this.messages.clear();
+        return this.messages;
     }
 
-    public static InstructionProcessor createAmendQuantityInstructionProcessor(OrderBook orderBook, ExchangeSimulator exchange) {
-        return new AmendQuantityInstructionProcessor(orderBook, exchange);
+    /**
+     * Get the state of the message rejecting an instruction of this processor
+     */
+    protected abstract OrderState rejectedState();
+
+    /**
+     * Add the time since the previous mark to a stage of the instruction being processed, if the stages are timed
+     */
+    protected final void lap(Stage stage) {
+        InstructionMetrics metrics = exchange.getMetrics();
+        if (metrics != null) {
+            metrics.lap(stage);
+        }
     }
 
+    /**
+     * Add the trade messages of a trade, one for each traded resting order and one for the trading order per fill
+     */
+    protected void addTradeMessages(List<ExchangeMessage> messages, Trade trade, int symbolId)
+    {
+        List<Order> tradedOrders = trade.getTradedOrders();
+        for (Order filledOrder : tradedOrders)
+        {
+            messages.add(new TradeMessage(symbolId, filledOrder.getOrderId(), filledOrder.getPriceTicks(),
+                    filledOrder.getQuantity(), filledOrder.getRawSide()));
+        }
 
-    public abstract List<ExchangeMessage> processInstruction(Instruction instruction);
+        Order tradingOrder = trade.getTradingOrder();
+        for (Order filledOrder : tradedOrders)
+        {
+            messages.add(new TradeMessage(symbolId, tradingOrder.getOrderId(), filledOrder.getPriceTicks(),
+                    filledOrder.getQuantity(), tradingOrder.getRawSide()));
+        }
+    }
 
 }
 
 
 class PlaceInstructionProcessor extends InstructionProcessor {
 
-    public PlaceInstructionProcessor(OrderBook orderBook, ExchangeSimulator exchange)
+    public PlaceInstructionProcessor(ExchangeSimulator exchange)
     {
-        super(orderBook, exchange);
+        super(exchange);
     }
 
-    public List<ExchangeMessage> processInstruction(Instruction instruction) {
+    protected OrderState rejectedState() {
+        return OrderState.PLACE_REJECTED;
+    }
+
+    protected List<ExchangeMessage> processInstruction(Instruction instruction, OrderBook orderBook) {
 
-        List<ExchangeMessage> messages = new ArrayList<>();
+        List<ExchangeMessage> messages = startMessages();
 
 
         Order order = null;
 
         if (instruction.getOrderType() == OrderType.LIMIT)
         {
-            order = new Order(new Price(instruction.getPrice()), instruction.getSide(), instruction.getQuantity());
+            order = orderBook.acquireOrder(instruction.getPriceTicks(), instruction.getSide(), instruction.getQuantity());
         }
         else if (instruction.getOrderType() == OrderType.MARKET)
         {
-            order = new Order(null, instruction.getSide(), instruction.getQuantity());
+            order = orderBook.acquireOrder(Price.NO_PRICE, instruction.getSide(), instruction.getQuantity());
         }
 
         if (order != null)
         {
-            double price = 0.0;
-            if (order.getPrice() != null)
+            order.setSymbolId(instruction.getSymbolId());
+
+            //Whether the order is a market order is told by the instruction, a limit price of 0 ticks is checked as a price
+            long price = Price.NO_PRICE;
+            String rejectString = null;
+            if (instruction.getOrderType() == OrderType.LIMIT)
             {
-                price = order.getPrice().getRawPrice();
+                price = order.getPriceTicks();
+                if (!Price.isPrice(price))
+                {
+                    rejectString = orderBook.checkPlaceOrderPrice(price);
+                }
             }
             else {
                 if (order.isBid())
                 {
-                    price = orderBook.getHighLimit().getRawPrice();
+                    price = orderBook.getHighLimitTicks();
                 }
                 else
                 {
-                    price = orderBook.getLowLimit().getRawPrice();
+                    price = orderBook.getLowLimitTicks();
                 }
             }
 
 
-            String rejectString = orderBook.checkPlaceOrder(order);
+            lap(Stage.MESSAGE_BUILDING);
+            if (rejectString == null)
+            {
+                rejectString = orderBook.checkPlaceOrder(order);
+            }
+            lap(Stage.VALIDATION);
             if (rejectString == null)
             {
-                messages.add(new OrderMessage(OrderState.PLACE_ACKED, order.getOrderId(),
+                messages.add(new OrderMessage(instruction.getSymbolId(), OrderState.PLACE_ACKED, order.getOrderId(),
                         order.getRawSide(), price, order.getQuantity(), "Order successfully placed"));
 
-
+                lap(Stage.MESSAGE_BUILDING);
                 Trade trade = orderBook.processInboundOrder(order);
+                lap(Stage.MATCHING);
 
                 //if (order.getQuantity() > 0) //This is the quantity of the sent order after filling with opposite orders if any
                 //{
@@ -99,27 +182,17 @@ class PlaceInstructionProcessor extends InstructionProcessor {
 
                 if (trade != null) {
 
-                    this.exchange.setLastTrade(trade);
+                    this.exchange.setLastTrade(trade, orderBook);
 
-                    List<Order> tradedOrders = trade.getTradedOrders();
-                    for (Order filledOrder : tradedOrders)
-                    {
-                        messages.add(new TradeMessage(filledOrder.getOrderId(), filledOrder.getPrice().getRawPrice(),
-                                filledOrder.getQuantity(), filledOrder.getRawSide()));
-                    }
-
-                    Order tradingOrder = trade.getTradingOrder();
-                    for (Order filledOrder : tradedOrders)
-                    {
-                        messages.add(new TradeMessage(tradingOrder.getOrderId(), filledOrder.getPrice().getRawPrice(),
-                                filledOrder.getQuantity(), tradingOrder.getRawSide()));
-                    }
+                    addTradeMessages(messages, trade, instruction.getSymbolId());
 
                 }
             }
             else {
-                messages.add(new OrderMessage(OrderState.PLACE_REJECTED, order.getOrderId(),
+                messages.add(new OrderMessage(instruction.getSymbolId(), OrderState.PLACE_REJECTED, order.getOrderId(),
                         order.getRawSide(), price, order.getQuantity(), rejectString));
+
+                orderBook.releaseOrder(order);
             }
 
 
@@ -136,16 +209,22 @@ class PlaceInstructionProcessor extends InstructionProcessor {
 
 class CancelInstructionProcessor extends InstructionProcessor {
 
-    public CancelInstructionProcessor(OrderBook orderBook, ExchangeSimulator exchange)
+    public CancelInstructionProcessor(ExchangeSimulator exchange)
     {
-        super(orderBook, exchange);
+        super(exchange);
     }
 
-    public List<ExchangeMessage> processInstruction(Instruction instruction) {
+    protected OrderState rejectedState() {
+        return OrderState.CANCEL_REJECTED;
+    }
+
+    protected List<ExchangeMessage> processInstruction(Instruction instruction, OrderBook orderBook) {
 
-        List<ExchangeMessage> messages = new ArrayList<>();
+        List<ExchangeMessage> messages = startMessages();
 
+        lap(Stage.MESSAGE_BUILDING);
         Pair<Order, String> result = orderBook.removeOrder(instruction.getOrderID(), instruction.getSide());
+        lap(Stage.MATCHING);
 
         Order removedOrder = result.getKey();
         String rejectString = result.getValue();
@@ -153,12 +232,14 @@ class CancelInstructionProcessor extends InstructionProcessor {
         if (rejectString == null)
         {
             //OrderMessage(OrderState state, long orderID, Side side, double price, long quantity, String reason)
-            messages.add(new OrderMessage(OrderState.CANCEL_ACKED, removedOrder.getOrderId(),
-                    removedOrder.getRawSide(), removedOrder.getPrice().getRawPrice(),
+            messages.add(new OrderMessage(instruction.getSymbolId(), OrderState.CANCEL_ACKED, removedOrder.getOrderId(),
+                    removedOrder.getRawSide(), removedOrder.getPriceTicks(),
                     removedOrder.getQuantity(),  rejectString));
+
+            orderBook.releaseOrder(removedOrder);
         }
         else {
-            messages.add(new OrderMessage(OrderState.CANCEL_REJECTED, instruction.getOrderID(), null, Double.NaN, -1L,
+            messages.add(new OrderMessage(instruction.getSymbolId(), OrderState.CANCEL_REJECTED, instruction.getOrderID(), null, Price.NO_PRICE, -1L,
                     rejectString));
         }
 
@@ -168,20 +249,27 @@ class CancelInstructionProcessor extends InstructionProcessor {
 
 class AmendPriceInstructionProcessor extends InstructionProcessor {
 
-    public AmendPriceInstructionProcessor(OrderBook orderBook, ExchangeSimulator exchange)
+    public AmendPriceInstructionProcessor(ExchangeSimulator exchange)
     {
-        super(orderBook, exchange);
+        super(exchange);
     }
 
-    public List<ExchangeMessage> processInstruction(Instruction instruction) {
+    protected OrderState rejectedState() {
+        return OrderState.AMEND_PRICE_REJECTED;
+    }
+
+    protected List<ExchangeMessage> processInstruction(Instruction instruction, OrderBook orderBook) {
 
-        List<ExchangeMessage> messages = new ArrayList<>();
+        List<ExchangeMessage> messages = startMessages();
 
-        String rejectString = orderBook.checkPlaceOrderPrice(new Price(instruction.getPrice()));
+        lap(Stage.MESSAGE_BUILDING);
+        String rejectString = orderBook.checkPlaceOrderPrice(instruction.getPriceTicks());
+        lap(Stage.VALIDATION);
 
         if (rejectString == null)
         {
-            UpdateResult result = orderBook.updateOrderPrice(instruction.getOrderID(), instruction.getSide(), new Price(instruction.getPrice()));
+            UpdateResult result = orderBook.updateOrderPrice(instruction.getOrderID(), instruction.getSide(), instruction.getPriceTicks());
+            lap(Stage.MATCHING);
 
 
             Order updatedOrder = result.getOrder();
@@ -192,37 +280,26 @@ class AmendPriceInstructionProcessor extends InstructionProcessor {
             {
 
                 //OrderMessage(OrderState state, long orderID, Side side, double price, long quantity, String reason)
-                messages.add(new OrderMessage(OrderState.AMEND_PRICE_ACKED, updatedOrder.getOrderId(),
-                        updatedOrder.getRawSide(), updatedOrder.getPrice().getRawPrice(),
+                messages.add(new OrderMessage(instruction.getSymbolId(), OrderState.AMEND_PRICE_ACKED, updatedOrder.getOrderId(),
+                        updatedOrder.getRawSide(), updatedOrder.getPriceTicks(),
                         updatedOrder.getQuantity(),  rejectString));
 
                 if (trade != null) {
 
-                    this.exchange.setLastTrade(trade);
+                    this.exchange.setLastTrade(trade, orderBook);
 
-                    List<Order> tradedOrders = trade.getTradedOrders();
-                    for (Order filledOrder : tradedOrders)
-                    {
-                        messages.add(new TradeMessage(filledOrder.getOrderId(), filledOrder.getPrice().getRawPrice(),
-                                filledOrder.getQuantity(), filledOrder.getRawSide()));
-                    }
-
-                    Order tradingOrder = trade.getTradingOrder();
-                    for (Order filledOrder : tradedOrders)
-                    {
-                        messages.add(new TradeMessage(tradingOrder.getOrderId(), filledOrder.getPrice().getRawPrice(),
-                                filledOrder.getQuantity(), tradingOrder.getRawSide()));
-                    }
+                    addTradeMessages(messages, trade, instruction.getSymbolId());
 
                 }
 
+                orderBook.releaseUpdatedOrder(updatedOrder, trade);
             }
         }
 
         if (rejectString != null)
         {
-            messages.add(new OrderMessage(OrderState.AMEND_PRICE_REJECTED, instruction.getOrderID(),
-                    null, Double.NaN, -1L,
+            messages.add(new OrderMessage(instruction.getSymbolId(), OrderState.AMEND_PRICE_REJECTED, instruction.getOrderID(),
+                    null, Price.NO_PRICE, -1L,
                     rejectString));
         }
 
@@ -232,37 +309,44 @@ class AmendPriceInstructionProcessor extends InstructionProcessor {
 
 class AmendQuantityInstructionProcessor extends InstructionProcessor {
 
-    public AmendQuantityInstructionProcessor(OrderBook orderBook, ExchangeSimulator exchange)
+    public AmendQuantityInstructionProcessor(ExchangeSimulator exchange)
     {
-        super(orderBook, exchange);
+        super(exchange);
     }
 
-    public List<ExchangeMessage> processInstruction(Instruction instruction) {
+    protected OrderState rejectedState() {
+        return OrderState.AMEND_QUANTITY_REJECTED;
+    }
 
-        List<ExchangeMessage> messages = new ArrayList<>();
+    protected List<ExchangeMessage> processInstruction(Instruction instruction, OrderBook orderBook) {
 
-        String rejectString = orderBook.checkPlaceOrderSize(instruction.getSide(), instruction.getQuantity());
+        List<ExchangeMessage> messages = startMessages();
 
+        lap(Stage.MESSAGE_BUILDING);
+        String rejectString = orderBook.checkPlaceOrderSize(instruction.getSide(), instruction.getQuantity());
+        lap(Stage.VALIDATION);
 
         if (rejectString == null)
         {
             Pair<Order, String> result = orderBook.updateOrderQuantity(instruction.getOrderID(), instruction.getSide(), instruction.getQuantity());
+            lap(Stage.MATCHING);
 
             Order updatedOrder = result.getKey();
             rejectString = result.getValue();
 
             if (rejectString == null)
             {
-                messages.add(new OrderMessage(OrderState.AMEND_QUANTITY_ACKED, updatedOrder.getOrderId(),
-                        updatedOrder.getRawSide(), updatedOrder.getPrice().getRawPrice(),
+                messages.add(new OrderMessage(instruction.getSymbolId(), OrderState.AMEND_QUANTITY_ACKED, updatedOrder.getOrderId(),
+                        updatedOrder.getRawSide(), updatedOrder.getPriceTicks(),
                         updatedOrder.getQuantity(),  rejectString));
+                orderBook.releaseUpdatedOrder(updatedOrder, null);
             }
         }
 
         if (rejectString != null)
         {
-            messages.add(new OrderMessage(OrderState.AMEND_QUANTITY_REJECTED, instruction.getOrderID(),
-                    null, Double.NaN, -1L,
+            messages.add(new OrderMessage(instruction.getSymbolId(), OrderState.AMEND_QUANTITY_REJECTED, instruction.getOrderID(),
+                    null, Price.NO_PRICE, -1L,
                     rejectString));
         }
 
@@ -0,0 +1,152 @@
+package com.jpmorgan.instruction;
+
+import com.jpmorgan.Exchange;
+import com.jpmorgan.orderbook.Side;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free ring buffer of instructions, into which any number of threads can publish, drained by one thread.
+ * The slots hold preallocated instructions that are overwritten in place, so publishing and draining allocate nothing.
+ *
+ * A sender claims the next sequence number with one atomic increment, waits until the slot of that sequence has
+ * been drained in the previous lap, writes the instruction into the slot, then publishes the sequence in the
+ * slot. The draining thread processes slots in sequence order as long as their sequence is published,
+ * and then releases them to the senders in one go.
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class InstructionRing {
+
+    private final int mask;
+    private final Instruction[] instructions;
+    private final long[] clientIDs;
+    private final AtomicLongArray published; //The sequence last published in each slot
+
+    private final AtomicLong claimed = new AtomicLong(-1); //The last sequence claimed by a sender
+    private final AtomicLong drained = new AtomicLong(-1); //The last sequence processed by the draining thread
+
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * @param capacity  the number of slots, a power of 2
+     * @param waitStrategy  how senders wait for a free slot when the ring is full
+     */
+    public InstructionRing(int capacity, WaitStrategy waitStrategy) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of 2: " + capacity);
+        }
+
+        this.mask = capacity - 1;
+        this.instructions = new Instruction[capacity];
+        this.clientIDs = new long[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            this.instructions[i] = new Instruction();
+            this.published.set(i, -1);
+        }
+        this.waitStrategy = waitStrategy;
+    }
+
+    public int capacity() {
+        return this.instructions.length;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return this.waitStrategy;
+    }
+
+    /**
+     * Publish a copy of an instruction, waiting for a free slot if the ring is full
+     * @param instruction  the instruction, which the caller can reuse as soon as this returns
+     * @param clientID  the id of the client sending the instruction
+     */
+    public void publish(Instruction instruction, long clientID) {
+        publish(instruction.getSymbolId(), instruction.getAction(), instruction.getPriceTicks(), instruction.getQuantity(),
+                instruction.getOrderID(), instruction.getOrderType(), instruction.getSide(), clientID);
+    }
+
+    /**
+     * Publish an instruction given by its fields, so that the sender does not need an instruction object
+     */
+    public void publish(int symbolId, InstructionAction action, long priceTicks, long quantity, long orderID,
+                        OrderType orderType, Side side, long clientID) {
+
+        long sequence = this.claimed.incrementAndGet();
+        long wrapPoint = sequence - this.instructions.length;
+        while (wrapPoint > this.drained.get()) {
+            this.waitStrategy.idle(); //The slot still holds an instruction of the previous lap
+        }
+
+        int index = (int)sequence & this.mask;
+        this.instructions[index].set(symbolId, action, priceTicks, quantity, orderID, orderType, side);
+        this.clientIDs[index] = clientID;
+        this.published.lazySet(index, sequence); //Ordered after the writes above, makes the slot visible to the drainer
+    }
+
+    /**
+     * Hand the instructions published so far to an exchange, in sequence order.
+     * Only one thread may drain the ring. The instruction given to the exchange is only valid during the call.
+     * Runs of published slots are handed over as batches, one per stretch of the ring between wrap-arounds.
+     * If the exchange throws, the batch it failed on is dropped along with the ones already processed
+     * @param exchange  the exchange processing the instructions
+     * @param maxBatch  the maximum number of instructions processed
+     * @return the number of instructions processed
+     */
+    public int drain(Exchange exchange, int maxBatch) {
+        long first = this.drained.get() + 1;
+        long sequence = first;
+        long last = first + maxBatch;
+
+        try {
+            while (sequence < last) {
+                int start = (int)sequence & this.mask;
+                int end = start;
+                long runEnd = sequence;
+                //A slot not published yet ends the run, later slots wait so that the order of sequences is kept
+                while (runEnd < last && end <= this.mask && this.published.get(end) == runEnd) {
+                    end++;
+                    runEnd++;
+                }
+                if (runEnd == sequence) {
+                    break;
+                }
+                try {
+                    exchange.receiveInstructions(this.instructions, this.clientIDs, start, end - start);
+                }
+                finally {
+                    sequence = runEnd;
+                }
+            }
+        }
+        finally {
+            if (sequence > first) {
+                this.drained.lazySet(sequence - 1); //Release all the processed slots to the senders at once
+            }
+        }
+
+        return (int)(sequence - first);
+    }
+
+    /**
+     * Tell if every instruction claimed so far has been drained
+     */
+    public boolean isDrained() {
+        return this.drained.get() >= this.claimed.get();
+    }
+
+    /**
+     * Get the last sequence claimed by a sender
+     */
+    public long claimedSequence() {
+        return this.claimed.get();
+    }
+
+    /**
+     * Get the last sequence processed by the draining thread
+     */
+    public long drainedSequence() {
+        return this.drained.get();
+    }
+}
@@ -0,0 +1,34 @@
+package com.jpmorgan.instruction;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits on an InstructionRing, the matching thread for instructions to arrive
+ * and the senders for a free slot when the ring is full
+ * @author Jiangchuan Zheng
+ *
+ */
+public enum WaitStrategy {
+
+    BUSY_SPIN, //Keep polling, lowest latency but burns a whole core
+    YIELD, //Give the core to other threads between polls
+    PARK; //Sleep briefly between polls, least CPU but adds up to the park time of latency
+
+    private static final long PARK_NANOS = 50_000L;
+
+    /**
+     * Wait once before polling again
+     */
+    public void idle() {
+        switch (this) {
+            case YIELD:
+                Thread.yield();
+                break;
+            case PARK:
+                LockSupport.parkNanos(PARK_NANOS);
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.jpmorgan.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compact binary checkpoint of the state of an exchange simulator, taken between two instructions by
+ * ExchangeSimulator.takeSnapshot and put back by ExchangeSimulator.restoreSnapshot.
+ * Taking a snapshot only copies the state into memory on the thread processing the instructions, writing it
+ * to disk can then be done by any other thread. The snapshot knows the last journal record it includes,
+ * so that a recovery replays only the journal records after it.
+ *
+ * A snapshot file is a header (magic, version, journal sequence, content length) followed by the content,
+ * written to a temporary file first and then renamed, so a snapshot file is either complete or absent.
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class ExchangeSnapshot {
+
+    private static final int MAGIC = 0x4E53504A; //"JPSN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+
+    private static final String FILE_PREFIX = "snapshot-";
+    private static final String FILE_SUFFIX = ".bin";
+
+    private final long journalSequence;
+    private final ByteBuffer content;
+
+    /**
+     * @param journalSequence  the sequence of the last journal record included in the state, 0 if none
+     * @param content  the state, from its position to its limit
+     */
+    public ExchangeSnapshot(long journalSequence, ByteBuffer content) {
+        this.journalSequence = journalSequence;
+        this.content = content;
+    }
+
+    public long getJournalSequence() {
+        return this.journalSequence;
+    }
+
+    /**
+     * Get the state, in a buffer of its own so that it can be read more than once
+     */
+    public ByteBuffer getContent() {
+        return this.content.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public int size() {
+        return this.content.remaining();
+    }
+
+    /**
+     * Write this snapshot into a directory, named after its journal sequence
+     * @return the snapshot file
+     */
+    public Path write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(String.format("%s%020d%s", FILE_PREFIX, this.journalSequence, FILE_SUFFIX));
+        Path temporary = directory.resolve(file.getFileName() + ".tmp");
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putLong(this.journalSequence).putLong(this.content.remaining());
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer content = getContent();
+            while (header.hasRemaining() || content.hasRemaining()) {
+                channel.write(new ByteBuffer[] {header, content});
+            }
+            channel.force(true);
+        }
+        return Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static ExchangeSnapshot read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, file);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            long journalSequence = header.getLong();
+            long size = header.getLong();
+
+            ByteBuffer content = ByteBuffer.allocate((int)size).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, content, file);
+            content.flip();
+            return new ExchangeSnapshot(journalSequence, content);
+        }
+    }
+
+    /**
+     * Read the snapshot with the highest journal sequence in a directory, skipping the files that cannot be read
+     * @return the snapshot, or null if there is none
+     */
+    public static ExchangeSnapshot readLatest(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+                for (Path file : stream) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files);
+
+        for (int i = files.size() - 1; i >= 0; i--) {
+            try {
+                return read(files.get(i));
+            }
+            catch (IOException e) {
+                System.err.println("Skipping snapshot " + files.get(i) + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, Path file) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Truncated snapshot file: " + file);
+            }
+        }
+    }
+}
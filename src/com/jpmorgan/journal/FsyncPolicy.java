@@ -0,0 +1,15 @@
+package com.jpmorgan.journal;
+
+/**
+ * When an InstructionJournal forces its records to disk. Whatever the policy, the records are in the page cache
+ * as soon as they are appended, so they survive a crash of the process, the policy is about a crash of the machine.
+ * Segments are forced when they are rolled and when the journal is closed, except with NONE
+ * @author Jiangchuan Zheng
+ *
+ */
+public enum FsyncPolicy {
+
+    NONE, //Leave it to the operating system
+    PER_BATCH, //Force once per batch of instructions, before the batch is processed
+    PER_RECORD //Force after every record, the safest and by far the slowest
+}
@@ -0,0 +1,225 @@
+package com.jpmorgan.journal;
+
+import com.jpmorgan.codec.InstructionFlyweight;
+import com.jpmorgan.codec.MessageHeader;
+import com.jpmorgan.instruction.Instruction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Append-only journal of the instructions accepted by an exchange, so that its state can be rebuilt after a crash.
+ * Each record gets the next sequence number and a timestamp, and is written into a memory-mapped segment file,
+ * the instruction encoded by the codec of the messages,
+ * so appending is a few stores into memory with no system call. A segment is full at a configurable size,
+ * then the next one is mapped, named after the sequence of its first record. The FsyncPolicy tells when the
+ * records are forced to disk.
+ *
+ * Opening a journal on a directory which already has segments continues after the last complete record.
+ * A journal is not thread safe, it belongs to the thread processing the instructions.
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class InstructionJournal implements Closeable {
+
+    private final Path directory;
+    private final int segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int position;
+
+    private long nextSequence;
+
+    private final InstructionFlyweight instruction = new InstructionFlyweight();
+
+    /**
+     * @param directory  the directory of the segment files, created if needed
+     * @param segmentSize  the size of a segment file in bytes, rounded down to whole records
+     * @param fsyncPolicy  when the records are forced to disk
+     */
+    public InstructionJournal(Path directory, int segmentSize, FsyncPolicy fsyncPolicy) throws IOException {
+        if (segmentSize < JournalFormat.RECORD_SIZE) {
+            throw new IllegalArgumentException("Journal segment size " + segmentSize + " is smaller than a record");
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize - segmentSize % JournalFormat.RECORD_SIZE;
+        this.fsyncPolicy = fsyncPolicy;
+
+        Files.createDirectories(directory);
+        List<Path> segments = JournalFormat.listSegments(directory);
+        if (segments.isEmpty()) {
+            this.nextSequence = 1;
+            mapSegment(JournalFormat.segmentPath(directory, 1));
+        }
+        else {
+            //Continue in the last segment after its last complete record, the rest of it is overwritten
+            Path last = segments.get(segments.size() - 1);
+            this.nextSequence = JournalFormat.firstSequence(last);
+            mapSegment(last);
+            while (this.position + JournalFormat.RECORD_SIZE <= this.segment.capacity()
+                    && this.segment.getLong(this.position + JournalFormat.SEQUENCE_OFFSET) == this.nextSequence) {
+                this.position += JournalFormat.RECORD_SIZE;
+                this.nextSequence++;
+            }
+            //Records left after a torn one must not be read as following the records appended from now on
+            for (int offset = this.position; offset < this.segment.capacity(); offset += JournalFormat.RECORD_SIZE) {
+                this.segment.putLong(offset + JournalFormat.SEQUENCE_OFFSET, 0L);
+            }
+        }
+    }
+
+    /**
+     * Append an instruction
+     * @return the sequence of its record
+     */
+    public long append(Instruction instruction, long clientID) {
+        int offset = claim(clientID);
+        this.instruction.wrapForEncode(this.segment, offset + JournalFormat.MESSAGE_OFFSET).encode(instruction);
+        return commit(offset);
+    }
+
+    /**
+     * Append the registration of a client
+     * @return the sequence of its record
+     */
+    public long appendClient(long clientID) {
+        int offset = claim(clientID);
+        MessageHeader.write(this.segment, offset + JournalFormat.MESSAGE_OFFSET, JournalFormat.CLIENT_BLOCK_LENGTH, JournalFormat.CLIENT);
+        return commit(offset);
+    }
+
+    /**
+     * Append the listing of an instrument, or the change of its settings
+     * @return the sequence of its record
+     */
+    public long appendInstrument(int symbolId, double prevClose, double tickSize, long lotSize) {
+        int offset = claim(0L);
+        MessageHeader.write(this.segment, offset + JournalFormat.MESSAGE_OFFSET, JournalFormat.INSTRUMENT_BLOCK_LENGTH,
+                JournalFormat.INSTRUMENT);
+        int body = offset + JournalFormat.BODY_OFFSET;
+        this.segment.putInt(body + JournalFormat.SYMBOL_OFFSET, symbolId);
+        this.segment.putLong(body + JournalFormat.PREV_CLOSE_OFFSET, Double.doubleToRawLongBits(prevClose));
+        this.segment.putLong(body + JournalFormat.LOT_SIZE_OFFSET, lotSize);
+        this.segment.putLong(body + JournalFormat.TICK_SIZE_OFFSET, Double.doubleToRawLongBits(tickSize));
+        return commit(offset);
+    }
+
+    /**
+     * Append the order id sequence of the exchange, so that a replay hands out the same order ids
+     * @return the sequence of its record
+     */
+    public long appendOrderIds(long nextOrderId, long stride) {
+        int offset = claim(0L);
+        MessageHeader.write(this.segment, offset + JournalFormat.MESSAGE_OFFSET, JournalFormat.ORDER_IDS_BLOCK_LENGTH,
+                JournalFormat.ORDER_IDS);
+        int body = offset + JournalFormat.BODY_OFFSET;
+        this.segment.putLong(body + JournalFormat.NEXT_ORDER_ID_OFFSET, nextOrderId);
+        this.segment.putLong(body + JournalFormat.STRIDE_OFFSET, stride);
+        return commit(offset);
+    }
+
+    /**
+     * Mark the end of a batch of records, which forces them to disk with the PER_BATCH policy
+     */
+    public void endBatch() {
+        if (this.fsyncPolicy == FsyncPolicy.PER_BATCH) {
+            this.segment.force();
+        }
+    }
+
+    /**
+     * Get the sequence of the last record appended, 0 if there is none
+     */
+    public long lastSequence() {
+        return this.nextSequence - 1;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return this.fsyncPolicy;
+    }
+
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    public void close() throws IOException {
+        if (this.channel == null) {
+            return;
+        }
+        if (this.fsyncPolicy != FsyncPolicy.NONE) {
+            this.segment.force();
+        }
+        this.channel.close();
+        this.channel = null;
+        this.segment = null;
+    }
+
+    /**
+     * Get the offset of the next record in the current segment, rolling to a new segment if it is full.
+     * The message of the record is written after
+     */
+    private int claim(long clientID) {
+        if (this.segment == null) {
+            throw new IllegalStateException("Journal is closed");
+        }
+
+        if (this.position + JournalFormat.RECORD_SIZE > this.segment.capacity()) {
+            roll();
+        }
+
+        int offset = this.position;
+        for (int i = 0; i < JournalFormat.RECORD_SIZE; i += 8) {
+            this.segment.putLong(offset + i, 0L);
+        }
+        this.segment.putLong(offset + JournalFormat.TIMESTAMP_OFFSET, System.currentTimeMillis());
+        this.segment.putLong(offset + JournalFormat.CLIENT_ID_OFFSET, clientID);
+        return offset;
+    }
+
+    /**
+     * Write the sequence last, a reader takes the record as complete only when its sequence follows the previous one
+     */
+    private long commit(int offset) {
+        long sequence = this.nextSequence++;
+        this.segment.putLong(offset + JournalFormat.SEQUENCE_OFFSET, sequence);
+        this.position += JournalFormat.RECORD_SIZE;
+
+        if (this.fsyncPolicy == FsyncPolicy.PER_RECORD) {
+            this.segment.force();
+        }
+        return sequence;
+    }
+
+    private void roll() {
+        try {
+            if (this.fsyncPolicy != FsyncPolicy.NONE) {
+                this.segment.force();
+            }
+            this.channel.close();
+            mapSegment(JournalFormat.segmentPath(this.directory, this.nextSequence));
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Failed to roll journal segment in " + this.directory, e);
+        }
+    }
+
+    private void mapSegment(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        //A segment larger than the segment size, from a journal opened with larger segments before, is mapped whole
+        long size = Math.max(this.segmentSize, this.channel.size());
+        size -= size % JournalFormat.RECORD_SIZE;
+        this.segment = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        this.segment.order(ByteOrder.LITTLE_ENDIAN);
+        this.position = 0;
+    }
+}
@@ -0,0 +1,89 @@
+package com.jpmorgan.journal;
+
+import com.jpmorgan.codec.InstructionFlyweight;
+import com.jpmorgan.codec.MessageHeader;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Layout of the journal records and naming of the segment files, shared by the journal and its reader.
+ * A record is 64 bytes in little endian: the sequence, the timestamp and the client id, then a message of the
+ * codec schema, whose header tells the type of the record and the version it was written with. The fields not used
+ * by a record type are left at zero
+ * INSTRUCTION: client id, an encoded Instruction
+ * CLIENT: client id, a message with no field
+ * INSTRUMENT: symbol, previous close = raw bits of the previous close, lot size, tick size = raw bits of the tick size
+ * ORDER_IDS: the next order id handed out, the stride of the order id sequence
+ * @author Jiangchuan Zheng
+ *
+ */
+final class JournalFormat {
+
+    static final int RECORD_SIZE = 64;
+
+    //Record types, the template ids of their messages. The ids from 100 are the journal's own templates
+    static final int INSTRUCTION = InstructionFlyweight.TEMPLATE_ID;
+    static final int CLIENT = 100;
+    static final int INSTRUMENT = 101;
+    static final int ORDER_IDS = 102;
+
+    static final int SEQUENCE_OFFSET = 0; //Starts at 1, written last
+    static final int TIMESTAMP_OFFSET = 8; //Epoch milliseconds
+    static final int CLIENT_ID_OFFSET = 16;
+    static final int MESSAGE_OFFSET = 24; //The header of the message
+    static final int BODY_OFFSET = MESSAGE_OFFSET + MessageHeader.ENCODED_LENGTH; //The fixed block of the message
+
+    //The fixed blocks of the journal's own templates
+    static final int CLIENT_BLOCK_LENGTH = 0;
+
+    static final int INSTRUMENT_BLOCK_LENGTH = 32;
+    static final int SYMBOL_OFFSET = 0;
+    static final int PREV_CLOSE_OFFSET = 8;
+    static final int LOT_SIZE_OFFSET = 16;
+    static final int TICK_SIZE_OFFSET = 24;
+
+    static final int ORDER_IDS_BLOCK_LENGTH = 16;
+    static final int NEXT_ORDER_ID_OFFSET = 0;
+    static final int STRIDE_OFFSET = 8;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private JournalFormat() {
+    }
+
+    /**
+     * Get the file of the segment starting at a sequence, named so that the names sort in sequence order
+     */
+    static Path segmentPath(Path directory, long firstSequence) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+    }
+
+    static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Get the segment files of a journal, in sequence order
+     */
+    static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : stream) {
+                segments.add(segment);
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+}
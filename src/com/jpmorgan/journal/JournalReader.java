@@ -0,0 +1,114 @@
+package com.jpmorgan.journal;
+
+import com.jpmorgan.codec.InstructionFlyweight;
+import com.jpmorgan.codec.MessageHeader;
+import com.jpmorgan.instruction.Instruction;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Reads the records of an InstructionJournal back in sequence order, up to the last complete record
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class JournalReader {
+
+    /**
+     * What is done with each record read, the records a handler is not interested in are skipped
+     */
+    public interface Handler {
+
+        default void onInstrument(long sequence, int symbolId, double prevClose, double tickSize, long lotSize) {
+        }
+
+        default void onClient(long sequence, long clientID) {
+        }
+
+        default void onOrderIds(long sequence, long nextOrderId, long stride) {
+        }
+
+        default void onInstruction(long sequence, long timestamp, Instruction instruction, long clientID) {
+        }
+    }
+
+    private JournalReader() {
+    }
+
+    /**
+     * Read the records of a journal from a sequence on
+     * @param directory  the directory of the segment files
+     * @param fromSequence  the sequence of the first record handled, the records before are skipped
+     * @param handler  what is done with each record
+     * @return the sequence of the last record of the journal, 0 if it is empty
+     * @throws IOException  if a record is not in the format of the journal
+     */
+    public static long read(Path directory, long fromSequence, Handler handler) throws IOException {
+        List<Path> segments = JournalFormat.listSegments(directory);
+        long sequence = 0;
+        InstructionFlyweight instruction = new InstructionFlyweight();
+
+        for (int i = 0; i < segments.size(); i++) {
+            //A segment whose next segment starts at or before the first sequence wanted has nothing to read
+            if (i + 1 < segments.size() && JournalFormat.firstSequence(segments.get(i + 1)) <= fromSequence) {
+                sequence = JournalFormat.firstSequence(segments.get(i + 1)) - 1;
+                continue;
+            }
+
+            long expected = JournalFormat.firstSequence(segments.get(i));
+            try (FileChannel channel = FileChannel.open(segments.get(i), StandardOpenOption.READ)) {
+                long size = channel.size() - channel.size() % JournalFormat.RECORD_SIZE;
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                segment.order(ByteOrder.LITTLE_ENDIAN);
+
+                for (int offset = 0; offset < size; offset += JournalFormat.RECORD_SIZE) {
+                    if (segment.getLong(offset + JournalFormat.SEQUENCE_OFFSET) != expected) {
+                        return sequence; //The end of the journal, or a record not completely written
+                    }
+                    if (expected >= fromSequence) {
+                        handle(segment, offset, expected, instruction, handler);
+                    }
+                    sequence = expected++;
+                }
+            }
+        }
+        return sequence;
+    }
+
+    private static void handle(MappedByteBuffer segment, int offset, long sequence, InstructionFlyweight instruction,
+            Handler handler) throws IOException {
+        int message = offset + JournalFormat.MESSAGE_OFFSET;
+        if (!MessageHeader.isValid(segment, message)) {
+            throw new IOException("Record " + sequence + " is not a message of the codec schema, "
+                    + "the journal was written in another format");
+        }
+        int body = offset + JournalFormat.BODY_OFFSET;
+        switch (MessageHeader.templateId(segment, message)) {
+            case JournalFormat.INSTRUCTION:
+                handler.onInstruction(sequence, segment.getLong(offset + JournalFormat.TIMESTAMP_OFFSET),
+                        instruction.wrapForDecode(segment, message).toInstruction(),
+                        segment.getLong(offset + JournalFormat.CLIENT_ID_OFFSET));
+                break;
+            case JournalFormat.CLIENT:
+                handler.onClient(sequence, segment.getLong(offset + JournalFormat.CLIENT_ID_OFFSET));
+                break;
+            case JournalFormat.INSTRUMENT:
+                handler.onInstrument(sequence, segment.getInt(body + JournalFormat.SYMBOL_OFFSET),
+                        Double.longBitsToDouble(segment.getLong(body + JournalFormat.PREV_CLOSE_OFFSET)),
+                        Double.longBitsToDouble(segment.getLong(body + JournalFormat.TICK_SIZE_OFFSET)),
+                        segment.getLong(body + JournalFormat.LOT_SIZE_OFFSET));
+                break;
+            case JournalFormat.ORDER_IDS:
+                handler.onOrderIds(sequence, segment.getLong(body + JournalFormat.NEXT_ORDER_ID_OFFSET),
+                        segment.getLong(body + JournalFormat.STRIDE_OFFSET));
+                break;
+            default:
+                break; //A record type of a newer version, skipped
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.jpmorgan.journal;
+
+import com.jpmorgan.BookOutputMode;
+import com.jpmorgan.ExchangeSimulator;
+import com.jpmorgan.instruction.Instruction;
+import com.jpmorgan.instruction.InstructionAction;
+import com.jpmorgan.metrics.LatencyHistogram;
+import com.jpmorgan.orderbook.BookEngine;
+import com.jpmorgan.orderbook.OrderIdSequence;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Offline tool replaying a recorded instruction journal into a new exchange simulator as fast as it can,
+ * with no text output, to qualify changes of the matching engine against whole days of flow.
+ * It reports the throughput, a latency histogram per InstructionAction and a hash of the final state
+ * of the exchange. The replay is deterministic: the order ids come from the journal, so the same journal
+ * gives the same hash on every run and on every engine computing the same books.
+ *
+ * Usage: JournalReplayer journalDirectory [-engine TREE|LADDER] [-runs N]
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class JournalReplayer {
+
+    private static final InstructionAction[] ACTIONS = InstructionAction.values();
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * What a replay measured
+     */
+    public static final class Result {
+
+        private final long recordNum;
+        private final long instructionNum;
+        private final long elapsedNanos;
+        private final LatencyHistogram[] latencies;
+        private final long stateHash;
+        private final ExchangeSimulator exchange;
+
+        private Result(long recordNum, long instructionNum, long elapsedNanos, LatencyHistogram[] latencies,
+                       long stateHash, ExchangeSimulator exchange) {
+            this.recordNum = recordNum;
+            this.instructionNum = instructionNum;
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies;
+            this.stateHash = stateHash;
+            this.exchange = exchange;
+        }
+
+        public long getRecordNum() {
+            return this.recordNum;
+        }
+
+        public long getInstructionNum() {
+            return this.instructionNum;
+        }
+
+        public long getElapsedNanos() {
+            return this.elapsedNanos;
+        }
+
+        public double getInstructionsPerSecond() {
+            return this.elapsedNanos == 0 ? 0 : this.instructionNum * 1e9 / this.elapsedNanos;
+        }
+
+        /**
+         * Get the latencies in nanoseconds of the instructions of an action
+         */
+        public LatencyHistogram getLatencies(InstructionAction action) {
+            return this.latencies[action.ordinal()];
+        }
+
+        public long getStateHash() {
+            return this.stateHash;
+        }
+
+        /**
+         * Get the exchange the journal was replayed into
+         */
+        public ExchangeSimulator getExchange() {
+            return this.exchange;
+        }
+
+        public void print(PrintStream out) {
+            out.printf("Replayed %d records, %d instructions in %.3f s: %.0f instructions/s%n",
+                    this.recordNum, this.instructionNum, this.elapsedNanos / 1e9, getInstructionsPerSecond());
+            out.println("Latency (ns) per action:");
+            for (InstructionAction action : ACTIONS) {
+                LatencyHistogram histogram = this.latencies[action.ordinal()];
+                if (histogram.getTotalCount() > 0) {
+                    out.printf("  %-15s %s%n", action, histogram.summary());
+                }
+            }
+            out.printf("State hash: %016x%n", this.stateHash);
+        }
+    }
+
+    private JournalReplayer() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: JournalReplayer journalDirectory [-engine TREE|LADDER] [-runs N]");
+            System.exit(1);
+        }
+
+        Path directory = Paths.get(args[0]);
+        BookEngine engine = BookEngine.TREE;
+        int runs = 1;
+        for (int i = 1; i < args.length; i++) {
+            if ("-engine".equals(args[i]) && i + 1 < args.length) {
+                engine = BookEngine.valueOf(args[++i]);
+            }
+            else if ("-runs".equals(args[i]) && i + 1 < args.length) {
+                runs = Integer.parseInt(args[++i]);
+            }
+        }
+
+        long firstHash = 0;
+        for (int run = 1; run <= runs; run++) {
+            System.out.println("Run " + run + ", engine " + engine);
+            Result result = replay(directory, engine);
+            result.print(System.out);
+            if (run == 1) {
+                firstHash = result.getStateHash();
+            }
+            else if (result.getStateHash() != firstHash) {
+                System.out.println("State hash differs from the first run");
+                System.exit(2);
+            }
+        }
+    }
+
+    /**
+     * Replay a whole journal into a new exchange simulator with no output
+     * @param directory  the directory of the journal segment files
+     * @param engine  how the order books store their price levels
+     * @return what the replay measured, with the exchange in its final state
+     */
+    public static Result replay(Path directory, BookEngine engine) throws IOException {
+        ExchangeSimulator exchange = new ExchangeSimulator(engine);
+        exchange.setBookOutputMode(BookOutputMode.OFF);
+
+        LatencyHistogram[] latencies = new LatencyHistogram[ACTIONS.length];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        long[] instructionNum = new long[1];
+
+        long start = System.nanoTime();
+        long recordNum = JournalReader.read(directory, 1, new JournalReader.Handler() {
+            public void onInstrument(long sequence, int symbolId, double prevClose, double tickSize, long lotSize) {
+                exchange.listInstrument(symbolId, prevClose, tickSize, lotSize);
+            }
+
+            public void onClient(long sequence, long clientID) {
+                exchange.restoreClient(clientID);
+            }
+
+            public void onOrderIds(long sequence, long nextOrderId, long stride) {
+                exchange.setOrderIdSequence(new OrderIdSequence(nextOrderId, stride));
+            }
+
+            public void onInstruction(long sequence, long timestamp, Instruction instruction, long clientID) {
+                long before = System.nanoTime();
+                exchange.receiveInstruction(instruction, clientID);
+                latencies[instruction.getAction().ordinal()].record(System.nanoTime() - before);
+                instructionNum[0]++;
+            }
+        });
+        long elapsed = System.nanoTime() - start;
+
+        return new Result(recordNum, instructionNum[0], elapsed, latencies, stateHash(exchange), exchange);
+    }
+
+    /**
+     * Hash the state of an exchange: its clients, its order id sequence and the resting orders of its books
+     * in price-time order. Two exchanges holding the same orders in the same queues have the same hash
+     */
+    public static long stateHash(ExchangeSimulator exchange) {
+        ByteBuffer content = exchange.takeSnapshot().getContent();
+        long hash = FNV_OFFSET_BASIS;
+        while (content.hasRemaining()) {
+            hash = (hash ^ (content.get() & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,62 @@
+package com.jpmorgan.journal;
+
+import com.jpmorgan.ExchangeSimulator;
+import com.jpmorgan.instruction.Instruction;
+import com.jpmorgan.orderbook.OrderIdSequence;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Rebuilds the state of an exchange simulator at startup, from the latest snapshot and the journal records after it,
+ * so that only the tail of the journal is replayed rather than the whole day
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class Recovery {
+
+    private Recovery() {
+    }
+
+    /**
+     * Rebuild the state of a new exchange simulator, which must not have a journal set yet.
+     * The clients come back as placeholders dropping their messages, until the real clients are attached again.
+     * The journal can be opened and set on the exchange afterwards, it carries on after its last record
+     * @param exchange  the exchange, as it is created, with its output settings
+     * @param snapshotDirectory  the directory of the snapshot files
+     * @param journalDirectory  the directory of the journal segment files
+     * @return the sequence of the last journal record included in the state, 0 if there is none
+     */
+    public static long recover(ExchangeSimulator exchange, Path snapshotDirectory, Path journalDirectory) throws IOException {
+        if (exchange.getJournal() != null) {
+            throw new IllegalStateException("The journal is set while recovering, the replayed instructions would be journaled again");
+        }
+
+        long fromSequence = 1;
+        ExchangeSnapshot snapshot = ExchangeSnapshot.readLatest(snapshotDirectory);
+        if (snapshot != null) {
+            exchange.restoreSnapshot(snapshot);
+            fromSequence = snapshot.getJournalSequence() + 1;
+        }
+
+        long last = JournalReader.read(journalDirectory, fromSequence, new JournalReader.Handler() {
+            public void onInstrument(long sequence, int symbolId, double prevClose, double tickSize, long lotSize) {
+                exchange.listInstrument(symbolId, prevClose, tickSize, lotSize);
+            }
+
+            public void onClient(long sequence, long clientID) {
+                exchange.restoreClient(clientID);
+            }
+
+            public void onOrderIds(long sequence, long nextOrderId, long stride) {
+                exchange.setOrderIdSequence(new OrderIdSequence(nextOrderId, stride));
+            }
+
+            public void onInstruction(long sequence, long timestamp, Instruction instruction, long clientID) {
+                exchange.receiveInstruction(instruction, clientID);
+            }
+        });
+
+        return Math.max(last, fromSequence - 1);
+    }
+}
@@ -0,0 +1,225 @@
+package com.jpmorgan.load;
+
+import com.jpmorgan.BookOutputMode;
+import com.jpmorgan.ExchangeSimulator;
+import com.jpmorgan.client.Client;
+import com.jpmorgan.instruction.Instruction;
+import com.jpmorgan.message.ExchangeMessage;
+import com.jpmorgan.message.OrderMessage;
+import com.jpmorgan.orderbook.BookEngine;
+import com.jpmorgan.orderbook.OrderIdSequence;
+import com.jpmorgan.orderbook.OrderState;
+import com.jpmorgan.orderbook.Price;
+import com.jpmorgan.orderbook.Side;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Measures the bytes allocated by an exchange simulator for each kind of instruction, on the thread processing them,
+ * with com.sun.management.ThreadMXBean.getThreadAllocatedBytes. The workload is a fixed cycle of instructions on a
+ * book of a few levels per side, which leaves the book as it found it:
+ * a passive order is placed, its quantity and its price are amended, and it is canceled; an aggressive limit order
+ * and a market order each take one resting order, which a passive order then puts back.
+ * All output and logging is off, and the messages are dropped by the client as they come, so what is counted
+ * is what the exchange allocates. The instructions are created outside of the measurements.
+ *
+ * Usage: AllocationHarness [-cycles N] [-warmup N] [-engine TREE|LADDER]
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class AllocationHarness {
+
+    private static final double PREV_CLOSE = 100.0;
+    private static final double TICK_SIZE = 0.01;
+    private static final long LOT_SIZE = 100;
+    private static final int DEPTH = 10; //The number of levels on each side
+    private static final int ORDERS_PER_LEVEL = 4;
+
+    private static final FlowMix.Kind[] KINDS = FlowMix.Kind.values();
+
+    /**
+     * Client dropping the messages of the exchange, only keeping the id of the last order placed
+     */
+    private static final class DroppingClient extends Client {
+
+        private long lastPlacedId;
+
+        DroppingClient() {
+            super("AllocationHarness");
+        }
+
+        public void receiveExchangeMessage(ExchangeMessage message) {
+            if (message instanceof OrderMessage && ((OrderMessage)message).getOrderState() == OrderState.PLACE_ACKED) {
+                this.lastPlacedId = ((OrderMessage)message).getOrderID();
+            }
+        }
+
+        public void receiveExchangeMessages(List<ExchangeMessage> batch) {
+            for (int i = 0; i < batch.size(); i++) {
+                receiveExchangeMessage(batch.get(i));
+            }
+        }
+    }
+
+    /**
+     * What a run measured
+     */
+    public static final class Result {
+
+        private final long[] bytes = new long[KINDS.length];
+        private final long[] counts = new long[KINDS.length];
+
+        private void add(FlowMix.Kind kind, long allocated) {
+            this.bytes[kind.ordinal()] += allocated;
+            this.counts[kind.ordinal()]++;
+        }
+
+        public long getInstructionNum(FlowMix.Kind kind) {
+            return this.counts[kind.ordinal()];
+        }
+
+        /**
+         * Get the mean number of bytes allocated to process an instruction of a kind
+         */
+        public double getBytesPerInstruction(FlowMix.Kind kind) {
+            long count = this.counts[kind.ordinal()];
+            return count == 0 ? 0 : (double)this.bytes[kind.ordinal()] / count;
+        }
+
+        public void print(PrintStream out) {
+            for (FlowMix.Kind kind : KINDS) {
+                out.printf("%-16s %8d instructions %10.1f bytes/instruction%n", kind, getInstructionNum(kind),
+                        getBytesPerInstruction(kind));
+            }
+        }
+    }
+
+    private final com.sun.management.ThreadMXBean threads;
+    private final long threadId;
+    private final long meterBytes; //What reading the allocated bytes allocates itself, taken off every measurement
+
+    private final ExchangeSimulator exchange;
+    private final DroppingClient client;
+    private final long tickTicks;
+
+    /**
+     * @param engine  the engine of the order book, null for the engine and the off-heap store chosen by the system properties
+     *                of OrderBook
+     */
+    public AllocationHarness(BookEngine engine) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Thread allocation counting is not available in this JVM");
+        }
+        this.threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        this.threads.setThreadAllocatedMemoryEnabled(true);
+        this.threadId = Thread.currentThread().getId();
+
+        long meterBytes = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long before = allocatedBytes();
+            meterBytes = Math.min(meterBytes, allocatedBytes() - before);
+        }
+        this.meterBytes = meterBytes;
+
+        this.exchange = new ExchangeSimulator(engine);
+        this.exchange.setBookOutputMode(BookOutputMode.OFF);
+        this.exchange.setOrderIdSequence(new OrderIdSequence(1, 1));
+        this.exchange.listInstrument(Instruction.DEFAULT_SYMBOL, PREV_CLOSE, TICK_SIZE, LOT_SIZE);
+        this.client = new DroppingClient();
+        this.exchange.registerClient(this.client);
+        this.tickTicks = Price.toTicks(TICK_SIZE);
+
+        long prevCloseTicks = Price.toTicks(PREV_CLOSE);
+        for (int level = 1; level <= DEPTH; level++) {
+            for (int i = 0; i < ORDERS_PER_LEVEL; i++) {
+                send(Instruction.createPlaceLimitInstructionInTicks(prevCloseTicks - level * this.tickTicks, LOT_SIZE, Side.BUY));
+                send(Instruction.createPlaceLimitInstructionInTicks(prevCloseTicks + level * this.tickTicks, LOT_SIZE, Side.SELL));
+            }
+        }
+    }
+
+    /**
+     * Whether the JVM counts the bytes allocated by each thread
+     */
+    public static boolean isSupported() {
+        return ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean()).isThreadAllocatedMemorySupported();
+    }
+
+    public ExchangeSimulator getExchange() {
+        return this.exchange;
+    }
+
+    /**
+     * Run a number of cycles of the workload, on the calling thread, which must be the thread the harness was created on
+     * @param cycles  the number of cycles, each sending 1 instruction of every kind but PASSIVE_LIMIT, which is sent 3 times
+     */
+    public Result run(int cycles) {
+        if (Thread.currentThread().getId() != this.threadId) {
+            throw new IllegalStateException("The harness runs on the thread it was created on");
+        }
+
+        Result result = new Result();
+        long bestBidTicks = Price.toTicks(PREV_CLOSE) - this.tickTicks;
+        long bestAskTicks = Price.toTicks(PREV_CLOSE) + this.tickTicks;
+        long passiveTicks = Price.toTicks(PREV_CLOSE) - DEPTH / 2 * this.tickTicks;
+
+        for (int cycle = 0; cycle < cycles; cycle++) {
+            measure(result, FlowMix.Kind.PASSIVE_LIMIT,
+                    Instruction.createPlaceLimitInstructionInTicks(passiveTicks, 3 * LOT_SIZE, Side.BUY));
+            long orderId = this.client.lastPlacedId;
+            measure(result, FlowMix.Kind.AMEND_QUANTITY, Instruction.createAmendQuantityInstruction(Side.BUY, 2 * LOT_SIZE, orderId));
+            measure(result, FlowMix.Kind.AMEND_PRICE,
+                    Instruction.createAmendPriceInstructionInTicks(Side.BUY, passiveTicks - this.tickTicks, orderId));
+            measure(result, FlowMix.Kind.CANCEL, Instruction.createCancelInstruction(Side.BUY, orderId));
+
+            //Each one takes the resting order at the front of the best level, which goes back at the end of the queue
+            measure(result, FlowMix.Kind.AGGRESSIVE_LIMIT, Instruction.createPlaceLimitInstructionInTicks(bestAskTicks, LOT_SIZE, Side.BUY));
+            measure(result, FlowMix.Kind.PASSIVE_LIMIT, Instruction.createPlaceLimitInstructionInTicks(bestAskTicks, LOT_SIZE, Side.SELL));
+            measure(result, FlowMix.Kind.MARKET, Instruction.createPlaceMarketInstruction(LOT_SIZE, Side.SELL));
+            measure(result, FlowMix.Kind.PASSIVE_LIMIT, Instruction.createPlaceLimitInstructionInTicks(bestBidTicks, LOT_SIZE, Side.BUY));
+        }
+        return result;
+    }
+
+    private void measure(Result result, FlowMix.Kind kind, Instruction instruction) {
+        long before = allocatedBytes();
+        send(instruction);
+        result.add(kind, allocatedBytes() - before - this.meterBytes);
+    }
+
+    private void send(Instruction instruction) {
+        this.exchange.receiveInstruction(instruction, this.client.getClientID());
+    }
+
+    private long allocatedBytes() {
+        return this.threads.getThreadAllocatedBytes(this.threadId);
+    }
+
+    public static void main(String[] args) {
+        int cycles = 100_000;
+        int warmupCycles = 50_000;
+        BookEngine engine = BookEngine.TREE;
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                System.err.println("Missing value of option " + args[i]);
+                System.exit(1);
+            }
+            switch (args[i]) {
+                case "-cycles": cycles = Integer.parseInt(args[i + 1]); break;
+                case "-warmup": warmupCycles = Integer.parseInt(args[i + 1]); break;
+                case "-engine": engine = BookEngine.valueOf(args[i + 1]); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        AllocationHarness harness = new AllocationHarness(engine);
+        harness.run(warmupCycles);
+        System.out.println("Engine " + engine + ", " + cycles + " cycles after " + warmupCycles + " warmup cycles");
+        harness.run(cycles).print(System.out);
+    }
+}
@@ -0,0 +1,87 @@
+package com.jpmorgan.load;
+
+import java.util.Random;
+
+/**
+ * The share of each kind of instruction in a synthetic order flow, as relative weights
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class FlowMix {
+
+    /**
+     * The kinds of instruction of a synthetic order flow
+     */
+    public enum Kind {
+        PASSIVE_LIMIT, //A limit order on its own side of prevClose, resting in the book
+        AGGRESSIVE_LIMIT, //A limit order priced through prevClose, trading with the other side if there is any
+        MARKET, //A market order
+        CANCEL, //A cancel of a live order
+        AMEND_PRICE, //A live order moved to another passive price
+        AMEND_QUANTITY //A live order given another quantity
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    /**
+     * Mostly passive flow with a steady share of cancels, roughly what a lit book sees
+     */
+    public static final FlowMix DEFAULT = new FlowMix(40, 8, 2, 38, 7, 5);
+
+    private final double[] cumulative = new double[KINDS.length];
+
+    public FlowMix(double passiveLimit, double aggressiveLimit, double market, double cancel, double amendPrice,
+                   double amendQuantity) {
+        double[] weights = {passiveLimit, aggressiveLimit, market, cancel, amendPrice, amendQuantity};
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] < 0) {
+                throw new IllegalArgumentException("Negative weight " + weights[i] + " for " + KINDS[i]);
+            }
+            total += weights[i];
+            this.cumulative[i] = total;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("Flow mix has no weight");
+        }
+        for (int i = 0; i < this.cumulative.length; i++) {
+            this.cumulative[i] /= total;
+        }
+    }
+
+    /**
+     * Parse a mix given as 6 comma separated weights, in the order of Kind
+     */
+    public static FlowMix parse(String weights) {
+        String[] parts = weights.split(",");
+        if (parts.length != KINDS.length) {
+            throw new IllegalArgumentException("Flow mix needs " + KINDS.length + " weights: " + weights);
+        }
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Double.parseDouble(parts[i].trim());
+        }
+        return new FlowMix(values[0], values[1], values[2], values[3], values[4], values[5]);
+    }
+
+    /**
+     * Draw the kind of the next instruction
+     */
+    public Kind draw(Random random) {
+        double u = random.nextDouble();
+        for (int i = 0; i < this.cumulative.length - 1; i++) {
+            if (u < this.cumulative[i]) {
+                return KINDS[i];
+            }
+        }
+        return KINDS[KINDS.length - 1];
+    }
+
+    /**
+     * Get the share of a kind of instruction, from 0 to 1
+     */
+    public double share(Kind kind) {
+        int i = kind.ordinal();
+        return this.cumulative[i] - (i == 0 ? 0 : this.cumulative[i - 1]);
+    }
+}
@@ -0,0 +1,275 @@
+package com.jpmorgan.load;
+
+import com.jpmorgan.BookOutputMode;
+import com.jpmorgan.ExchangeSimulator;
+import com.jpmorgan.client.Client;
+import com.jpmorgan.instruction.Instruction;
+import com.jpmorgan.message.ExchangeMessage;
+import com.jpmorgan.metrics.InstructionMetrics;
+import com.jpmorgan.metrics.LatencyHistogram;
+import com.jpmorgan.orderbook.BookEngine;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Drives an exchange simulator with a synthetic order flow and measures the end-to-end latency of each
+ * instruction, from the time it is sent until the exchange has delivered its messages back to the client.
+ *
+ * With an arrival rate, the instructions arrive as a Poisson process: each one has an intended send time drawn
+ * ahead of time, and if the exchange is late the next one is sent as soon as it can. The response time is counted
+ * from the intended send time, so a stall of the exchange shows in the latency of every instruction which should
+ * have been sent during it, not only the one stuck in it. This is the coordinated omission correction, the service
+ * time counted from the actual send time is reported as well. Without a rate the instructions are sent back to back
+ * and the two are the same.
+ *
+ * Usage: LoadGenerator [-n N] [-warmup N] [-rate instructionsPerSecond] [-seed S] [-mode DIRECT|CLIENT]
+ *                      [-mix passive,aggressive,market,cancel,amendPrice,amendQuantity] [-engine TREE|LADDER] [-metrics]
+ * With -metrics, the time of each stage of the instructions in the exchange is reported as well.
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class LoadGenerator {
+
+    private static final double PREV_CLOSE = 100.0;
+    private static final double TICK_SIZE = 0.01;
+    private static final long LOT_SIZE = 100;
+
+    /**
+     * How the instructions reach the exchange
+     */
+    public enum Mode {
+        DIRECT, //Given to the exchange straight away
+        CLIENT //Sent by the client, which prints what it sends like any client does
+    }
+
+    /**
+     * Client feeding the messages of the exchange back into the flow, instead of keeping them
+     */
+    private static final class LoadClient extends Client {
+
+        private final OrderFlowGenerator flow;
+
+        LoadClient(OrderFlowGenerator flow) {
+            super("LoadGenerator");
+            this.flow = flow;
+        }
+
+        public void receiveExchangeMessage(ExchangeMessage message) {
+            this.flow.onMessage(message);
+        }
+    }
+
+    /**
+     * Writer dropping what it is given, for the output of the client
+     */
+    private static final class NullWriter extends Writer {
+
+        public void write(char[] buffer, int offset, int length) {
+        }
+
+        public void flush() {
+        }
+
+        public void close() {
+        }
+    }
+
+    /**
+     * What a run measured
+     */
+    public static final class Result {
+
+        private final long instructionNum;
+        private final long elapsedNanos;
+        private final LatencyHistogram responseTime;
+        private final LatencyHistogram serviceTime;
+
+        private Result(long instructionNum, long elapsedNanos, LatencyHistogram responseTime, LatencyHistogram serviceTime) {
+            this.instructionNum = instructionNum;
+            this.elapsedNanos = elapsedNanos;
+            this.responseTime = responseTime;
+            this.serviceTime = serviceTime;
+        }
+
+        public long getInstructionNum() {
+            return this.instructionNum;
+        }
+
+        public long getElapsedNanos() {
+            return this.elapsedNanos;
+        }
+
+        public double getInstructionsPerSecond() {
+            return this.elapsedNanos == 0 ? 0 : this.instructionNum * 1e9 / this.elapsedNanos;
+        }
+
+        /**
+         * Get the latencies in nanoseconds counted from the intended send times, corrected for coordinated omission
+         */
+        public LatencyHistogram getResponseTime() {
+            return this.responseTime;
+        }
+
+        /**
+         * Get the latencies in nanoseconds counted from the actual send times
+         */
+        public LatencyHistogram getServiceTime() {
+            return this.serviceTime;
+        }
+
+        public void print(PrintStream out) {
+            out.printf("Sent %d instructions in %.3f s: %.0f instructions/s%n",
+                    this.instructionNum, this.elapsedNanos / 1e9, getInstructionsPerSecond());
+            out.println("Response time (ns): " + this.responseTime.summary());
+            out.println("Service time (ns):  " + this.serviceTime.summary());
+        }
+    }
+
+    private final ExchangeSimulator exchange;
+    private final OrderFlowGenerator flow;
+    private final LoadClient client;
+    private final Random arrivals;
+
+    private Mode mode = Mode.DIRECT;
+    private double rate; //Instructions per second, 0 to send them back to back
+
+    /**
+     * @param exchange  the exchange, with the instrument of the flow listed
+     * @param flow  the flow sent, which a new client of the exchange sends
+     * @param seed  the seed of the arrival times
+     */
+    public LoadGenerator(ExchangeSimulator exchange, OrderFlowGenerator flow, long seed) {
+        this.exchange = exchange;
+        this.flow = flow;
+        this.arrivals = new Random(seed);
+
+        this.client = new LoadClient(flow);
+        this.client.setOutWriter(new PrintWriter(new NullWriter()));
+        this.client.setExchangeSimulator(exchange);
+        exchange.registerClient(this.client);
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Set the mean arrival rate of the instructions per second, 0 to send them back to back
+     */
+    public void setRate(double rate) {
+        this.rate = rate;
+    }
+
+    public Client getClient() {
+        return this.client;
+    }
+
+    /**
+     * Send a number of instructions of the flow and measure them
+     */
+    public Result run(long instructionNum) {
+        LatencyHistogram responseTime = new LatencyHistogram();
+        LatencyHistogram serviceTime = new LatencyHistogram();
+
+        long start = System.nanoTime();
+        long intended = start;
+        long done = start;
+        for (long i = 0; i < instructionNum; i++) {
+            Instruction instruction = this.flow.next();
+
+            long sent;
+            if (this.rate > 0) {
+                intended += nextInterval();
+                while ((sent = System.nanoTime()) < intended) {
+                    //Spin until the intended send time, sleeping is far too coarse at these rates
+                }
+            }
+            else {
+                sent = System.nanoTime();
+                intended = sent;
+            }
+
+            if (this.mode == Mode.CLIENT) {
+                this.client.sendInstructionToExchange(instruction);
+            }
+            else {
+                this.exchange.receiveInstruction(instruction, this.client.getClientID());
+            }
+
+            done = System.nanoTime();
+            responseTime.record(done - intended);
+            serviceTime.record(done - sent);
+        }
+
+        return new Result(instructionNum, done - start, responseTime, serviceTime);
+    }
+
+    /**
+     * Draw the time to the next arrival of a Poisson process, in nanoseconds
+     */
+    private long nextInterval() {
+        return (long)(-Math.log(1 - this.arrivals.nextDouble()) * 1e9 / this.rate);
+    }
+
+    public static void main(String[] args) {
+        long instructionNum = 1_000_000;
+        long warmupNum = 200_000;
+        double rate = 0;
+        long seed = 1;
+        Mode mode = Mode.DIRECT;
+        FlowMix mix = FlowMix.DEFAULT;
+        BookEngine engine = BookEngine.TREE;
+        boolean timeStages = false;
+        for (int i = 0; i < args.length; i += 2) {
+            if ("-metrics".equals(args[i])) {
+                timeStages = true;
+                i--;
+                continue;
+            }
+            if (i + 1 == args.length) {
+                System.err.println("Missing value of option " + args[i]);
+                System.exit(1);
+            }
+            switch (args[i]) {
+                case "-n": instructionNum = Long.parseLong(args[i + 1]); break;
+                case "-warmup": warmupNum = Long.parseLong(args[i + 1]); break;
+                case "-rate": rate = Double.parseDouble(args[i + 1]); break;
+                case "-seed": seed = Long.parseLong(args[i + 1]); break;
+                case "-mode": mode = Mode.valueOf(args[i + 1]); break;
+                case "-mix": mix = FlowMix.parse(args[i + 1]); break;
+                case "-engine": engine = BookEngine.valueOf(args[i + 1]); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        ExchangeSimulator exchange = new ExchangeSimulator(engine);
+        exchange.setBookOutputMode(BookOutputMode.OFF);
+        exchange.listInstrument(0, PREV_CLOSE, TICK_SIZE, LOT_SIZE);
+
+        LoadGenerator generator = new LoadGenerator(exchange,
+                new OrderFlowGenerator(seed, mix, 0, PREV_CLOSE, TICK_SIZE, LOT_SIZE), seed);
+        generator.setMode(mode);
+        generator.setRate(rate);
+
+        InstructionMetrics metrics = timeStages ? new InstructionMetrics() : null;
+        exchange.setMetrics(metrics);
+
+        generator.run(warmupNum);
+        if (metrics != null) {
+            metrics.reset();
+        }
+        System.out.println("Mode " + mode + ", engine " + engine + ", rate "
+                + (rate > 0 ? String.format("%.0f/s", rate) : "unlimited"));
+        generator.run(instructionNum).print(System.out);
+        System.out.println("Live orders of the flow: " + generator.flow.getLiveOrderNum());
+        if (metrics != null) {
+            System.out.println("Stage times (ns):");
+            metrics.snapshot().print(System.out);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.jpmorgan.load;
+
+import com.jpmorgan.instruction.Instruction;
+import com.jpmorgan.message.ExchangeMessage;
+import com.jpmorgan.message.OrderMessage;
+import com.jpmorgan.message.TradeMessage;
+import com.jpmorgan.orderbook.Price;
+import com.jpmorgan.orderbook.Side;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Seeded generator of a synthetic order flow for one instrument, around its prevClose and on its tick size grid.
+ * Passive prices are drawn a few ticks away from prevClose on their own side, exponentially less likely further
+ * out, and aggressive prices a few ticks through it. Quantities are whole lots. Cancels and amends target the live
+ * orders of the flow, which the generator learns from the messages of the exchange given to onMessage; while there
+ * is none, a passive limit order is sent instead. The same seed and the same messages give the same flow.
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class OrderFlowGenerator {
+
+    private static final double MEAN_PASSIVE_TICKS = 5.0;
+    private static final int MAX_AGGRESSIVE_TICKS = 3;
+    private static final int MAX_LOTS = 10;
+
+    private final Random random;
+    private final FlowMix mix;
+    private final int symbolId;
+    private final long prevCloseTicks;
+    private final long tickTicks;
+    private final long lotSize;
+    private final int maxPassiveTicks;
+
+    //The live orders of the flow, in arrays so that a random one is picked in constant time
+    private long[] liveIds = new long[1024];
+    private Side[] liveSides = new Side[1024];
+    private long[] liveQuantities = new long[1024];
+    private int liveNum;
+    private final Map<Long, Integer> liveIndex = new HashMap<>();
+
+    /**
+     * @param seed  the seed of the flow
+     * @param mix  the share of each kind of instruction
+     * @param symbolId  the instrument of the instructions
+     * @param prevClose  the previous close of the instrument, the center of the prices
+     * @param tickSize  the tick size of the instrument
+     * @param lotSize  the lot size of the instrument
+     */
+    public OrderFlowGenerator(long seed, FlowMix mix, int symbolId, double prevClose, double tickSize, long lotSize) {
+        this.random = new Random(seed);
+        this.mix = mix;
+        this.symbolId = symbolId;
+        this.prevCloseTicks = Price.toTicks(prevClose);
+        this.tickTicks = Price.toTicks(tickSize);
+        this.lotSize = Math.max(1, lotSize);
+        //Stay well inside the daily limits of the book
+        this.maxPassiveTicks = (int)Math.max(1, Math.min(1000, this.prevCloseTicks * 4 / 10 / this.tickTicks));
+    }
+
+    /**
+     * Get the next instruction of the flow
+     */
+    public Instruction next() {
+        Side side = this.random.nextBoolean() ? Side.BUY : Side.SELL;
+        FlowMix.Kind kind = this.mix.draw(this.random);
+        if (this.liveNum == 0 && (kind == FlowMix.Kind.CANCEL || kind == FlowMix.Kind.AMEND_PRICE
+                || kind == FlowMix.Kind.AMEND_QUANTITY)) {
+            kind = FlowMix.Kind.PASSIVE_LIMIT;
+        }
+
+        Instruction instruction;
+        int live;
+        switch (kind) {
+            case AGGRESSIVE_LIMIT:
+                long throughTicks = this.tickTicks * (1 + this.random.nextInt(MAX_AGGRESSIVE_TICKS));
+                instruction = Instruction.createPlaceLimitInstructionInTicks(
+                        side == Side.BUY ? this.prevCloseTicks + throughTicks : this.prevCloseTicks - throughTicks,
+                        drawQuantity(), side);
+                break;
+            case MARKET:
+                instruction = Instruction.createPlaceMarketInstruction(drawQuantity(), side);
+                break;
+            case CANCEL:
+                live = this.random.nextInt(this.liveNum);
+                instruction = Instruction.createCancelInstruction(this.liveSides[live], this.liveIds[live]);
+                break;
+            case AMEND_PRICE:
+                live = this.random.nextInt(this.liveNum);
+                instruction = Instruction.createAmendPriceInstructionInTicks(this.liveSides[live],
+                        drawPassivePrice(this.liveSides[live]), this.liveIds[live]);
+                break;
+            case AMEND_QUANTITY:
+                live = this.random.nextInt(this.liveNum);
+                instruction = Instruction.createAmendQuantityInstruction(this.liveSides[live], drawQuantity(),
+                        this.liveIds[live]);
+                break;
+            case PASSIVE_LIMIT:
+            default:
+                instruction = Instruction.createPlaceLimitInstructionInTicks(drawPassivePrice(side), drawQuantity(), side);
+                break;
+        }
+        return this.symbolId == Instruction.DEFAULT_SYMBOL ? instruction : instruction.forSymbol(this.symbolId);
+    }
+
+    /**
+     * Keep track of the live orders of the flow from a message of the exchange
+     */
+    public void onMessage(ExchangeMessage message) {
+        if (message instanceof OrderMessage) {
+            OrderMessage orderMessage = (OrderMessage)message;
+            switch (orderMessage.getOrderState()) {
+                case PLACE_ACKED:
+                    //Taken out again by the fills of its quantity, if it trades on arrival
+                    addLive(orderMessage.getOrderID(), orderMessage.getSide(), orderMessage.getQuantity());
+                    break;
+                case AMEND_QUANTITY_ACKED:
+                    Integer index = this.liveIndex.get(orderMessage.getOrderID());
+                    if (index != null) {
+                        this.liveQuantities[index] = orderMessage.getQuantity();
+                    }
+                    break;
+                case CANCEL_ACKED:
+                    removeLive(orderMessage.getOrderID());
+                    break;
+                default:
+                    break;
+            }
+        }
+        else if (message instanceof TradeMessage) {
+            TradeMessage tradeMessage = (TradeMessage)message;
+            Integer index = this.liveIndex.get(tradeMessage.getOrderId());
+            if (index != null) {
+                this.liveQuantities[index] -= tradeMessage.getFillQuantity();
+                if (this.liveQuantities[index] <= 0) {
+                    removeLive(tradeMessage.getOrderId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of live orders of the flow, as far as the messages given tell
+     */
+    public int getLiveOrderNum() {
+        return this.liveNum;
+    }
+
+    private long drawPassivePrice(Side side) {
+        long distance = 1 + (long)(-Math.log(1 - this.random.nextDouble()) * MEAN_PASSIVE_TICKS);
+        distance = Math.min(distance, this.maxPassiveTicks) * this.tickTicks;
+        return side == Side.BUY ? this.prevCloseTicks - distance : this.prevCloseTicks + distance;
+    }
+
+    private long drawQuantity() {
+        return this.lotSize * (1 + this.random.nextInt(MAX_LOTS));
+    }
+
+    private void addLive(long orderId, Side side, long quantity) {
+        if (this.liveNum == this.liveIds.length) {
+            int capacity = this.liveNum * 2;
+            this.liveIds = Arrays.copyOf(this.liveIds, capacity);
+            this.liveSides = Arrays.copyOf(this.liveSides, capacity);
+            this.liveQuantities = Arrays.copyOf(this.liveQuantities, capacity);
+        }
+        this.liveIds[this.liveNum] = orderId;
+        this.liveSides[this.liveNum] = side;
+        this.liveQuantities[this.liveNum] = quantity;
+        this.liveIndex.put(orderId, this.liveNum++);
+    }
+
+    private void removeLive(long orderId) {
+        Integer index = this.liveIndex.remove(orderId);
+        if (index == null) {
+            return;
+        }
+        //Move the last live order into the hole
+        int last = --this.liveNum;
+        if (index != last) {
+            this.liveIds[index] = this.liveIds[last];
+            this.liveSides[index] = this.liveSides[last];
+            this.liveQuantities[index] = this.liveQuantities[last];
+            this.liveIndex.put(this.liveIds[index], index);
+        }
+        this.liveSides[last] = null;
+    }
+}
@@ -0,0 +1,241 @@
+package com.jpmorgan.log;
+
+import com.jpmorgan.instruction.Instruction;
+import com.jpmorgan.orderbook.Side;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log of the exchange events as fixed-size binary records, which replaces formatting text on the matching thread.
+ * Logging an event writes a few fields into the next record of a preallocated ring of records, with no allocation,
+ * formatting or system call. A background thread writes the records to the log file through a FileChannel,
+ * in as large chunks as are available, and EventLogDecoder turns the file back into the text output of the exchange.
+ *
+ * Only one thread may log into an event log, the matching thread owning the exchange. When the writer falls behind
+ * by a whole ring, the matching thread waits for it so that no event is lost, which getStallNum counts.
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class BinaryEventLog implements Closeable {
+
+    public static final int RECORD_SIZE = 64;
+
+    //Record types
+    public static final byte INSTRUMENT = 1;
+    public static final byte CLIENT = 2;
+    public static final byte INSTRUCTION = 3;
+    public static final byte TRADE = 4;
+
+    /*
+     * Record layout, in little endian. The fields not used by a record type are left at zero
+     * INSTRUMENT: symbol, price = raw bits of the previous close, quantity = lot size, order id = raw bits of the tick size
+     * CLIENT: client id
+     * INSTRUCTION: every field, order id = the id of the instruction, assigned order id = the id the order placed got
+     * TRADE: symbol, side, order id, price, quantity = fill quantity
+     */
+    public static final int TYPE_OFFSET = 0;
+    public static final int ACTION_OFFSET = 1; //The ordinal of the InstructionAction
+    public static final int ORDER_TYPE_OFFSET = 2; //The ordinal of the OrderType
+    public static final int SIDE_OFFSET = 3; //The ordinal of the Side
+    public static final int SYMBOL_OFFSET = 4;
+    public static final int TIMESTAMP_OFFSET = 8; //System.nanoTime when the event is logged
+    public static final int CLIENT_ID_OFFSET = 16;
+    public static final int PRICE_OFFSET = 24;
+    public static final int QUANTITY_OFFSET = 32;
+    public static final int ORDER_ID_OFFSET = 40;
+    public static final int ASSIGNED_ORDER_ID_OFFSET = 48;
+
+    private static final long WRITER_IDLE_NANOS = 100_000L;
+    private static final long STALL_PARK_NANOS = 1_000L;
+
+    private final ByteBuffer records;
+    private final int capacity;
+    private final int mask;
+
+    private final FileChannel channel;
+    private final Thread writer;
+
+    private long head; //The number of records logged, only the logging thread uses it
+    private final AtomicLong published = new AtomicLong(); //The number of records the writer may write
+    private final AtomicLong written = new AtomicLong(); //The number of records written to the file
+
+    private long stallNum;
+
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    /**
+     * Create the log file, replacing any existing one, and start the writer thread
+     * @param path  the log file
+     * @param capacity  the number of records of the ring, a power of 2
+     */
+    public BinaryEventLog(Path path, int capacity) throws IOException {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Event log capacity must be a power of 2: " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.records = ByteBuffer.allocateDirect(capacity * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        this.writer = new Thread(this::writeLoop, "event-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public void logInstrument(int symbolId, double prevClose, double tickSize, long lotSize) {
+        int offset = claim(INSTRUMENT);
+        this.records.putInt(offset + SYMBOL_OFFSET, symbolId);
+        this.records.putLong(offset + PRICE_OFFSET, Double.doubleToRawLongBits(prevClose));
+        this.records.putLong(offset + QUANTITY_OFFSET, lotSize);
+        this.records.putLong(offset + ORDER_ID_OFFSET, Double.doubleToRawLongBits(tickSize));
+        publish();
+    }
+
+    public void logClient(long clientID) {
+        int offset = claim(CLIENT);
+        this.records.putLong(offset + CLIENT_ID_OFFSET, clientID);
+        publish();
+    }
+
+    /**
+     * @param instruction  the instruction processed
+     * @param clientID  the id of the client sending it
+     * @param assignedOrderId  the id of the order placed by the instruction, or -1
+     */
+    public void logInstruction(Instruction instruction, long clientID, long assignedOrderId) {
+        int offset = claim(INSTRUCTION);
+        this.records.put(offset + ACTION_OFFSET, (byte)instruction.getAction().ordinal());
+        this.records.put(offset + ORDER_TYPE_OFFSET, (byte)instruction.getOrderType().ordinal());
+        this.records.put(offset + SIDE_OFFSET, (byte)instruction.getSide().ordinal());
+        this.records.putInt(offset + SYMBOL_OFFSET, instruction.getSymbolId());
+        this.records.putLong(offset + CLIENT_ID_OFFSET, clientID);
+        this.records.putLong(offset + PRICE_OFFSET, instruction.getPriceTicks());
+        this.records.putLong(offset + QUANTITY_OFFSET, instruction.getQuantity());
+        this.records.putLong(offset + ORDER_ID_OFFSET, instruction.getOrderID());
+        this.records.putLong(offset + ASSIGNED_ORDER_ID_OFFSET, assignedOrderId);
+        publish();
+    }
+
+    public void logTrade(int symbolId, long orderId, Side side, long priceTicks, long fillQuantity) {
+        int offset = claim(TRADE);
+        this.records.put(offset + SIDE_OFFSET, (byte)side.ordinal());
+        this.records.putInt(offset + SYMBOL_OFFSET, symbolId);
+        this.records.putLong(offset + PRICE_OFFSET, priceTicks);
+        this.records.putLong(offset + QUANTITY_OFFSET, fillQuantity);
+        this.records.putLong(offset + ORDER_ID_OFFSET, orderId);
+        publish();
+    }
+
+    /**
+     * Get the number of times the logging thread waited for the writer to free a record
+     */
+    public long getStallNum() {
+        return this.stallNum;
+    }
+
+    /**
+     * Get the number of records written to the log file so far
+     */
+    public long getWrittenNum() {
+        return this.written.get();
+    }
+
+    /**
+     * Write the records logged so far, then stop the writer thread and close the log file
+     */
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+
+        try {
+            this.writer.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            this.channel.force(false);
+        }
+        finally {
+            this.channel.close();
+        }
+
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+
+    /**
+     * Get the offset of the next record, with its fields cleared, its type and its timestamp written
+     */
+    private int claim(byte type) {
+        if (this.closed) {
+            throw new IllegalStateException("Event log is closed");
+        }
+
+        while (this.head - this.written.get() >= this.capacity) {
+            if (this.failure != null) {
+                throw new IllegalStateException("Event log writer failed", this.failure);
+            }
+            this.stallNum++;
+            LockSupport.parkNanos(STALL_PARK_NANOS);
+        }
+
+        int offset = ((int)this.head & this.mask) * RECORD_SIZE;
+        for (int i = 0; i < RECORD_SIZE; i += 8) {
+            this.records.putLong(offset + i, 0L);
+        }
+        this.records.put(offset + TYPE_OFFSET, type);
+        this.records.putLong(offset + TIMESTAMP_OFFSET, System.nanoTime());
+        return offset;
+    }
+
+    private void publish() {
+        this.published.lazySet(++this.head); //Ordered after the writes of the record, makes it visible to the writer
+    }
+
+    private void writeLoop() {
+        ByteBuffer view = this.records.duplicate(); //The writer moves the position and limit of its own view only
+
+        try {
+            while (true) {
+                long available = this.published.get();
+                long done = this.written.get();
+                if (available == done) {
+                    if (this.closed && this.published.get() == done) {
+                        return;
+                    }
+                    LockSupport.parkNanos(WRITER_IDLE_NANOS);
+                    continue;
+                }
+
+                //The records up to the end of the ring, the rest is written in the next round
+                int from = (int)done & this.mask;
+                int num = (int)Math.min(available - done, this.capacity - from);
+                view.limit((from + num) * RECORD_SIZE);
+                view.position(from * RECORD_SIZE);
+                while (view.hasRemaining()) {
+                    this.channel.write(view);
+                }
+                this.written.lazySet(done + num);
+            }
+        }
+        catch (IOException e) {
+            this.failure = e;
+        }
+    }
+}
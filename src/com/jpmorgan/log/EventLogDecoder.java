@@ -0,0 +1,198 @@
+package com.jpmorgan.log;
+
+import com.jpmorgan.BookOutputMode;
+import com.jpmorgan.ExchangeSimulator;
+import com.jpmorgan.client.Client;
+import com.jpmorgan.instruction.Instruction;
+import com.jpmorgan.instruction.InstructionAction;
+import com.jpmorgan.instruction.OrderType;
+import com.jpmorgan.message.ExchangeMessage;
+import com.jpmorgan.orderbook.OrderIdSequence;
+import com.jpmorgan.orderbook.Price;
+import com.jpmorgan.orderbook.Side;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static com.jpmorgan.log.BinaryEventLog.*;
+
+/**
+ * Offline tool turning a binary event log back into text.
+ * By default the logged instructions are replayed through an exchange simulator printing its usual text output,
+ * which rebuilds the order books, so the output is the one the exchange would have printed itself.
+ * Each placed order gets the id it got when it was logged. With -raw, every record is printed on one line instead.
+ *
+ * Usage: EventLogDecoder logFile [-raw] [-depth N]
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class EventLogDecoder {
+
+    private static final int CHUNK_RECORDS = 1024;
+
+    private static final InstructionAction[] ACTIONS = InstructionAction.values();
+    private static final OrderType[] ORDER_TYPES = OrderType.values();
+    private static final Side[] SIDES = Side.values();
+
+    /**
+     * Client standing for a logged client in the replay, dropping its messages
+     */
+    private static final class ReplayClient extends Client {
+
+        ReplayClient(long clientID) {
+            super("Client" + clientID);
+            setClientID(clientID);
+        }
+
+        public void receiveExchangeMessage(ExchangeMessage message) {
+        }
+    }
+
+    /**
+     * What is done with each record read from a log
+     */
+    private interface RecordHandler {
+        void handle(ByteBuffer records, int offset);
+    }
+
+    private EventLogDecoder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: EventLogDecoder logFile [-raw] [-depth N]");
+            System.exit(1);
+        }
+
+        Path path = Paths.get(args[0]);
+        boolean raw = false;
+        int depth = 0;
+        for (int i = 1; i < args.length; i++) {
+            if ("-raw".equals(args[i])) {
+                raw = true;
+            }
+            else if ("-depth".equals(args[i]) && i + 1 < args.length) {
+                depth = Integer.parseInt(args[++i]);
+            }
+        }
+
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out));
+        if (raw) {
+            printRecords(path, out);
+        }
+        else {
+            decode(path, out, depth);
+        }
+        out.flush();
+    }
+
+    /**
+     * Replay the instructions of a log and print the text output of the exchange
+     * @param path  the log file
+     * @param out  where the text goes
+     * @param depth  the number of levels printed on each side of the books, 0 for the full books
+     * @return the exchange simulator the log was replayed into
+     */
+    public static ExchangeSimulator decode(Path path, PrintWriter out, int depth) throws IOException {
+        ExchangeSimulator exchange = new ExchangeSimulator();
+        exchange.setOutWriter(out);
+        if (depth > 0) {
+            exchange.setBookOutputMode(BookOutputMode.TOP_N);
+            exchange.setBookOutputDepth(depth);
+        }
+
+        readRecords(path, (records, offset) -> {
+            switch (records.get(offset + TYPE_OFFSET)) {
+                case INSTRUMENT:
+                    exchange.listInstrument(records.getInt(offset + SYMBOL_OFFSET),
+                            Double.longBitsToDouble(records.getLong(offset + PRICE_OFFSET)),
+                            Double.longBitsToDouble(records.getLong(offset + ORDER_ID_OFFSET)),
+                            records.getLong(offset + QUANTITY_OFFSET));
+                    break;
+                case CLIENT:
+                    exchange.attachClient(new ReplayClient(records.getLong(offset + CLIENT_ID_OFFSET)));
+                    break;
+                case INSTRUCTION:
+                    long assignedOrderId = records.getLong(offset + ASSIGNED_ORDER_ID_OFFSET);
+                    if (assignedOrderId > 0) {
+                        exchange.setOrderIdSequence(new OrderIdSequence(assignedOrderId, 1));
+                    }
+                    exchange.receiveInstruction(toInstruction(records, offset), records.getLong(offset + CLIENT_ID_OFFSET));
+                    break;
+                default:
+                    break; //Trades are the result of the replay
+            }
+        });
+
+        return exchange;
+    }
+
+    /**
+     * Print every record of a log on one line
+     */
+    public static void printRecords(Path path, PrintWriter out) throws IOException {
+        readRecords(path, (records, offset) -> {
+            long timestamp = records.getLong(offset + TIMESTAMP_OFFSET);
+            int symbolId = records.getInt(offset + SYMBOL_OFFSET);
+            switch (records.get(offset + TYPE_OFFSET)) {
+                case INSTRUMENT:
+                    out.println(timestamp + " INSTRUMENT symbolId=" + symbolId
+                            + ", prevClose=" + Double.longBitsToDouble(records.getLong(offset + PRICE_OFFSET))
+                            + ", tickSize=" + Double.longBitsToDouble(records.getLong(offset + ORDER_ID_OFFSET))
+                            + ", lotSize=" + records.getLong(offset + QUANTITY_OFFSET));
+                    break;
+                case CLIENT:
+                    out.println(timestamp + " CLIENT clientID=" + records.getLong(offset + CLIENT_ID_OFFSET));
+                    break;
+                case INSTRUCTION:
+                    out.println(timestamp + " INSTRUCTION clientID=" + records.getLong(offset + CLIENT_ID_OFFSET)
+                            + ", assignedOrderID=" + records.getLong(offset + ASSIGNED_ORDER_ID_OFFSET)
+                            + ", " + toInstruction(records, offset));
+                    break;
+                case TRADE:
+                    out.println(timestamp + " TRADE symbolId=" + symbolId
+                            + ", orderId=" + records.getLong(offset + ORDER_ID_OFFSET)
+                            + ", side=" + SIDES[records.get(offset + SIDE_OFFSET)]
+                            + ", " + records.getLong(offset + QUANTITY_OFFSET)
+                            + "@" + Price.format(records.getLong(offset + PRICE_OFFSET)));
+                    break;
+                default:
+                    out.println(timestamp + " UNKNOWN type=" + records.get(offset + TYPE_OFFSET));
+                    break;
+            }
+        });
+    }
+
+    private static Instruction toInstruction(ByteBuffer records, int offset) {
+        return Instruction.create(records.getInt(offset + SYMBOL_OFFSET),
+                ACTIONS[records.get(offset + ACTION_OFFSET)],
+                records.getLong(offset + PRICE_OFFSET),
+                records.getLong(offset + QUANTITY_OFFSET),
+                records.getLong(offset + ORDER_ID_OFFSET),
+                ORDER_TYPES[records.get(offset + ORDER_TYPE_OFFSET)],
+                SIDES[records.get(offset + SIDE_OFFSET)]);
+    }
+
+    private static void readRecords(Path path, RecordHandler handler) throws IOException {
+        ByteBuffer records = ByteBuffer.allocateDirect(CHUNK_RECORDS * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            //A partial record left at the end of a log not closed properly is ignored
+            while (channel.read(records) >= 0) {
+                records.flip();
+                int end = records.limit() - records.limit() % RECORD_SIZE;
+                for (int offset = 0; offset < end; offset += RECORD_SIZE) {
+                    handler.handle(records, offset);
+                }
+                records.position(end);
+                records.compact();
+            }
+        }
+    }
+}
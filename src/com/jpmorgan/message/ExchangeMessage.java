@@ -1,7 +1,14 @@
 package com.jpmorgan.message;
 
+import com.jpmorgan.instruction.Instruction;
+
 public class ExchangeMessage {
 
+    //The symbol field of toString, left out for the default instrument so its output reads as before
+    static String symbolField(int symbolId)
+    {
+        return symbolId == Instruction.DEFAULT_SYMBOL ? "" : "symbolId=" + symbolId + ", ";
+    }
 }
 
 
@@ -1,27 +1,41 @@
 package com.jpmorgan.message;
 
+import com.jpmorgan.instruction.Instruction;
 import com.jpmorgan.orderbook.OrderState;
+import com.jpmorgan.orderbook.Price;
 import com.jpmorgan.orderbook.Side;
 
 public class OrderMessage extends ExchangeMessage {
 
+    final int symbolId;
     final OrderState state;
     final long orderID;
     final Side side;
-    final double price;
+    final long priceTicks; //Price.NO_PRICE when the message carries no price, Price.OFF_GRID for a price rejected off the grid
     final long quantity;
     final String reason;
 
-    public OrderMessage(OrderState state, long orderID, Side side, double price, long quantity, String reason)
+    public OrderMessage(OrderState state, long orderID, Side side, long priceTicks, long quantity, String reason)
     {
+        this(Instruction.DEFAULT_SYMBOL, state, orderID, side, priceTicks, quantity, reason);
+    }
+
+    public OrderMessage(int symbolId, OrderState state, long orderID, Side side, long priceTicks, long quantity, String reason)
+    {
+        this.symbolId = symbolId;
         this.state = state;
         this.orderID = orderID;
         this.side = side;
-        this.price = price;
+        this.priceTicks = priceTicks;
         this.quantity = quantity;
         this.reason = reason;
     }
 
+    public int getSymbolId()
+    {
+        return symbolId;
+    }
+
     public OrderState getOrderState()
     {
         return state;
@@ -35,8 +49,16 @@ public class OrderMessage extends ExchangeMessage {
         return side;
     }
 
+    /**
+     * Get the raw price of the message, NaN if it carries none, as the rejects of a cancel or an amend,
+     * or if its price is not on the grid of ticks
+     */
     public double getPrice() {
-        return price;
+        return Price.isPrice(priceTicks) ? Price.toRawPrice(priceTicks) : Double.NaN;
+    }
+
+    public long getPriceTicks() {
+        return priceTicks;
     }
 
     public long getQuantity() {
@@ -49,7 +71,7 @@ public class OrderMessage extends ExchangeMessage {
 
     public String toString()
     {
-        return "[orderState=" + state + ", orderId=" + orderID + ", side=" + side + ", price=" + price + ", quantity=" + quantity + ", reason=" + reason + "]";
+        return "[" + symbolField(symbolId) + "orderState=" + state + ", orderId=" + orderID + ", side=" + side + ", price=" + getPrice() + ", quantity=" + quantity + ", reason=" + reason + "]";
     }
 }
 
@@ -15,6 +15,21 @@ public class RegisterMessage extends ExchangeMessage {
         this.reason = reason;
     }
 
+    public ClientState getClientState()
+    {
+        return clientState;
+    }
+
+    public long getClientID()
+    {
+        return clientID;
+    }
+
+    public String getReason()
+    {
+        return reason;
+    }
+
     public String toString()
     {
         return "[clientState=" + clientState + ", clientID=" + clientID + ", reason=" + reason + "]";
@@ -1,28 +1,45 @@
 package com.jpmorgan.message;
 
+import com.jpmorgan.instruction.Instruction;
+import com.jpmorgan.orderbook.Price;
 import com.jpmorgan.orderbook.Side;
 
 public class TradeMessage extends ExchangeMessage {
 
+    int symbolId;
     long orderId;
-    double price;
+    long priceTicks;
     long fillQuantity;
     Side side;
 
-    public TradeMessage(long orderId, double price, long fillQuantity, Side side)
+    public TradeMessage(long orderId, long priceTicks, long fillQuantity, Side side)
     {
+        this(Instruction.DEFAULT_SYMBOL, orderId, priceTicks, fillQuantity, side);
+    }
+
+    public TradeMessage(int symbolId, long orderId, long priceTicks, long fillQuantity, Side side)
+    {
+        this.symbolId = symbolId;
         this.orderId = orderId;
-        this.price = price;
+        this.priceTicks = priceTicks;
         this.fillQuantity = fillQuantity;
         this.side = side;
     }
 
+    public int getSymbolId() {
+        return symbolId;
+    }
+
     public long getOrderId() {
         return orderId;
     }
 
     public double getPrice() {
-        return price;
+        return Price.toRawPrice(priceTicks); //A trade always has a price
+    }
+
+    public long getPriceTicks() {
+        return priceTicks;
     }
 
     public long getFillQuantity() {
@@ -35,7 +52,7 @@ public class TradeMessage extends ExchangeMessage {
 
     public String toString()
     {
-        return "[orderId=" + orderId + ", price=" + price + ", fillQuantity=" + fillQuantity + ", side=" + side + "]";
+        return "[" + symbolField(symbolId) + "orderId=" + orderId + ", price=" + getPrice() + ", fillQuantity=" + fillQuantity + ", side=" + side + "]";
     }
 
 }
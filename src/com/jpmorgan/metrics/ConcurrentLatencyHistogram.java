@@ -0,0 +1,72 @@
+package com.jpmorgan.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free version of LatencyHistogram with the same buckets, recorded into by one or more threads while others
+ * take snapshots of it. Recording is an atomic increment of the bucket and an atomic add to the sum, the minimum
+ * and the maximum only need a compare-and-set when they change. A snapshot is not taken at a single instant:
+ * a value recorded while it is taken may be in its buckets and not yet in its sum, or the other way round.
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class ConcurrentLatencyHistogram {
+
+    private final AtomicLongArray counts = new AtomicLongArray(LatencyHistogram.BUCKET_NUM);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Count a value, negative values are counted as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        this.counts.getAndIncrement(LatencyHistogram.bucketIndex(value));
+        this.sum.getAndAdd(value);
+
+        long current;
+        while (value < (current = this.min.get()) && !this.min.compareAndSet(current, value)) {
+            //Another thread changed the minimum, compare with its value
+        }
+        while (value > (current = this.max.get()) && !this.max.compareAndSet(current, value)) {
+            //Another thread changed the maximum, compare with its value
+        }
+    }
+
+    /**
+     * Get a copy of the counts so far
+     */
+    public LatencyHistogram snapshot() {
+        return copy(false);
+    }
+
+    /**
+     * Get a copy of the counts so far and start counting again from zero, without losing the values
+     * recorded meanwhile: each of them is either in the copy or in the counts from now on
+     */
+    public LatencyHistogram snapshotAndReset() {
+        return copy(true);
+    }
+
+    public void reset() {
+        copy(true);
+    }
+
+    private LatencyHistogram copy(boolean reset) {
+        long[] bucketCounts = new long[LatencyHistogram.BUCKET_NUM];
+        for (int i = 0; i < bucketCounts.length; i++) {
+            bucketCounts[i] = reset ? this.counts.getAndSet(i, 0L) : this.counts.get(i);
+        }
+        long sum = reset ? this.sum.getAndSet(0L) : this.sum.get();
+        long min = reset ? this.min.getAndSet(Long.MAX_VALUE) : this.min.get();
+        long max = reset ? this.max.getAndSet(0L) : this.max.get();
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.addCounts(bucketCounts, min, max, sum);
+        return histogram;
+    }
+}
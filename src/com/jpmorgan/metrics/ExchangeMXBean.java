@@ -0,0 +1,31 @@
+package com.jpmorgan.metrics;
+
+import java.util.Map;
+
+/**
+ * Live statistics of an exchange simulator, as seen through JMX
+ * @author Jiangchuan Zheng
+ *
+ */
+public interface ExchangeMXBean {
+
+    long getInstructionCount();
+
+    /**
+     * Get the rate of the instructions processed, measured between the reads of this attribute at least a second apart
+     */
+    double getInstructionsPerSecond();
+
+    long getRegisteredClientCount();
+
+    long getListedInstrumentCount();
+
+    long getTradeCount();
+
+    long getTradedVolume();
+
+    /**
+     * Get the number of rejects of each rejected OrderState, by name
+     */
+    Map<String, Long> getRejectCounts();
+}
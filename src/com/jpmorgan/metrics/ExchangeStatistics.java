@@ -0,0 +1,228 @@
+package com.jpmorgan.metrics;
+
+import com.jpmorgan.orderbook.OrderBook;
+import com.jpmorgan.orderbook.OrderState;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The statistics of an exchange simulator and of each of its order books, kept up to date by the thread
+ * processing the instructions and exposed as MBeans. The counters are single-writer slots written with ordered
+ * stores and read without any lock, the order books are never read from the JMX threads.
+ *
+ * The MBean of the exchange is named com.jpmorgan:type=Exchange,name=N and the one of each order book
+ * com.jpmorgan:type=OrderBook,exchange=N,symbol=S. The books listed after register are registered as they come.
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class ExchangeStatistics implements ExchangeMXBean {
+
+    private static final String DOMAIN = "com.jpmorgan";
+
+    private static final OrderState[] ORDER_STATES = OrderState.values();
+
+    private static final int INSTRUCTIONS = 0;
+    private static final int CLIENTS = 1;
+    private static final int INSTRUMENTS = 2;
+    private static final int VALUE_NUM = 3;
+
+    private final AtomicLongArray values = new AtomicLongArray(VALUE_NUM);
+    private final AtomicLongArray rejects = new AtomicLongArray(ORDER_STATES.length);
+
+    //Indexed by symbol id, grown and filled by the thread listing the instruments
+    private volatile OrderBookStatistics[] books = new OrderBookStatistics[16];
+
+    //The JMX side, changed under the lock of this object
+    private MBeanServer server;
+    private String name;
+    private final List<ObjectName> registered = new ArrayList<>();
+
+    //The last sample of the instruction count, taken by the readers of the instruction rate
+    private long sampleInstructions;
+    private long sampleNanos = System.nanoTime();
+    private double instructionsPerSecond;
+
+    /**
+     * Count an instruction processed and copy the state of its book, from the thread processing the instructions
+     * @param book  the book of the instruction, null if its instrument is not listed
+     */
+    public void onInstruction(OrderBook book) {
+        this.values.lazySet(INSTRUCTIONS, this.values.get(INSTRUCTIONS) + 1);
+        if (book != null) {
+            getBookStatistics(book.getSymbolId()).publish(book);
+        }
+    }
+
+    /**
+     * Count a reject, the other states are ignored
+     */
+    public void onOrderState(OrderState state) {
+        if (isReject(state)) {
+            this.rejects.lazySet(state.ordinal(), this.rejects.get(state.ordinal()) + 1);
+        }
+    }
+
+    public void onTrade(OrderBook book, int fillNum, long quantity) {
+        getBookStatistics(book.getSymbolId()).recordTrade(fillNum, quantity);
+    }
+
+    public void onClientCount(int clientNum) {
+        this.values.lazySet(CLIENTS, clientNum);
+    }
+
+    /**
+     * Start following a listed order book, registering its MBean if the statistics are registered
+     */
+    public void onInstrumentListed(OrderBook book) {
+        getBookStatistics(book.getSymbolId()).publish(book);
+    }
+
+    /**
+     * Get the statistics of the book of an instrument, created when it is first asked for
+     */
+    public OrderBookStatistics getBookStatistics(int symbolId) {
+        OrderBookStatistics[] books = this.books;
+        if (symbolId < books.length && books[symbolId] != null) {
+            return books[symbolId];
+        }
+        return createBookStatistics(symbolId);
+    }
+
+    private synchronized OrderBookStatistics createBookStatistics(int symbolId) {
+        OrderBookStatistics[] books = this.books;
+        if (symbolId >= books.length) {
+            books = Arrays.copyOf(books, Math.max(symbolId + 1, books.length * 2));
+        }
+        if (books[symbolId] == null) {
+            books[symbolId] = new OrderBookStatistics(symbolId);
+            this.values.lazySet(INSTRUMENTS, this.values.get(INSTRUMENTS) + 1);
+            if (this.server != null) {
+                registerBook(books[symbolId]);
+            }
+        }
+        this.books = books;
+        return books[symbolId];
+    }
+
+    /**
+     * Register the MBeans of the exchange and of its books
+     * @param server  the MBean server, usually the platform one
+     * @param name  the name of the exchange in the names of the MBeans
+     */
+    public synchronized void register(MBeanServer server, String name) throws JMException {
+        if (this.server != null) {
+            throw new IllegalStateException("Exchange statistics are already registered as " + this.name);
+        }
+        this.server = server;
+        this.name = name;
+
+        ObjectName objectName = new ObjectName(DOMAIN + ":type=Exchange,name=" + ObjectName.quote(name));
+        server.registerMBean(this, objectName);
+        this.registered.add(objectName);
+        for (OrderBookStatistics book : this.books) {
+            if (book != null) {
+                registerBook(book);
+            }
+        }
+    }
+
+    /**
+     * Unregister all the MBeans registered by register
+     */
+    public synchronized void unregister() throws JMException {
+        for (ObjectName objectName : this.registered) {
+            if (this.server.isRegistered(objectName)) {
+                this.server.unregisterMBean(objectName);
+            }
+        }
+        this.registered.clear();
+        this.server = null;
+        this.name = null;
+    }
+
+    private void registerBook(OrderBookStatistics book) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=OrderBook,exchange=" + ObjectName.quote(this.name)
+                    + ",symbol=" + book.getSymbolId());
+            this.server.registerMBean(book, objectName);
+            this.registered.add(objectName);
+        }
+        catch (JMException e) {
+            //Statistics must not stop the listing of an instrument
+            System.err.println("Failed to register the MBean of order book " + book.getSymbolId() + ": " + e);
+        }
+    }
+
+    public long getInstructionCount() {
+        return this.values.get(INSTRUCTIONS);
+    }
+
+    public synchronized double getInstructionsPerSecond() {
+        long now = System.nanoTime();
+        long instructions = this.values.get(INSTRUCTIONS);
+        if (now - this.sampleNanos >= 1_000_000_000L) {
+            this.instructionsPerSecond = (instructions - this.sampleInstructions) * 1e9 / (now - this.sampleNanos);
+            this.sampleInstructions = instructions;
+            this.sampleNanos = now;
+        }
+        return this.instructionsPerSecond;
+    }
+
+    public long getRegisteredClientCount() {
+        return this.values.get(CLIENTS);
+    }
+
+    public long getListedInstrumentCount() {
+        return this.values.get(INSTRUMENTS);
+    }
+
+    public long getTradeCount() {
+        long trades = 0;
+        for (OrderBookStatistics book : this.books) {
+            if (book != null) {
+                trades += book.getTradeCount();
+            }
+        }
+        return trades;
+    }
+
+    public long getTradedVolume() {
+        long volume = 0;
+        for (OrderBookStatistics book : this.books) {
+            if (book != null) {
+                volume += book.getTradedVolume();
+            }
+        }
+        return volume;
+    }
+
+    public Map<String, Long> getRejectCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (OrderState state : ORDER_STATES) {
+            if (isReject(state)) {
+                counts.put(state.name(), this.rejects.get(state.ordinal()));
+            }
+        }
+        return counts;
+    }
+
+    private static boolean isReject(OrderState state) {
+        switch (state) {
+            case PLACE_REJECTED:
+            case CANCEL_REJECTED:
+            case AMEND_PRICE_REJECTED:
+            case AMEND_QUANTITY_REJECTED:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
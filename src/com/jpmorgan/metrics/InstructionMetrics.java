@@ -0,0 +1,169 @@
+package com.jpmorgan.metrics;
+
+import com.jpmorgan.instruction.InstructionAction;
+
+import java.io.PrintStream;
+
+/**
+ * Time spent in each Stage of the instructions processed by an exchange simulator, per InstructionAction.
+ * The thread processing the instructions marks the start of an instruction with begin, the end of each stretch
+ * of work with lap, which adds the time since the previous mark to a stage, and the end of the instruction with
+ * end, which records the time of every stage it went through into a lock-free histogram. Each lap costs a
+ * System.nanoTime call and an addition, each stage an atomic increment at the end.
+ *
+ * Any thread can take a snapshot of the histograms, or reset them, while the instructions are processed.
+ * An instance belongs to one exchange simulator, it keeps the state of the instruction being processed.
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class InstructionMetrics {
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final InstructionAction[] ACTIONS = InstructionAction.values();
+
+    /**
+     * A copy of the histograms at one time
+     */
+    public static final class Snapshot {
+
+        private final LatencyHistogram[][] histograms;
+
+        private Snapshot(LatencyHistogram[][] histograms) {
+            this.histograms = histograms;
+        }
+
+        /**
+         * Get the latencies in nanoseconds of a stage for the instructions of an action
+         */
+        public LatencyHistogram get(Stage stage, InstructionAction action) {
+            return this.histograms[stage.ordinal()][action.ordinal()];
+        }
+
+        /**
+         * Get the latencies in nanoseconds of a stage for all the instructions
+         */
+        public LatencyHistogram get(Stage stage) {
+            LatencyHistogram total = new LatencyHistogram();
+            for (LatencyHistogram histogram : this.histograms[stage.ordinal()]) {
+                total.add(histogram);
+            }
+            return total;
+        }
+
+        public void print(PrintStream out) {
+            for (InstructionAction action : ACTIONS) {
+                for (Stage stage : STAGES) {
+                    LatencyHistogram histogram = get(stage, action);
+                    if (histogram.getTotalCount() > 0) {
+                        out.printf("%-15s %-17s %s%n", action, stage, histogram.summary());
+                    }
+                }
+            }
+        }
+    }
+
+    private final ConcurrentLatencyHistogram[][] histograms = new ConcurrentLatencyHistogram[STAGES.length][ACTIONS.length];
+
+    //The instruction being timed, only touched by the thread processing the instructions
+    private final long[] stageNanos = new long[STAGES.length];
+    private int stagesVisited; //One bit per stage
+    private InstructionAction action;
+    private long mark;
+    private boolean batchPending; //An instruction ended since the last batch was recorded
+
+    public InstructionMetrics() {
+        for (int stage = 0; stage < STAGES.length; stage++) {
+            for (int action = 0; action < ACTIONS.length; action++) {
+                this.histograms[stage][action] = new ConcurrentLatencyHistogram();
+            }
+        }
+    }
+
+    /**
+     * Start timing an instruction
+     */
+    public void begin(InstructionAction action) {
+        this.action = action;
+        this.stagesVisited = 0;
+        this.mark = System.nanoTime();
+    }
+
+    /**
+     * Add the time since the previous mark to a stage of the instruction being timed
+     */
+    public void lap(Stage stage) {
+        long now = System.nanoTime();
+        int index = stage.ordinal();
+        if ((this.stagesVisited & (1 << index)) == 0) {
+            this.stagesVisited |= 1 << index;
+            this.stageNanos[index] = 0;
+        }
+        this.stageNanos[index] += now - this.mark;
+        this.mark = now;
+    }
+
+    /**
+     * Record the time of every stage the instruction being timed went through
+     */
+    public void end() {
+        if (this.action == null) {
+            return;
+        }
+        for (int index = 0; index < STAGES.length; index++) {
+            if ((this.stagesVisited & (1 << index)) != 0) {
+                this.histograms[index][this.action.ordinal()].record(this.stageNanos[index]);
+            }
+        }
+        this.stagesVisited = 0;
+        this.batchPending = true;
+    }
+
+    /**
+     * Record the time since the end of the last instruction timed into a stage, counted for its action,
+     * for the work done once per batch after its instructions. Nothing is recorded if no instruction ended
+     * since the previous call
+     */
+    public void recordBatch(Stage stage) {
+        if (!this.batchPending) {
+            return;
+        }
+        this.batchPending = false;
+        this.histograms[stage.ordinal()][this.action.ordinal()].record(System.nanoTime() - this.mark);
+    }
+
+    /**
+     * Record the time of a stage outside of an instruction being timed
+     * @param stage  the stage
+     * @param action  the action it is counted for
+     * @param nanos  the time spent
+     */
+    public void record(Stage stage, InstructionAction action, long nanos) {
+        this.histograms[stage.ordinal()][action.ordinal()].record(nanos);
+    }
+
+    public Snapshot snapshot() {
+        return copy(false);
+    }
+
+    /**
+     * Take a snapshot and start counting again from zero
+     */
+    public Snapshot snapshotAndReset() {
+        return copy(true);
+    }
+
+    public void reset() {
+        copy(true);
+    }
+
+    private Snapshot copy(boolean reset) {
+        LatencyHistogram[][] copies = new LatencyHistogram[STAGES.length][ACTIONS.length];
+        for (int stage = 0; stage < STAGES.length; stage++) {
+            for (int action = 0; action < ACTIONS.length; action++) {
+                ConcurrentLatencyHistogram histogram = this.histograms[stage][action];
+                copies[stage][action] = reset ? histogram.snapshotAndReset() : histogram.snapshot();
+            }
+        }
+        return new Snapshot(copies);
+    }
+}
@@ -0,0 +1,148 @@
+package com.jpmorgan.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of latencies in nanoseconds with a bounded relative error, in the manner of an HDR histogram.
+ * Values below 128 have a bucket each. Above, each power of 2 is split into 64 buckets, so a value is
+ * counted in a bucket at most 1/64 wider than itself, whatever its magnitude. The whole range of longs takes
+ * a few thousand buckets, allocated once, and recording a value is a few shifts and an increment.
+ *
+ * A histogram is not thread safe, it belongs to the thread recording into it.
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_HALF = 1 << (SUB_BUCKET_BITS - 1);
+    static final int BUCKET_NUM = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+
+    private final long[] counts = new long[BUCKET_NUM];
+
+    private long totalCount;
+    private long min = Long.MAX_VALUE;
+    private long max;
+    private double sum;
+
+    /**
+     * Count a value, negative values are counted as 0
+     */
+    public void record(long value) {
+        recordCount(value, 1);
+    }
+
+    /**
+     * Count a value several times
+     */
+    public void recordCount(long value, long count) {
+        if (value < 0) {
+            value = 0;
+        }
+        this.counts[bucketIndex(value)] += count;
+        this.totalCount += count;
+        this.sum += (double)value * count;
+        this.min = Math.min(this.min, value);
+        this.max = Math.max(this.max, value);
+    }
+
+    /**
+     * Add the counts of another histogram to this one
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_NUM; i++) {
+            this.counts[i] += other.counts[i];
+        }
+        this.totalCount += other.totalCount;
+        this.sum += other.sum;
+        this.min = Math.min(this.min, other.min);
+        this.max = Math.max(this.max, other.max);
+    }
+
+    /**
+     * Add the counts of each bucket, with the extremes and the sum of the values counted
+     */
+    void addCounts(long[] bucketCounts, long min, long max, double sum) {
+        for (int i = 0; i < BUCKET_NUM; i++) {
+            this.counts[i] += bucketCounts[i];
+            this.totalCount += bucketCounts[i];
+        }
+        this.sum += sum;
+        this.min = Math.min(this.min, min);
+        this.max = Math.max(this.max, max);
+    }
+
+    public void reset() {
+        Arrays.fill(this.counts, 0L);
+        this.totalCount = 0;
+        this.sum = 0;
+        this.min = Long.MAX_VALUE;
+        this.max = 0;
+    }
+
+    public long getTotalCount() {
+        return this.totalCount;
+    }
+
+    /**
+     * Get the smallest value recorded, 0 if there is none
+     */
+    public long getMin() {
+        return this.totalCount == 0 ? 0 : this.min;
+    }
+
+    public long getMax() {
+        return this.max;
+    }
+
+    public double getMean() {
+        return this.totalCount == 0 ? 0 : this.sum / this.totalCount;
+    }
+
+    /**
+     * Get the value below which a percentage of the recorded values are, within the precision of the buckets
+     * @param percentile  the percentage, from 0 to 100
+     * @return the highest value of the bucket holding the percentile, capped at the maximum recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (this.totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long)Math.ceil(Math.min(percentile, 100.0) / 100.0 * this.totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_NUM; i++) {
+            seen += this.counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueInBucket(i), this.max);
+            }
+        }
+        return this.max;
+    }
+
+    /**
+     * Get a one line summary: count, mean, median, 99th, 99.9th percentiles and maximum
+     */
+    public String summary() {
+        return String.format("count=%d mean=%.0f p50=%d p99=%d p99.9=%d max=%d",
+                this.totalCount, getMean(), getValueAtPercentile(50), getValueAtPercentile(99),
+                getValueAtPercentile(99.9), getMax());
+    }
+
+    static int bucketIndex(long value) {
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return shift == 0 ? (int)value : shift * SUB_BUCKET_HALF + (int)(value >>> shift);
+    }
+
+    static long lowestValueInBucket(int index) {
+        if (index < 2 * SUB_BUCKET_HALF) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        return (long)(index - shift * SUB_BUCKET_HALF) << shift;
+    }
+
+    static long highestValueInBucket(int index) {
+        int shift = index < 2 * SUB_BUCKET_HALF ? 0 : index / SUB_BUCKET_HALF - 1;
+        return lowestValueInBucket(index) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,38 @@
+package com.jpmorgan.metrics;
+
+/**
+ * Live statistics of the order book of an instrument, as seen through JMX
+ * @author Jiangchuan Zheng
+ *
+ */
+public interface OrderBookMXBean {
+
+    int getSymbolId();
+
+    long getRestingOrderCount();
+
+    long getBidLevelCount();
+
+    long getAskLevelCount();
+
+    /**
+     * Get the best bid price, NaN if the bid side is empty
+     */
+    double getBestBid();
+
+    /**
+     * Get the best ask price, NaN if the ask side is empty
+     */
+    double getBestAsk();
+
+    long getBestBidSize();
+
+    long getBestAskSize();
+
+    /**
+     * Get the number of fills, one per resting order traded against
+     */
+    long getTradeCount();
+
+    long getTradedVolume();
+}
@@ -0,0 +1,105 @@
+package com.jpmorgan.metrics;
+
+import com.jpmorgan.orderbook.OrderBook;
+import com.jpmorgan.orderbook.Price;
+import com.jpmorgan.orderbook.Side;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The statistics of one order book, written by the thread processing the instructions and read by JMX.
+ * The values are copied out of the book after each instruction into single-writer slots with ordered stores,
+ * so that reading them never touches the book nor waits for the matching thread.
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class OrderBookStatistics implements OrderBookMXBean {
+
+    private static final int RESTING_ORDERS = 0;
+    private static final int BID_LEVELS = 1;
+    private static final int ASK_LEVELS = 2;
+    private static final int BEST_BID = 3;
+    private static final int BEST_ASK = 4;
+    private static final int BEST_BID_SIZE = 5;
+    private static final int BEST_ASK_SIZE = 6;
+    private static final int TRADES = 7;
+    private static final int VOLUME = 8;
+    private static final int VALUE_NUM = 9;
+
+    private final int symbolId;
+    private final AtomicLongArray values = new AtomicLongArray(VALUE_NUM);
+
+    public OrderBookStatistics(int symbolId) {
+        this.symbolId = symbolId;
+        this.values.set(BEST_BID, Price.NO_PRICE);
+        this.values.set(BEST_ASK, Price.NO_PRICE);
+    }
+
+    /**
+     * Copy the state of the book, from the thread processing its instructions
+     */
+    public void publish(OrderBook book) {
+        this.values.lazySet(RESTING_ORDERS, book.getOrderNum());
+        this.values.lazySet(BID_LEVELS, book.getLevelNum(Side.BUY));
+        this.values.lazySet(ASK_LEVELS, book.getLevelNum(Side.SELL));
+        this.values.lazySet(BEST_BID, book.getBestBidTicks());
+        this.values.lazySet(BEST_ASK, book.getBestAskTicks());
+        this.values.lazySet(BEST_BID_SIZE, book.getBestBidQuantity());
+        this.values.lazySet(BEST_ASK_SIZE, book.getBestAskQuantity());
+    }
+
+    /**
+     * Count a trade, from the thread processing the instructions of the book
+     * @param fillNum  the number of resting orders traded against
+     * @param quantity  the quantity traded
+     */
+    public void recordTrade(int fillNum, long quantity) {
+        //Single writer, a plain read and an ordered store are enough
+        this.values.lazySet(TRADES, this.values.get(TRADES) + fillNum);
+        this.values.lazySet(VOLUME, this.values.get(VOLUME) + quantity);
+    }
+
+    public int getSymbolId() {
+        return this.symbolId;
+    }
+
+    public long getRestingOrderCount() {
+        return this.values.get(RESTING_ORDERS);
+    }
+
+    public long getBidLevelCount() {
+        return this.values.get(BID_LEVELS);
+    }
+
+    public long getAskLevelCount() {
+        return this.values.get(ASK_LEVELS);
+    }
+
+    public double getBestBid() {
+        return toPrice(this.values.get(BEST_BID));
+    }
+
+    public double getBestAsk() {
+        return toPrice(this.values.get(BEST_ASK));
+    }
+
+    public long getBestBidSize() {
+        return this.values.get(BEST_BID_SIZE);
+    }
+
+    public long getBestAskSize() {
+        return this.values.get(BEST_ASK_SIZE);
+    }
+
+    public long getTradeCount() {
+        return this.values.get(TRADES);
+    }
+
+    public long getTradedVolume() {
+        return this.values.get(VOLUME);
+    }
+
+    private static double toPrice(long priceTicks) {
+        return priceTicks == Price.NO_PRICE ? Double.NaN : Price.toRawPrice(priceTicks);
+    }
+}
@@ -0,0 +1,15 @@
+package com.jpmorgan.metrics;
+
+/**
+ * The stages an instruction goes through in the exchange simulator, timed by InstructionMetrics
+ * @author Jiangchuan Zheng
+ *
+ */
+public enum Stage {
+    VALIDATION, //The checks of the price and size against the book, before it is touched
+    MATCHING, //The order book work: matching and resting, removing, amending
+    MESSAGE_BUILDING, //Routing, creating the order, building the messages and queueing them for the clients
+    FAN_OUT, //Delivering the queued messages to the clients, once per batch
+    LOGGING, //The text output and the binary event log
+    JOURNAL //Appending to the instruction journal, before the instruction is processed
+}
@@ -0,0 +1,11 @@
+package com.jpmorgan.orderbook;
+
+/**
+ * The ways an order book can store the price levels of each side
+ * @author Jiangchuan Zheng
+ *
+ */
+public enum BookEngine {
+    TREE, //Price levels kept in a sorted map, whose boxed price keys allocate on lookups
+    LADDER //Price levels kept in an array with one slot per tick between the exchange limits, matching without allocation
+}
@@ -0,0 +1,61 @@
+package com.jpmorgan.orderbook;
+
+/**
+ * Receiver of what happens inside an order book, for tracing and profiling, set with OrderBook.setEventListener.
+ * The book only checks the listener for null when none is set, and only reads the clock when one is set.
+ * The operations report the System.nanoTime they started at, so that the listener can time them;
+ * they are reported when they complete, and only when they succeed.
+ * A listener shared by books processed on different threads must be thread safe.
+ * @author Jiangchuan Zheng
+ *
+ */
+public interface BookEventListener {
+
+    /**
+     * Called once an inbound order has been matched and its remaining quantity, if any, added to the book
+     * @param orderId  the id of the inbound order
+     * @param side  the side of the inbound order
+     * @param priceTicks  the price of the inbound order, the exchange limit for a market order
+     * @param quantity  the quantity of the inbound order
+     * @param tradedQuantity  the quantity traded
+     * @param levelsSwept  the number of price levels of the opposite side traded with
+     * @param startNanos  the time the placement started
+     */
+    default void onOrderPlaced(int symbolId, long orderId, Side side, long priceTicks, long quantity, long tradedQuantity,
+            int levelsSwept, long startNanos) {
+    }
+
+    /**
+     * Called for every price level an inbound order trades with
+     * @param takerOrderId  the id of the inbound order
+     * @param side  the side of the level
+     * @param priceTicks  the price of the level
+     * @param quantity  the quantity traded at the level
+     * @param startNanos  the time the matching at this level started
+     */
+    default void onLevelMatched(int symbolId, long takerOrderId, Side side, long priceTicks, long quantity, long startNanos) {
+    }
+
+    default void onLevelCreated(int symbolId, Side side, long priceTicks) {
+    }
+
+    default void onLevelRemoved(int symbolId, Side side, long priceTicks) {
+    }
+
+    /**
+     * @param priceTicks  the price the canceled order rested at
+     * @param quantity  the quantity the canceled order had left
+     */
+    default void onOrderCanceled(int symbolId, long orderId, Side side, long priceTicks, long quantity, long startNanos) {
+    }
+
+    /**
+     * Called once the price or the quantity of a resting order has been amended
+     * @param priceTicks  the price of the order after the amendment
+     * @param quantity  the quantity of the order after the amendment, before a price amendment trades
+     * @param tradedQuantity  the quantity traded by a price amendment crossing the book
+     */
+    default void onOrderAmended(int symbolId, long orderId, Side side, long priceTicks, long quantity, long tradedQuantity,
+            long startNanos) {
+    }
+}
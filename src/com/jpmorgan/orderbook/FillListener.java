@@ -0,0 +1,19 @@
+package com.jpmorgan.orderbook;
+
+/**
+ * Receiver of the fills produced by the order book when it matches an inbound order
+ * with FillListener, instead of collecting them in Trade objects
+ * @author Jiangchuan Zheng
+ *
+ */
+public interface FillListener {
+
+    /**
+     * Called once for every resting order that trades with the inbound order
+     * @param makerOrderId  the id of the resting order
+     * @param takerOrderId  the id of the inbound order
+     * @param priceTicks  the trade price, in the integer unit of Price
+     * @param quantity  the quantity traded
+     */
+    void onFill(long makerOrderId, long takerOrderId, long priceTicks, long quantity);
+}
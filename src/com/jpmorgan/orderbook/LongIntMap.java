@@ -0,0 +1,147 @@
+package com.jpmorgan.orderbook;
+
+import java.util.Arrays;
+
+/**
+ * Class that maps an order id to an int slot with open addressing on primitive arrays,
+ * used as the order id index of the off-heap order store.
+ * Primitive arrays are never traced by the garbage collector, however many entries they hold.
+ * @author Jiangchuan Zheng
+ *
+ */
+final class LongIntMap {
+
+	private static final float LOAD_FACTOR = 0.5f;
+
+	static final int MISSING = -1; //Returned for an order id not in the map
+
+	private long[] keys; //The order id stored in each slot of the table
+	private int[] values; //The value stored in each slot of the table plus 1, 0 if the slot is free
+	private int mask;
+	private int size;
+	private int resizeThreshold;
+
+	/**
+	 * @param initialCapacity  the number of entries the map can hold without growing
+	 */
+	LongIntMap(int initialCapacity) {
+		long required = Math.max(2L, (long)Math.ceil(initialCapacity / (double)LOAD_FACTOR));
+		long tableLength = Long.highestOneBit(required - 1) << 1;
+		if (tableLength > (1 << 30)) {
+			throw new IllegalArgumentException("Capacity " + initialCapacity + " is too large");
+		}
+		allocate((int)tableLength);
+	}
+
+	private void allocate(int tableLength) {
+		this.keys = new long[tableLength];
+		this.values = new int[tableLength];
+		this.mask = tableLength - 1;
+		this.resizeThreshold = (int)(tableLength * LOAD_FACTOR);
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	}
+
+	private int indexOf(long key) {
+		int index = hash(key) & this.mask;
+		while (this.values[index] != 0) {
+			if (this.keys[index] == key) {
+				return index;
+			}
+			index = (index + 1) & this.mask;
+		}
+		return -1;
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * Get the value stored under the given order id
+	 * @return the value, or MISSING if the order id is not in the map
+	 */
+	int get(long key) {
+		int index = indexOf(key);
+		return index < 0 ? MISSING : this.values[index] - 1;
+	}
+
+	/**
+	 * Store a non negative value under the given order id, replacing any previous value
+	 */
+	void put(long key, int value) {
+		int index = hash(key) & this.mask;
+		while (this.values[index] != 0) {
+			if (this.keys[index] == key) {
+				this.values[index] = value + 1;
+				return;
+			}
+			index = (index + 1) & this.mask;
+		}
+
+		this.keys[index] = key;
+		this.values[index] = value + 1;
+		this.size++;
+
+		if (this.size > this.resizeThreshold) {
+			rehash(this.values.length << 1);
+		}
+	}
+
+	/**
+	 * Remove the given order id
+	 * @return the value removed, or MISSING if the order id is not in the map
+	 */
+	int remove(long key) {
+		int index = indexOf(key);
+		if (index < 0) {
+			return MISSING;
+		}
+
+		int removed = this.values[index] - 1;
+		this.values[index] = 0;
+		this.size--;
+
+		//Shift back the following entries of the probe sequence, the same as LongOrderMap
+		int free = index;
+		int next = (free + 1) & this.mask;
+		while (this.values[next] != 0) {
+			int home = hash(this.keys[next]) & this.mask;
+			if (((next - home) & this.mask) >= ((next - free) & this.mask)) {
+				this.keys[free] = this.keys[next];
+				this.values[free] = this.values[next];
+				this.values[next] = 0;
+				free = next;
+			}
+			next = (next + 1) & this.mask;
+		}
+
+		return removed;
+	}
+
+	void clear() {
+		Arrays.fill(this.values, 0);
+		this.size = 0;
+	}
+
+	private void rehash(int tableLength) {
+		long[] oldKeys = this.keys;
+		int[] oldValues = this.values;
+
+		allocate(tableLength);
+
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] != 0) {
+				int index = hash(oldKeys[i]) & this.mask;
+				while (this.values[index] != 0) {
+					index = (index + 1) & this.mask;
+				}
+				this.keys[index] = oldKeys[i];
+				this.values[index] = oldValues[i];
+			}
+		}
+	}
+}
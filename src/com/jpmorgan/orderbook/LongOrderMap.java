@@ -0,0 +1,182 @@
+package com.jpmorgan.orderbook;
+
+import java.util.Arrays;
+
+/**
+ * Class that maps an order id to an order with open addressing on primitive arrays.
+ * Unlike a HashMap, it never boxes the key, and lookups and removals never allocate.
+ * Only a put that grows the table beyond its capacity allocates.
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class LongOrderMap {
+
+	private static final int DEFAULT_CAPACITY = 1024;
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private long[] keys; //The order id stored in each slot
+	private Order[] values; //The order stored in each slot, null if the slot is free
+	private int mask; //Table length minus 1, the table length is always a power of 2
+	private int size; //The number of orders in the map
+	private int resizeThreshold; //The size above which the table is grown
+
+	public LongOrderMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param initialCapacity  the number of orders the map can hold without growing
+	 */
+	public LongOrderMap(int initialCapacity) {
+		int tableLength = tableLengthFor(initialCapacity);
+		allocate(tableLength);
+	}
+
+	private static int tableLengthFor(int capacity) {
+		long required = Math.max(2L, (long)Math.ceil(capacity / (double)LOAD_FACTOR));
+		long tableLength = Long.highestOneBit(required - 1) << 1;
+		if (tableLength > (1 << 30)) {
+			throw new IllegalArgumentException("Capacity " + capacity + " is too large");
+		}
+		return (int)tableLength;
+	}
+
+	private void allocate(int tableLength) {
+		this.keys = new long[tableLength];
+		this.values = new Order[tableLength];
+		this.mask = tableLength - 1;
+		this.resizeThreshold = (int)(tableLength * LOAD_FACTOR);
+	}
+
+	/**
+	 * Spread the bits of an order id, since ids are usually sequential
+	 */
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32));
+	}
+
+	/**
+	 * Find the slot holding the given order id
+	 * @return the slot, or -1 if the order id is not in the map
+	 */
+	private int slotOf(long key) {
+		int slot = hash(key) & this.mask;
+		while (this.values[slot] != null) {
+			if (this.keys[slot] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		return -1;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	public boolean containsKey(long key) {
+		return slotOf(key) >= 0;
+	}
+
+	/**
+	 * Get the order with the given id
+	 * @return the order, or null if the order id is not in the map
+	 */
+	public Order get(long key) {
+		int slot = slotOf(key);
+		return slot < 0 ? null : this.values[slot];
+	}
+
+	/**
+	 * Put an order under the given id
+	 * @param key  the order id
+	 * @param value  the order, which must not be null
+	 * @return the order previously stored under this id, or null if there was none
+	 */
+	public Order put(long key, Order value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Cannot put a null order for id " + key);
+		}
+
+		int slot = hash(key) & this.mask;
+		while (this.values[slot] != null) {
+			if (this.keys[slot] == key) {
+				Order previous = this.values[slot];
+				this.values[slot] = value;
+				return previous;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+
+		this.keys[slot] = key;
+		this.values[slot] = value;
+		this.size++;
+
+		if (this.size > this.resizeThreshold) {
+			rehash(this.values.length << 1);
+		}
+		return null;
+	}
+
+	/**
+	 * Remove the order with the given id
+	 * @return the removed order, or null if the order id is not in the map
+	 */
+	public Order remove(long key) {
+		int slot = slotOf(key);
+		if (slot < 0) {
+			return null;
+		}
+
+		Order removed = this.values[slot];
+		this.values[slot] = null;
+		this.size--;
+
+		/*
+		 * Shift back the following entries of the probe sequence into the freed slot where they are allowed to,
+		 * so that lookups never have to skip over deleted markers
+		 */
+		int free = slot;
+		int next = (free + 1) & this.mask;
+		while (this.values[next] != null) {
+			int home = hash(this.keys[next]) & this.mask;
+			if (((next - home) & this.mask) >= ((next - free) & this.mask)) {
+				this.keys[free] = this.keys[next];
+				this.values[free] = this.values[next];
+				this.values[next] = null;
+				free = next;
+			}
+			next = (next + 1) & this.mask;
+		}
+
+		return removed;
+	}
+
+	public void clear() {
+		Arrays.fill(this.values, null);
+		this.size = 0;
+	}
+
+	private void rehash(int tableLength) {
+		long[] oldKeys = this.keys;
+		Order[] oldValues = this.values;
+
+		allocate(tableLength);
+
+		for (int i = 0; i < oldValues.length; i++) {
+			if (oldValues[i] != null) {
+				int slot = hash(oldKeys[i]) & this.mask;
+				while (this.values[slot] != null) {
+					slot = (slot + 1) & this.mask;
+				}
+				this.keys[slot] = oldKeys[i];
+				this.values[slot] = oldValues[i];
+			}
+		}
+	}
+}
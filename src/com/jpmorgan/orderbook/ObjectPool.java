@@ -0,0 +1,87 @@
+package com.jpmorgan.orderbook;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Class that keeps released objects on a free list so that they can be handed out again instead of
+ * allocating new ones. The free list holds at most a fixed number of objects, objects released to a full
+ * pool are left to the garbage collector. The free list starts small and grows up to that number as objects
+ * are released, so that an idle pool costs little. Resetting an object is left to the owner of the pool.
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class ObjectPool<T> {
+
+	private static final int INITIAL_FREE_LENGTH = 16;
+
+	private final int capacity; //The maximum number of objects on the free list
+	private Object[] free; //The free list, used as a stack, grown up to the capacity
+	private final Supplier<T> factory; //Creates an object when the free list is empty
+
+	private int size; //The number of objects on the free list
+
+	private long hits; //The number of objects handed out from the free list
+	private long misses; //The number of objects created because the free list was empty
+
+	/**
+	 * @param capacity  the maximum number of objects kept on the free list
+	 * @param factory  creates an object when the free list is empty
+	 */
+	public ObjectPool(int capacity, Supplier<T> factory) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Invalid pool capacity " + capacity);
+		}
+		this.capacity = capacity;
+		this.free = new Object[Math.min(capacity, INITIAL_FREE_LENGTH)];
+		this.factory = factory;
+	}
+
+	/**
+	 * Take an object from the free list, or create one if the free list is empty
+	 * @return the object
+	 */
+	@SuppressWarnings("unchecked")
+	public T acquire() {
+		if (this.size == 0) {
+			this.misses++;
+			return this.factory.get();
+		}
+		this.hits++;
+		T object = (T)this.free[--this.size];
+		this.free[this.size] = null;
+		return object;
+	}
+
+	/**
+	 * Put an object no longer used back on the free list
+	 * @param object  the object
+	 * @return bool value indicating if the object is kept, false if the pool is full
+	 */
+	public boolean release(T object) {
+		if (this.size == this.free.length) {
+			if (this.size == this.capacity) {
+				return false;
+			}
+			this.free = Arrays.copyOf(this.free, (int)Math.min(this.capacity, 2L * this.free.length));
+		}
+		this.free[this.size++] = object;
+		return true;
+	}
+
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public long getHits() {
+		return this.hits;
+	}
+
+	public long getMisses() {
+		return this.misses;
+	}
+}
@@ -0,0 +1,112 @@
+package com.jpmorgan.orderbook;
+
+/**
+ * Class that records which slots of a price ladder are occupied, with one bit per slot.
+ * A summary level keeps one bit per word of slots telling if the word has any occupied slot,
+ * so that the next occupied slot in either direction is found with a few word scans
+ * using Long.numberOfTrailingZeros/numberOfLeadingZeros, however many empty slots lie in between.
+ * @author Jiangchuan Zheng
+ *
+ */
+final class OccupancyBitmap {
+
+	private final int size; //The number of slots
+	private final long[] words; //Bit i of word w is set if slot 64*w+i is occupied
+	private final long[] summary; //Bit i of summary word s is set if word 64*s+i is not 0
+
+	OccupancyBitmap(int size) {
+		this.size = size;
+		this.words = new long[(size + 63) >>> 6];
+		this.summary = new long[(this.words.length + 63) >>> 6];
+	}
+
+	boolean get(int slot) {
+		return (this.words[slot >>> 6] & (1L << slot)) != 0;
+	}
+
+	void set(int slot) {
+		int w = slot >>> 6;
+		this.words[w] |= 1L << slot;
+		this.summary[w >>> 6] |= 1L << w;
+	}
+
+	void clear(int slot) {
+		int w = slot >>> 6;
+		this.words[w] &= ~(1L << slot);
+		if (this.words[w] == 0) {
+			this.summary[w >>> 6] &= ~(1L << w);
+		}
+	}
+
+	/**
+	 * Find the lowest occupied slot at or above the given slot
+	 * @param from  the slot to start from
+	 * @return the occupied slot, or -1 if there is none
+	 */
+	int nextSetBit(int from) {
+		if (from < 0) {
+			from = 0;
+		}
+		if (from >= this.size) {
+			return -1;
+		}
+
+		int w = from >>> 6;
+		long word = this.words[w] & (-1L << from); //Only the slots at or above from
+		if (word != 0) {
+			return (w << 6) + Long.numberOfTrailingZeros(word);
+		}
+
+		//Find the next word with any occupied slot from the summary
+		int nextWord = w + 1;
+		if (nextWord >= this.words.length) {
+			return -1;
+		}
+		int s = nextWord >>> 6;
+		long summaryWord = this.summary[s] & (-1L << nextWord);
+		while (summaryWord == 0) {
+			if (++s >= this.summary.length) {
+				return -1;
+			}
+			summaryWord = this.summary[s];
+		}
+		w = (s << 6) + Long.numberOfTrailingZeros(summaryWord);
+		return (w << 6) + Long.numberOfTrailingZeros(this.words[w]);
+	}
+
+	/**
+	 * Find the highest occupied slot at or below the given slot
+	 * @param from  the slot to start from
+	 * @return the occupied slot, or -1 if there is none
+	 */
+	int prevSetBit(int from) {
+		if (from >= this.size) {
+			from = this.size - 1;
+		}
+		if (from < 0) {
+			return -1;
+		}
+
+		int w = from >>> 6;
+		long word = this.words[w] & (-1L >>> (63 - (from & 63))); //Only the slots at or below from
+		if (word != 0) {
+			return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+		}
+
+		//Find the previous word with any occupied slot from the summary
+		int prevWord = w - 1;
+		if (prevWord < 0) {
+			return -1;
+		}
+		int s = prevWord >>> 6;
+		long summaryWord = this.summary[s] & (-1L >>> (63 - (prevWord & 63)));
+		while (summaryWord == 0) {
+			if (--s < 0) {
+				return -1;
+			}
+			summaryWord = this.summary[s];
+		}
+		w = (s << 6) + 63 - Long.numberOfLeadingZeros(summaryWord);
+		return (w << 6) + 63 - Long.numberOfLeadingZeros(this.words[w]);
+	}
+}
@@ -0,0 +1,163 @@
+package com.jpmorgan.orderbook;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Class that stores resting orders outside the Java heap, as columns of direct buffers indexed by slot.
+ * Each slot holds the order id, price in ticks, quantity, side and owner of one order, and the links
+ * of the queue of its price level. Free slots are chained through the next link column.
+ * An order book using this store keeps no object per resting order, so the garbage collector has
+ * nothing to trace however many orders rest in the book. Order objects are only created at the API
+ * boundary, when an order leaves the book through a trade, a cancel or an amend.
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class OffHeapOrderStore {
+
+	static final int NIL = -1; //The link value standing for no slot
+
+	private static final byte BUY = 0;
+	private static final byte SELL = 1;
+
+	private final int capacity;
+
+	//Columns of the store, one entry per slot
+	private final ByteBuffer orderIds;
+	private final ByteBuffer priceTicks;
+	private final ByteBuffer quantities;
+	private final ByteBuffer owners;
+	private final ByteBuffer sides;
+	private final ByteBuffer prevs;
+	private final ByteBuffer nexts;
+
+	private final LongIntMap index; //Maps an order id to its slot
+
+	private int freeHead; //The first free slot, NIL if the store is full
+	private int size; //The number of slots in use
+
+	/**
+	 * @param capacity  the maximum number of resting orders
+	 */
+	public OffHeapOrderStore(int capacity) {
+		if (capacity <= 0 || capacity > (Integer.MAX_VALUE >> 3)) {
+			throw new IllegalArgumentException("Invalid off-heap order store capacity " + capacity);
+		}
+
+		this.capacity = capacity;
+		this.orderIds = column(capacity, 8);
+		this.priceTicks = column(capacity, 8);
+		this.quantities = column(capacity, 8);
+		this.owners = column(capacity, 8);
+		this.sides = column(capacity, 1);
+		this.prevs = column(capacity, 4);
+		this.nexts = column(capacity, 4);
+
+		this.index = new LongIntMap(capacity);
+
+		for (int slot = 0; slot < capacity; slot++) {
+			this.nexts.putInt(slot << 2, slot + 1 < capacity ? slot + 1 : NIL);
+		}
+		this.freeHead = 0;
+		this.size = 0;
+	}
+
+	private static ByteBuffer column(int capacity, int width) {
+		return ByteBuffer.allocateDirect(capacity * width).order(ByteOrder.nativeOrder());
+	}
+
+	public int capacity() {
+		return this.capacity;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Store a new resting order
+	 * @return the slot of the order
+	 * @throws IllegalArgumentException  if an order with the same id is already stored, whose slot would be lost
+	 */
+	int allocate(long orderId, long priceTicks, long quantity, Side side, long ownerId) {
+		if (this.index.get(orderId) != LongIntMap.MISSING) {
+			throw new IllegalArgumentException("Order " + orderId + " is already in the off-heap order store");
+		}
+		int slot = this.freeHead;
+		if (slot == NIL) {
+			throw new IllegalStateException("Off-heap order store is full with " + this.capacity + " orders");
+		}
+		this.freeHead = next(slot);
+
+		this.orderIds.putLong(slot << 3, orderId);
+		this.priceTicks.putLong(slot << 3, priceTicks);
+		this.quantities.putLong(slot << 3, quantity);
+		this.owners.putLong(slot << 3, ownerId);
+		this.sides.put(slot, side == Side.BUY ? BUY : SELL);
+		setPrev(slot, NIL);
+		setNext(slot, NIL);
+
+		this.index.put(orderId, slot);
+		this.size++;
+		return slot;
+	}
+
+	/**
+	 * Release the slot of an order that left the book
+	 */
+	void free(int slot) {
+		this.index.remove(orderId(slot));
+		setNext(slot, this.freeHead);
+		this.freeHead = slot;
+		this.size--;
+	}
+
+	/**
+	 * Find the slot of an order
+	 * @return the slot, or NIL if the order is not in the store
+	 */
+	int slotOf(long orderId) {
+		int slot = this.index.get(orderId);
+		return slot == LongIntMap.MISSING ? NIL : slot;
+	}
+
+	long orderId(int slot) {
+		return this.orderIds.getLong(slot << 3);
+	}
+
+	long priceTicks(int slot) {
+		return this.priceTicks.getLong(slot << 3);
+	}
+
+	long quantity(int slot) {
+		return this.quantities.getLong(slot << 3);
+	}
+
+	void setQuantity(int slot, long quantity) {
+		this.quantities.putLong(slot << 3, quantity);
+	}
+
+	long ownerId(int slot) {
+		return this.owners.getLong(slot << 3);
+	}
+
+	Side side(int slot) {
+		return this.sides.get(slot) == BUY ? Side.BUY : Side.SELL;
+	}
+
+	int prev(int slot) {
+		return this.prevs.getInt(slot << 2);
+	}
+
+	void setPrev(int slot, int prev) {
+		this.prevs.putInt(slot << 2, prev);
+	}
+
+	int next(int slot) {
+		return this.nexts.getInt(slot << 2);
+	}
+
+	void setNext(int slot, int next) {
+		this.nexts.putInt(slot << 2, next);
+	}
+}
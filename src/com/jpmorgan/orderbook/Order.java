@@ -16,9 +16,27 @@ public class Order {
 	private static long GLOBAL_ID = 0;
 
 	private long orderId; //The id of the order
-	private Price price;  //The price of the order. If this is null, then it means market order
+	private long priceTicks;  //The price of the order in ticks. If this is Price.NO_PRICE, then it means market order
 	private Side side;  //The side of the order (Bid or Ask)
 	private long quantity; //The quantity (number of shares) of the order
+	private long ownerId; //The id of the client owning the order, 0 if unknown
+	private int symbolId; //The id of the instrument of the order
+
+	/*
+	 * Links of the queue of the price level this order rests at, maintained by the order book.
+	 * They are null while the order is not resting in the book.
+	 */
+	OrderBook.BookLevel level; //The price level this order rests at
+	Order prev; //The order placed right before this order at the same level
+	Order next; //The order placed right after this order at the same level
+
+	boolean pooled; //Whether the order was handed out by the order pool of an order book and goes back to it when done
+
+	/**
+	 * Create an empty order for an order pool
+	 */
+	Order() {
+	}
 
 	public Order(Price price, Side side, long quantity) {
 		this(++GLOBAL_ID, price, side, quantity);
@@ -28,6 +46,15 @@ public class Order {
 		initialize(price, side, quantity);
 		this.orderId = orderId;
 	}
+
+	public Order(long priceTicks, Side side, long quantity) {
+		this(++GLOBAL_ID, priceTicks, side, quantity);
+	}
+
+	public Order(long orderId, long priceTicks, Side side, long quantity) {
+		initialize(priceTicks, side, quantity);
+		this.orderId = orderId;
+	}
 	
 	public Order(Price price, String side, int quantity) {
 		this(++GLOBAL_ID, price, side, quantity);
@@ -43,8 +70,37 @@ public class Order {
 		this.orderId = orderId;
 	}
 
+	static long nextOrderId() {
+		return ++GLOBAL_ID;
+	}
+
+	static long peekNextOrderId() {
+		return GLOBAL_ID + 1;
+	}
+
+	/**
+	 * Give an order taken from an order pool its new content
+	 */
+	void reset(long orderId, long priceTicks, Side side, long quantity) {
+		initialize(priceTicks, side, quantity);
+		this.orderId = orderId;
+		this.ownerId = 0;
+		this.symbolId = 0;
+		this.level = null;
+		this.prev = null;
+		this.next = null;
+	}
+
 	public void setPrice(Price newPrice) {
-		this.price = newPrice;
+		this.priceTicks = toTicks(newPrice);
+	}
+
+	public void setPriceTicks(long newPriceTicks) {
+		this.priceTicks = newPriceTicks;
+	}
+
+	private static long toTicks(Price price) {
+		return price == null ? Price.NO_PRICE : price.getTicks();
 	}
 
 
@@ -55,13 +111,19 @@ public class Order {
 	 * @return an order representing the trade filled by this order
 	 */
 	public Order split(long tradeQuantity) {
-		Order order = new Order(this.orderId, this.price, this.side, tradeQuantity);
+		Order order = new Order(this.orderId, this.priceTicks, this.side, tradeQuantity);
+		order.ownerId = this.ownerId;
+		order.symbolId = this.symbolId;
 		this.updateQuantity(-tradeQuantity);
 		return order;
 	}
 	
 	public void initialize(Price price, Side side, long quantity) {
-		this.price = price;
+		initialize(toTicks(price), side, quantity);
+	}
+
+	public void initialize(long priceTicks, Side side, long quantity) {
+		this.priceTicks = priceTicks;
 		this.side = side;
 		this.quantity = quantity;
 	}
@@ -92,10 +154,26 @@ public class Order {
 	
 	/**
 	 * Get the price of the order
-	 * @return the price of the order
+	 * @return the price of the order, null for a market order
 	 */
 	public Price getPrice() {
-		return this.price;
+		return isMarket() ? null : Price.fromTicks(this.priceTicks);
+	}
+
+	/**
+	 * Get the price of the order in ticks
+	 * @return the price of the order in ticks, Price.NO_PRICE for a market order
+	 */
+	public long getPriceTicks() {
+		return this.priceTicks;
+	}
+
+	/**
+	 * Tell if the current order is a market order
+	 * @return bool value indicating if the order has no price
+	 */
+	public boolean isMarket() {
+		return this.priceTicks == Price.NO_PRICE;
 	}
 	
 	/**
@@ -117,6 +195,22 @@ public class Order {
 		return this.side;
 	}
 	
+	public int getSymbolId() {
+		return this.symbolId;
+	}
+
+	public void setSymbolId(int symbolId) {
+		this.symbolId = symbolId;
+	}
+
+	public long getOwnerId() {
+		return this.ownerId;
+	}
+
+	public void setOwnerId(long ownerId) {
+		this.ownerId = ownerId;
+	}
+
 	/**
 	 * Get the quantity of the order
 	 * @return the quantity of the order
@@ -134,7 +228,7 @@ public class Order {
 	}
 	
 	public String toString() {
-		return "Order: side=" + this.side + " quantity=" + this.quantity + " price=" + this.price;
+		return "Order: side=" + this.side + " quantity=" + this.quantity + " price=" + (isMarket() ? null : Price.format(this.priceTicks));
 	}
 	
 	
@@ -3,6 +3,7 @@ package com.jpmorgan.orderbook;
 import java.util.*;
 import javafx.util.Pair;
 import java.math.*;
+import java.nio.ByteBuffer;
 
 
 /**
@@ -15,10 +16,54 @@ public class OrderBook {
 	/*
 	 * A map that records the mapping from an order id to the corresponding order
 	 */
-    private Map<Long, Order> orderDict;
+    private LongOrderMap orderDict;
+
+	/*
+	 * The store keeping the resting orders outside the Java heap, null if resting orders are kept as Order objects.
+	 * When it is used, the store indexes the orders by id itself and the order map above is not needed
+	 */
+	private final OffHeapOrderStore store;
 	
-	private SortedMap<Price, BookLevel> bidBook; //Store all price levels of the bid side of the order book
-	private SortedMap<Price, BookLevel> askBook; //Store all price levels of the ask side of the order book
+	private SideBook bidBook; //Store all price levels of the bid side of the order book
+	private SideBook askBook; //Store all price levels of the ask side of the order book
+
+	private final BookEngine engine; //How the price levels of each side are stored
+
+	private int symbolId; //The id of the instrument traded in this book
+
+	private OrderIdSequence orderIdSequence; //Assigns the ids of the orders handed out by acquireOrder, the global id counter if null
+
+	private BookEventListener eventListener; //Receives what happens in this book for tracing, null when disabled
+	private int levelsSwept; //The number of levels the last inbound order traded with
+
+	private static final int DEFAULT_ORDER_CAPACITY = 1 << 16;
+
+	private static final int DEFAULT_ORDER_POOL_CAPACITY = 1 << 12;
+	private static final int DEFAULT_LEVEL_POOL_CAPACITY = 1 << 10;
+	private static final int LADDER_PAGE_BITS = 6;
+	private static final int LADDER_PAGE_SIZE = 1 << LADDER_PAGE_BITS; //The number of slots of a page of a price ladder
+	private static final int SNAPSHOT_ORDER_SIZE = 32; //Order id, price, quantity and owner of a resting order in a snapshot
+
+	/*
+	 * Pools recycling the orders created by the order book and the price levels removed from the sorted side books.
+	 * Only orders handed out by acquireOrder or created by the order book when an order is split go back to the order pool,
+	 * orders created by the caller are never reused behind its back
+	 */
+	private ObjectPool<Order> orderPool;
+	private ObjectPool<BookLevel> levelPool;
+
+	/*
+	 * The levels changed since the changes were last rendered, with the price and side they had when they changed
+	 */
+	private boolean dirtyTracking;
+	private BookLevel[] dirtyLevels = new BookLevel[64];
+	private long[] dirtyPriceTicks = new long[64];
+	private boolean[] dirtyBid = new boolean[64];
+	private int dirtyNum;
+
+	private static final int CELL_WIDTH = 8; //The width of the quantity and the price of a level in the text representation
+	private static final String PADDING = "                                ";
+	private static final String HEADER = "     Buy         |    Sell\n\n";
 
 	private double prevClosePrice;
 
@@ -27,22 +72,96 @@ public class OrderBook {
 	private Price HIGH_LIMIT;
 	private Price LOW_LIMIT;
 
+	private long highLimitTicks; //The exchange high limit in ticks
+	private long lowLimitTicks; //The exchange low limit in ticks
+
 	private long lotSize;
 
 	private double tickSize;
+	private long tickSizeTicks; //The tick size in ticks, every price placed must be a multiple of it
 
 	public void setPrevClose(double prevClosePrice) {
 		this.prevClosePrice = prevClosePrice;
-		this.HIGH_LIMIT = new Price(this.prevClosePrice * (1 + limitPct));
-		this.LOW_LIMIT = new Price(this.prevClosePrice * (1 - limitPct));
+		this.highLimitTicks = Price.toTicks(this.prevClosePrice * (1 + limitPct));
+		this.lowLimitTicks = Price.toTicks(this.prevClosePrice * (1 - limitPct));
+		this.HIGH_LIMIT = Price.fromTicks(this.highLimitTicks);
+		this.LOW_LIMIT = Price.fromTicks(this.lowLimitTicks);
+		rebuildSideBooks();
+	}
+
+	public double getPrevClose() {
+		return this.prevClosePrice;
 	}
 
 	public void setLotSize(long lotSize) {
 		this.lotSize = lotSize;
 	}
 
+	public long getLotSize() {
+		return this.lotSize;
+	}
+
+	public double getTickSize() {
+		return this.tickSize;
+	}
+
 	public void setTickSize(double tickSize) {
 		this.tickSize = tickSize;
+		this.tickSizeTicks = Price.toTicks(tickSize);
+		rebuildSideBooks();
+	}
+
+	/**
+	 * Set the number of released orders kept for reuse, which starts a new pool with its counters reset
+	 */
+	public void setOrderPoolCapacity(int capacity) {
+		this.orderPool = new ObjectPool<Order>(capacity, Order::new);
+	}
+
+	/**
+	 * Set the number of removed price levels kept for reuse, which starts a new pool with its counters reset
+	 */
+	public void setLevelPoolCapacity(int capacity) {
+		this.levelPool = new ObjectPool<BookLevel>(capacity, BookLevel::new);
+	}
+
+	public ObjectPool<Order> getOrderPool() {
+		return orderPool;
+	}
+
+	public ObjectPool<BookLevel> getLevelPool() {
+		return levelPool;
+	}
+
+	public void setSymbolId(int symbolId) {
+		this.symbolId = symbolId;
+	}
+
+	public int getSymbolId() {
+		return symbolId;
+	}
+
+	/**
+	 * Set the sequence assigning the ids of the orders handed out by acquireOrder, which is needed when
+	 * order books are used by several threads, since the global id counter is not thread safe
+	 */
+	public void setOrderIdSequence(OrderIdSequence orderIdSequence) {
+		this.orderIdSequence = orderIdSequence;
+	}
+
+	/**
+	 * Report what happens in this book to a listener from now on, or stop with null
+	 */
+	public void setEventListener(BookEventListener eventListener) {
+		this.eventListener = eventListener;
+	}
+
+	public BookEventListener getEventListener() {
+		return eventListener;
+	}
+
+	public BookEngine getEngine() {
+		return engine;
 	}
 
 	public Price getHighLimit() {
@@ -53,12 +172,20 @@ public class OrderBook {
 		return LOW_LIMIT;
 	}
 
+	public long getHighLimitTicks() {
+		return highLimitTicks;
+	}
+
+	public long getLowLimitTicks() {
+		return lowLimitTicks;
+	}
+
 	public boolean isLimitUp() {
-		return bidBook != null && getBestBid().compareTo(HIGH_LIMIT) == 0;
+		return !bidBook.isEmpty() && getBestBidTicks() == highLimitTicks;
 	}
 
 	public boolean isLimitDown() {
-		return askBook != null && getBestAsk().compareTo(LOW_LIMIT) == 0;
+		return !askBook.isEmpty() && getBestAskTicks() == lowLimitTicks;
 	}
 
 	/**
@@ -66,93 +193,235 @@ public class OrderBook {
 	 * @author Jiangchuan Zheng
 	 *
 	 */
-	private class BookLevel {
+	class BookLevel {
 		
-		private Price price; //The price of this level
+		private long priceTicks; //The price of this level in ticks
+		private boolean bid; //Whether this level is on the bid side
+		private Price price; //The price of this level for printing and the Price based queries, created when first needed
+
+		private String cell; //The rendered quantity@price cell of this level, reused until the quantity changes
+		private int cellQuantity; //The quantity the cell was rendered with
+		private boolean dirty; //Whether this level changed since the book changes were last rendered
 		private int totalQuantity; //The total quantity of all the orders placed at this evel
 		private int orderNum; //The number of orders placed at this level
 		
-		private List<Order> orders; //The list storing all orders at this level in the order they are placed 
+		/*
+		 * The orders at this level form a doubly linked list through their own prev/next links,
+		 * in the order they are placed, so that any order can be unlinked in constant time
+		 */
+		private Order head; //The earliest order at this level
+		private Order tail; //The latest order at this level
+
+		//The same queue for an order book keeping its resting orders in the off-heap order store, linked by slot
+		private int headSlot;
+		private int tailSlot;
+
+		//Links to the neighbouring levels in priority order, maintained by the sorted side book
+		private BookLevel better;
+		private BookLevel worse;
 		
-		private BookLevel(Price price) {
-			this.price = price;
+		private BookLevel() {
+			reset(Price.NO_PRICE, true);
+		}
+
+		/**
+		 * Empty this level and move it to another price, so that a level taken from the level pool can be reused
+		 * @param priceTicks  the new price of this level in ticks
+		 * @param bid  whether the level is on the bid side
+		 */
+		private void reset(long priceTicks, boolean bid) {
+			if (this.priceTicks != priceTicks || this.bid != bid) {
+				this.price = null;
+				this.cell = null;
+				this.dirty = false; //A change recorded for the old price stays recorded for the old price
+			}
+			this.priceTicks = priceTicks;
+			this.bid = bid;
 			this.totalQuantity = 0;
 			this.orderNum = 0;
-			this.orders = new LinkedList<Order>();
+			this.head = null;
+			this.tail = null;
+			this.headSlot = OffHeapOrderStore.NIL;
+			this.tailSlot = OffHeapOrderStore.NIL;
+			this.better = null;
+			this.worse = null;
+		}
+
+		private Price price() {
+			if (this.price == null) {
+				this.price = Price.fromTicks(this.priceTicks);
+			}
+			return this.price;
+		}
+
+		/**
+		 * Get the rendered quantity@price cell of this level, padded as in the text representation of the book
+		 */
+		private String cell() {
+			if (this.cell == null || this.cellQuantity != this.totalQuantity) {
+				this.cell = renderCell(this.totalQuantity, this.priceTicks, this.bid);
+				this.cellQuantity = this.totalQuantity;
+			}
+			return this.cell;
+		}
+
+		/**
+		 * Record that the quantity of this level changed, if the order book keeps track of its changes
+		 */
+		private void markDirty() {
+			if (dirtyTracking && !this.dirty) {
+				this.dirty = true;
+				recordDirty(this);
+			}
 		}
 		
 		/**
-		 * Add an order to this level
+		 * Add an order to the end of the queue of this level
 		 * @param order  the order to be added
 		 */
 	    private void addOrder(Order order) {
-	    	this.orders.add(order);
+	    	order.level = this;
+	    	order.prev = this.tail;
+	    	order.next = null;
+	    	if (this.tail == null) {
+	    		this.head = order;
+	    	}
+	    	else {
+	    		this.tail.next = order;
+	    	}
+	    	this.tail = order;
+
 	    	this.orderNum++;
 	    	this.totalQuantity += order.getQuantity();
+	    	markDirty();
+	    }
+
+	    /**
+	     * Unlink an order from the queue of this level
+	     * @param order  the order to be unlinked
+	     */
+	    private void unlink(Order order) {
+	    	if (order.prev == null) {
+	    		this.head = order.next;
+	    	}
+	    	else {
+	    		order.prev.next = order.next;
+	    	}
+	    	if (order.next == null) {
+	    		this.tail = order.prev;
+	    	}
+	    	else {
+	    		order.next.prev = order.prev;
+	    	}
+	    	order.prev = null;
+	    	order.next = null;
+	    	order.level = null;
 	    }
 	    
 	    /**
 	     * Remove an order from this level
-	     * @param orderId  the id of the target order to be removed
+	     * @param order  the target order to be removed
 	     * @return bool value indicating if the removal is successful
 	     */
-	    private boolean removeOrder(long orderId) {
-	    	ListIterator<Order> lit = this.orders.listIterator();
-	    	while (lit.hasNext()) {
-	    		Order order = lit.next();
-	    		if (order.getOrderId() == orderId) {
-	    			lit.remove();
-	    			this.orderNum--;
-	    			this.totalQuantity -= order.getQuantity();
-	    			return true;
-	    		}
+	    private boolean removeOrder(Order order) {
+	    	if (order.level != this) {
+	    		return false; //Target order does not rest at this level
 	    	}
-	    	
-	    	return false; //Target order does not exist
+
+	    	unlink(order);
+	    	this.orderNum--;
+	    	this.totalQuantity -= order.getQuantity();
+	    	markDirty();
+	    	return true;
 	    }
 	    
 	    /**
 	     * Update the quantity of an order at this level
-	     * @param orderId  the id of the target order
+	     * @param order  the target order
 	     * @param deltaQuantity  the increment to be added to the quantity of the target order
 	     * @return bool value indicating if the update is successful
 	     */
-	    private boolean updateOrder(long orderId, long deltaQuantity) {
-	    	ListIterator<Order> lit = this.orders.listIterator();
-	    	while (lit.hasNext()) {
-	    		Order order = lit.next();
-	    		if (order.getOrderId() == orderId) {
-	    			order.updateQuantity(deltaQuantity);
-	    			this.totalQuantity += deltaQuantity;
-	    			return true;
-	    		}
+	    private boolean updateOrder(Order order, long deltaQuantity) {
+	    	if (order.level != this) {
+	    		return false; //Target order does not rest at this level
 	    	}
-	    	
-	    	return false; //Target order does not exist
+
+	    	order.updateQuantity(deltaQuantity); //Amending down keeps the time priority of the order
+	    	this.totalQuantity += deltaQuantity;
+	    	markDirty();
+	    	return true;
 	    }
 	    
+	    /**
+	     * Trade a certain quantity on orders placed at this level, reporting every fill to a listener
+	     * without allocating any object
+	     * @param tradeQuantity  the maximum quantity to trade with orders at this level
+	     * @param takerOrderId  the id of the inbound order
+	     * @param listener  the listener receiving the fills
+	     * @return the quantity traded at this level
+	     */
+	    private long trade(long tradeQuantity, long takerOrderId, FillListener listener) {
+	    	if (store != null) {
+	    		return tradeSlots(tradeQuantity, takerOrderId, listener);
+	    	}
+
+	    	long tradedQuantity = 0;
+
+	    	Order order = this.head;
+	    	while (order != null && tradeQuantity > 0) {
+	    		Order next = order.next;
+	    		long fillQuantity = Math.min(tradeQuantity, order.getQuantity());
+
+	    		order.updateQuantity(-fillQuantity);
+	    		this.totalQuantity -= fillQuantity;
+	    		if (order.getQuantity() == 0) {
+	    			unlink(order);
+	    			orderDict.remove(order.getOrderId());
+	    			this.orderNum--;
+	    		}
+
+	    		tradeQuantity -= fillQuantity;
+	    		tradedQuantity += fillQuantity;
+
+	    		listener.onFill(order.getOrderId(), takerOrderId, this.priceTicks, fillQuantity);
+
+	    		if (order.getQuantity() == 0) {
+	    			releaseOrder(order); //Nothing refers to a filled order on this path any more
+	    		}
+
+	    		order = next;
+	    	}
+
+	    	markDirty();
+	    	return tradedQuantity;
+	    }
+
 	    /**
 	     * Trade a certain quantity on orders placed at this level
 	     * @param tradeQuantity  the maximum quantity to trade with orders at this level
-	     * @return a Trade object storing all those orders at this level that get traded
+	     * @param trade  the Trade object all those orders at this level that get traded are added to
+	     * @return the quantity traded at this level
 	     */
-	    private Trade trade(long tradeQuantity) {
-	    	Trade trade = new Trade();
+	    private long trade(long tradeQuantity, Trade trade) {
+	    	if (store != null) {
+	    		return tradeSlots(tradeQuantity, trade);
+	    	}
+
+	    	long maxQuantity = tradeQuantity;
 	    	
-	    	ListIterator<Order> lit = this.orders.listIterator();
-	    	Order order = null;
+	    	Order order = this.head;
 	    	long quantity = 0;
 	    	
 	    	/*
-	    	 * Scan the list of orders to trade them one by one until all the order have been traded or
+	    	 * Scan the queue of orders to trade them one by one until all the order have been traded or
 	    	 * the given quantity (tradeQuantity) gets traded completely
 	    	 */
-	    	while (lit.hasNext() && tradeQuantity > 0) {
-	    		order = lit.next();
+	    	while (order != null && tradeQuantity > 0) {
+	    		Order next = order.next;
 	    		quantity = order.getQuantity();
 	    		if (tradeQuantity >= quantity) {
+	    			unlink(order);
 	    			trade.addTradedOrder(order);
-	    			lit.remove();
 
 	    			orderDict.remove(order.getOrderId());
 
@@ -163,111 +432,793 @@ public class OrderBook {
 	    			
 	    		}
 	    		else {
-	    			trade.addTradedOrder(order.split(tradeQuantity));
+	    			trade.addTradedOrder(splitOrder(order, tradeQuantity));
 	    			this.totalQuantity -= tradeQuantity;
+	    			tradeQuantity = 0;
 	    			break;
 	    		}
+	    		order = next;
 	    	}
 	    	
-	    	return trade;
+	    	markDirty();
+	    	return maxQuantity - tradeQuantity;
+	    }
+
+	    /**
+	     * Add an order stored in the off-heap order store to the end of the queue of this level
+	     * @param slot  the slot of the order
+	     */
+	    private void addSlot(int slot) {
+	    	store.setPrev(slot, this.tailSlot);
+	    	store.setNext(slot, OffHeapOrderStore.NIL);
+	    	if (this.tailSlot == OffHeapOrderStore.NIL) {
+	    		this.headSlot = slot;
+	    	}
+	    	else {
+	    		store.setNext(this.tailSlot, slot);
+	    	}
+	    	this.tailSlot = slot;
+
+	    	this.orderNum++;
+	    	this.totalQuantity += store.quantity(slot);
+	    	markDirty();
+	    }
+
+	    private void unlinkSlot(int slot) {
+	    	int prev = store.prev(slot);
+	    	int next = store.next(slot);
+	    	if (prev == OffHeapOrderStore.NIL) {
+	    		this.headSlot = next;
+	    	}
+	    	else {
+	    		store.setNext(prev, next);
+	    	}
+	    	if (next == OffHeapOrderStore.NIL) {
+	    		this.tailSlot = prev;
+	    	}
+	    	else {
+	    		store.setPrev(next, prev);
+	    	}
+	    }
+
+	    /**
+	     * Remove an order stored in the off-heap order store from this level, the slot is not released
+	     * @param slot  the slot of the order
+	     */
+	    private void removeSlot(int slot) {
+	    	unlinkSlot(slot);
+	    	this.orderNum--;
+	    	this.totalQuantity -= store.quantity(slot);
+	    	markDirty();
+	    }
+
+	    private void updateSlot(int slot, long deltaQuantity) {
+	    	store.setQuantity(slot, store.quantity(slot) + deltaQuantity);
+	    	this.totalQuantity += deltaQuantity;
+	    	markDirty();
+	    }
+
+	    /**
+	     * Trade a certain quantity on the orders of the off-heap order store placed at this level
+	     * @param tradeQuantity  the maximum quantity to trade with orders at this level
+	     * @param trade  the Trade object the orders at this level that get traded are added to, created from their slots
+	     * @return the quantity traded at this level
+	     */
+	    private long tradeSlots(long tradeQuantity, Trade trade) {
+	    	long maxQuantity = tradeQuantity;
+
+	    	int slot = this.headSlot;
+	    	while (slot != OffHeapOrderStore.NIL && tradeQuantity > 0) {
+	    		int next = store.next(slot);
+	    		long quantity = store.quantity(slot);
+	    		if (tradeQuantity >= quantity) {
+	    			trade.addTradedOrder(storedOrder(slot, store.quantity(slot)));
+	    			removeSlot(slot);
+	    			store.free(slot);
+	    			tradeQuantity -= quantity;
+	    		}
+	    		else {
+	    			trade.addTradedOrder(storedOrder(slot, tradeQuantity));
+	    			updateSlot(slot, -tradeQuantity);
+	    			tradeQuantity = 0;
+	    			break;
+	    		}
+	    		slot = next;
+	    	}
+
+	    	return maxQuantity - tradeQuantity;
+	    }
+
+	    /**
+	     * Trade a certain quantity on the orders of the off-heap order store placed at this level,
+	     * reporting every fill to a listener without allocating any object
+	     * @return the quantity traded at this level
+	     */
+	    private long tradeSlots(long tradeQuantity, long takerOrderId, FillListener listener) {
+	    	long tradedQuantity = 0;
+
+	    	int slot = this.headSlot;
+	    	while (slot != OffHeapOrderStore.NIL && tradeQuantity > 0) {
+	    		int next = store.next(slot);
+	    		long orderId = store.orderId(slot);
+	    		long fillQuantity = Math.min(tradeQuantity, store.quantity(slot));
+
+	    		if (fillQuantity == store.quantity(slot)) {
+	    			removeSlot(slot);
+	    			store.free(slot);
+	    		}
+	    		else {
+	    			updateSlot(slot, -fillQuantity);
+	    		}
+
+	    		tradeQuantity -= fillQuantity;
+	    		tradedQuantity += fillQuantity;
+
+	    		listener.onFill(orderId, takerOrderId, this.priceTicks, fillQuantity);
+
+	    		slot = next;
+	    	}
+
+	    	return tradedQuantity;
 	    }
 	}
 	
 	
 	
+	/**
+	 * Class that represents one side of the order book, keeping its price levels in priority order,
+	 * i.e. from the best price to the worst price
+	 * @author Jiangchuan Zheng
+	 *
+	 */
+	private abstract class SideBook {
+
+		/**
+		 * Get the level at the given price
+		 * @param priceTicks  the price of the level in ticks
+		 * @return the level, or null if no order rests at this price
+		 */
+		abstract BookLevel get(long priceTicks);
+
+		/**
+		 * Get the level at the given price, creating it if no order rests at this price yet
+		 * @param priceTicks  the price of the level in ticks
+		 * @return the level at the given price
+		 */
+		abstract BookLevel getOrCreate(long priceTicks);
+
+		/**
+		 * Put an existing level into this side, used when the levels are moved to another side book
+		 * @param level  the level to be put
+		 */
+		abstract void insert(BookLevel level);
+
+		/**
+		 * Remove a level from this side
+		 * @param level  the level to be removed
+		 */
+		abstract void remove(BookLevel level);
+
+		abstract boolean isEmpty();
+
+		/**
+		 * Get the number of price levels with orders on this side
+		 */
+		abstract int levelNum();
+
+		/**
+		 * Get the level with the best price
+		 * @return the best level, or null if this side is empty
+		 */
+		abstract BookLevel best();
+
+		/**
+		 * Get the level next to the given level in priority order
+		 * @param level  the current level, which may already have been removed from this side
+		 * @return the next worse level, or null if there is none
+		 */
+		abstract BookLevel next(BookLevel level);
+
+		/**
+		 * Compare two prices in ticks in the priority order of this side
+		 * @return a negative value if price a has higher priority than price b, 0 if equal, otherwise a positive value
+		 */
+		int compare(long a, long b) {
+			return isBid() ? Long.compare(b, a) : Long.compare(a, b);
+		}
+
+		abstract boolean isBid();
+	}
+
+	/**
+	 * Side book that keeps the price levels in a sorted map
+	 */
+	private class TreeSideBook extends SideBook {
+
+		private final boolean bid;
+		private final TreeMap<Long, BookLevel> levels;
+
+		/*
+		 * The levels are also linked in priority order through their better/worse links,
+		 * so that walking the side from the best level needs no lookup in the map
+		 */
+		private BookLevel bestLevel;
+
+		private TreeSideBook(boolean bid) {
+			this.bid = bid;
+			if (bid) {
+				this.levels = new TreeMap<Long, BookLevel>(Collections.reverseOrder()); //Bid book stores the price levels from the highest price to the lowest
+			}
+			else {
+				this.levels = new TreeMap<Long, BookLevel>(); //Ask book stores the price levels from the lowest price to the highest price
+			}
+		}
+
+		boolean isBid() {
+			return this.bid;
+		}
+
+		BookLevel get(long priceTicks) {
+			return this.levels.get(priceTicks);
+		}
+
+		BookLevel getOrCreate(long priceTicks) {
+			BookLevel level = this.levels.get(priceTicks);
+			if (level == null) {
+				level = acquireLevel(priceTicks, this.bid);
+				insert(level);
+			}
+			return level;
+		}
+
+		void insert(BookLevel level) {
+			this.levels.put(level.priceTicks, level);
+
+			Map.Entry<Long, BookLevel> betterEntry = this.levels.lowerEntry(level.priceTicks);
+			BookLevel better = betterEntry == null ? null : betterEntry.getValue();
+			BookLevel worse = better == null ? this.bestLevel : better.worse;
+
+			level.better = better;
+			level.worse = worse;
+			if (better == null) {
+				this.bestLevel = level;
+			}
+			else {
+				better.worse = level;
+			}
+			if (worse != null) {
+				worse.better = level;
+			}
+		}
+
+		void remove(BookLevel level) {
+			this.levels.remove(level.priceTicks);
+
+			//The links of the removed level are kept, so that next() still works on it
+			if (level.better == null) {
+				this.bestLevel = level.worse;
+			}
+			else {
+				level.better.worse = level.worse;
+			}
+			if (level.worse != null) {
+				level.worse.better = level.better;
+			}
+
+			levelPool.release(level); //Only reset when handed out again, so that next() still works on the removed level
+		}
+
+		boolean isEmpty() {
+			return this.bestLevel == null;
+		}
+
+		int levelNum() {
+			return this.levels.size();
+		}
+
+		BookLevel best() {
+			return this.bestLevel;
+		}
+
+		BookLevel next(BookLevel level) {
+			return level.worse;
+		}
+	}
+
+	/**
+	 * Side book that maps every tick between the exchange low limit and high limit to a slot of an array,
+	 * so that a level is found by its price in constant time.
+	 * A level object stays in its slot after the level empties and is reused when the price gets occupied again.
+	 * The occupied slots are tracked in a bitmap, so the next level is found by word scans, and the best level is cached.
+	 */
+	private class LadderSideBook extends SideBook {
+
+		private final boolean bid;
+		private final long tickSizeTicks; //The tick size in ticks
+		private final long baseTick; //The tick number of slot 0, i.e. the low limit divided by the tick size
+
+		/*
+		 * The level of each slot, in pages allocated when a slot of the page is first used, so that a ladder
+		 * over a wide band costs little until orders come. A level stays in its slot when it empties, for reuse
+		 */
+		private final BookLevel[][] pages;
+		private final int slotNum;
+		private final OccupancyBitmap occupied; //Whether any order rests at the price of each slot
+
+		private int levelNum; //The number of occupied slots
+		private int bestSlot; //The occupied slot with the best price, -1 if this side is empty
+
+		private LadderSideBook(boolean bid, long tickSizeTicks, long lowLimitTicks, long highLimitTicks) {
+			this.bid = bid;
+			this.tickSizeTicks = tickSizeTicks;
+			this.baseTick = lowLimitTicks / tickSizeTicks;
+
+			this.slotNum = (int)(highLimitTicks / tickSizeTicks - this.baseTick + 1);
+			this.pages = new BookLevel[(this.slotNum + LADDER_PAGE_SIZE - 1) >> LADDER_PAGE_BITS][];
+			this.occupied = new OccupancyBitmap(this.slotNum);
+			this.levelNum = 0;
+			this.bestSlot = -1;
+		}
+
+		boolean isBid() {
+			return this.bid;
+		}
+
+		/**
+		 * Get the slot of a price
+		 * @param priceTicks  the price in ticks
+		 * @return the slot, or -1 if the price is not on the tick grid or out of the exchange limits
+		 */
+		private int slotOf(long priceTicks) {
+			if (priceTicks % this.tickSizeTicks != 0) {
+				return -1;
+			}
+			long slot = priceTicks / this.tickSizeTicks - this.baseTick;
+			if (slot < 0 || slot >= this.slotNum) {
+				return -1;
+			}
+			return (int)slot;
+		}
+
+		private BookLevel level(int slot) {
+			BookLevel[] page = this.pages[slot >> LADDER_PAGE_BITS];
+			return page == null ? null : page[slot & (LADDER_PAGE_SIZE - 1)];
+		}
+
+		private void setLevel(int slot, BookLevel level) {
+			BookLevel[] page = this.pages[slot >> LADDER_PAGE_BITS];
+			if (page == null) {
+				page = new BookLevel[LADDER_PAGE_SIZE];
+				this.pages[slot >> LADDER_PAGE_BITS] = page;
+			}
+			page[slot & (LADDER_PAGE_SIZE - 1)] = level;
+		}
+
+		/**
+		 * Find the first occupied slot that is worse than the given slot
+		 * @param slot  the slot to start from
+		 * @return the next occupied slot, or -1 if there is none
+		 */
+		private int nextOccupied(int slot) {
+			if (this.bid) {
+				return this.occupied.prevSetBit(slot - 1);
+			}
+			else {
+				return this.occupied.nextSetBit(slot + 1);
+			}
+		}
+
+		private void occupy(int slot) {
+			this.occupied.set(slot);
+			this.levelNum++;
+			if (this.bestSlot < 0 || (this.bid ? slot > this.bestSlot : slot < this.bestSlot)) {
+				this.bestSlot = slot;
+			}
+		}
+
+		BookLevel get(long priceTicks) {
+			int slot = slotOf(priceTicks);
+			if (slot < 0 || !this.occupied.get(slot)) {
+				return null;
+			}
+			return level(slot);
+		}
+
+		BookLevel getOrCreate(long priceTicks) {
+			int slot = slotOf(priceTicks);
+			if (slot < 0) {
+				throw new IllegalArgumentException("Price " + Price.format(priceTicks) + " is not on the price ladder of the order book");
+			}
+			BookLevel level = level(slot);
+			if (!this.occupied.get(slot)) {
+				if (level == null) {
+					level = acquireLevel(priceTicks, this.bid);
+					setLevel(slot, level);
+				}
+				occupy(slot);
+			}
+			return level;
+		}
+
+		void insert(BookLevel level) {
+			int slot = slotOf(level.priceTicks);
+			if (slot < 0) {
+				throw new IllegalArgumentException("Price " + level.price() + " is not on the price ladder of the order book");
+			}
+			setLevel(slot, level);
+			occupy(slot);
+		}
+
+		void remove(BookLevel level) {
+			int slot = slotOf(level.priceTicks);
+			this.occupied.clear(slot);
+			this.levelNum--;
+			if (slot == this.bestSlot) {
+				this.bestSlot = nextOccupied(slot);
+			}
+		}
+
+		boolean isEmpty() {
+			return this.levelNum == 0;
+		}
+
+		int levelNum() {
+			return this.levelNum;
+		}
+
+		BookLevel best() {
+			if (this.bestSlot < 0) {
+				return null;
+			}
+			return level(this.bestSlot);
+		}
+
+		BookLevel next(BookLevel level) {
+			int slot = nextOccupied(slotOf(level.priceTicks));
+			if (slot < 0) {
+				return null;
+			}
+			return level(slot);
+		}
+	}
+
 	public OrderBook() {
-		
-		this.orderDict = new HashMap<Long, Order>();
-		
-		this.bidBook = new TreeMap<Price, BookLevel>(Collections.reverseOrder()); //Bid book stores the price levels from the highest price to the lowest
-		this.askBook = new TreeMap<Price, BookLevel>(); //Ask book stores the price levels from the lowest price to the highest price
+		this(defaultEngine(), DEFAULT_ORDER_CAPACITY, defaultStore());
+	}
+
+	/**
+	 * @param orderCapacity  the number of resting orders the order index can hold before it needs to grow,
+	 * with the engine and the store chosen as for order books created without an explicit engine
+	 */
+	public OrderBook(int orderCapacity) {
+		this(defaultEngine(), orderCapacity, defaultStore());
+	}
+
+	public OrderBook(BookEngine engine) {
+		this(engine, DEFAULT_ORDER_CAPACITY);
+	}
+
+	/**
+	 * @param engine  how the price levels of each side are stored
+	 * @param orderCapacity  the number of resting orders the order index can hold before it needs to grow
+	 */
+	public OrderBook(BookEngine engine, int orderCapacity) {
+		this(engine, orderCapacity, null);
+	}
+
+	/**
+	 * @param engine  how the price levels of each side are stored
+	 * @param store  the off-heap store keeping the resting orders of this book
+	 */
+	public OrderBook(BookEngine engine, OffHeapOrderStore store) {
+		this(engine, DEFAULT_ORDER_CAPACITY, store);
+	}
+
+	private OrderBook(BookEngine engine, int orderCapacity, OffHeapOrderStore store) {
+		this(engine, store == null ? new LongOrderMap(orderCapacity) : null, store);
+	}
+
+	private OrderBook(BookEngine engine, LongOrderMap orderDict, OffHeapOrderStore store) {
+
+		this.engine = engine;
+
+		this.orderDict = orderDict;
+		this.store = store;
+
+		setOrderPoolCapacity(DEFAULT_ORDER_POOL_CAPACITY);
+		setLevelPoolCapacity(DEFAULT_LEVEL_POOL_CAPACITY);
+
+		this.bidBook = new TreeSideBook(true);
+		this.askBook = new TreeSideBook(false);
+	}
+
+	/**
+	 * Get an order from the order pool, which goes back to the pool once it leaves the book through a full fill
+	 * on the fill listener path, or when it is given to releaseOrder or releaseTrade
+	 * @return an order with a new order id
+	 */
+	public Order acquireOrder(long priceTicks, Side side, long quantity) {
+		long orderId = this.orderIdSequence == null ? Order.nextOrderId() : this.orderIdSequence.next();
+		return acquireOrder(orderId, priceTicks, side, quantity);
+	}
+
+	private Order acquireOrder(long orderId, long priceTicks, Side side, long quantity) {
+		Order order = this.orderPool.acquire();
+		order.reset(orderId, priceTicks, side, quantity);
+		order.pooled = true;
+		return order;
+	}
+
+	/**
+	 * Give back an order that is no longer used, i.e. filled completely, canceled or rejected.
+	 * Orders not handed out by this order book are ignored
+	 * @param order  the order
+	 */
+	public void releaseOrder(Order order) {
+		if (order == null || !order.pooled) {
+			return;
+		}
+		order.pooled = false; //Releasing the same order twice must not put it on the free list twice
+		this.orderPool.release(order);
+	}
+
+	/**
+	 * Give back all the orders of a trade that is no longer used
+	 * @param trade  the trade
+	 */
+	public void releaseTrade(Trade trade) {
+		for (Order order : trade.getTradedOrders()) {
+			releaseOrder(order);
+		}
+		releaseOrder(trade.getTradingOrder());
+	}
+
+	/**
+	 * Split the traded part off an order, like Order.split but with the traded part taken from the order pool
+	 * @param order  the order
+	 * @param tradeQuantity  the quantity traded for the order
+	 * @return an order representing the trade filled by the order
+	 */
+	private Order splitOrder(Order order, long tradeQuantity) {
+		Order filledOrder = acquireOrder(order.getOrderId(), order.getPriceTicks(), order.getRawSide(), tradeQuantity);
+		filledOrder.setOwnerId(order.getOwnerId());
+		filledOrder.setSymbolId(order.getSymbolId());
+		order.updateQuantity(-tradeQuantity);
+		return filledOrder;
+	}
+
+	/**
+	 * Get an order from the order pool with the content of a slot of the off-heap order store
+	 * @param slot  the slot
+	 * @param quantity  the quantity of the order
+	 * @return the order
+	 */
+	private Order storedOrder(int slot, long quantity) {
+		Order order = acquireOrder(this.store.orderId(slot), this.store.priceTicks(slot), this.store.side(slot), quantity);
+		order.setOwnerId(this.store.ownerId(slot));
+		order.setSymbolId(this.symbolId);
+		return order;
+	}
+
+	private BookLevel acquireLevel(long priceTicks, boolean bid) {
+		BookLevel level = this.levelPool.acquire();
+		level.reset(priceTicks, bid);
+		return level;
+	}
+
+	/**
+	 * Get the engine used by order books created without an explicit engine,
+	 * which can be chosen with the system property "orderbook.engine"
+	 * @return the default engine
+	 */
+	private static BookEngine defaultEngine() {
+		return BookEngine.valueOf(System.getProperty("orderbook.engine", BookEngine.TREE.name()).toUpperCase());
+	}
+
+	/**
+	 * Get the off-heap store used by order books created without an explicit engine, which is sized
+	 * with the system property "orderbook.offheap.capacity". Resting orders are kept on the heap if it is not set
+	 * @return the default store, or null
+	 */
+	private static OffHeapOrderStore defaultStore() {
+		String capacity = System.getProperty("orderbook.offheap.capacity");
+		if (capacity == null) {
+			return null;
+		}
+		return new OffHeapOrderStore(Integer.parseInt(capacity));
+	}
+
+	/**
+	 * Rebuild both sides of the book after the exchange limits or the tick size change.
+	 * The ladder engine needs the exchange limits to lie on the tick grid, and every resting level to lie on the new
+	 * ladder, otherwise the levels stay in sorted maps. Both conditions are checked before anything is moved,
+	 * so that the book is never left with one side rebuilt and the other not.
+	 */
+	private void rebuildSideBooks() {
+		if (this.engine != BookEngine.LADDER || this.HIGH_LIMIT == null || this.tickSizeTicks <= 0) {
+			return;
+		}
+
+		SideBook newBidBook = null;
+		SideBook newAskBook = null;
+		if (this.highLimitTicks % this.tickSizeTicks == 0 && this.lowLimitTicks % this.tickSizeTicks == 0
+				&& fitsLadder(this.bidBook) && fitsLadder(this.askBook)) {
+			newBidBook = new LadderSideBook(true, this.tickSizeTicks, this.lowLimitTicks, this.highLimitTicks);
+			newAskBook = new LadderSideBook(false, this.tickSizeTicks, this.lowLimitTicks, this.highLimitTicks);
+		}
+		else {
+			newBidBook = new TreeSideBook(true);
+			newAskBook = new TreeSideBook(false);
+		}
+
+		//Move the resting levels over to the new side books, taking the next level before a level gets relinked
+		BookLevel level = this.bidBook.best();
+		while (level != null) {
+			BookLevel next = this.bidBook.next(level);
+			newBidBook.insert(level);
+			level = next;
+		}
+		level = this.askBook.best();
+		while (level != null) {
+			BookLevel next = this.askBook.next(level);
+			newAskBook.insert(level);
+			level = next;
+		}
+
+		this.bidBook = newBidBook;
+		this.askBook = newAskBook;
+	}
+
+	/**
+	 * Whether every level of a side book lies on the ladder of the current exchange limits and tick size,
+	 * which is not the case for orders placed within the previous limits but out of the current ones
+	 */
+	private boolean fitsLadder(SideBook book) {
+		for (BookLevel level = book.best(); level != null; level = book.next(level)) {
+			if (level.priceTicks % this.tickSizeTicks != 0 || level.priceTicks < this.lowLimitTicks
+					|| level.priceTicks > this.highLimitTicks) {
+				return false;
+			}
+		}
+		return true;
 	}
 	
 	/**
 	 * Return a text representation of the current order book for printing
 	 */
 	public String toString() {
-		
-		int capacity = 8;
+		return toString(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Return a text representation of the best levels of the current order book for printing,
+	 * so that the cost does not depend on how deep the book is
+	 * @param depth  the maximum number of levels printed on each side
+	 */
+	public String toString(int depth) {
 		
 		StringBuilder b = new StringBuilder();
 		b.append("OrderBook:\n");
 		
-		Iterator<BookLevel> bidIt = this.bidBook.values().iterator();
-		Iterator<BookLevel> askIt = this.askBook.values().iterator();
+		BookLevel bidLevel = this.bidBook.best();
+		BookLevel askLevel = this.askBook.best();
 		
-		String headBuy = "Buy";
-		String headSell = "Sell";
+		b.append(HEADER);
 		
-		for (int i = 0; i < capacity - headBuy.length(); i++) {
-			b.append(" ");
+		for (int row = 0; row < depth && (bidLevel != null || askLevel != null); row++) {
+			if (bidLevel != null) {
+				b.append(bidLevel.cell());
+				bidLevel = this.bidBook.next(bidLevel);
+			}
+			else {
+				appendPadding(b, 2*CELL_WIDTH+1);
+			}
+			
+			b.append("|");
+			
+			if (askLevel != null) {
+				b.append(askLevel.cell());
+				askLevel = this.askBook.next(askLevel);
+			}
+			b.append("\n");
+		}
+		
+		
+		return b.toString();
+	}
+
+	/**
+	 * Return a text representation of the levels changed since the last call, one line per level with its
+	 * current quantity, 0 if the level has emptied. Changes are only recorded while dirty tracking is on.
+	 * A price whose level is removed and placed again before the changes are rendered can be listed twice
+	 */
+	public String renderChanges() {
+		StringBuilder b = new StringBuilder();
+		b.append("OrderBook changes:\n");
+
+		for (int i = 0; i < this.dirtyNum; i++) {
+			BookLevel level = this.dirtyLevels[i];
+			this.dirtyLevels[i] = null;
+			level.dirty = false;
+
+			long priceTicks = this.dirtyPriceTicks[i];
+			boolean bid = this.dirtyBid[i];
+			BookLevel current = (bid ? this.bidBook : this.askBook).get(priceTicks);
+
+			b.append(bid ? "Buy  " : "Sell ");
+			b.append(current != null ? current.cell() : renderCell(0, priceTicks, bid));
+			b.append("\n");
+		}
+		this.dirtyNum = 0;
+
+		return b.toString();
+	}
+
+	/**
+	 * Turn on or off the recording of changed levels for renderChanges. Nothing is recorded while it is off
+	 */
+	public void setDirtyTracking(boolean dirtyTracking) {
+		this.dirtyTracking = dirtyTracking;
+		if (!dirtyTracking) {
+			clearChanges();
 		}
-		b.append(headBuy);
-		b.append(" ");
-		for (int i = 0; i < capacity; i++) {
-			b.append(" ");
+	}
+
+	/**
+	 * Forget the levels changed since the last call to renderChanges, without rendering them
+	 */
+	public void clearChanges() {
+		for (int i = 0; i < this.dirtyNum; i++) {
+			this.dirtyLevels[i].dirty = false;
+			this.dirtyLevels[i] = null;
 		}
-		
-		b.append("|");
-		
-		for (int i = 0; i < capacity - headSell.length(); i++) {
-			b.append(" ");
+		this.dirtyNum = 0;
+	}
+
+	private void recordDirty(BookLevel level) {
+		if (this.dirtyNum == this.dirtyLevels.length) {
+			int newLength = this.dirtyLevels.length * 2;
+			this.dirtyLevels = Arrays.copyOf(this.dirtyLevels, newLength);
+			this.dirtyPriceTicks = Arrays.copyOf(this.dirtyPriceTicks, newLength);
+			this.dirtyBid = Arrays.copyOf(this.dirtyBid, newLength);
 		}
-		b.append(headSell);
-		b.append("\n\n");
-		
-		BookLevel bidLevel = null;
-		BookLevel askLevel = null;
-		while (bidIt.hasNext() || askIt.hasNext()) {
-			if (bidIt.hasNext()) {
-				bidLevel = bidIt.next();
-				String bidPrice = bidLevel.price.toString();
-				String quantity = String.valueOf(bidLevel.totalQuantity);
-				for (int i = 0; i < capacity - quantity.length(); i++) {
-					b.append(" ");
-				}
-				b.append(quantity);
-				b.append("@");
-				b.append(bidPrice);
-				for (int i = 0; i < capacity - bidPrice.length(); i++) {
-					b.append(" ");
-				}
-			}
-			else {
-				for (int i = 0; i < 2*capacity+1; i++) {
-					b.append(" ");
-				}
-			}
-			
-			b.append("|");
-			
-			if (askIt.hasNext()) {
-				askLevel = askIt.next();
-				String askPrice = askLevel.price.toString();
-				String quantity = String.valueOf(askLevel.totalQuantity);
-				for (int i = 0; i < capacity - quantity.length(); i++) {
-					b.append(" ");
-				}
-				b.append(quantity);
-				b.append("@");
-				b.append(askPrice);
-				b.append("\n");
-			}
-			else {
-				b.append("\n");
-			}
+		this.dirtyLevels[this.dirtyNum] = level;
+		this.dirtyPriceTicks[this.dirtyNum] = level.priceTicks;
+		this.dirtyBid[this.dirtyNum] = level.bid;
+		this.dirtyNum++;
+	}
+
+	/**
+	 * Render the quantity@price cell of a level, padded to the width of its column
+	 */
+	private static String renderCell(long quantity, long priceTicks, boolean bid) {
+		String price = Price.format(priceTicks);
+		String quantityString = String.valueOf(quantity);
+
+		StringBuilder b = new StringBuilder(2*CELL_WIDTH+1);
+		appendPadding(b, CELL_WIDTH - quantityString.length());
+		b.append(quantityString);
+		b.append("@");
+		b.append(price);
+		if (bid) {
+			appendPadding(b, CELL_WIDTH - price.length());
 		}
-		
-		
 		return b.toString();
 	}
+
+	private static void appendPadding(StringBuilder b, int count) {
+		if (count > 0) {
+			b.append(PADDING, 0, count);
+		}
+	}
 	
 
 	public Price getBestBid() {
-		if (this.bidBook.isEmpty()) {
+		BookLevel bookLevel = this.bidBook.best();
+		if (bookLevel == null) {
 			return null;
 		}
-		return this.bidBook.firstKey();
+		return bookLevel.price();
 	}
 
 	public long getBestBidQuantity() {
@@ -276,7 +1227,7 @@ public class OrderBook {
 			return 0;
 		}
 		else {
-			BookLevel bookLevel = this.bidBook.get(getBestBid());
+			BookLevel bookLevel = this.bidBook.best();
 			if (bookLevel != null) {
 				return bookLevel.totalQuantity;
 			}
@@ -289,10 +1240,35 @@ public class OrderBook {
 
 
 	public Price getBestAsk() {
-		if (this.askBook.isEmpty()) {
+		BookLevel bookLevel = this.askBook.best();
+		if (bookLevel == null) {
 			return null;
 		}
-		return this.askBook.firstKey();
+		return bookLevel.price();
+	}
+
+	/**
+	 * Get the best bid in ticks
+	 * @return the best bid in ticks, or Price.NO_PRICE if the bid side is empty
+	 */
+	public long getBestBidTicks() {
+		BookLevel bookLevel = this.bidBook.best();
+		if (bookLevel == null) {
+			return Price.NO_PRICE;
+		}
+		return bookLevel.priceTicks;
+	}
+
+	/**
+	 * Get the best ask in ticks
+	 * @return the best ask in ticks, or Price.NO_PRICE if the ask side is empty
+	 */
+	public long getBestAskTicks() {
+		BookLevel bookLevel = this.askBook.best();
+		if (bookLevel == null) {
+			return Price.NO_PRICE;
+		}
+		return bookLevel.priceTicks;
 	}
 
 
@@ -302,7 +1278,7 @@ public class OrderBook {
 			return 0;
 		}
 		else {
-			BookLevel bookLevel = this.askBook.get(getBestAsk());
+			BookLevel bookLevel = this.askBook.best();
 			if (bookLevel != null) {
 				return bookLevel.totalQuantity;
 			}
@@ -315,9 +1291,12 @@ public class OrderBook {
 
 
 	public BookLevel getBookLevel(double rawPrice) {
-		Price price = new Price(rawPrice);
-		if (!this.bidBook.isEmpty() && price.compareTo(getBestBid()) <= 0) {
-			BookLevel bookLevel = this.bidBook.get(price);
+		return getBookLevel(Price.toTicks(rawPrice));
+	}
+
+	private BookLevel getBookLevel(long priceTicks) {
+		if (!this.bidBook.isEmpty() && priceTicks <= getBestBidTicks()) {
+			BookLevel bookLevel = this.bidBook.get(priceTicks);
 			if (bookLevel != null)
 			{
 				return bookLevel;
@@ -326,8 +1305,8 @@ public class OrderBook {
 				return null;
 			}
 		}
-		else if (!this.askBook.isEmpty() && price.compareTo(getBestAsk()) >= 0) {
-			BookLevel bookLevel = this.askBook.get(price);
+		else if (!this.askBook.isEmpty() && priceTicks >= getBestAskTicks()) {
+			BookLevel bookLevel = this.askBook.get(priceTicks);
 			if (bookLevel != null)
 			{
 				return bookLevel;
@@ -343,7 +1322,12 @@ public class OrderBook {
 
 	public long getQuantityAtPrice(double rawPrice)
 	{
-        BookLevel bookLevel = getBookLevel(rawPrice);
+		return getQuantityAtPriceTicks(Price.toTicks(rawPrice));
+	}
+
+	public long getQuantityAtPriceTicks(long priceTicks)
+	{
+        BookLevel bookLevel = getBookLevel(priceTicks);
         if (bookLevel == null) {
         	return 0;
 		}
@@ -354,7 +1338,12 @@ public class OrderBook {
 
 	public int getOrderNumAtPrice(double rawPrice)
 	{
-		BookLevel bookLevel = getBookLevel(rawPrice);
+		return getOrderNumAtPriceTicks(Price.toTicks(rawPrice));
+	}
+
+	public int getOrderNumAtPriceTicks(long priceTicks)
+	{
+		BookLevel bookLevel = getBookLevel(priceTicks);
 		if (bookLevel == null) {
 			return 0;
 		}
@@ -363,6 +1352,123 @@ public class OrderBook {
 		}
 	}
 
+	/**
+	 * Read the best levels of one side of the book into arrays owned by the caller, from the best level on.
+	 * The quantity and the number of orders of every level are kept up to date as orders come and go,
+	 * so nothing is computed or allocated here, and it can be called as often as needed
+	 * @param side  the side of the book
+	 * @param levels  the maximum number of levels to read, no more than the length of the arrays
+	 * @param prices  receives the price of each level in ticks
+	 * @param quantities  receives the total quantity of each level
+	 * @param orderCounts  receives the number of orders of each level
+	 * @return the number of levels read, less than levels if the side has fewer levels
+	 */
+	public int readDepth(Side side, int levels, long[] prices, long[] quantities, int[] orderCounts) {
+		SideBook book = side == Side.BUY ? this.bidBook : this.askBook;
+
+		int count = 0;
+		for (BookLevel level = book.best(); level != null && count < levels; level = book.next(level)) {
+			prices[count] = level.priceTicks;
+			quantities[count] = level.totalQuantity;
+			orderCounts[count] = level.orderNum;
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Get the number of price levels with orders on a side of this book
+	 */
+	public int getLevelNum(Side side) {
+		return side == Side.BUY ? this.bidBook.levelNum() : this.askBook.levelNum();
+	}
+
+	/**
+	 * Get the number of orders resting in this book
+	 */
+	public int getOrderNum() {
+		return this.store != null ? this.store.size() : this.orderDict.size();
+	}
+
+	/**
+	 * Get an upper bound of the number of bytes writeOrders writes
+	 */
+	public int snapshotSize() {
+		return 8 + getOrderNum() * (12 + SNAPSHOT_ORDER_SIZE);
+	}
+
+	/**
+	 * Write the resting orders of this book, side by side, level by level from the best price and in time priority
+	 * within each level, so that readOrders rebuilds the same queues
+	 * @param buffer  the buffer written from its position, with at least snapshotSize bytes remaining
+	 */
+	public void writeOrders(ByteBuffer buffer) {
+		writeOrders(this.bidBook, buffer);
+		writeOrders(this.askBook, buffer);
+	}
+
+	private void writeOrders(SideBook book, ByteBuffer buffer) {
+		int levelNumPosition = buffer.position();
+		buffer.putInt(0);
+
+		int levelNum = 0;
+		for (BookLevel level = book.best(); level != null; level = book.next(level)) {
+			buffer.putLong(level.priceTicks);
+			buffer.putInt(level.orderNum);
+			if (this.store != null) {
+				for (int slot = level.headSlot; slot != OffHeapOrderStore.NIL; slot = this.store.next(slot)) {
+					buffer.putLong(this.store.orderId(slot));
+					buffer.putLong(this.store.priceTicks(slot));
+					buffer.putLong(this.store.quantity(slot));
+					buffer.putLong(this.store.ownerId(slot));
+				}
+			}
+			else {
+				for (Order order = level.head; order != null; order = order.next) {
+					buffer.putLong(order.getOrderId());
+					buffer.putLong(order.getPriceTicks()); //Not the level price for a market order resting at the limit
+					buffer.putLong(order.getQuantity());
+					buffer.putLong(order.getOwnerId());
+				}
+			}
+			levelNum++;
+		}
+		buffer.putInt(levelNumPosition, levelNum);
+	}
+
+	/**
+	 * Put back the resting orders written by writeOrders into this book, which must be empty.
+	 * The price limits and tick size must be set first
+	 * @param buffer  the buffer read from its position
+	 */
+	public void readOrders(ByteBuffer buffer) {
+		if (getOrderNum() > 0) {
+			throw new IllegalStateException("Orders can only be restored into an empty order book");
+		}
+		readOrders(Side.BUY, buffer);
+		readOrders(Side.SELL, buffer);
+	}
+
+	private void readOrders(Side side, ByteBuffer buffer) {
+		int levelNum = buffer.getInt();
+		for (int i = 0; i < levelNum; i++) {
+			buffer.getLong(); //The level price, which the orders give back
+			int orderNum = buffer.getInt();
+			for (int j = 0; j < orderNum; j++) {
+				long orderId = buffer.getLong();
+				long priceTicks = buffer.getLong();
+				long quantity = buffer.getLong();
+				Order order = acquireOrder(orderId, priceTicks, side, quantity);
+				order.setOwnerId(buffer.getLong());
+				order.setSymbolId(this.symbolId);
+				addOrder(order);
+				if (this.store != null) {
+					releaseOrder(order); //Only its content went into the store
+				}
+			}
+		}
+	}
+
 
 
 
@@ -372,9 +1478,8 @@ public class OrderBook {
 	 * @return a Trade object storing the list of all limit orders that get traded with this given order
 	 */
 	private Trade executeTrade(Order order) {
-		Price price = order.getPrice();
 		
-		SortedMap<Price, BookLevel> book = null;
+		SideBook book = null;
 		if (order.isBid()) {
 			book = this.askBook; //A cross book buy order trades with the orders in the sell limit book
 		}
@@ -385,82 +1490,108 @@ public class OrderBook {
 		long quantity = order.getQuantity();
 
         Trade trade = new Trade();
-		
-        //All price levels better than the price of the given order are candidate levels that will trade with the order
-		SortedMap<Price, BookLevel> betterLevels = null;
-
-		if (price == null)
-		{
-			if (order.isBid())
-			{
-				price = HIGH_LIMIT;
-				order.setPrice(price);
-			}
-			else {
-				price = LOW_LIMIT;
-				order.setPrice(price);
-			}
-
-			betterLevels = book; //This is market trade
-		}
-		else {
-			betterLevels = book.headMap(price);
-		}
 
-		List<Price> levelsToRemove = new ArrayList<Price>();
+		long priceTicks = marketablePrice(order);
 		
 		/*
 		 * Trade the given order with all candidate levels from the best level all the way to the order's price level,
 		 * until the given order gets traded completely, or all orders in all candidate levels get traded completely.
 		 * In the former case, the remaining part of the given order remains in the order book as a limit order
 		 */
-		for (Map.Entry<Price, BookLevel> level : betterLevels.entrySet()) {
-			Price betterPrice = level.getKey();
-			BookLevel betterLevel = level.getValue();
+		BookLevel level = book.best();
+		while (level != null && book.compare(level.priceTicks, priceTicks) <= 0) {
 			
-			Trade levelTrade = betterLevel.trade(quantity);
+			long levelStartNanos = this.eventListener == null ? 0 : System.nanoTime();
+			long levelQuantity = level.trade(quantity, trade); //Add all the orders traded at this level to the Trade object
+			this.levelsSwept++;
+			if (this.eventListener != null) {
+				levelMatched(order, level, levelQuantity, levelStartNanos);
+			}
 			
-			if (betterLevel.totalQuantity == 0) {
-				levelsToRemove.add(betterPrice); //If all orders in this level get traded, then remove this level from the book later
+			if (level.totalQuantity == 0) {
+				removeLevel(book, level); //If all orders in this level get traded, then remove this level from the book
 			}
 			
-			quantity -= levelTrade.getTotalQuantity();
-			trade.addTrade(levelTrade); //Add all the orders traded at this level to the Trade object
+			quantity -= levelQuantity;
 			
 			if (quantity == 0) { // The given order gets traded completely, stop
 				break;
 			}
+
+			level = book.next(level);
 		}
 		
-		/*
-		 * Remove all levels for which all orders have got traded with the given order
-		 */
-		for (Iterator<Price> it = levelsToRemove.iterator(); it.hasNext(); ) {
-			Price priceToRemove = it.next();
-			book.remove(priceToRemove);
-		}
-		
-		/*
-		 * Trade the remaining part of the given order with the orders at 
-		 * its price level if all better levels are not sufficient to trade it completely
-		 */
-		if (quantity > 0) { 
+		return trade;
+	}
+	
+	/**
+	 * Execute the trade triggered by the given order, reporting every fill to a listener.
+	 * The quantity of the given order is reduced by the quantity traded.
+	 * @param order  the given order that triggers a trade
+	 * @param listener  the listener receiving the fills
+	 * @return the quantity traded
+	 */
+	private long executeTrade(Order order, FillListener listener) {
+		SideBook book = order.isBid() ? this.askBook : this.bidBook;
 
-			BookLevel currentLevel = book.get(price);
-			if (currentLevel != null) {
-				Trade levelTrade = currentLevel.trade(quantity);
-				if (currentLevel.totalQuantity == 0) {
-					book.remove(price);
-				}
-				trade.addTrade(levelTrade);
+		long priceTicks = marketablePrice(order);
+
+		long tradedQuantity = 0;
+
+		BookLevel level = book.best();
+		while (level != null && book.compare(level.priceTicks, priceTicks) <= 0) {
+
+			long levelStartNanos = this.eventListener == null ? 0 : System.nanoTime();
+			long levelQuantity = level.trade(order.getQuantity(), order.getOrderId(), listener);
+			this.levelsSwept++;
+			if (this.eventListener != null) {
+				levelMatched(order, level, levelQuantity, levelStartNanos);
+			}
+
+			if (level.totalQuantity == 0) {
+				removeLevel(book, level);
 			}
 
+			order.updateQuantity(-levelQuantity);
+			tradedQuantity += levelQuantity;
 
+			if (order.getQuantity() == 0) {
+				break;
+			}
+
+			level = book.next(level);
 		}
-		
-		return trade;
+
+		return tradedQuantity;
 	}
-	
+
+	private void levelMatched(Order order, BookLevel level, long quantity, long startNanos) {
+		this.eventListener.onLevelMatched(this.symbolId, order.getOrderId(), level.bid ? Side.BUY : Side.SELL, level.priceTicks,
+				quantity, startNanos);
+	}
+
+	/**
+	 * Remove an empty level from its side book, reporting it to the event listener
+	 */
+	private void removeLevel(SideBook book, BookLevel level) {
+		if (this.eventListener != null) {
+			this.eventListener.onLevelRemoved(this.symbolId, level.bid ? Side.BUY : Side.SELL, level.priceTicks);
+		}
+		book.remove(level);
+	}
+
+	/**
+	 * Give a market order the exchange limit as its price, so that it can trade all the way to the limit
+	 * @param order  the given order
+	 * @return the price of the order in ticks
+	 */
+	private long marketablePrice(Order order) {
+		if (order.isMarket()) {
+			order.setPriceTicks(order.isBid() ? this.highLimitTicks : this.lowLimitTicks);
+		}
+		return order.getPriceTicks();
+	}
+
 	/**
 	 * Judge if the given order will trigger a trade to happen
 	 * @param order
@@ -468,15 +1599,14 @@ public class OrderBook {
 	 */
 	private boolean triggerTrade(Order order) {
 		
-		Price price = order.getPrice();
+		long priceTicks = order.getPriceTicks();
 
-		if (price == null) {
+		if (order.isMarket()) {
 			return true; //This is a market order, must trigger a trade
 		}
 
 		if (order.isBid()) {
-			Price bestAsk = this.getBestAsk();
-			if (bestAsk != null && price.compareTo(bestAsk) >= 0) {
+			if (!this.askBook.isEmpty() && priceTicks >= getBestAskTicks()) {
 				return true;
 			}
 			else {
@@ -484,8 +1614,7 @@ public class OrderBook {
 			}
 		}
 		else if (order.isAsk()) {
-			Price bestBid = this.getBestBid();
-			if (bestBid != null && price.compareTo(bestBid) <= 0) {
+			if (!this.bidBook.isEmpty() && priceTicks <= getBestBidTicks()) {
 				return true;
 			}
 			else {
@@ -497,16 +1626,66 @@ public class OrderBook {
 	}
 	
 
+	/**
+	 * Match an inbound order against the book, adding what is not traded to the book.
+	 * With the off-heap store only the content of a resting order is kept, so an order from acquireOrder
+	 * that rests goes back to the order pool, and must not be used by the caller afterwards
+	 * @param order  the inbound order
+	 * @return the trade, or null if the order does not trade
+	 */
 	public Trade processInboundOrder(Order order) {
-		
-		System.out.println(order);
+
+		if (this.eventListener == null) {
+			Trade trade = matchOrder(order);
+			if (trade == null || trade.getTradingOrder() != order) {
+				releaseStoredOrder(order);
+			}
+			return trade;
+		}
+
+		long startNanos = System.nanoTime();
+		long quantity = order.getQuantity();
+		this.levelsSwept = 0;
+		Trade trade = matchOrder(order);
+		this.eventListener.onOrderPlaced(this.symbolId, order.getOrderId(), order.getRawSide(), order.getPriceTicks(), quantity,
+				trade == null ? 0 : trade.getTotalQuantity(), this.levelsSwept, startNanos);
+		if (trade == null || trade.getTradingOrder() != order) {
+			releaseStoredOrder(order); //The order rests, not filled completely
+		}
+		return trade;
+	}
+
+	/**
+	 * Give back the order returned by updateOrderPrice or updateOrderQuantity once it is no longer used.
+	 * With the off-heap store that order is taken from the order pool with the content of the resting order,
+	 * and goes back to the pool unless it is the trading order of the trade of the update, which goes back with the trade.
+	 * Otherwise it is the resting order itself, which stays in the book
+	 * @param order  the updated order
+	 * @param trade  the trade of the update, or null
+	 */
+	public void releaseUpdatedOrder(Order order, Trade trade) {
+		if (trade == null || trade.getTradingOrder() != order) {
+			releaseStoredOrder(order);
+		}
+	}
+
+	/**
+	 * Give back an order that rests in the off-heap store, whose content was copied into the store
+	 */
+	private void releaseStoredOrder(Order order) {
+		if (this.store != null) {
+			releaseOrder(order);
+		}
+	}
+
+	private Trade matchOrder(Order order) {
 		
 		if (triggerTrade(order)) { //Judge if the given order will trigger a trade
 			Trade trade = this.executeTrade(order); //If it triggers a trade, then executes the trade, get all limit orders that trade with the given order
 			int tradeQuantity = trade.getTotalQuantity();
 			if (order.getQuantity() > tradeQuantity) {//If the given order does not trade completely, the remaining part will form a limit order and added to the book
 
-				Order filledOrder = order.split(tradeQuantity);
+				Order filledOrder = splitOrder(order, tradeQuantity);
 				trade.setTradingOrder(filledOrder);
 
 				//order.updateQuantity(-tradeQuantity);
@@ -530,13 +1709,62 @@ public class OrderBook {
 		
 	}
 
+	/**
+	 * Match an inbound order against the book, reporting every fill to a listener instead of building a Trade.
+	 * With BookEngine.LADDER nothing is allocated on this path once the levels touched exist, so that it can run
+	 * at a steady state without garbage. BookEngine.TREE is not free of garbage here: its sorted maps box the price key
+	 * of every lookup and add an entry for every level created, a few tens of bytes per instruction. The inbound order is reduced by the quantity traded, and added to the book if any quantity remains.
+	 * With the off-heap store an order from acquireOrder that rests goes back to the order pool, as in processInboundOrder(Order)
+	 * @param order  the inbound order
+	 * @param listener  the listener receiving the fills
+	 * @return the quantity traded
+	 */
+	public long processInboundOrder(Order order, FillListener listener) {
+
+		if (this.eventListener == null) {
+			long tradeQuantity = matchOrder(order, listener);
+			if (order.getQuantity() > 0) {
+				releaseStoredOrder(order);
+			}
+			return tradeQuantity;
+		}
+
+		long startNanos = System.nanoTime();
+		long quantity = order.getQuantity();
+		this.levelsSwept = 0;
+		long tradeQuantity = matchOrder(order, listener);
+		this.eventListener.onOrderPlaced(this.symbolId, order.getOrderId(), order.getRawSide(), order.getPriceTicks(), quantity,
+				tradeQuantity, this.levelsSwept, startNanos);
+		if (order.getQuantity() > 0) {
+			releaseStoredOrder(order); //The order rests
+		}
+		return tradeQuantity;
+	}
+
+	private long matchOrder(Order order, FillListener listener) {
+
+		long tradeQuantity = 0;
+
+		if (triggerTrade(order)) {
+			tradeQuantity = this.executeTrade(order, listener);
+		}
+
+		if (order.getQuantity() > 0) {
+			this.addOrder(order); //Remaining part of the given order not filled is added to the book
+		}
+
+		return tradeQuantity;
+	}
+
 	public String checkPlaceOrder(Order order) {
 		String rejectString = null;
 
-		rejectString = checkPlaceOrderPrice(order.getPrice());
-		if (rejectString != null)
-		{
-			return rejectString;
+		if (!order.isMarket()) {
+			rejectString = checkPlaceOrderPrice(order.getPriceTicks());
+			if (rejectString != null)
+			{
+				return rejectString;
+			}
 		}
 
 		rejectString = checkPlaceOrderSize(order.getRawSide(), order.getQuantity());
@@ -546,17 +1774,23 @@ public class OrderBook {
 
 	}
 
-	public String checkPlaceOrderPrice(Price price) {
+	public String checkPlaceOrderPrice(long priceTicks) {
 
 		String rejectString = null;
 
-		if (price != null && price.compareTo(HIGH_LIMIT) > 0) {
+		if (priceTicks == Price.OFF_GRID) {
+			rejectString = "Price to be placed must be a multiple of tick size " + tickSize;
+		}
+		else if (priceTicks > highLimitTicks) {
 			rejectString = "Cannot place order above exchange high limit " + HIGH_LIMIT.getRawPrice();
 		}
-		else if (price != null && price.compareTo(LOW_LIMIT) < 0) {
+		else if (priceTicks < lowLimitTicks) {
 			rejectString = "Cannot place order below exchange low limit " + LOW_LIMIT.getRawPrice();
 		}
-		else if (price != null && Math.abs(Math.round(price.getRawPrice()/tickSize) - price.getRawPrice()/tickSize)>1e-5) {
+		else if (priceTicks <= Price.NO_PRICE) {
+			rejectString = "Price to be placed must be positive"; //Only reached without a previous close, whose low limit is 0
+		}
+		else if (tickSizeTicks > 0 && priceTicks % tickSizeTicks != 0) {
 			rejectString = "Price to be placed must be a multiple of tick size " + tickSize;
 		}
 
@@ -578,7 +1812,7 @@ public class OrderBook {
 
 	private void addOrder(Order order) {
 		
-		SortedMap<Price, BookLevel> book = null;
+		SideBook book = null;
 		if (order.isBid()) {
 			book = this.bidBook;
 		}
@@ -586,22 +1820,22 @@ public class OrderBook {
 			book = this.askBook;
 		}
 		
-		Price price = order.getPrice();
+		//A market order that trades the entire opposite side book and remains some quantity rests at the exchange limit
+		long priceTicks = marketablePrice(order);
 
-		if (price == null) { //This is a market order that trades the entire opposite side book and remains some quantity
-            if (order.isBid()) {
-            	price = this.HIGH_LIMIT;
-			}
-            else if (order.isAsk()) {
-            	price = this.LOW_LIMIT;
-			}
-		}
+		//The slot is taken first, so that a store refusing the order leaves the book as it was
+		int slot = this.store == null ? OffHeapOrderStore.NIL
+				: this.store.allocate(order.getOrderId(), priceTicks, order.getQuantity(), order.getRawSide(), order.getOwnerId());
 
+		BookLevel bookLevel = book.getOrCreate(priceTicks);
+		if (this.eventListener != null && bookLevel.orderNum == 0) {
+			this.eventListener.onLevelCreated(this.symbolId, order.getRawSide(), priceTicks);
+		}
 
-		BookLevel bookLevel = book.get(price);
-		if (bookLevel == null) {
-			bookLevel = new BookLevel(price);
-			book.put(price, bookLevel);
+		if (this.store != null) {
+			//Only the content of the order is kept, the inbound order goes back to the pool in processInboundOrder
+			bookLevel.addSlot(slot);
+			return;
 		}
 
 		bookLevel.addOrder(order);
@@ -609,13 +1843,28 @@ public class OrderBook {
 		this.orderDict.put(order.getOrderId(), order);
 	}
 
-	public UpdateResult updateOrderPrice(long orderId, Side side, Price newPrice) {
+	public UpdateResult updateOrderPrice(long orderId, Side side, long newPriceTicks) {
+
+		long startNanos = this.eventListener == null ? 0 : System.nanoTime();
 
 		String rejectString = null;
 
-		if (this.orderDict.containsKey(orderId)) {
-			Order order = this.orderDict.get(orderId);
-            if (order.getPrice().equals(newPrice)) {
+		long restingPriceTicks = Price.NO_PRICE;
+		if (this.store != null) {
+			int slot = this.store.slotOf(orderId);
+			if (slot != OffHeapOrderStore.NIL) {
+				restingPriceTicks = this.store.priceTicks(slot);
+			}
+		}
+		else {
+			Order restingOrder = this.orderDict.get(orderId);
+			if (restingOrder != null) {
+				restingPriceTicks = restingOrder.getPriceTicks();
+			}
+		}
+
+		if (restingPriceTicks != Price.NO_PRICE) {
+            if (restingPriceTicks == newPriceTicks) {
 
             	rejectString = "Order " + orderId + " cannot be amended to the same price";
                 //return new Pair(null, rejectString);
@@ -623,7 +1872,7 @@ public class OrderBook {
 			}
 		}
 
-		Pair<Order, String> result = removeOrder(orderId, side);
+		Pair<Order, String> result = cancelOrder(orderId, side);
 		rejectString = result.getValue();
 
 		if (rejectString != null)
@@ -632,9 +1881,15 @@ public class OrderBook {
 		}
 		else {
 			Order order = result.getKey();
-            order.setPrice(newPrice);
+            order.setPriceTicks(newPriceTicks);
+            long quantity = order.getQuantity();
 
-            Trade trade = processInboundOrder(order);
+            Trade trade = matchOrder(order);
+
+            if (this.eventListener != null) {
+            	this.eventListener.onOrderAmended(this.symbolId, orderId, side, newPriceTicks, quantity,
+            			trade == null ? 0 : trade.getTotalQuantity(), startNanos);
+            }
 
             //addOrder(order);
             //return new Pair<Order, String>(order, null);
@@ -651,25 +1906,43 @@ public class OrderBook {
 	 */
 	public Pair<Order, String> removeOrder(long orderId, Side side) {
 
+		if (this.eventListener == null) {
+			return cancelOrder(orderId, side);
+		}
+
+		long startNanos = System.nanoTime();
+		Pair<Order, String> result = cancelOrder(orderId, side);
+		Order order = result.getKey();
+		if (result.getValue() == null && order != null) {
+			this.eventListener.onOrderCanceled(this.symbolId, orderId, side, order.getPriceTicks(), order.getQuantity(), startNanos);
+		}
+		return result;
+	}
+
+	private Pair<Order, String> cancelOrder(long orderId, Side side) {
+
         String rejectString = null;
 
-	    if (!this.orderDict.containsKey(orderId)) {
+		if (this.store != null) {
+			return removeStoredOrder(orderId, side);
+		}
+
+		Order order = this.orderDict.get(orderId);
+
+	    if (order == null) {
 
 	    	rejectString = "Order " + orderId + " to be canceled does not exist";
 	    	return new Pair(null, rejectString);
 	    }
 	    else {
 
-			Order order = this.orderDict.get(orderId);
-
 			if (side != order.getRawSide()) {
 				rejectString = "Order " + orderId + " to be canceled has wrong side";
 				return new Pair(null, rejectString);
 			}
 
-	    	Price price = order.getPrice();
 	    	BookLevel level = null;
-	    	SortedMap<Price, BookLevel> book = null;
+	    	SideBook book = null;
 	    	if (order.isBid()) {
 	    		book = this.bidBook;
 	    	}
@@ -677,10 +1950,10 @@ public class OrderBook {
 	    		book = this.askBook;
 	    	}
 	    	
-	    	level = book.get(price);
-	    	if (level.removeOrder(orderId)) { //Remove the target order from the price level where it resides
+	    	level = order.level;
+	    	if (level != null && level.removeOrder(order)) { //Remove the target order from the price level where it resides
 	    		if (level.totalQuantity == 0) {  
-	    			book.remove(price); //If after removing this order no orders are remaining in this level, remove this level from the book
+	    			removeLevel(book, level); //If after removing this order no orders are remaining in this level, remove this level from the book
 	    		}
 
 	    		this.orderDict.remove(orderId);
@@ -701,6 +1974,21 @@ public class OrderBook {
 	 */
 	public Pair<Order, String> updateOrderQuantity(long orderId, Side side, long newQuantity) {
 
+		if (this.eventListener == null) {
+			return amendOrderQuantity(orderId, side, newQuantity);
+		}
+
+		long startNanos = System.nanoTime();
+		Pair<Order, String> result = amendOrderQuantity(orderId, side, newQuantity);
+		Order order = result.getKey();
+		if (result.getValue() == null && order != null) {
+			this.eventListener.onOrderAmended(this.symbolId, orderId, side, order.getPriceTicks(), newQuantity, 0, startNanos);
+		}
+		return result;
+	}
+
+	private Pair<Order, String> amendOrderQuantity(long orderId, Side side, long newQuantity) {
+
 		String rejectString = null;
 
 		if (newQuantity == 0) {
@@ -708,15 +1996,19 @@ public class OrderBook {
 			return new Pair(null, rejectString);
 		}
 
-		if (!this.orderDict.containsKey(orderId)) {
+		if (this.store != null) {
+			return updateStoredOrderQuantity(orderId, side, newQuantity);
+		}
+
+		Order order = this.orderDict.get(orderId);
+
+		if (order == null) {
 
 			rejectString = "Order " + orderId + " to be amend quantity does not exist";
 			return new Pair(null, rejectString);
 		}
 	    else {
 
-			Order order = this.orderDict.get(orderId);
-
 			if (side != order.getRawSide()) {
 				rejectString = "Order " + orderId + " to be canceled has wrong side";
 				return new Pair(null, rejectString);
@@ -726,12 +2018,7 @@ public class OrderBook {
 
 			if (deltaQuantity < 0)
 			{
-				if (order.isBid()) {
-					this.bidBook.get(order.getPrice()).updateOrder(orderId, deltaQuantity);
-				}
-				else if (order.isAsk()) {
-					this.askBook.get(order.getPrice()).updateOrder(orderId, deltaQuantity);
-				}
+				order.level.updateOrder(order, deltaQuantity);
 
 				return new Pair(order, rejectString);
 
@@ -751,4 +2038,66 @@ public class OrderBook {
 
 	}
 	
+	/**
+	 * Remove an order kept in the off-heap order store
+	 * @param orderId  the id of the target order to be removed
+	 * @return an order object created with the content of the removed order, and reject string if rejected
+	 */
+	private Pair<Order, String> removeStoredOrder(long orderId, Side side) {
+
+		int slot = this.store.slotOf(orderId);
+		if (slot == OffHeapOrderStore.NIL) {
+			return new Pair<Order, String>(null, "Order " + orderId + " to be canceled does not exist");
+		}
+
+		if (side != this.store.side(slot)) {
+			return new Pair<Order, String>(null, "Order " + orderId + " to be canceled has wrong side");
+		}
+
+		SideBook book = side == Side.BUY ? this.bidBook : this.askBook;
+		BookLevel level = book.get(this.store.priceTicks(slot));
+
+		Order order = storedOrder(slot, this.store.quantity(slot));
+
+		level.removeSlot(slot);
+		if (level.totalQuantity == 0) {
+			removeLevel(book, level);
+		}
+		this.store.free(slot);
+
+		return new Pair<Order, String>(order, null);
+	}
+
+	/**
+	 * Update the quantity of an order kept in the off-heap order store
+	 * @param orderId  the id of the target order to be updated
+	 * @param newQuantity  the quantity to be updated to
+	 * @return an order object created with the content of the updated order, and reject string if rejected
+	 */
+	private Pair<Order, String> updateStoredOrderQuantity(long orderId, Side side, long newQuantity) {
+
+		int slot = this.store.slotOf(orderId);
+		if (slot == OffHeapOrderStore.NIL) {
+			return new Pair<Order, String>(null, "Order " + orderId + " to be amend quantity does not exist");
+		}
+
+		if (side != this.store.side(slot)) {
+			return new Pair<Order, String>(null, "Order " + orderId + " to be canceled has wrong side");
+		}
+
+		long deltaQuantity = newQuantity - this.store.quantity(slot);
+
+		if (deltaQuantity > 0) {
+			return new Pair<Order, String>(null, "Order " + orderId + " quantity cannot be amended up");
+		}
+		else if (deltaQuantity == 0) {
+			return new Pair<Order, String>(null, "Order " + orderId + " quantity cannot be amended to the same value");
+		}
+
+		SideBook book = side == Side.BUY ? this.bidBook : this.askBook;
+		book.get(this.store.priceTicks(slot)).updateSlot(slot, deltaQuantity);
+
+		return new Pair<Order, String>(storedOrder(slot, this.store.quantity(slot)), null);
+	}
+
 }
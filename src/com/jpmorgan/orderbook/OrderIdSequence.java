@@ -0,0 +1,51 @@
+package com.jpmorgan.orderbook;
+
+/**
+ * Class that hands out order ids first, first + stride, first + 2 * stride and so on.
+ * Sequences with the same stride and different first ids below the stride never hand out the same id,
+ * so each matching thread can own a sequence and assign ids without sharing any state.
+ * A sequence is not thread safe, it belongs to the thread owning the order books using it
+ * @author Jiangchuan Zheng
+ *
+ */
+public final class OrderIdSequence {
+
+	private final long stride;
+	private long next;
+
+	/**
+	 * @param first  the first id handed out
+	 * @param stride  the difference between consecutive ids
+	 */
+	public OrderIdSequence(long first, long stride) {
+		if (first <= 0 || stride <= 0) {
+			throw new IllegalArgumentException("Invalid order id sequence " + first + "/" + stride);
+		}
+		this.next = first;
+		this.stride = stride;
+	}
+
+	/**
+	 * Get a sequence carrying on from the last id handed out by the global id counter of the orders
+	 */
+	public static OrderIdSequence continuingGlobalIds() {
+		return new OrderIdSequence(Order.peekNextOrderId(), 1);
+	}
+
+	public long next() {
+		long id = this.next;
+		this.next += this.stride;
+		return id;
+	}
+
+	/**
+	 * Get the id next handed out, without handing it out
+	 */
+	public long peek() {
+		return this.next;
+	}
+
+	public long getStride() {
+		return this.stride;
+	}
+}
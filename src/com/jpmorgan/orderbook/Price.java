@@ -14,7 +14,25 @@ public class Price implements Comparable<Price> {
 	 * So any raw price with no more than 3 decimal places will multiply by this multiplier to become an integer.
 	 */
 	private static final int DECIMAL_PLACE = 3;
-	private static final int MULTIPLIER = (int)Math.pow(10, DECIMAL_PLACE);
+	static final int MULTIPLIER = (int)Math.pow(10, DECIMAL_PLACE);
+
+	/*
+	 * The integer form of a price is called price ticks, i.e. the raw price times the multiplier.
+	 * The order book, orders, instructions and messages all carry prices as ticks, converted from a raw price
+	 * once when an instruction is created. Prices are always positive, so 0 ticks stands for no price,
+	 * which is the price of a market order, or the best price of an empty side of the order book.
+	 */
+	public static final long NO_PRICE = 0;
+
+	/*
+	 * The ticks of a raw price with more decimal places than ticks can hold, such as 10.0004.
+	 * It is never a valid price, so an order or an instruction carrying it is rejected instead of being
+	 * placed at a rounded price. No raw price converts to it, not even a negative one, which is rejected
+	 * for the exchange low limit instead.
+	 */
+	public static final long OFF_GRID = Long.MIN_VALUE;
+
+	private static final double OFF_GRID_EPSILON = 1e-6;
 	
 	static enum Validity {
 		VALID,
@@ -46,12 +64,12 @@ public class Price implements Comparable<Price> {
 	private void initialize(double rawPrice) {
 		this.rawPrice = rawPrice;
 		double adjustedPrice = rawPrice * MULTIPLIER;
-		this.price = (int)Math.floor(adjustedPrice);
+		this.price = (int)Math.round(adjustedPrice);
 		
 		if (rawPrice <= 0) {
 			this.validity = Validity.NON_POSITIVE;
 		}
-		else if (this.price != adjustedPrice) {
+		else if (Math.abs(this.price - adjustedPrice) > 1e-6) {
 			this.validity = Validity.EXTRA_DECIMAL;
 		}
 		else {
@@ -59,9 +77,75 @@ public class Price implements Comparable<Price> {
 		}
 	}
 
+	/**
+	 * Create a price from its ticks
+	 * @param ticks  the price in ticks
+	 * @return the price
+	 */
+	public static Price fromTicks(long ticks) {
+		return new Price(toRawPrice(ticks));
+	}
+
+	/**
+	 * Convert a raw price to ticks, rounding to the nearest tick
+	 * @param rawPrice  the raw price
+	 * @return the price in ticks
+	 */
+	public static long toTicks(double rawPrice) {
+		return Math.round(rawPrice * MULTIPLIER);
+	}
+
+	/**
+	 * Convert a raw price to ticks without rounding, for the prices coming from clients
+	 * @param rawPrice  the raw price
+	 * @return the price in ticks, or OFF_GRID if the raw price is not a whole number of ticks
+	 */
+	public static long toExactTicks(double rawPrice) {
+		double adjustedPrice = rawPrice * MULTIPLIER;
+		if (adjustedPrice >= Long.MAX_VALUE || adjustedPrice <= -Long.MAX_VALUE) {
+			return adjustedPrice > 0 ? Long.MAX_VALUE : -Long.MAX_VALUE; //Out of the range of ticks, so beyond any exchange limit
+		}
+		long ticks = Math.round(adjustedPrice);
+		return Math.abs(adjustedPrice - ticks) > OFF_GRID_EPSILON ? OFF_GRID : ticks;
+	}
+
+	/**
+	 * Whether ticks are a price, as opposed to NO_PRICE or OFF_GRID
+	 */
+	public static boolean isPrice(long ticks) {
+		return ticks > 0;
+	}
+
+	/**
+	 * Convert ticks back to a raw price
+	 * @param ticks  the price in ticks
+	 * @return the raw price
+	 */
+	public static double toRawPrice(long ticks) {
+		return (double)ticks / MULTIPLIER;
+	}
+
+	/**
+	 * Get the text representation of a price given in ticks
+	 * @param ticks  the price in ticks
+	 * @return the price as text, without decimal places if it is a whole number
+	 */
+	public static String format(long ticks) {
+		if (ticks % MULTIPLIER == 0) {
+			return String.valueOf(ticks / MULTIPLIER);
+		}
+		else {
+			return String.valueOf((double)ticks / MULTIPLIER);
+		}
+	}
+
 	public double getRawPrice() {
 		return rawPrice;
 	}
+
+	public long getTicks() {
+		return price;
+	}
 	
 	public boolean isValid() {
 		return this.validity == Validity.VALID;
@@ -72,13 +156,7 @@ public class Price implements Comparable<Price> {
 	}
 	
 	public String toString() {
-		
-		if (this.price%MULTIPLIER == 0) {
-			return String.valueOf(this.price/MULTIPLIER);
-		}
-		else {
-			return String.valueOf((double)this.price/MULTIPLIER);
-		}
+		return format(this.price);
 	}
 	
 	public int compareTo(Price other) {
@@ -109,6 +187,6 @@ public class Price implements Comparable<Price> {
 	@Override
 	public int hashCode() {
 
-		return new Double(rawPrice).hashCode();
+		return this.price;
 	}
 }
@@ -49,6 +49,29 @@ public class Trade {
         return this.tradedOrders;
     }
 
+    /**
+     * Copy this trade with copies of its orders, which do not belong to any order pool,
+     * so that the copy can be kept after the orders of this trade go back to their pool
+     * @return the copy
+     */
+    public Trade copy() {
+        Trade trade = new Trade();
+        for (Order order : this.tradedOrders) {
+            trade.addTradedOrder(copy(order));
+        }
+        if (this.tradingOrder != null) {
+            trade.setTradingOrder(copy(this.tradingOrder));
+        }
+        return trade;
+    }
+
+    private static Order copy(Order order) {
+        Order copy = new Order(order.getOrderId(), order.getPriceTicks(), order.getRawSide(), order.getQuantity());
+        copy.setOwnerId(order.getOwnerId());
+        copy.setSymbolId(order.getSymbolId());
+        return copy;
+    }
+
     public String toString() {
 
         int capacity = 8;
@@ -60,7 +83,7 @@ public class Trade {
         Iterator<Order> it = tradedOrders.iterator();
         while (it.hasNext()) {
             Order tradedOrder = it.next();
-            String price = tradedOrder.getPrice().toString();
+            String price = Price.format(tradedOrder.getPriceTicks());
             String quantity = String.valueOf(tradedOrder.getQuantity());
             for (int i = 0; i < capacity - quantity.length(); i++) {
                 b.append(" ");
@@ -0,0 +1,78 @@
+package test;
+
+import com.jpmorgan.load.*;
+import com.jpmorgan.orderbook.*;
+import org.junit.*;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class AllocationTester {
+
+    /*
+     * The most bytes an instruction of each kind may allocate on the matching thread, whether the code runs
+     * interpreted or compiled. Lower a budget when a path gets cheaper, so that it stays that way
+     */
+    private static final Map<FlowMix.Kind, Integer> BUDGETS = new EnumMap<>(FlowMix.Kind.class);
+    static {
+        BUDGETS.put(FlowMix.Kind.PASSIVE_LIMIT, 96);
+        BUDGETS.put(FlowMix.Kind.AGGRESSIVE_LIMIT, 368);
+        BUDGETS.put(FlowMix.Kind.MARKET, 368);
+        BUDGETS.put(FlowMix.Kind.CANCEL, 96);
+        BUDGETS.put(FlowMix.Kind.AMEND_PRICE, 144);
+        BUDGETS.put(FlowMix.Kind.AMEND_QUANTITY, 96);
+    }
+
+    /*
+     * The budgets with the off-heap order store, where every order leaving the store is copied into an order
+     * from the order pool, and the tree engine boxes the price of the level looked up for each cancel and amend
+     */
+    static final Map<FlowMix.Kind, Integer> OFF_HEAP_BUDGETS = new EnumMap<>(FlowMix.Kind.class);
+    static {
+        OFF_HEAP_BUDGETS.put(FlowMix.Kind.PASSIVE_LIMIT, 96);
+        OFF_HEAP_BUDGETS.put(FlowMix.Kind.AGGRESSIVE_LIMIT, 368);
+        OFF_HEAP_BUDGETS.put(FlowMix.Kind.MARKET, 368);
+        OFF_HEAP_BUDGETS.put(FlowMix.Kind.CANCEL, 112);
+        OFF_HEAP_BUDGETS.put(FlowMix.Kind.AMEND_PRICE, 160);
+        OFF_HEAP_BUDGETS.put(FlowMix.Kind.AMEND_QUANTITY, 112);
+    }
+
+    /**
+     * @param engine  the engine of the order book, null for the engine and the store chosen by the system properties
+     */
+    static void checkBudgets(BookEngine engine, Map<FlowMix.Kind, Integer> budgets)
+    {
+        Assume.assumeTrue(AllocationHarness.isSupported());
+
+        AllocationHarness harness = new AllocationHarness(engine);
+        harness.run(5_000);
+        AllocationHarness.Result result = harness.run(10_000);
+
+        StringBuilder overBudget = new StringBuilder();
+        for (FlowMix.Kind kind : FlowMix.Kind.values()) {
+            assertTrue(result.getInstructionNum(kind) > 0);
+            if (result.getBytesPerInstruction(kind) > budgets.get(kind)) {
+                overBudget.append(String.format("%n%s allocates %.1f bytes per instruction, over its budget of %d",
+                        kind, result.getBytesPerInstruction(kind), budgets.get(kind)));
+            }
+        }
+        assertTrue(engine + " engine:" + overBudget, overBudget.length() == 0);
+
+        //The workload leaves the book as it found it
+        assertEquals(2 * 10 * 4, harness.getExchange().getOrderBook().getOrderNum());
+    }
+
+    @Test
+    public void testTreeEngineStaysWithinBudgets()
+    {
+        checkBudgets(BookEngine.TREE, BUDGETS);
+    }
+
+    @Test
+    public void testLadderEngineStaysWithinBudgets()
+    {
+        checkBudgets(BookEngine.LADDER, BUDGETS);
+    }
+}
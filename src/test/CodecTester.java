@@ -0,0 +1,163 @@
+package test;
+
+import com.jpmorgan.client.*;
+import com.jpmorgan.codec.*;
+import com.jpmorgan.instruction.*;
+import com.jpmorgan.load.AllocationHarness;
+import com.jpmorgan.message.*;
+import com.jpmorgan.orderbook.*;
+import org.junit.*;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class CodecTester {
+
+    private final MessageCodec codec = new MessageCodec();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1024).order(ByteOrder.LITTLE_ENDIAN);
+
+    @Test
+    public void testInstructionRoundTrip()
+    {
+        Instruction instruction = Instruction.create(7, InstructionAction.AMEND_PRICE, 101250, 300, 42, OrderType.LIMIT, Side.SELL);
+        int length = codec.encode(instruction, buffer, 16);
+        assertEquals(MessageHeader.ENCODED_LENGTH + InstructionFlyweight.BLOCK_LENGTH, length);
+        assertEquals(InstructionFlyweight.TEMPLATE_ID, MessageHeader.templateId(buffer, 16));
+        assertEquals(MessageHeader.SCHEMA_VERSION, MessageHeader.version(buffer, 16));
+
+        Instruction decoded = codec.decodeInstruction(buffer, 16);
+        assertEquals(7, decoded.getSymbolId());
+        assertEquals(InstructionAction.AMEND_PRICE, decoded.getAction());
+        assertEquals(101250, decoded.getPriceTicks());
+        assertEquals(300, decoded.getQuantity());
+        assertEquals(42, decoded.getOrderID());
+        assertEquals(OrderType.LIMIT, decoded.getOrderType());
+        assertEquals(Side.SELL, decoded.getSide());
+
+        assertSame(codec.instruction(), codec.wrap(buffer, 16));
+    }
+
+    @Test
+    public void testMessagesRoundTripBackToBack()
+    {
+        int offset = 0;
+        offset += codec.encode(new OrderMessage(3, OrderState.PLACE_REJECTED, 11, null, 99500, 200, "Price not on tick"), buffer, offset);
+        offset += codec.encode(new TradeMessage(3, 11, 99500, 100, Side.BUY), buffer, offset);
+        offset += codec.encode(new RegisterMessage(ClientState.REGISTER_ACKED, 5, null), buffer, offset);
+        int end = offset;
+
+        offset = 0;
+        OrderMessage order = (OrderMessage)codec.decodeMessage(buffer, offset);
+        assertEquals(3, order.getSymbolId());
+        assertEquals(OrderState.PLACE_REJECTED, order.getOrderState());
+        assertEquals(11, order.getOrderID());
+        assertNull(order.getSide());
+        assertEquals(99500, order.getPriceTicks());
+        assertEquals(200, order.getQuantity());
+        assertEquals("Price not on tick", order.getReason());
+        offset += codec.wrap(buffer, offset).encodedLength();
+
+        TradeMessage trade = (TradeMessage)codec.decodeMessage(buffer, offset);
+        assertEquals(3, trade.getSymbolId());
+        assertEquals(11, trade.getOrderId());
+        assertEquals(99500, trade.getPriceTicks());
+        assertEquals(100, trade.getFillQuantity());
+        assertEquals(Side.BUY, trade.getSide());
+        offset += codec.wrap(buffer, offset).encodedLength();
+
+        RegisterMessage register = (RegisterMessage)codec.decodeMessage(buffer, offset);
+        assertEquals(ClientState.REGISTER_ACKED, register.getClientState());
+        assertEquals(5, register.getClientID());
+        assertNull(register.getReason());
+        offset += codec.wrap(buffer, offset).encodedLength();
+
+        assertEquals(end, offset);
+    }
+
+    @Test
+    public void testNewerVersionWithLongerBlockIsRead()
+    {
+        //A newer encoder appends a field to the fixed block, the reason moves after it
+        int extra = 8;
+        codec.encode(new OrderMessage(1, OrderState.PLACE_ACKED, 9, Side.SELL, 100000, 500, null), buffer, 0);
+        buffer.putShort(0, (short)(OrderMessageFlyweight.BLOCK_LENGTH + extra));
+        buffer.putShort(6, (short)(MessageHeader.SCHEMA_VERSION + 1));
+        int varData = MessageHeader.ENCODED_LENGTH + OrderMessageFlyweight.BLOCK_LENGTH + extra;
+        buffer.putShort(varData, (short)2);
+        buffer.put(varData + 2, (byte)'o');
+        buffer.put(varData + 3, (byte)'k');
+
+        OrderMessageFlyweight flyweight = codec.orderMessage().wrapForDecode(buffer, 0);
+        assertEquals(MessageHeader.SCHEMA_VERSION + 1, flyweight.actingVersion());
+        assertEquals(OrderMessageFlyweight.BLOCK_LENGTH + extra, flyweight.actingBlockLength());
+        assertEquals(9, flyweight.orderId());
+        assertEquals(500, flyweight.quantity());
+        assertEquals("ok", flyweight.reason());
+        assertEquals(varData + 4, flyweight.encodedLength());
+    }
+
+    @Test
+    public void testOtherSchemaAndTemplateAreRejected()
+    {
+        codec.encode(new TradeMessage(1, 2, 3, 4, Side.BUY), buffer, 0);
+        try {
+            codec.orderMessage().wrapForDecode(buffer, 0);
+            fail("A trade message was decoded as an order message");
+        }
+        catch (IllegalArgumentException e) {
+        }
+
+        buffer.putShort(4, (short)0x1234);
+        try {
+            codec.wrap(buffer, 0);
+            fail("A message of another schema was decoded");
+        }
+        catch (IllegalArgumentException e) {
+        }
+
+        try {
+            codec.encode(Instruction.createCancelInstruction(Side.BUY, 1), ByteBuffer.allocate(64), 0);
+            fail("A big endian buffer was accepted");
+        }
+        catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void testFlyweightsDoNotAllocate()
+    {
+        Assume.assumeTrue(AllocationHarness.isSupported());
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        Instruction instruction = Instruction.createPlaceLimitInstructionInTicks(100500, 200, Side.BUY);
+        TradeMessage trade = new TradeMessage(1, 2, 100500, 200, Side.SELL);
+        byte[] reason = new byte[32];
+        int iterations = 100000;
+        long checksum = 0;
+
+        for (int round = 0; round < 2; round++) { //The first round warms up
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < iterations; i++) {
+                codec.encode(instruction, buffer, 0);
+                InstructionFlyweight decoded = codec.instruction().wrapForDecode(buffer, 0);
+                checksum += decoded.priceTicks() + decoded.quantity() + decoded.side().ordinal();
+
+                codec.orderMessage().wrapForEncode(buffer, 64).orderState(OrderState.PLACE_REJECTED).orderId(i).reason("No liquidity");
+                checksum += codec.orderMessage().wrapForDecode(buffer, 64).getReason(reason, 0);
+
+                codec.encode(trade, buffer, 128);
+                checksum += codec.tradeMessage().wrapForDecode(buffer, 128).fillQuantity();
+            }
+            long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+            if (round == 1) {
+                assertTrue("Allocated " + allocated + " bytes", allocated < 1024);
+            }
+        }
+        assertTrue(checksum > 0);
+    }
+}
@@ -0,0 +1,130 @@
+package test;
+
+import com.jpmorgan.*;
+import com.jpmorgan.client.*;
+import com.jpmorgan.instruction.*;
+import com.jpmorgan.orderbook.*;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EventListenerTester {
+
+    /**
+     * Writes down every event, with the clock checked against the start time reported
+     */
+    private static final class RecordingListener implements ExchangeEventListener {
+
+        private final List<String> events = new ArrayList<>();
+
+        private void record(String event, long startNanos)
+        {
+            assertTrue(startNanos <= System.nanoTime());
+            events.add(event);
+        }
+
+        public void onOrderPlaced(int symbolId, long orderId, Side side, long priceTicks, long quantity, long tradedQuantity,
+                int levelsSwept, long startNanos)
+        {
+            record("placed " + orderId + " " + side + " " + priceTicks + " " + quantity + " " + tradedQuantity + " " + levelsSwept, startNanos);
+        }
+
+        public void onLevelMatched(int symbolId, long takerOrderId, Side side, long priceTicks, long quantity, long startNanos)
+        {
+            record("matched " + takerOrderId + " " + side + " " + priceTicks + " " + quantity, startNanos);
+        }
+
+        public void onLevelCreated(int symbolId, Side side, long priceTicks)
+        {
+            events.add("created " + side + " " + priceTicks);
+        }
+
+        public void onLevelRemoved(int symbolId, Side side, long priceTicks)
+        {
+            events.add("removed " + side + " " + priceTicks);
+        }
+
+        public void onOrderCanceled(int symbolId, long orderId, Side side, long priceTicks, long quantity, long startNanos)
+        {
+            record("canceled " + orderId + " " + side + " " + priceTicks + " " + quantity, startNanos);
+        }
+
+        public void onOrderAmended(int symbolId, long orderId, Side side, long priceTicks, long quantity, long tradedQuantity,
+                long startNanos)
+        {
+            record("amended " + orderId + " " + side + " " + priceTicks + " " + quantity + " " + tradedQuantity, startNanos);
+        }
+
+        public void onFanOut(int clientNum, int messageNum, long startNanos)
+        {
+            record("fan-out " + clientNum + " " + messageNum, startNanos);
+        }
+    }
+
+    @Test
+    public void testEventsFollowTheInstructions()
+    {
+        ExchangeSimulator exchange = new ExchangeSimulator();
+        exchange.setBookOutputMode(BookOutputMode.OFF);
+        exchange.setPrevClose(10.0);
+        exchange.setTickSize(0.01);
+        exchange.setLotSize(100);
+        exchange.setOrderIdSequence(new OrderIdSequence(1, 1));
+        Client client = new Client("Client");
+        exchange.registerClient(client);
+
+        RecordingListener listener = new RecordingListener();
+        exchange.setEventListener(listener);
+        //A book listed afterwards reports to the same listener
+        exchange.listInstrument(3, 20.0, 0.05, 10);
+
+        exchange.receiveInstruction(Instruction.createPlaceLimitInstruction(9.9, 100, Side.BUY), client.getClientID());
+        exchange.receiveInstruction(Instruction.createPlaceLimitInstruction(10.1, 100, Side.SELL), client.getClientID());
+        exchange.receiveInstruction(Instruction.createPlaceLimitInstruction(10.2, 100, Side.SELL), client.getClientID());
+        listener.events.clear();
+
+        exchange.receiveInstruction(Instruction.createPlaceLimitInstruction(10.2, 400, Side.BUY), client.getClientID());
+        assertEquals(Arrays.asList(
+                "matched 4 SELL 10100 100",
+                "removed SELL 10100",
+                "matched 4 SELL 10200 100",
+                "removed SELL 10200",
+                "created BUY 10200",
+                "placed 4 BUY 10200 400 200 2",
+                "fan-out 1 5"), listener.events);
+        listener.events.clear();
+
+        //An amended price moves the order without reporting a cancel and a placement
+        exchange.receiveInstruction(Instruction.createAmendQuantityInstruction(Side.BUY, 100, 4), client.getClientID());
+        exchange.receiveInstruction(Instruction.createAmendPriceInstruction(Side.BUY, 9.95, 1), client.getClientID());
+        exchange.receiveInstruction(Instruction.createCancelInstruction(Side.BUY, 4), client.getClientID());
+        exchange.receiveInstruction(Instruction.createPlaceLimitInstruction(20.0, 10, Side.SELL).forSymbol(3), client.getClientID());
+        assertEquals(Arrays.asList(
+                "amended 4 BUY 10200 100 0",
+                "fan-out 1 1",
+                "removed BUY 9900",
+                "created BUY 9950",
+                "amended 1 BUY 9950 100 0",
+                "fan-out 1 1",
+                "removed BUY 10200",
+                "canceled 4 BUY 10200 100",
+                "fan-out 1 1",
+                "created SELL 20000",
+                "placed 5 SELL 20000 10 0 0",
+                "fan-out 1 1"), listener.events);
+        listener.events.clear();
+
+        //Rejected instructions report nothing but their delivery
+        exchange.receiveInstruction(Instruction.createCancelInstruction(Side.BUY, 4), client.getClientID());
+        assertEquals(Arrays.asList("fan-out 1 1"), listener.events);
+        listener.events.clear();
+
+        exchange.setEventListener(null);
+        exchange.receiveInstruction(Instruction.createPlaceLimitInstruction(9.8, 100, Side.BUY), client.getClientID());
+        assertTrue(listener.events.isEmpty());
+    }
+}
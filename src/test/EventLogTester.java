@@ -0,0 +1,136 @@
+package test;
+
+import com.jpmorgan.*;
+import com.jpmorgan.client.*;
+import com.jpmorgan.instruction.Instruction;
+import com.jpmorgan.log.*;
+import com.jpmorgan.orderbook.*;
+import org.junit.*;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class EventLogTester {
+
+    private static final int INSTRUCTION_NUM = 2000;
+
+    private Path logPath;
+
+    @Before
+    public void createLogPath() throws IOException
+    {
+        logPath = Files.createTempFile("events", ".bin");
+    }
+
+    @After
+    public void deleteLogPath() throws IOException
+    {
+        Files.deleteIfExists(logPath);
+    }
+
+    @Test
+    public void testDecodedLogMatchesTextOutput() throws IOException
+    {
+        StringWriter text = new StringWriter();
+        ExchangeSimulator printed = createExchange();
+        printed.setOutWriter(new PrintWriter(text));
+        runFlow(printed);
+
+        //A small ring, so that the exchange has to wait for the writer
+        BinaryEventLog eventLog = new BinaryEventLog(logPath, 16);
+        ExchangeSimulator logged = createExchange();
+        logged.setEventLog(eventLog);
+        runFlow(logged);
+        eventLog.close();
+
+        StringWriter decoded = new StringWriter();
+        PrintWriter decodedOut = new PrintWriter(decoded);
+        ExchangeSimulator replayed = EventLogDecoder.decode(logPath, decodedOut, 0);
+        decodedOut.flush();
+
+        assertEquals(text.toString(), decoded.toString());
+        assertEquals(logged.getOrderBook().toString(), replayed.getOrderBook().toString());
+        assertEquals(logged.getOrderBook(3).toString(), replayed.getOrderBook(3).toString());
+        assertEquals(eventLog.getWrittenNum() * BinaryEventLog.RECORD_SIZE, Files.size(logPath));
+    }
+
+    @Test
+    public void testRawRecordsListEveryEvent() throws IOException
+    {
+        BinaryEventLog eventLog = new BinaryEventLog(logPath, 1 << 10);
+        ExchangeSimulator logged = createExchange();
+        Client client = new Client("Client");
+        logged.registerClient(client);
+        logged.setEventLog(eventLog);
+
+        logged.receiveInstruction(Instruction.createPlaceLimitInstruction(10.0, 100, Side.BUY), client.getClientID());
+        logged.receiveInstruction(Instruction.createPlaceLimitInstruction(10.0, 100, Side.SELL), client.getClientID());
+        eventLog.close();
+
+        StringWriter raw = new StringWriter();
+        PrintWriter rawOut = new PrintWriter(raw);
+        EventLogDecoder.printRecords(logPath, rawOut);
+        rawOut.flush();
+
+        String[] lines = raw.toString().split(System.lineSeparator());
+        //The default and the listed instrument, the client, two instructions and the two sides of the trade
+        assertEquals(7, lines.length);
+        assertTrue(lines[0].contains("INSTRUMENT symbolId=0, prevClose=10.0, tickSize=0.01, lotSize=100"));
+        assertTrue(lines[2].contains("CLIENT clientID=" + client.getClientID()));
+        assertTrue(lines[3].contains("INSTRUCTION clientID=" + client.getClientID() + ", assignedOrderID=1"));
+        assertTrue(lines[5].contains("TRADE symbolId=0, orderId=1, side=BUY, 100@10"));
+        assertTrue(lines[6].contains("TRADE symbolId=0, orderId=2, side=SELL, 100@10"));
+    }
+
+    private ExchangeSimulator createExchange()
+    {
+        ExchangeSimulator exchange = new ExchangeSimulator();
+        exchange.setPrevClose(10.0);
+        exchange.setTickSize(0.01);
+        exchange.setLotSize(100);
+        exchange.listInstrument(3, 20.0, 0.05, 10);
+        exchange.setOrderIdSequence(new OrderIdSequence(1, 1));
+        return exchange;
+    }
+
+    private void runFlow(ExchangeSimulator exchange)
+    {
+        Client[] clients = {new Client("Client1"), new Client("Client2")};
+        for (Client client : clients) {
+            exchange.registerClient(client);
+        }
+
+        Random random = new Random(3);
+        for (int i = 0; i < INSTRUCTION_NUM; i++) {
+            Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+            int symbolId = random.nextBoolean() ? 0 : 3;
+            long basePriceTicks = Price.toTicks(symbolId == 0 ? 10.0 : 20.0);
+            long stepTicks = Price.toTicks(symbolId == 0 ? 0.01 : 0.05);
+            long priceTicks = basePriceTicks + (side == Side.BUY ? -1 : 1) * stepTicks * (random.nextInt(10) - 3);
+            long orderId = 1 + random.nextInt(i + 1);
+
+            Instruction instruction;
+            switch (random.nextInt(6)) {
+                case 0:
+                    instruction = Instruction.createCancelInstruction(side, orderId);
+                    break;
+                case 1:
+                    instruction = Instruction.createAmendQuantityInstruction(side, 100 * (1 + random.nextInt(3)), orderId);
+                    break;
+                case 2:
+                    instruction = Instruction.createAmendPriceInstructionInTicks(side, priceTicks, orderId);
+                    break;
+                default:
+                    instruction = Instruction.createPlaceLimitInstructionInTicks(priceTicks, 100 * (1 + random.nextInt(5)), side);
+                    break;
+            }
+            exchange.receiveInstruction(instruction.forSymbol(symbolId), clients[random.nextInt(2)].getClientID());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package test;
+
+import com.jpmorgan.*;
+import com.jpmorgan.client.*;
+import com.jpmorgan.instruction.*;
+import com.jpmorgan.metrics.*;
+import com.jpmorgan.orderbook.*;
+import org.junit.*;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class ExchangeStatisticsTester {
+
+    @Test
+    public void testMBeansFollowTheBooks() throws Exception
+    {
+        ExchangeSimulator exchange = new ExchangeSimulator();
+        exchange.setBookOutputMode(BookOutputMode.OFF);
+        exchange.setPrevClose(10.0);
+        exchange.setTickSize(0.01);
+        exchange.setLotSize(100);
+        exchange.setOrderIdSequence(new OrderIdSequence(1, 1));
+
+        ExchangeStatistics statistics = new ExchangeStatistics();
+        exchange.setStatistics(statistics);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        statistics.register(server, "test");
+        try {
+            Client client = new Client("Client");
+            exchange.registerClient(client);
+            exchange.listInstrument(3, 20.0, 0.05, 10);
+
+            exchange.receiveInstruction(Instruction.createPlaceLimitInstruction(9.9, 100, Side.BUY), client.getClientID());
+            exchange.receiveInstruction(Instruction.createPlaceLimitInstruction(10.0, 300, Side.BUY), client.getClientID());
+            exchange.receiveInstruction(Instruction.createPlaceLimitInstruction(10.1, 100, Side.SELL), client.getClientID());
+            exchange.receiveInstruction(Instruction.createPlaceLimitInstruction(10.2, 100, Side.SELL), client.getClientID());
+            exchange.receiveInstruction(Instruction.createPlaceLimitInstruction(10.0, 200, Side.SELL), client.getClientID());
+            exchange.receiveInstruction(Instruction.createCancelInstruction(Side.BUY, 99), client.getClientID());
+            exchange.receiveInstruction(Instruction.createPlaceLimitInstruction(10.003, 100, Side.BUY), client.getClientID());
+            exchange.receiveInstruction(Instruction.createPlaceLimitInstruction(20.0, 10, Side.BUY).forSymbol(3), client.getClientID());
+
+            ObjectName book = new ObjectName("com.jpmorgan:type=OrderBook,exchange=\"test\",symbol=0");
+            assertEquals(4L, server.getAttribute(book, "RestingOrderCount"));
+            assertEquals(2L, server.getAttribute(book, "BidLevelCount"));
+            assertEquals(2L, server.getAttribute(book, "AskLevelCount"));
+            assertEquals(10.0, (Double)server.getAttribute(book, "BestBid"), 1e-9);
+            assertEquals(100L, server.getAttribute(book, "BestBidSize"));
+            assertEquals(10.1, (Double)server.getAttribute(book, "BestAsk"), 1e-9);
+            assertEquals(100L, server.getAttribute(book, "BestAskSize"));
+            assertEquals(1L, server.getAttribute(book, "TradeCount"));
+            assertEquals(200L, server.getAttribute(book, "TradedVolume"));
+
+            //Listed after registering, registered as it comes
+            ObjectName other = new ObjectName("com.jpmorgan:type=OrderBook,exchange=\"test\",symbol=3");
+            assertEquals(20.0, (Double)server.getAttribute(other, "BestBid"), 1e-9);
+            assertTrue(Double.isNaN((Double)server.getAttribute(other, "BestAsk")));
+
+            ObjectName name = new ObjectName("com.jpmorgan:type=Exchange,name=\"test\"");
+            assertEquals(8L, server.getAttribute(name, "InstructionCount"));
+            assertEquals(1L, server.getAttribute(name, "RegisteredClientCount"));
+            assertEquals(2L, server.getAttribute(name, "ListedInstrumentCount"));
+            assertEquals(200L, server.getAttribute(name, "TradedVolume"));
+            TabularData rejects = (TabularData)server.getAttribute(name, "RejectCounts");
+            assertEquals(1L, rejects.get(new Object[] {"CANCEL_REJECTED"}).get("value"));
+            assertEquals(1L, rejects.get(new Object[] {"PLACE_REJECTED"}).get("value"));
+            assertEquals(0L, rejects.get(new Object[] {"AMEND_PRICE_REJECTED"}).get("value"));
+
+            Client second = new Client("Second");
+            exchange.registerClient(second);
+            assertEquals(2L, server.getAttribute(name, "RegisteredClientCount"));
+        }
+        finally {
+            statistics.unregister();
+        }
+        assertTrue(server.queryNames(new ObjectName("com.jpmorgan:*"), null).isEmpty());
+    }
+}
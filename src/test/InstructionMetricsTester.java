@@ -0,0 +1,86 @@
+package test;
+
+import com.jpmorgan.*;
+import com.jpmorgan.client.*;
+import com.jpmorgan.instruction.*;
+import com.jpmorgan.metrics.*;
+import com.jpmorgan.orderbook.*;
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class InstructionMetricsTester {
+
+    @Test
+    public void testStagesAreTimedPerAction()
+    {
+        ExchangeSimulator exchange = new ExchangeSimulator();
+        exchange.setBookOutputMode(BookOutputMode.OFF);
+        exchange.setPrevClose(10.0);
+        exchange.setTickSize(0.01);
+        exchange.setLotSize(100);
+        exchange.setOrderIdSequence(new OrderIdSequence(1, 1));
+        Client client = new Client("Client");
+        exchange.registerClient(client);
+
+        InstructionMetrics metrics = new InstructionMetrics();
+        exchange.setMetrics(metrics);
+
+        exchange.receiveInstruction(Instruction.createPlaceLimitInstruction(10.0, 100, Side.BUY), client.getClientID());
+        exchange.receiveInstruction(Instruction.createPlaceLimitInstruction(10.1, 100, Side.BUY), client.getClientID());
+        exchange.receiveInstruction(Instruction.createPlaceLimitInstruction(10.0, 100, Side.SELL), client.getClientID());
+        exchange.receiveInstruction(Instruction.createCancelInstruction(Side.BUY, 1), client.getClientID());
+        exchange.receiveInstruction(Instruction.createAmendQuantityInstruction(Side.BUY, 200, 5), client.getClientID());
+
+        InstructionMetrics.Snapshot snapshot = metrics.snapshot();
+        for (Stage stage : new Stage[] {Stage.VALIDATION, Stage.MATCHING, Stage.MESSAGE_BUILDING, Stage.FAN_OUT}) {
+            assertEquals(stage.toString(), 3, snapshot.get(stage, InstructionAction.PLACE_ORDER).getTotalCount());
+        }
+        //A cancel is checked by the book as it removes the order
+        assertEquals(0, snapshot.get(Stage.VALIDATION, InstructionAction.CANCEL).getTotalCount());
+        assertEquals(1, snapshot.get(Stage.MATCHING, InstructionAction.CANCEL).getTotalCount());
+        //Rejected by the book, the amend of an order which does not exist is still matched against it
+        assertEquals(1, snapshot.get(Stage.MATCHING, InstructionAction.AMEND_QUANTITY).getTotalCount());
+        //No output, no event log, no journal
+        assertEquals(0, snapshot.get(Stage.LOGGING).getTotalCount());
+        assertEquals(0, snapshot.get(Stage.JOURNAL).getTotalCount());
+        assertEquals(5, snapshot.get(Stage.MESSAGE_BUILDING).getTotalCount());
+
+        //Reset by a snapshot, and not counting any more once removed
+        assertEquals(3, metrics.snapshotAndReset().get(Stage.MATCHING, InstructionAction.PLACE_ORDER).getTotalCount());
+        assertEquals(0, metrics.snapshot().get(Stage.MATCHING).getTotalCount());
+        exchange.setMetrics(null);
+        exchange.receiveInstruction(Instruction.createPlaceLimitInstruction(9.9, 100, Side.BUY), client.getClientID());
+        assertEquals(0, metrics.snapshot().get(Stage.MATCHING).getTotalCount());
+    }
+
+    @Test
+    public void testConcurrentHistogramKeepsEveryValue() throws InterruptedException
+    {
+        ConcurrentLatencyHistogram histogram = new ConcurrentLatencyHistogram();
+        LatencyHistogram taken = new LatencyHistogram();
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            int offset = t;
+            writers[t] = new Thread(() -> {
+                for (int i = 1; i <= 100_000; i++) {
+                    histogram.record(i + offset);
+                }
+            });
+            writers[t].start();
+        }
+        //Snapshots taken with a reset while the writers run lose nothing
+        for (int i = 0; i < 20; i++) {
+            taken.add(histogram.snapshotAndReset());
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        taken.add(histogram.snapshotAndReset());
+
+        assertEquals(400_000, taken.getTotalCount());
+        assertEquals(1, taken.getMin());
+        assertEquals(100_003, taken.getMax());
+        assertEquals(50_002, taken.getMean(), 1e-6);
+    }
+}
@@ -0,0 +1,189 @@
+package test;
+
+import com.jpmorgan.*;
+import com.jpmorgan.client.*;
+import com.jpmorgan.instruction.*;
+import com.jpmorgan.journal.*;
+import com.jpmorgan.orderbook.*;
+import org.junit.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class JournalTester {
+
+    private static final int RECORD_SIZE = 64;
+    private static final int SEGMENT_SIZE = 10 * RECORD_SIZE;
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException
+    {
+        directory = Files.createTempDirectory("journal");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void testSegmentsRollAndReadBackInOrder() throws IOException
+    {
+        InstructionJournal journal = new InstructionJournal(directory, SEGMENT_SIZE, FsyncPolicy.PER_BATCH);
+        for (int i = 1; i <= 35; i++) {
+            long sequence = journal.append(Instruction.createPlaceLimitInstructionInTicks(10000 + i, i, Side.BUY).forSymbol(i % 3), 7);
+            assertEquals(i, sequence);
+        }
+        journal.endBatch();
+        journal.close();
+
+        assertEquals(4, listSegments().size());
+
+        List<Long> sequences = new ArrayList<>();
+        long last = JournalReader.read(directory, 1, new JournalReader.Handler() {
+            public void onInstruction(long sequence, long timestamp, Instruction instruction, long clientID) {
+                sequences.add(sequence);
+                assertEquals(7, clientID);
+                assertEquals(10000 + sequence, instruction.getPriceTicks());
+                assertEquals(sequence, instruction.getQuantity());
+                assertEquals(sequence % 3, instruction.getSymbolId());
+                assertEquals(InstructionAction.PLACE_ORDER, instruction.getAction());
+                assertEquals(Side.BUY, instruction.getSide());
+                assertTrue(timestamp > 0);
+            }
+        });
+        assertEquals(35, last);
+        assertEquals(35, sequences.size());
+        assertEquals(1L, (long)sequences.get(0));
+
+        //Reading from the middle skips the segments before it
+        sequences.clear();
+        JournalReader.read(directory, 23, new JournalReader.Handler() {
+            public void onInstruction(long sequence, long timestamp, Instruction instruction, long clientID) {
+                sequences.add(sequence);
+            }
+        });
+        assertEquals(13, sequences.size());
+        assertEquals(23L, (long)sequences.get(0));
+    }
+
+    @Test
+    public void testReopenedJournalContinuesAfterLastCompleteRecord() throws IOException
+    {
+        InstructionJournal journal = new InstructionJournal(directory, SEGMENT_SIZE, FsyncPolicy.NONE);
+        for (int i = 0; i < 25; i++) {
+            journal.append(Instruction.createCancelInstruction(Side.SELL, i), 1);
+        }
+        journal.close();
+
+        //Tear record 24, as a crash in the middle of writing it would
+        Path last = listSegments().get(2);
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.WRITE)) {
+            ByteBuffer zero = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            channel.write(zero, 3 * RECORD_SIZE);
+        }
+        assertEquals(23, JournalReader.read(directory, 1, new JournalReader.Handler() {}));
+
+        journal = new InstructionJournal(directory, SEGMENT_SIZE, FsyncPolicy.NONE);
+        assertEquals(23, journal.lastSequence());
+        assertEquals(24, journal.appendClient(5));
+        journal.close();
+
+        long[] clientID = new long[1];
+        assertEquals(24, JournalReader.read(directory, 24, new JournalReader.Handler() {
+            public void onClient(long sequence, long id) {
+                clientID[0] = id;
+            }
+        }));
+        assertEquals(5, clientID[0]);
+    }
+
+    @Test
+    public void testJournaledExchangeIsRebuiltByReplay() throws IOException
+    {
+        ExchangeSimulator exchange = new ExchangeSimulator();
+        exchange.setBookOutputMode(BookOutputMode.OFF);
+        exchange.setPrevClose(10.0);
+        exchange.setTickSize(0.01);
+        exchange.setLotSize(100);
+        exchange.listInstrument(4, 20.0, 0.05, 10);
+        exchange.setOrderIdSequence(new OrderIdSequence(1, 1));
+        Client client = new Client("Client");
+        exchange.registerClient(client);
+
+        InstructionJournal journal = new InstructionJournal(directory, 1 << 12, FsyncPolicy.PER_BATCH);
+        exchange.setJournal(journal);
+
+        Random random = new Random(8);
+        Instruction[] batch = new Instruction[16];
+        long[] clientIds = new long[16];
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < batch.length; j++) {
+                Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+                int symbolId = random.nextBoolean() ? 0 : 4;
+                long stepTicks = Price.toTicks(symbolId == 0 ? 0.01 : 0.05);
+                long priceTicks = Price.toTicks(symbolId == 0 ? 10.0 : 20.0) + (side == Side.BUY ? -1 : 1) * stepTicks * (random.nextInt(10) - 3);
+                batch[j] = random.nextInt(4) == 0
+                        ? Instruction.createCancelInstruction(side, 1 + random.nextInt(16 * i + j + 1)).forSymbol(symbolId)
+                        : Instruction.createPlaceLimitInstructionInTicks(priceTicks, 100 * (1 + random.nextInt(5)), side).forSymbol(symbolId);
+                clientIds[j] = client.getClientID();
+            }
+            exchange.receiveInstructions(batch, clientIds, batch.length);
+        }
+        //Not journaled, the client does not exist
+        exchange.receiveInstruction(Instruction.createPlaceLimitInstruction(10.0, 100, Side.BUY), 99);
+        journal.close();
+
+        ExchangeSimulator replayed = new ExchangeSimulator();
+        replayed.setBookOutputMode(BookOutputMode.OFF);
+        long last = JournalReader.read(directory, 1, new JournalReader.Handler() {
+            public void onInstrument(long sequence, int symbolId, double prevClose, double tickSize, long lotSize) {
+                replayed.listInstrument(symbolId, prevClose, tickSize, lotSize);
+            }
+
+            public void onClient(long sequence, long clientID) {
+                Client replayClient = new Client("Replay");
+                replayClient.setClientID(clientID);
+                replayed.attachClient(replayClient);
+            }
+
+            public void onOrderIds(long sequence, long nextOrderId, long stride) {
+                replayed.setOrderIdSequence(new OrderIdSequence(nextOrderId, stride));
+            }
+
+            public void onInstruction(long sequence, long timestamp, Instruction instruction, long clientID) {
+                replayed.receiveInstruction(instruction, clientID);
+            }
+        });
+
+        //Both instruments, the client and the order id sequence, then the instructions
+        assertEquals(4 + 1600, last);
+        assertEquals(exchange.getOrderBook().toString(), replayed.getOrderBook().toString());
+        assertEquals(exchange.getOrderBook(4).toString(), replayed.getOrderBook(4).toString());
+    }
+
+    private List<Path> listSegments() throws IOException
+    {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package test;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+/**
+ * Run all the scenarios of Tester against order books using the price ladder engine
+ */
+public class LadderTester extends Tester {
+
+    @BeforeClass
+    public static void useLadderEngine() {
+        System.setProperty("orderbook.engine", "LADDER");
+    }
+
+    @AfterClass
+    public static void restoreEngine() {
+        System.clearProperty("orderbook.engine");
+    }
+}
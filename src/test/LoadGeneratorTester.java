@@ -0,0 +1,66 @@
+package test;
+
+import com.jpmorgan.*;
+import com.jpmorgan.instruction.*;
+import com.jpmorgan.load.*;
+import com.jpmorgan.orderbook.*;
+import org.junit.*;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LoadGeneratorTester {
+
+    private ExchangeSimulator createExchange()
+    {
+        ExchangeSimulator exchange = new ExchangeSimulator();
+        exchange.setBookOutputMode(BookOutputMode.OFF);
+        exchange.listInstrument(0, 10.0, 0.05, 100);
+        exchange.setOrderIdSequence(new OrderIdSequence(1, 1));
+        return exchange;
+    }
+
+    @Test
+    public void testSameSeedGivesSameFlowOnTheTickGrid()
+    {
+        ExchangeSimulator first = createExchange();
+        ExchangeSimulator second = createExchange();
+        LoadGenerator.Result result = new LoadGenerator(first, new OrderFlowGenerator(42, FlowMix.DEFAULT, 0, 10.0, 0.05, 100), 1).run(20_000);
+        new LoadGenerator(second, new OrderFlowGenerator(42, FlowMix.DEFAULT, 0, 10.0, 0.05, 100), 1).run(20_000);
+
+        assertEquals(20_000, result.getResponseTime().getTotalCount());
+        assertTrue(first.getOrderBook().getOrderNum() > 0);
+        assertEquals(first.getOrderBook().toString(), second.getOrderBook().toString());
+
+        //Every price is on the grid around prevClose, every quantity is whole lots
+        FlowMix mix = new FlowMix(1, 1, 0, 0, 0, 0);
+        OrderFlowGenerator flow = new OrderFlowGenerator(7, mix, 0, 10.0, 0.05, 100);
+        Map<InstructionAction, Integer> counts = new EnumMap<>(InstructionAction.class);
+        for (int i = 0; i < 10_000; i++) {
+            Instruction instruction = flow.next();
+            counts.merge(instruction.getAction(), 1, Integer::sum);
+            assertEquals(0, instruction.getPriceTicks() % Price.toTicks(0.05));
+            assertTrue(Math.abs(instruction.getPriceTicks() - Price.toTicks(10.0)) < Price.toTicks(4.0));
+            assertEquals(0, instruction.getQuantity() % 100);
+        }
+        assertEquals(10_000, (int)counts.get(InstructionAction.PLACE_ORDER));
+    }
+
+    @Test
+    public void testCancelsAndAmendsTargetLiveOrders()
+    {
+        ExchangeSimulator exchange = createExchange();
+        OrderFlowGenerator flow = new OrderFlowGenerator(3, new FlowMix(1, 0, 0, 1, 1, 1), 0, 10.0, 0.05, 100);
+        LoadGenerator generator = new LoadGenerator(exchange, flow, 3);
+        generator.setRate(1_000_000);
+        LoadGenerator.Result result = generator.run(5_000);
+
+        //Only passive orders are placed, so the live orders the flow knows are the ones in the book
+        assertEquals(exchange.getOrderBook().getOrderNum(), flow.getLiveOrderNum());
+        //Counted from the intended send time, the response time is never below the service time
+        assertTrue(result.getResponseTime().getMax() >= result.getServiceTime().getMax());
+        assertTrue(result.getResponseTime().getMean() >= result.getServiceTime().getMean());
+    }
+}
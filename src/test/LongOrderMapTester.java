@@ -0,0 +1,61 @@
+package test;
+
+import com.jpmorgan.orderbook.LongOrderMap;
+import com.jpmorgan.orderbook.Order;
+import com.jpmorgan.orderbook.Side;
+import org.junit.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongOrderMapTester {
+
+    @Test
+    public void testPutGetRemove()
+    {
+        LongOrderMap map = new LongOrderMap(4);
+        Order order1 = new Order(1, null, Side.BUY, 100);
+        Order order2 = new Order(2, null, Side.SELL, 200);
+
+        assertNull(map.put(1, order1));
+        assertNull(map.put(2, order2));
+        assertEquals(2, map.size());
+        assertSame(order1, map.get(1));
+        assertSame(order2, map.get(2));
+        assertNull(map.get(3));
+
+        assertSame(order1, map.remove(1));
+        assertNull(map.remove(1));
+        assertFalse(map.containsKey(1));
+        assertTrue(map.containsKey(2));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testRandomOperationsMatchHashMap()
+    {
+        //Small capacity so that the table grows and long probe sequences get shifted back on removal
+        LongOrderMap map = new LongOrderMap(2);
+        Map<Long, Order> expected = new HashMap<>();
+        Random random = new Random(7);
+
+        for (int i = 0; i < 200000; i++) {
+            long id = random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                assertSame(expected.remove(id), map.remove(id));
+            }
+            else {
+                Order order = new Order(id, null, Side.BUY, 1);
+                assertSame(expected.put(id, order), map.put(id, order));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        for (long id = 0; id < 5000; id++) {
+            assertSame(expected.get(id), map.get(id));
+        }
+    }
+}
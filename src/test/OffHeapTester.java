@@ -0,0 +1,59 @@
+package test;
+
+import com.jpmorgan.orderbook.*;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Run all the scenarios of Tester against order books keeping their resting orders in an off-heap order store
+ */
+public class OffHeapTester extends Tester {
+
+    @BeforeClass
+    public static void useOffHeapStore() {
+        System.setProperty("orderbook.offheap.capacity", "1024");
+    }
+
+    @AfterClass
+    public static void restoreStore() {
+        System.clearProperty("orderbook.offheap.capacity");
+    }
+
+    @Test
+    public void testOffHeapStoreStaysWithinBudgets()
+    {
+        //An order resting in the store must go back to the order pool, or every placement allocates a new one
+        AllocationTester.checkBudgets(null, AllocationTester.OFF_HEAP_BUDGETS);
+    }
+
+    @Test
+    public void testDuplicateOrderIdIsRejectedByTheStore()
+    {
+        OffHeapOrderStore store = new OffHeapOrderStore(4);
+        OrderBook orderBook = new OrderBook(BookEngine.TREE, store);
+        orderBook.setPrevClose(10.0);
+        orderBook.processInboundOrder(new Order(42, new Price(10.0), Side.BUY, 100));
+
+        //The slot of the resting order stays indexed, instead of being orphaned by a second order with its id
+        try {
+            orderBook.processInboundOrder(new Order(42, new Price(9.5), Side.BUY, 200));
+            fail("An order id already in the store was stored again");
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals("Order 42 is already in the off-heap order store", e.getMessage());
+        }
+        assertEquals(1, store.size());
+        assertEquals(1, orderBook.getOrderNum());
+        assertEquals(0, orderBook.getOrderNumAtPrice(9.5));
+
+        assertNull(orderBook.removeOrder(42, Side.BUY).getValue());
+        assertEquals(0, store.size());
+        for (int i = 0; i < store.capacity(); i++) {
+            orderBook.processInboundOrder(new Order(100 + i, new Price(10.0), Side.BUY, 100));
+        }
+        assertEquals(store.capacity(), store.size());
+    }
+}
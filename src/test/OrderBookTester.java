@@ -0,0 +1,472 @@
+package test;
+
+import com.jpmorgan.orderbook.*;
+import javafx.util.Pair;
+import org.junit.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OrderBookTester {
+
+    //The fill listener matching cycles measured, each placing 4 levels of 8 resting orders swept by one aggressive order
+    private static final int FILL_LISTENER_CYCLES = 20000;
+    private static final int FILL_LISTENER_LEVELS = 4;
+    private static final int FILL_LISTENER_MAKERS = 8 * FILL_LISTENER_LEVELS;
+
+    //Allocation budget of the sorted map engine, which boxes the price key of its lookups
+    private static final long TREE_BYTES_PER_INSTRUCTION = 64;
+
+    //Fill listener recording the fills it receives
+    private static class RecordingListener implements FillListener {
+
+        private final List<long[]> fills = new ArrayList<>();
+
+        public void onFill(long makerOrderId, long takerOrderId, long priceTicks, long quantity) {
+            fills.add(new long[] {makerOrderId, takerOrderId, priceTicks, quantity});
+        }
+    }
+
+    //Fill listener only counting the fills, so that it does not allocate
+    private static class CountingListener implements FillListener {
+
+        private long fillNum;
+        private long quantity;
+
+        public void onFill(long makerOrderId, long takerOrderId, long priceTicks, long quantity) {
+            this.fillNum++;
+            this.quantity += quantity;
+        }
+    }
+
+    private OrderBook createOrderBook(BookEngine engine) {
+        OrderBook orderBook = new OrderBook(engine);
+        orderBook.setPrevClose(10.0);
+        orderBook.setTickSize(0.5);
+        return orderBook;
+    }
+
+    @Test
+    public void testFillListenerSweepsLevelsInPriority()
+    {
+        for (BookEngine engine : BookEngine.values()) {
+            OrderBook orderBook = createOrderBook(engine);
+
+            Order ask1 = new Order(new Price(11.0), Side.SELL, 1000);
+            Order ask2 = new Order(new Price(11.0), Side.SELL, 2000);
+            Order ask3 = new Order(new Price(11.5), Side.SELL, 4000);
+            orderBook.processInboundOrder(ask1, new RecordingListener());
+            orderBook.processInboundOrder(ask2, new RecordingListener());
+            orderBook.processInboundOrder(ask3, new RecordingListener());
+
+            //Buy 5000 up to 11.5: fills 1000 and 2000 at 11, then 2000 out of 4000 at 11.5
+            Order buy = new Order(new Price(11.5), Side.BUY, 5000);
+            RecordingListener listener = new RecordingListener();
+            assertEquals(5000, orderBook.processInboundOrder(buy, listener));
+
+            assertEquals(3, listener.fills.size());
+            assertArrayEquals(new long[] {ask1.getOrderId(), buy.getOrderId(), 11000, 1000}, listener.fills.get(0));
+            assertArrayEquals(new long[] {ask2.getOrderId(), buy.getOrderId(), 11000, 2000}, listener.fills.get(1));
+            assertArrayEquals(new long[] {ask3.getOrderId(), buy.getOrderId(), 11500, 2000}, listener.fills.get(2));
+
+            assertEquals(0, buy.getQuantity());
+            assertEquals(2000, ask3.getQuantity());
+            assertEquals(11.5, orderBook.getBestAsk().getRawPrice(), 1e-5);
+            assertEquals(2000, orderBook.getBestAskQuantity());
+            assertNull(orderBook.getBestBid());
+
+            //Sell 3000 at 11.5 rests since there is no bid, then a market buy of 6000 takes the whole ask side
+            Order ask4 = new Order(new Price(11.5), Side.SELL, 3000);
+            orderBook.processInboundOrder(ask4, new RecordingListener());
+            Order marketBuy = new Order(null, Side.BUY, 6000);
+            listener = new RecordingListener();
+            assertEquals(5000, orderBook.processInboundOrder(marketBuy, listener));
+            assertEquals(2, listener.fills.size());
+
+            //The remaining 1000 rests at the high limit
+            assertNull(orderBook.getBestAsk());
+            assertEquals(15.0, orderBook.getBestBid().getRawPrice(), 1e-5);
+            assertEquals(1000, orderBook.getBestBidQuantity());
+            assertTrue(orderBook.isLimitUp());
+        }
+    }
+
+    @Test
+    public void testCancelAndAmendAnywhereInTheLevelKeepPriority()
+    {
+        for (BookEngine engine : BookEngine.values()) {
+            OrderBook orderBook = createOrderBook(engine);
+
+            Order[] asks = new Order[6];
+            for (int i = 0; i < asks.length; i++) {
+                asks[i] = new Order(new Price(11.0), Side.SELL, 100 * (i + 1));
+                orderBook.processInboundOrder(asks[i], new RecordingListener());
+            }
+
+            //Unlink the head, an order in the middle and the tail of the queue
+            assertNull(orderBook.removeOrder(asks[0].getOrderId(), Side.SELL).getValue());
+            assertNull(orderBook.removeOrder(asks[2].getOrderId(), Side.SELL).getValue());
+            assertNull(orderBook.removeOrder(asks[5].getOrderId(), Side.SELL).getValue());
+            assertNotNull(orderBook.removeOrder(asks[2].getOrderId(), Side.SELL).getValue());
+
+            //Amending down keeps the place of the order in the queue
+            assertNull(orderBook.updateOrderQuantity(asks[3].getOrderId(), Side.SELL, 50).getValue());
+            assertEquals(3, orderBook.getOrderNumAtPrice(11.0));
+            assertEquals(200 + 50 + 500, orderBook.getBestAskQuantity());
+
+            Order ask7 = new Order(new Price(11.0), Side.SELL, 700);
+            orderBook.processInboundOrder(ask7, new RecordingListener());
+
+            Order buy = new Order(new Price(11.0), Side.BUY, 5000);
+            RecordingListener listener = new RecordingListener();
+            assertEquals(200 + 50 + 500 + 700, orderBook.processInboundOrder(buy, listener));
+
+            assertEquals(4, listener.fills.size());
+            assertArrayEquals(new long[] {asks[1].getOrderId(), buy.getOrderId(), 11000, 200}, listener.fills.get(0));
+            assertArrayEquals(new long[] {asks[3].getOrderId(), buy.getOrderId(), 11000, 50}, listener.fills.get(1));
+            assertArrayEquals(new long[] {asks[4].getOrderId(), buy.getOrderId(), 11000, 500}, listener.fills.get(2));
+            assertArrayEquals(new long[] {ask7.getOrderId(), buy.getOrderId(), 11000, 700}, listener.fills.get(3));
+            assertNull(orderBook.getBestAsk());
+        }
+    }
+
+    @Test
+    public void testLimitsAndTickSizeChangeWithOrdersNearTheOldLimits()
+    {
+        for (BookEngine engine : BookEngine.values()) {
+            OrderBook orderBook = createOrderBook(engine);
+
+            //Orders near the limits of 5 and 15
+            orderBook.processInboundOrder(new Order(new Price(5.5), Side.BUY, 1000));
+            orderBook.processInboundOrder(new Order(new Price(14.5), Side.SELL, 2000));
+
+            //The new limits of 6 and 18 leave the bid out of the band, which the book keeps
+            orderBook.setPrevClose(12.0);
+            assertEquals(5.5, orderBook.getBestBid().getRawPrice(), 1e-5);
+            assertEquals(1000, orderBook.getBestBidQuantity());
+            assertEquals(14.5, orderBook.getBestAsk().getRawPrice(), 1e-5);
+            assertEquals(2000, orderBook.getBestAskQuantity());
+
+            //A tick size of 1 leaves both resting prices off the grid
+            orderBook.setTickSize(1.0);
+            assertEquals(5.5, orderBook.getBestBid().getRawPrice(), 1e-5);
+            assertEquals(14.5, orderBook.getBestAsk().getRawPrice(), 1e-5);
+
+            //Both sides still match
+            Trade trade = orderBook.processInboundOrder(new Order(new Price(15.0), Side.BUY, 500));
+            assertEquals(500, trade.getTotalQuantity());
+            assertEquals(1500, orderBook.getBestAskQuantity());
+            trade = orderBook.processInboundOrder(new Order(new Price(5.5), Side.SELL, 1000));
+            assertEquals(1000, trade.getTotalQuantity());
+            assertNull(orderBook.getBestBid());
+            orderBook.processInboundOrder(new Order(new Price(10.0), Side.BUY, 300));
+            assertEquals(10.0, orderBook.getBestBid().getRawPrice(), 1e-5);
+        }
+    }
+
+    @Test
+    public void testFillListenerMatchingDoesNotAllocate()
+    {
+        long allocated = allocatedByFillListenerMatching(BookEngine.LADDER);
+        assertTrue("Allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    @Test
+    public void testFillListenerMatchingOnTreeStaysWithinBudget()
+    {
+        long allocated = allocatedByFillListenerMatching(BookEngine.TREE);
+        long instructions = FILL_LISTENER_CYCLES * (FILL_LISTENER_MAKERS + 1);
+        assertTrue("Allocated " + allocated + " bytes for " + instructions + " instructions",
+                allocated <= TREE_BYTES_PER_INSTRUCTION * instructions);
+    }
+
+    //Bytes allocated by cycles of resting orders swept by one aggressive order, after as many to warm up
+    private long allocatedByFillListenerMatching(BookEngine engine)
+    {
+        OrderBook orderBook = createOrderBook(engine);
+        CountingListener listener = new CountingListener();
+
+        int levels = FILL_LISTENER_LEVELS;
+        int ordersPerLevel = FILL_LISTENER_MAKERS / levels;
+        Order[] makers = new Order[FILL_LISTENER_MAKERS];
+        Price[] prices = new Price[levels];
+        for (int i = 0; i < levels; i++) {
+            prices[i] = new Price(11.0 + 0.5 * i);
+        }
+        for (int i = 0; i < makers.length; i++) {
+            makers[i] = new Order(prices[i / ordersPerLevel], Side.SELL, 100);
+        }
+        Order taker = new Order(prices[levels - 1], Side.BUY, 0);
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        //Warm up, then measure the same cycle of resting orders swept by one aggressive order
+        runCycles(orderBook, listener, makers, prices, ordersPerLevel, taker, FILL_LISTENER_CYCLES);
+
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        runCycles(orderBook, listener, makers, prices, ordersPerLevel, taker, FILL_LISTENER_CYCLES);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        assertEquals(2L * FILL_LISTENER_CYCLES * makers.length * 100, listener.quantity);
+        return allocated;
+    }
+
+    @Test
+    public void testLadderMatchesTreeOnSparseWideBook()
+    {
+        //Tick 0.001 around 100 gives a ladder of 100001 slots, so levels are far apart across many bitmap words
+        OrderBook tree = new OrderBook(BookEngine.TREE);
+        OrderBook ladder = new OrderBook(BookEngine.LADDER);
+        for (OrderBook orderBook : new OrderBook[] {tree, ladder}) {
+            orderBook.setPrevClose(100.0);
+            orderBook.setTickSize(0.001);
+        }
+
+        Random random = new Random(11);
+        List<Long> orderIds = new ArrayList<>();
+        long nextId = 1;
+
+        for (int i = 0; i < 20000; i++) {
+            int action = random.nextInt(10);
+            if (action < 7 || orderIds.isEmpty()) {
+                Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+                //Mostly passive orders spread over the whole range, sometimes a market order sweeping many levels
+                long priceTicks = random.nextInt(20) == 0 ? Price.NO_PRICE
+                        : (side == Side.BUY ? 50000 + random.nextInt(52000) : 98000 + random.nextInt(52000));
+                long quantity = 1 + random.nextInt(500);
+                long id = nextId++;
+
+                RecordingListener treeFills = new RecordingListener();
+                RecordingListener ladderFills = new RecordingListener();
+                tree.processInboundOrder(new Order(id, priceTicks, side, quantity), treeFills);
+                ladder.processInboundOrder(new Order(id, priceTicks, side, quantity), ladderFills);
+
+                assertEquals(treeFills.fills.size(), ladderFills.fills.size());
+                for (int f = 0; f < treeFills.fills.size(); f++) {
+                    assertArrayEquals(treeFills.fills.get(f), ladderFills.fills.get(f));
+                }
+                orderIds.add(id);
+            }
+            else {
+                long id = orderIds.remove(random.nextInt(orderIds.size()));
+                Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+                assertEquals(tree.removeOrder(id, side).getValue(), ladder.removeOrder(id, side).getValue());
+            }
+
+            assertEquals(tree.getBestBidTicks(), ladder.getBestBidTicks());
+            assertEquals(tree.getBestAskTicks(), ladder.getBestAskTicks());
+            assertEquals(tree.getBestBidQuantity(), ladder.getBestBidQuantity());
+            assertEquals(tree.getBestAskQuantity(), ladder.getBestAskQuantity());
+        }
+
+        assertEquals(tree.toString(), ladder.toString());
+    }
+
+    @Test
+    public void testOffHeapStoreMatchesHeapOrders()
+    {
+        OffHeapOrderStore store = new OffHeapOrderStore(1 << 14);
+        OrderBook heap = new OrderBook(BookEngine.TREE);
+        OrderBook offHeap = new OrderBook(BookEngine.LADDER, store);
+        for (OrderBook orderBook : new OrderBook[] {heap, offHeap}) {
+            orderBook.setPrevClose(10.0);
+            orderBook.setTickSize(0.01);
+        }
+
+        Random random = new Random(7);
+        List<Long> orderIds = new ArrayList<>();
+        long nextId = 1;
+
+        for (int i = 0; i < 20000; i++) {
+            int action = random.nextInt(10);
+            if (action < 6 || orderIds.isEmpty()) {
+                Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+                long priceTicks = side == Side.BUY ? 9000 + 10 * random.nextInt(120) : 9800 + 10 * random.nextInt(120);
+                long quantity = 1 + random.nextInt(500);
+                long id = nextId++;
+
+                RecordingListener heapFills = new RecordingListener();
+                RecordingListener offHeapFills = new RecordingListener();
+                heap.processInboundOrder(new Order(id, priceTicks, side, quantity), heapFills);
+                offHeap.processInboundOrder(new Order(id, priceTicks, side, quantity), offHeapFills);
+
+                assertEquals(heapFills.fills.size(), offHeapFills.fills.size());
+                for (int f = 0; f < heapFills.fills.size(); f++) {
+                    assertArrayEquals(heapFills.fills.get(f), offHeapFills.fills.get(f));
+                }
+                orderIds.add(id);
+            }
+            else if (action < 8) {
+                long id = orderIds.remove(random.nextInt(orderIds.size()));
+                Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+                assertSameResult(heap.removeOrder(id, side), offHeap.removeOrder(id, side));
+            }
+            else {
+                long id = orderIds.get(random.nextInt(orderIds.size()));
+                Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+                long quantity = 1 + random.nextInt(500);
+                assertSameResult(heap.updateOrderQuantity(id, side, quantity), offHeap.updateOrderQuantity(id, side, quantity));
+            }
+
+            assertEquals(heap.getBestBidTicks(), offHeap.getBestBidTicks());
+            assertEquals(heap.getBestAskTicks(), offHeap.getBestAskTicks());
+            assertEquals(heap.getBestBidQuantity(), offHeap.getBestBidQuantity());
+            assertEquals(heap.getBestAskQuantity(), offHeap.getBestAskQuantity());
+        }
+
+        assertEquals(heap.toString(), offHeap.toString());
+
+        //Cancelling everything left releases every slot of the store
+        for (long id = 1; id < nextId; id++) {
+            heap.removeOrder(id, Side.BUY);
+            heap.removeOrder(id, Side.SELL);
+            offHeap.removeOrder(id, Side.BUY);
+            offHeap.removeOrder(id, Side.SELL);
+        }
+        assertEquals(0, store.size());
+        assertEquals(heap.toString(), offHeap.toString());
+    }
+
+    @Test
+    public void testPoolsRecycleFilledOrdersAndRemovedLevels()
+    {
+        OrderBook orderBook = createOrderBook(BookEngine.TREE);
+        orderBook.setOrderPoolCapacity(16);
+        orderBook.setLevelPoolCapacity(16);
+        CountingListener listener = new CountingListener();
+
+        for (int cycle = 0; cycle < 10; cycle++) {
+            orderBook.processInboundOrder(orderBook.acquireOrder(11000, Side.SELL, 100), listener);
+            orderBook.processInboundOrder(orderBook.acquireOrder(11500, Side.SELL, 100), listener);
+
+            //The taker sweeps both levels, the makers and both levels go back to their pools
+            Order taker = orderBook.acquireOrder(11500, Side.BUY, 200);
+            assertEquals(200, orderBook.processInboundOrder(taker, listener));
+            orderBook.releaseOrder(taker);
+        }
+
+        //Only the first cycle creates objects, later cycles reuse them
+        assertEquals(3, orderBook.getOrderPool().getMisses());
+        assertEquals(27, orderBook.getOrderPool().getHits());
+        assertEquals(2, orderBook.getLevelPool().getMisses());
+        assertEquals(18, orderBook.getLevelPool().getHits());
+        assertEquals(3, orderBook.getOrderPool().size());
+
+        //Orders created by the caller are never taken into the pool, and an order is released only once
+        Order order = new Order(11000, Side.SELL, 100);
+        orderBook.releaseOrder(order);
+        assertEquals(3, orderBook.getOrderPool().size());
+
+        Order pooled = orderBook.acquireOrder(11000, Side.SELL, 100);
+        orderBook.releaseOrder(pooled);
+        orderBook.releaseOrder(pooled);
+        assertEquals(3, orderBook.getOrderPool().size());
+    }
+
+    @Test
+    public void testDepthLimitedAndChangedLevelRendering()
+    {
+        for (BookEngine engine : BookEngine.values()) {
+            OrderBook orderBook = createOrderBook(engine);
+            orderBook.setDirtyTracking(true);
+
+            orderBook.processInboundOrder(new Order(new Price(9.5), Side.BUY, 1000));
+            orderBook.processInboundOrder(new Order(new Price(9.0), Side.BUY, 2000));
+            orderBook.processInboundOrder(new Order(new Price(11.0), Side.SELL, 3000));
+
+            assertEquals("OrderBook:\n" +
+                    "     Buy         |    Sell\n\n" +
+                    "    1000@9.5     |    3000@11\n", orderBook.toString(1));
+            assertTrue(orderBook.toString().startsWith(orderBook.toString(1)));
+            assertTrue(orderBook.toString().endsWith("    2000@9       |\n"));
+
+            assertEquals("OrderBook changes:\n" +
+                    "Buy      1000@9.5     \n" +
+                    "Buy      2000@9       \n" +
+                    "Sell     3000@11\n", orderBook.renderChanges());
+            assertEquals("OrderBook changes:\n", orderBook.renderChanges());
+
+            //A sell sweeping the best bid empties it, and the rest of the sell rests
+            orderBook.processInboundOrder(new Order(new Price(9.5), Side.SELL, 1500));
+            assertEquals("OrderBook changes:\n" +
+                    "Buy         0@9.5     \n" +
+                    "Sell      500@9.5\n", orderBook.renderChanges());
+        }
+    }
+
+    @Test
+    public void testReadDepthFillsCallerArraysWithoutAllocating()
+    {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        for (BookEngine engine : BookEngine.values()) {
+            OrderBook orderBook = createOrderBook(engine);
+            orderBook.processInboundOrder(new Order(new Price(9.5), Side.BUY, 1000));
+            orderBook.processInboundOrder(new Order(new Price(9.5), Side.BUY, 500));
+            orderBook.processInboundOrder(new Order(new Price(8.0), Side.BUY, 2000));
+            orderBook.processInboundOrder(new Order(new Price(9.0), Side.BUY, 3000));
+            orderBook.processInboundOrder(new Order(new Price(11.0), Side.SELL, 700));
+
+            long[] prices = new long[5];
+            long[] quantities = new long[5];
+            int[] orderCounts = new int[5];
+
+            assertEquals(2, orderBook.readDepth(Side.BUY, 2, prices, quantities, orderCounts));
+            assertArrayEquals(new long[] {9500, 9000, 0, 0, 0}, prices);
+            assertArrayEquals(new long[] {1500, 3000, 0, 0, 0}, quantities);
+            assertArrayEquals(new int[] {2, 1, 0, 0, 0}, orderCounts);
+
+            assertEquals(3, orderBook.readDepth(Side.BUY, 5, prices, quantities, orderCounts));
+            assertEquals(8000, prices[2]);
+            assertEquals(1, orderBook.readDepth(Side.SELL, 5, prices, quantities, orderCounts));
+            assertEquals(11000, prices[0]);
+            assertEquals(700, quantities[0]);
+
+            for (int i = 0; i < 10000; i++) {
+                orderBook.readDepth(Side.BUY, 5, prices, quantities, orderCounts);
+            }
+            long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 100000; i++) {
+                orderBook.readDepth(Side.BUY, 5, prices, quantities, orderCounts);
+                orderBook.readDepth(Side.SELL, 5, prices, quantities, orderCounts);
+            }
+            long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            assertTrue(engine + " allocated " + allocated + " bytes reading depth", allocated < 1024);
+        }
+    }
+
+    private void assertSameResult(Pair<Order, String> expected, Pair<Order, String> actual) {
+        assertEquals(expected.getValue(), actual.getValue());
+        if (expected.getKey() == null) {
+            assertNull(actual.getKey());
+        }
+        else {
+            assertEquals(expected.getKey().getOrderId(), actual.getKey().getOrderId());
+            assertEquals(expected.getKey().getPriceTicks(), actual.getKey().getPriceTicks());
+            assertEquals(expected.getKey().getQuantity(), actual.getKey().getQuantity());
+            assertEquals(expected.getKey().getRawSide(), actual.getKey().getRawSide());
+        }
+    }
+
+    private void runCycles(OrderBook orderBook, CountingListener listener, Order[] makers, Price[] prices,
+                           int ordersPerLevel, Order taker, int cycles) {
+        for (int cycle = 0; cycle < cycles; cycle++) {
+            for (int i = 0; i < makers.length; i++) {
+                makers[i].initialize(prices[i / ordersPerLevel], Side.SELL, 100);
+                orderBook.processInboundOrder(makers[i], listener);
+            }
+            taker.initialize(prices[prices.length - 1], Side.BUY, makers.length * 100);
+            orderBook.processInboundOrder(taker, listener);
+        }
+    }
+}
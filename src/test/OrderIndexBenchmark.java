@@ -0,0 +1,107 @@
+package test;
+
+import com.jpmorgan.orderbook.LongOrderMap;
+import com.jpmorgan.orderbook.Order;
+import com.jpmorgan.orderbook.Side;
+
+import java.util.*;
+
+/**
+ * Compare the order index of the order book (LongOrderMap) with a HashMap<Long, Order>
+ * on adding, looking up and removing N resting orders.
+ *
+ * Usage: OrderIndexBenchmark [orderNum ...], default 1000000 10000000.
+ * Run with a large heap for 10M orders, e.g. -Xmx4g.
+ */
+public class OrderIndexBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+
+        int[] sizes = args.length > 0 ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[] {1_000_000, 10_000_000};
+
+        //A few shared orders as values, so that only the cost of the index itself is measured
+        Order[] orders = new Order[1024];
+        for (int i = 0; i < orders.length; i++) {
+            orders[i] = new Order(i, null, Side.BUY, 100);
+        }
+
+        for (int size : sizes) {
+
+            //Order ids are allocated sequentially, lookups come in a random order
+            long[] ids = new long[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = i + 1;
+            }
+            long[] lookupIds = ids.clone();
+            Random random = new Random(42);
+            for (int i = size - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                long tmp = lookupIds[i];
+                lookupIds[i] = lookupIds[j];
+                lookupIds[j] = tmp;
+            }
+
+            System.out.println("Orders: " + size);
+            for (int round = 0; round < ROUNDS; round++) {
+                runHashMap(ids, lookupIds, orders, round == ROUNDS - 1);
+                runLongOrderMap(ids, lookupIds, orders, round == ROUNDS - 1);
+            }
+            System.out.println();
+        }
+    }
+
+    private static void runHashMap(long[] ids, long[] lookupIds, Order[] orders, boolean report) {
+        Map<Long, Order> map = new HashMap<>(ids.length * 2);
+        long sink = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ids.length; i++) {
+            map.put(ids[i], orders[i & 1023]);
+        }
+        long putEnd = System.nanoTime();
+        for (int i = 0; i < lookupIds.length; i++) {
+            sink += map.get(lookupIds[i]).getQuantity();
+        }
+        long getEnd = System.nanoTime();
+        for (int i = 0; i < lookupIds.length; i++) {
+            sink += map.remove(lookupIds[i]).getQuantity();
+        }
+        long removeEnd = System.nanoTime();
+
+        if (report) {
+            print("HashMap<Long, Order>", ids.length, start, putEnd, getEnd, removeEnd, sink);
+        }
+    }
+
+    private static void runLongOrderMap(long[] ids, long[] lookupIds, Order[] orders, boolean report) {
+        LongOrderMap map = new LongOrderMap(ids.length);
+        long sink = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ids.length; i++) {
+            map.put(ids[i], orders[i & 1023]);
+        }
+        long putEnd = System.nanoTime();
+        for (int i = 0; i < lookupIds.length; i++) {
+            sink += map.get(lookupIds[i]).getQuantity();
+        }
+        long getEnd = System.nanoTime();
+        for (int i = 0; i < lookupIds.length; i++) {
+            sink += map.remove(lookupIds[i]).getQuantity();
+        }
+        long removeEnd = System.nanoTime();
+
+        if (report) {
+            print("LongOrderMap", ids.length, start, putEnd, getEnd, removeEnd, sink);
+        }
+    }
+
+    private static void print(String name, int size, long start, long putEnd, long getEnd, long removeEnd, long sink) {
+        System.out.println(String.format("%-22s put %6.1f ns/op, get %6.1f ns/op, remove %6.1f ns/op (checksum %d)",
+                name, (putEnd - start) / (double)size, (getEnd - putEnd) / (double)size,
+                (removeEnd - getEnd) / (double)size, sink));
+    }
+}
@@ -0,0 +1,187 @@
+package test;
+
+import com.jpmorgan.*;
+import com.jpmorgan.client.*;
+import com.jpmorgan.instruction.*;
+import com.jpmorgan.journal.*;
+import com.jpmorgan.orderbook.*;
+import org.junit.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class RecoveryTester {
+
+    private Path snapshots;
+    private Path journals;
+
+    @Before
+    public void createDirectories() throws IOException
+    {
+        snapshots = Files.createTempDirectory("snapshots");
+        journals = Files.createTempDirectory("journal");
+    }
+
+    @After
+    public void deleteDirectories() throws IOException
+    {
+        for (Path directory : new Path[] {snapshots, journals}) {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSnapshotAndJournalTailRebuildTheExchange() throws IOException
+    {
+        ExchangeSimulator exchange = createExchange();
+        Client client = new Client("Client");
+        exchange.registerClient(client);
+        InstructionJournal journal = new InstructionJournal(journals, 1 << 12, FsyncPolicy.PER_BATCH);
+        exchange.setJournal(journal);
+
+        Random random = new Random(17);
+        sendBatches(exchange, client.getClientID(), random, 0, 50);
+        ExchangeSnapshot snapshot = exchange.takeSnapshot();
+        assertEquals(journal.lastSequence(), snapshot.getJournalSequence());
+        snapshot.write(snapshots);
+        sendBatches(exchange, client.getClientID(), random, 50, 100);
+        exchange.setJournal(null);
+        journal.close();
+
+        ExchangeSimulator recovered = new ExchangeSimulator();
+        recovered.setBookOutputMode(BookOutputMode.OFF);
+        long last = Recovery.recover(recovered, snapshots, journals);
+        assertEquals(journal.lastSequence(), last);
+        assertBooksEqual(exchange, recovered);
+
+        //Both carry on alike, with the same order ids and the same queue priority
+        sendBatches(exchange, client.getClientID(), new Random(99), 100, 120);
+        sendBatches(recovered, client.getClientID(), new Random(99), 100, 120);
+        assertBooksEqual(exchange, recovered);
+    }
+
+    @Test
+    public void testUnreadableLatestSnapshotFallsBackToThePreviousOne() throws IOException
+    {
+        ExchangeSimulator exchange = createExchange();
+        Client client = new Client("Client");
+        exchange.registerClient(client);
+        InstructionJournal journal = new InstructionJournal(journals, 1 << 12, FsyncPolicy.NONE);
+        exchange.setJournal(journal);
+
+        Random random = new Random(3);
+        sendBatches(exchange, client.getClientID(), random, 0, 20);
+        exchange.takeSnapshot().write(snapshots);
+        sendBatches(exchange, client.getClientID(), random, 20, 40);
+        Path latest = exchange.takeSnapshot().write(snapshots);
+        sendBatches(exchange, client.getClientID(), random, 40, 60);
+        journal.close();
+
+        //Cut the latest snapshot short, as a disk full would
+        Files.write(latest, new byte[] {1, 2, 3});
+
+        ExchangeSimulator recovered = new ExchangeSimulator();
+        recovered.setBookOutputMode(BookOutputMode.OFF);
+        Recovery.recover(recovered, snapshots, journals);
+        assertBooksEqual(exchange, recovered);
+    }
+
+    @Test
+    public void testSnapshotReusesTheBufferOfTheCaller() throws IOException
+    {
+        ExchangeSimulator exchange = createExchange();
+        Client client = new Client("Client");
+        exchange.registerClient(client);
+        sendBatches(exchange, client.getClientID(), new Random(5), 0, 20);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(2 * exchange.getSnapshotSize());
+        ExchangeSnapshot first = exchange.takeSnapshot(buffer);
+        assertEquals(exchange.takeSnapshot().getContent(), first.getContent());
+        first.write(snapshots);
+
+        //Once the first snapshot is written, the next one reuses its buffer
+        sendBatches(exchange, client.getClientID(), new Random(6), 20, 30);
+        assertTrue(exchange.getSnapshotSize() <= buffer.capacity());
+        ExchangeSnapshot second = exchange.takeSnapshot(buffer);
+        assertTrue(second.getContent().isDirect());
+        assertEquals(exchange.takeSnapshot().getContent(), second.getContent());
+
+        ExchangeSimulator restored = new ExchangeSimulator();
+        restored.setBookOutputMode(BookOutputMode.OFF);
+        restored.restoreSnapshot(second);
+        assertBooksEqual(exchange, restored);
+    }
+
+    @Test
+    public void testRingExchangeTakesSnapshotWhileRunning() throws Exception
+    {
+        ExchangeSimulator simulator = createExchange();
+        Client client = new Client("Client");
+        simulator.registerClient(client);
+        RingExchange exchange = new RingExchange(simulator, 1 << 10, WaitStrategy.YIELD, "matching");
+        exchange.start();
+
+        for (int i = 0; i < 200; i++) {
+            exchange.receiveInstruction(Instruction.createPlaceLimitInstruction(9.0 + 0.01 * (i % 50), 100, Side.BUY), client.getClientID());
+        }
+        exchange.awaitProcessed();
+        ExchangeSnapshot snapshot = exchange.requestSnapshot().get(10, TimeUnit.SECONDS);
+        exchange.shutdown();
+
+        ExchangeSimulator restored = new ExchangeSimulator();
+        restored.setBookOutputMode(BookOutputMode.OFF);
+        restored.restoreSnapshot(snapshot);
+        assertEquals(200, restored.getOrderBook().getOrderNum());
+        assertBooksEqual(simulator, restored);
+    }
+
+    private ExchangeSimulator createExchange()
+    {
+        ExchangeSimulator exchange = new ExchangeSimulator();
+        exchange.setBookOutputMode(BookOutputMode.OFF);
+        exchange.setPrevClose(10.0);
+        exchange.setTickSize(0.01);
+        exchange.setLotSize(100);
+        exchange.listInstrument(4, 20.0, 0.05, 10);
+        exchange.setOrderIdSequence(new OrderIdSequence(1, 1));
+        return exchange;
+    }
+
+    private void sendBatches(ExchangeSimulator exchange, long clientID, Random random, int from, int to)
+    {
+        Instruction[] batch = new Instruction[16];
+        long[] clientIds = new long[16];
+        for (int i = from; i < to; i++) {
+            for (int j = 0; j < batch.length; j++) {
+                Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+                int symbolId = random.nextBoolean() ? 0 : 4;
+                long stepTicks = Price.toTicks(symbolId == 0 ? 0.01 : 0.05);
+                long priceTicks = Price.toTicks(symbolId == 0 ? 10.0 : 20.0) + (side == Side.BUY ? -1 : 1) * stepTicks * (random.nextInt(10) - 3);
+                batch[j] = random.nextInt(4) == 0
+                        ? Instruction.createCancelInstruction(side, 1 + random.nextInt(16 * i + j + 1)).forSymbol(symbolId)
+                        : Instruction.createPlaceLimitInstructionInTicks(priceTicks, 100 * (1 + random.nextInt(5)), side).forSymbol(symbolId);
+                clientIds[j] = clientID;
+            }
+            exchange.receiveInstructions(batch, clientIds, batch.length);
+        }
+    }
+
+    private void assertBooksEqual(ExchangeSimulator expected, ExchangeSimulator actual)
+    {
+        assertEquals(expected.getOrderBook().getOrderNum(), actual.getOrderBook().getOrderNum());
+        assertEquals(expected.getOrderBook().toString(), actual.getOrderBook().toString());
+        assertEquals(expected.getOrderBook(4).toString(), actual.getOrderBook(4).toString());
+    }
+}
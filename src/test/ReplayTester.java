@@ -0,0 +1,118 @@
+package test;
+
+import com.jpmorgan.*;
+import com.jpmorgan.client.*;
+import com.jpmorgan.instruction.*;
+import com.jpmorgan.journal.*;
+import com.jpmorgan.metrics.LatencyHistogram;
+import com.jpmorgan.orderbook.*;
+import org.junit.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ReplayTester {
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException
+    {
+        directory = Files.createTempDirectory("journal");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    public void testReplayIsDeterministicAcrossRunsAndEngines() throws IOException
+    {
+        ExchangeSimulator exchange = new ExchangeSimulator();
+        exchange.setBookOutputMode(BookOutputMode.OFF);
+        exchange.setPrevClose(10.0);
+        exchange.setTickSize(0.01);
+        exchange.setLotSize(100);
+        Client client = new Client("Client");
+        exchange.registerClient(client);
+        InstructionJournal journal = new InstructionJournal(directory, 1 << 16, FsyncPolicy.NONE);
+        exchange.setJournal(journal);
+
+        Random random = new Random(5);
+        int placeNum = 0;
+        for (int i = 0; i < 3000; i++) {
+            Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+            if (i > 0 && random.nextInt(3) == 0) {
+                exchange.receiveInstruction(Instruction.createCancelInstruction(side, 1 + random.nextInt(i)), client.getClientID());
+            }
+            else {
+                long priceTicks = Price.toTicks(10.0) + (side == Side.BUY ? -1 : 1) * Price.toTicks(0.01) * (random.nextInt(10) - 2);
+                exchange.receiveInstruction(Instruction.createPlaceLimitInstructionInTicks(priceTicks, 100 * (1 + random.nextInt(5)), side),
+                        client.getClientID());
+                placeNum++;
+            }
+        }
+        exchange.setJournal(null);
+        journal.close();
+
+        JournalReplayer.Result first = JournalReplayer.replay(directory, BookEngine.TREE);
+        JournalReplayer.Result second = JournalReplayer.replay(directory, BookEngine.TREE);
+        JournalReplayer.Result ladder = JournalReplayer.replay(directory, BookEngine.LADDER);
+
+        assertEquals(3000, first.getInstructionNum());
+        assertEquals(placeNum, first.getLatencies(InstructionAction.PLACE_ORDER).getTotalCount());
+        assertEquals(3000 - placeNum, first.getLatencies(InstructionAction.CANCEL).getTotalCount());
+        assertTrue(first.getInstructionsPerSecond() > 0);
+
+        assertEquals(JournalReplayer.stateHash(exchange), first.getStateHash());
+        assertEquals(first.getStateHash(), second.getStateHash());
+        assertEquals(first.getStateHash(), ladder.getStateHash());
+        assertEquals(exchange.getOrderBook().toString(), ladder.getExchange().getOrderBook().toString());
+
+        //A different state hashes differently
+        exchange.receiveInstruction(Instruction.createPlaceLimitInstruction(9.5, 100, Side.BUY), client.getClientID());
+        assertNotEquals(first.getStateHash(), JournalReplayer.stateHash(exchange));
+    }
+
+    @Test
+    public void testHistogramPercentilesStayWithinBucketPrecision()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(100_000, histogram.getTotalCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(100_000, histogram.getMax());
+        assertEquals(50_000.5, histogram.getMean(), 1e-6);
+        assertEquals(50_000, histogram.getValueAtPercentile(50), 50_000 / 64.0);
+        assertEquals(99_000, histogram.getValueAtPercentile(99), 99_000 / 64.0);
+        assertEquals(100_000, histogram.getValueAtPercentile(100));
+
+        //Small values are exact
+        LatencyHistogram small = new LatencyHistogram();
+        small.record(3);
+        small.record(7);
+        small.record(120);
+        assertEquals(7, small.getValueAtPercentile(50));
+
+        histogram.add(small);
+        assertEquals(100_003, histogram.getTotalCount());
+        histogram.reset();
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+}
@@ -0,0 +1,177 @@
+package test;
+
+import com.jpmorgan.*;
+import com.jpmorgan.client.*;
+import com.jpmorgan.instruction.*;
+import com.jpmorgan.orderbook.*;
+import org.junit.*;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RingExchangeTester {
+
+    private static final int PRODUCER_NUM = 4;
+    private static final int INSTRUCTION_NUM = 20000;
+
+    @Test
+    public void testProducersMatchSingleThreadedExchange() throws InterruptedException
+    {
+        //A small ring so that the producers keep wrapping around it
+        ExchangeSimulator simulator = new ExchangeSimulator();
+        simulator.setBookOutputMode(BookOutputMode.OFF);
+        ExchangeSimulator single = new ExchangeSimulator();
+        single.setBookOutputMode(BookOutputMode.OFF);
+        RingExchange ring = new RingExchange(simulator, 64, WaitStrategy.YIELD, "matching-test");
+
+        //One instrument per producer, so the order of the instructions of each book is known
+        Client[] clients = new Client[PRODUCER_NUM];
+        Client[] singleClients = new Client[PRODUCER_NUM];
+        for (int i = 0; i < PRODUCER_NUM; i++) {
+            simulator.listInstrument(i, 10.0 + i, 0.01, 100);
+            single.listInstrument(i, 10.0 + i, 0.01, 100);
+            clients[i] = new Client("Producer" + i);
+            singleClients[i] = new Client("Single" + i);
+            simulator.registerClient(clients[i]);
+            single.registerClient(singleClients[i]);
+        }
+
+        ring.start();
+
+        Thread[] producers = new Thread[PRODUCER_NUM];
+        for (int i = 0; i < PRODUCER_NUM; i++) {
+            int symbolId = i;
+            long clientID = clients[i].getClientID();
+            producers[i] = new Thread(() -> {
+                Random random = new Random(symbolId);
+                long basePriceTicks = Price.toTicks(10.0 + symbolId);
+                for (int n = 0; n < INSTRUCTION_NUM; n++) {
+                    Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+                    long priceTicks = basePriceTicks + (side == Side.BUY ? -1 : 1) * 10 * (random.nextInt(20) - 4);
+                    long quantity = 100 * (1 + random.nextInt(10));
+                    //Primitive publishing, nothing is allocated per instruction
+                    ring.receiveInstruction(symbolId, InstructionAction.PLACE_ORDER, priceTicks, quantity, -1L,
+                            OrderType.LIMIT, side, clientID);
+                }
+            });
+        }
+        for (Thread producer : producers) {
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        ring.awaitProcessed();
+        ring.shutdown();
+
+        for (int i = 0; i < PRODUCER_NUM; i++) {
+            Random random = new Random(i);
+            long basePriceTicks = Price.toTicks(10.0 + i);
+            for (int n = 0; n < INSTRUCTION_NUM; n++) {
+                Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+                long priceTicks = basePriceTicks + (side == Side.BUY ? -1 : 1) * 10 * (random.nextInt(20) - 4);
+                long quantity = 100 * (1 + random.nextInt(10));
+                single.receiveInstruction(Instruction.createPlaceLimitInstructionInTicks(priceTicks, quantity, side)
+                        .forSymbol(i), singleClients[i].getClientID());
+            }
+        }
+
+        for (int i = 0; i < PRODUCER_NUM; i++) {
+            assertEquals(single.getOrderBook(i).toString(), simulator.getOrderBook(i).toString());
+            assertEquals(singleClients[i].getMessages().size(), clients[i].getMessages().size());
+        }
+    }
+
+    @Test
+    public void testRingDrainsInSequenceOrderAcrossWrapAround()
+    {
+        InstructionRing ring = new InstructionRing(8, WaitStrategy.BUSY_SPIN);
+        ExchangeSimulator simulator = new ExchangeSimulator();
+        simulator.setBookOutputMode(BookOutputMode.OFF);
+        Client client = new Client("Client");
+        simulator.listInstrument(1, 10.0, 0.01, 100);
+        simulator.registerClient(client);
+
+        long priceTicks = Price.toTicks(10.0);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 6; i++) {
+                ring.publish(Instruction.createPlaceLimitInstructionInTicks(priceTicks - 10 * i, 100, Side.BUY).forSymbol(1),
+                        client.getClientID());
+            }
+            assertFalse(ring.isDrained());
+            assertEquals(4, ring.drain(simulator, 4));
+            assertEquals(2, ring.drain(simulator, 4));
+            assertEquals(0, ring.drain(simulator, 4));
+            assertTrue(ring.isDrained());
+        }
+        assertEquals(29, ring.drainedSequence());
+        //Every instruction was processed exactly once
+        for (int i = 0; i < 6; i++) {
+            assertEquals(500, simulator.getOrderBook(1).getQuantityAtPriceTicks(priceTicks - 10 * i));
+        }
+    }
+
+    @Test
+    public void testMatchingThreadStopsOnFailureAndRaisesIt() throws InterruptedException
+    {
+        RuntimeException error = new IllegalArgumentException("Broken instruction");
+        ExchangeSimulator simulator = new ExchangeSimulator() {
+            public void receiveInstructions(Instruction[] batch, long[] clientIds, int offset, int count)
+            {
+                for (int i = offset; i < offset + count; i++) {
+                    if (batch[i].getQuantity() == 700) {
+                        throw error;
+                    }
+                }
+                super.receiveInstructions(batch, clientIds, offset, count);
+            }
+        };
+        simulator.setBookOutputMode(BookOutputMode.OFF);
+        Client client = new Client("Client");
+        simulator.listInstrument(1, 10.0, 0.01, 100);
+        simulator.registerClient(client);
+        RingExchange ring = new RingExchange(simulator, 64, WaitStrategy.YIELD, "matching-failure");
+        ring.start();
+
+        long priceTicks = Price.toTicks(10.0);
+        for (long quantity : new long[] {200, 700, 300}) {
+            ring.receiveInstruction(1, InstructionAction.PLACE_ORDER, priceTicks, quantity, -1L, OrderType.LIMIT, Side.BUY,
+                    client.getClientID());
+        }
+
+        //The thread stops instead of matching on past the instruction it could not apply
+        try {
+            ring.awaitProcessed();
+            fail("The failure of the matching thread was not raised");
+        }
+        catch (IllegalStateException e) {
+            assertSame(error, e.getCause());
+        }
+        assertFalse(ring.isRunning());
+        assertSame(error, ring.getFailure());
+        assertTrue(ring.requestSnapshot().isCompletedExceptionally());
+
+        try {
+            ring.receiveInstruction(1, InstructionAction.PLACE_ORDER, priceTicks, 100, -1L, OrderType.LIMIT, Side.BUY,
+                    client.getClientID());
+            fail("An instruction was published to a failed matching thread");
+        }
+        catch (IllegalStateException e) {
+            assertSame(error, e.getCause());
+        }
+        try {
+            ring.shutdown();
+            fail("The failure of the matching thread was not raised by shutdown");
+        }
+        catch (IllegalStateException e) {
+            assertSame(error, e.getCause());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRingCapacityMustBeAPowerOfTwo()
+    {
+        new InstructionRing(12, WaitStrategy.YIELD);
+    }
+}
@@ -0,0 +1,82 @@
+package test;
+
+import com.jpmorgan.*;
+import com.jpmorgan.client.*;
+import com.jpmorgan.instruction.Instruction;
+import com.jpmorgan.message.*;
+import com.jpmorgan.orderbook.*;
+import org.junit.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ShardedExchangeTester {
+
+    private static final int SYMBOL_NUM = 10;
+
+    @Test
+    public void testShardsMatchSingleThreadedExchange() throws InterruptedException
+    {
+        ShardedExchange sharded = new ShardedExchange(3);
+        ExchangeSimulator single = new ExchangeSimulator();
+        for (int symbolId = 0; symbolId < SYMBOL_NUM; symbolId++) {
+            sharded.listInstrument(symbolId, 10.0 + symbolId, 0.01, 100);
+            single.listInstrument(symbolId, 10.0 + symbolId, 0.01, 100);
+        }
+
+        Client shardedClient = new Client("Sharded");
+        Client singleClient = new Client("Single");
+        sharded.registerClient(shardedClient);
+        single.registerClient(singleClient);
+        shardedClient.getMessages().clear();
+        singleClient.getMessages().clear();
+
+        sharded.start();
+
+        Random random = new Random(5);
+        for (int i = 0; i < 20000; i++) {
+            int symbolId = random.nextInt(SYMBOL_NUM);
+            Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+            long basePriceTicks = Price.toTicks(10.0 + symbolId);
+            long priceTicks = basePriceTicks + (side == Side.BUY ? -1 : 1) * 10 * (random.nextInt(20) - 4);
+            Instruction instruction = Instruction.createPlaceLimitInstructionInTicks(priceTicks, 100 * (1 + random.nextInt(10)), side)
+                    .forSymbol(symbolId);
+
+            sharded.receiveInstruction(instruction, shardedClient.getClientID());
+            single.receiveInstruction(instruction, singleClient.getClientID());
+        }
+
+        sharded.awaitProcessed();
+        sharded.shutdown();
+
+        for (int symbolId = 0; symbolId < SYMBOL_NUM; symbolId++) {
+            assertEquals(single.getOrderBook(symbolId).toString(), sharded.getOrderBook(symbolId).toString());
+        }
+        assertEquals(singleClient.getMessages().size(), shardedClient.getMessages().size());
+
+        //Order ids assigned by different shards never collide
+        Set<Long> orderIds = new HashSet<>();
+        for (ExchangeMessage message : shardedClient.getMessages()) {
+            if (message instanceof OrderMessage) {
+                assertTrue(orderIds.add(((OrderMessage)message).getOrderID()));
+            }
+        }
+        assertEquals(20000, orderIds.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testInstrumentsCannotBeListedWhileRunning() throws InterruptedException
+    {
+        ShardedExchange sharded = new ShardedExchange(2);
+        sharded.start();
+        try {
+            sharded.listInstrument(1, 10.0, 0.01, 100);
+        }
+        finally {
+            sharded.shutdown();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package test;
+
+import com.jpmorgan.ShardedExchange;
+import com.jpmorgan.client.Client;
+import com.jpmorgan.instruction.Instruction;
+import com.jpmorgan.message.ExchangeMessage;
+import com.jpmorgan.orderbook.Price;
+import com.jpmorgan.orderbook.Side;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measure the throughput of the sharded exchange with 1, 2, 4 and 8 matching threads on a multi-symbol flow
+ * of limit orders, about a third of which cross the spread. One sender thread per shard sends a
+ * pre-generated share of the flow, spread over all the symbols.
+ *
+ * Usage: ShardingBenchmark [instructionNum [symbolNum [shardNum ...]]], default 2000000 64 1 2 4 8.
+ * The scaling depends on the cores available, each shard needs a core and so does each sender.
+ */
+public class ShardingBenchmark {
+
+    private static final int ROUNDS = 3;
+
+    //Client only counting its messages, so that delivery is not a bottleneck shared by the shards
+    private static class CountingClient extends Client {
+
+        private final LongAdder messageNum = new LongAdder();
+
+        CountingClient(String name) {
+            super(name);
+        }
+
+        public void receiveExchangeMessage(ExchangeMessage message) {
+            messageNum.increment();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        int instructionNum = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int symbolNum = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int[] shardNums = args.length > 2 ? Arrays.stream(args, 2, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[] {1, 2, 4, 8};
+
+        System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+
+        for (int shardNum : shardNums) {
+            double best = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                best = Math.max(best, run(shardNum, symbolNum, instructionNum));
+            }
+            System.out.printf("%d shard(s): %.0f instructions/s%n", shardNum, best);
+        }
+    }
+
+    private static double run(int shardNum, int symbolNum, int instructionNum) throws InterruptedException {
+
+        ShardedExchange exchange = new ShardedExchange(shardNum);
+        for (int symbolId = 0; symbolId < symbolNum; symbolId++) {
+            exchange.listInstrument(symbolId, 100.0, 0.01, 1);
+        }
+
+        int senderNum = shardNum;
+        CountingClient[] clients = new CountingClient[senderNum];
+        Instruction[][] flows = new Instruction[senderNum][];
+        for (int i = 0; i < senderNum; i++) {
+            clients[i] = new CountingClient("Sender" + i);
+            exchange.registerClient(clients[i]);
+            flows[i] = generateFlow(instructionNum / senderNum, symbolNum, 17 + i);
+        }
+
+        exchange.start();
+
+        Thread[] senders = new Thread[senderNum];
+        for (int i = 0; i < senderNum; i++) {
+            CountingClient client = clients[i];
+            Instruction[] flow = flows[i];
+            senders[i] = new Thread(() -> {
+                for (Instruction instruction : flow) {
+                    exchange.receiveInstruction(instruction, client.getClientID());
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        for (Thread sender : senders) {
+            sender.start();
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        exchange.awaitProcessed();
+        long elapsed = System.nanoTime() - start;
+
+        exchange.shutdown();
+
+        return (double)(instructionNum / senderNum * senderNum) * 1e9 / elapsed;
+    }
+
+    private static Instruction[] generateFlow(int instructionNum, int symbolNum, long seed) {
+        Random random = new Random(seed);
+        long midTicks = Price.toTicks(100.0);
+        Instruction[] flow = new Instruction[instructionNum];
+        for (int i = 0; i < instructionNum; i++) {
+            Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+            //Passive orders up to 20 ticks away from the mid, crossing orders up to 5 ticks through it
+            long offset = 10 * (random.nextInt(25) - 5);
+            long priceTicks = side == Side.BUY ? midTicks - offset : midTicks + offset;
+            flow[i] = Instruction.createPlaceLimitInstructionInTicks(priceTicks, 1 + random.nextInt(100), side)
+                    .forSymbol(random.nextInt(symbolNum));
+        }
+        return flow;
+    }
+}
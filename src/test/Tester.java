@@ -7,9 +7,14 @@ import com.jpmorgan.orderbook.*;
 import org.junit.*;
 import javafx.util.Pair;
 
+import com.jpmorgan.instruction.Instruction;
+
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import java.util.stream.Collectors;
 
@@ -1926,8 +1931,306 @@ public class Tester {
     }
 
 
+    @Test
+    public void testInstrumentsAreRoutedToTheirOwnBooks()
+    {
+        Pair<ExchangeSimulator, List<Client>> init = setUp();
+        ExchangeSimulator exchangeSimulator = init.getKey();
+        List<Client> clients = init.getValue();
+
+        Client client1 = clients.get(0);
+        Client client2 = clients.get(1);
+
+        //List a second instrument with its own settings, far from the default one in the registry
+        exchangeSimulator.listInstrument(2500, 100.0, 0.1, 100);
+        OrderBook defaultBook = exchangeSimulator.getOrderBook();
+        OrderBook otherBook = exchangeSimulator.getOrderBook(2500);
+
+        //Client1 places a buy order on each instrument
+        client1.placeLimitOrder(10.0, 1000, "Buy");
+        clients.stream().forEach(Client::processAllExchangeMessages);
+        client1.placeLimitOrder(2500, 100.5, 300, "Buy");
+        List<ExchangeMessage> messages = client1.getMessages();
+        assertEquals(1, messages.size());
+        OrderMessage orderMessage = (OrderMessage)messages.get(0);
+        assertEquals(OrderState.PLACE_ACKED, orderMessage.getOrderState());
+        assertEquals(2500, orderMessage.getSymbolId());
+        clients.stream().forEach(Client::processAllExchangeMessages);
+        long client1Order2 = client1.getInstructionChildOrderId();
+        assertEquals(2500, client1.childOrder(client1Order2).getSymbolId());
+
+        assertEquals(1000, defaultBook.getBestBidQuantity());
+        assertEquals(300, otherBook.getBestBidQuantity());
+        assertEquals(100.5, otherBook.getBestBid().getRawPrice(), 1e-5);
+
+        //The lot size of the other instrument applies to it
+        client2.placeLimitOrder(2500, 100.5, 50, "Buy");
+        orderMessage = (OrderMessage)client2.getMessages().get(0);
+        assertEquals(OrderState.PLACE_REJECTED, orderMessage.getOrderState());
+        clients.stream().forEach(Client::processAllExchangeMessages);
+
+        //A sell on the other instrument trades only with the order on that instrument
+        client2.placeLimitOrder(2500, 100.0, 100, "Sell");
+        messages = client2.getMessages();
+        assertEquals(3, messages.size());
+        TradeMessage tradeMessage = (TradeMessage)messages.get(1);
+        assertEquals(2500, tradeMessage.getSymbolId());
+        assertEquals(client1Order2, tradeMessage.getOrderId());
+        assertEquals(100.5, tradeMessage.getPrice(), 1e-5);
+        clients.stream().forEach(Client::processAllExchangeMessages);
+
+        assertEquals(200, otherBook.getBestBidQuantity());
+        assertEquals(1000, defaultBook.getBestBidQuantity());
+
+        //Cancelling the child order goes to the instrument of the child order
+        client1.cancelOrder("Buy", client1Order2);
+        orderMessage = (OrderMessage)client1.getMessages().get(0);
+        assertEquals(OrderState.CANCEL_ACKED, orderMessage.getOrderState());
+        assertEquals(200, orderMessage.getQuantity());
+        clients.stream().forEach(Client::processAllExchangeMessages);
+        assertEquals(0, otherBook.getBestBidQuantity());
+
+        //An instruction for an instrument not listed is rejected
+        client1.placeLimitOrder(7, 10.0, 1000, "Buy");
+        orderMessage = (OrderMessage)client1.getMessages().get(0);
+        assertEquals(OrderState.PLACE_REJECTED, orderMessage.getOrderState());
+        assertEquals("Symbol 7 is not listed", orderMessage.getReason());
+        clients.stream().forEach(Client::processAllExchangeMessages);
+    }
+
+    @Test
+    public void testBatchedInstructionsMatchOneByOne()
+    {
+        StringWriter singleOut = new StringWriter();
+        StringWriter batchOut = new StringWriter();
+        int[] batchFlushes = new int[1];
+
+        ExchangeSimulator single = new ExchangeSimulator();
+        ExchangeSimulator batched = new ExchangeSimulator();
+        single.setOutWriter(new PrintWriter(singleOut));
+        batched.setOutWriter(new PrintWriter(batchOut) {
+            public void flush() {
+                batchFlushes[0]++;
+                super.flush();
+            }
+        });
+        single.setBookOutputMode(BookOutputMode.TOP_N);
+        batched.setBookOutputMode(BookOutputMode.TOP_N);
+        for (ExchangeSimulator exchange : new ExchangeSimulator[] {single, batched}) {
+            exchange.setPrevClose(10.0);
+            exchange.setLotSize(100);
+            exchange.setTickSize(0.01);
+        }
+        //Each exchange assigns the same order ids
+        single.setOrderIdSequence(new OrderIdSequence(1, 1));
+        batched.setOrderIdSequence(new OrderIdSequence(1, 1));
+
+        List<Client> singleClients = new ArrayList<>();
+        List<Client> batchClients = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            singleClients.add(new Client("Client" + i));
+            batchClients.add(new Client("Client" + i));
+            single.registerClient(singleClients.get(i));
+            batched.registerClient(batchClients.get(i));
+        }
+
+        Random random = new Random(11);
+        int instructionNum = 1000;
+        Instruction[] instructions = new Instruction[instructionNum];
+        long[] clientIds = new long[instructionNum];
+        for (int i = 0; i < instructionNum; i++) {
+            Side side = random.nextBoolean() ? Side.BUY : Side.SELL;
+            long priceTicks = Price.toTicks(10.0) + (side == Side.BUY ? -1 : 1) * 10 * (random.nextInt(10) - 3);
+            instructions[i] = random.nextInt(5) == 0
+                    ? Instruction.createCancelInstruction(side, 1 + random.nextInt(i + 1))
+                    : Instruction.createPlaceLimitInstructionInTicks(priceTicks, 100 * (1 + random.nextInt(5)), side);
+            clientIds[i] = 1 + random.nextInt(3);
+        }
+
+        for (int i = 0; i < instructionNum; i++) {
+            single.receiveInstruction(instructions[i], clientIds[i]);
+        }
+
+        int batchSize = 64;
+        int batchNum = 0;
+        batchFlushes[0] = 0;
+        Instruction[] batch = new Instruction[batchSize];
+        long[] batchClientIds = new long[batchSize];
+        for (int start = 0; start < instructionNum; start += batchSize) {
+            int count = Math.min(batchSize, instructionNum - start);
+            System.arraycopy(instructions, start, batch, 0, count);
+            System.arraycopy(clientIds, start, batchClientIds, 0, count);
+            batched.receiveInstructions(batch, batchClientIds, count);
+            batchNum++;
+        }
+
+        //Same output, messages and book, with the output flushed once per batch
+        assertEquals(batchNum, batchFlushes[0]);
+        assertEquals(singleOut.toString(), batchOut.toString());
+        assertEquals(single.getOrderBook().toString(), batched.getOrderBook().toString());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(singleClients.get(i).getMessages().toString(), batchClients.get(i).getMessages().toString());
+        }
+    }
+
+    @Test
+    public void testSubTickPriceRejected()
+    {
+        Pair<ExchangeSimulator, List<Client>> init = setUp();
+        ExchangeSimulator exchangeSimulator = init.getKey();
+        Client client1 = init.getValue().get(0);
+
+        //A price finer than the tick size is rejected, not rounded onto the grid
+        client1.placeLimitOrder(10.0004, 1000, "Buy");
+        OrderMessage orderMessage = (OrderMessage)client1.getMessages().get(0);
+        assertEquals(OrderState.PLACE_REJECTED, orderMessage.getOrderState());
+        assertEquals("Price to be placed must be a multiple of tick size 0.5", orderMessage.getReason());
+        assertTrue(Double.isNaN(orderMessage.getPrice()));
+        assertEquals(0, exchangeSimulator.getOrderBook().getBestBidQuantity());
+        client1.processAllExchangeMessages();
+
+        client1.placeLimitOrder(10.0, 1000, "Buy");
+        client1.processAllExchangeMessages();
+        long orderId = client1.getInstructionChildOrderId();
+
+        client1.amendOrderPrice("Buy", 9.5004, orderId);
+        orderMessage = (OrderMessage)client1.getMessages().get(0);
+        assertEquals(OrderState.AMEND_PRICE_REJECTED, orderMessage.getOrderState());
+        assertEquals("Price to be placed must be a multiple of tick size 0.5", orderMessage.getReason());
+        assertEquals(10.0, exchangeSimulator.getOrderBook().getBestBid().getRawPrice(), 1e-5);
+        client1.processAllExchangeMessages();
+    }
+
+    @Test
+    public void testNonPositiveLimitPriceRejected()
+    {
+        Pair<ExchangeSimulator, List<Client>> init = setUp();
+        ExchangeSimulator exchangeSimulator = init.getKey();
+        Client client1 = init.getValue().get(0);
+        Client client2 = init.getValue().get(1);
+
+        client2.placeLimitOrder(10.0, 1000, "Sell");
+        client2.placeLimitOrder(9.5, 1000, "Sell");
+        client2.processAllExchangeMessages();
+
+        //A limit price of 0 is not a market order, and neither 0 nor a negative price trades
+        for (double price : new double[] {0.0, -0.001, -0.5}) {
+            client1.placeLimitOrder(price, 1000, "Buy");
+            OrderMessage orderMessage = (OrderMessage)client1.getMessages().get(0);
+            assertEquals(OrderState.PLACE_REJECTED, orderMessage.getOrderState());
+            assertEquals("Cannot place order below exchange low limit 5.0", orderMessage.getReason());
+            assertEquals(1, client1.getMessages().size());
+            client1.processAllExchangeMessages();
+        }
+        assertEquals(9.5, exchangeSimulator.getOrderBook().getBestAsk().getRawPrice(), 1e-5);
+        assertEquals(1000, exchangeSimulator.getOrderBook().getBestAskQuantity());
+    }
+
+    @Test
+    public void testLastTradeIsValidUntilTheNextTrade()
+    {
+        Pair<ExchangeSimulator, List<Client>> init = setUp();
+        ExchangeSimulator exchangeSimulator = init.getKey();
+        Client client1 = init.getValue().get(0);
+        Client client2 = init.getValue().get(1);
+
+        client1.placeLimitOrder(10.0, 1000, "Buy");
+        client2.placeLimitOrder(10.0, 1000, "Sell");
+        Trade firstTrade = exchangeSimulator.getLastTrade();
+        Trade kept = firstTrade.copy();
+        String firstText = firstTrade.toString();
+        long firstOrderId = firstTrade.getTradedOrders().get(0).getOrderId();
+
+        //Later trades reuse the orders of the first trade once they go back to the order pool
+        for (int i = 0; i < 10; i++) {
+            client1.placeLimitOrder(9.5, 500, "Buy");
+            client2.placeLimitOrder(9.5, 500, "Sell");
+        }
+        assertTrue(exchangeSimulator.getLastTrade() != firstTrade);
+        assertEquals(500, exchangeSimulator.getLastTrade().getTotalQuantity());
+
+        //The copy is left as it was
+        assertEquals(firstText, kept.toString());
+        assertEquals(1000, kept.getTotalQuantity());
+        assertEquals(firstOrderId, kept.getTradedOrders().get(0).getOrderId());
+        assertEquals(Price.toTicks(10.0), kept.getTradedOrders().get(0).getPriceTicks());
+        assertEquals(Side.SELL, kept.getTradingOrder().getRawSide());
+    }
 
+    @Test
+    public void testOffOutputPrintsNothingAndDeltaForgetsUnrenderedChanges()
+    {
+        ExchangeSimulator exchange = new ExchangeSimulator();
+        exchange.setPrevClose(10.0);
+        exchange.setLotSize(100);
+        exchange.setTickSize(0.01);
+        Client client = new Client("Client");
+        client.setOutWriter(new PrintWriter(new StringWriter()));
+        client.setExchangeSimulator(exchange);
+        exchange.registerClient(client);
+
+        //OFF prints neither the book nor the last trade
+        StringWriter out = new StringWriter();
+        exchange.setOutWriter(new PrintWriter(out));
+        exchange.setBookOutputMode(BookOutputMode.OFF);
+        client.placeLimitOrder(10.0, 100, "Buy");
+        client.placeLimitOrder(10.0, 100, "Sell");
+        assertTrue(exchange.getLastTrade() != null);
+        assertEquals("", out.toString());
+
+        //Changes made while there is no output writer are not rendered later
+        exchange.setOutWriter(null);
+        exchange.setBookOutputMode(BookOutputMode.DELTA);
+        for (int i = 0; i < 10; i++) {
+            client.placeLimitOrder(9.0 + 0.01 * i, 100, "Buy");
+        }
+        out = new StringWriter();
+        exchange.setOutWriter(new PrintWriter(out));
+        client.placeLimitOrder(11.0, 100, "Sell");
+        long changes = Arrays.stream(out.toString().split("\n")).filter(line -> line.startsWith("Buy") || line.startsWith("Sell")).count();
+        assertEquals(1, changes);
+    }
 
+    @Test
+    public void testIdleInstrumentsAreSmall()
+    {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)java.lang.management.ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        //A wide band of 10000 ticks per side, which a ladder only pays for where orders rest
+        for (BookEngine engine : BookEngine.values()) {
+            ExchangeSimulator exchange = new ExchangeSimulator(engine);
+            int instrumentNum = 1000;
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int symbolId = 1; symbolId <= instrumentNum; symbolId++) {
+                exchange.listInstrument(symbolId, 100.0, 0.01, 100);
+            }
+            long bytesPerInstrument = (threads.getThreadAllocatedBytes(threadId) - before) / instrumentNum;
+            assertTrue(engine + " allocates " + bytesPerInstrument + " bytes per idle instrument", bytesPerInstrument < 16 * 1024);
+
+            //A larger book can still be asked for, and the instruments trade as usual
+            exchange.listInstrument(5000, 100.0, 0.01, 100, 1 << 12);
+            Client client = new Client("Client");
+            client.setOutWriter(new PrintWriter(new StringWriter()));
+            client.setExchangeSimulator(exchange);
+            exchange.registerClient(client);
+            client.placeLimitOrder(5000, 99.0, 100, "Buy");
+            client.placeLimitOrder(7, 51.0, 100, "Buy");
+            assertEquals(99.0, exchange.getOrderBook(5000).getBestBid().getRawPrice(), 1e-5);
+            assertEquals(51.0, exchange.getOrderBook(7).getBestBid().getRawPrice(), 1e-5);
+        }
+    }
 
+    @Test
+    public void testSymbolIdIsPrintedOnlyForOtherInstruments()
+    {
+        assertEquals("[orderState=PLACE_ACKED, orderId=3, side=BUY, price=10.5, quantity=100, reason=null]",
+                new OrderMessage(OrderState.PLACE_ACKED, 3, Side.BUY, 10500, 100, null).toString());
+        assertEquals("[symbolId=7, orderId=3, price=10.5, fillQuantity=100, side=SELL]",
+                new TradeMessage(7, 3, 10500, 100, Side.SELL).toString());
+        assertTrue(Instruction.createCancelInstruction(Side.BUY, 3).toString().startsWith("Instruction [action=CANCEL"));
+    }
 
 }